@@ -0,0 +1,195 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IControllerCompletionListener;
+import net.floodlightcontroller.core.IListener.Command;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.util.ListenerDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+/**
+ * Compares the listener dispatch done by Controller before and after the
+ * listener chains were compiled into arrays: a map lookup and an iterator
+ * over the ordered list per message, against an array index and an array
+ * loop. Both run the same listeners and completion listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    @Param({"3", "8"})
+    public int listenerCount;
+
+    private final OFMessage msg = OFFactories.getFactory(OFVersion.OF_13)
+            .buildEchoRequest().build();
+    private final IOFSwitch sw = null;
+    private final FloodlightContext cntx = new FloodlightContext();
+
+    private ConcurrentMap<OFType, ListenerDispatcher<OFType, IOFMessageListener>> messageListeners;
+    private ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
+    private IOFMessageListener[][] listenerChains;
+    private IControllerCompletionListener[] completionChain;
+
+    private Blackhole bh;
+
+    @Setup
+    public void setUp(Blackhole bh) {
+        this.bh = bh;
+        OFType type = msg.getType();
+        ListenerDispatcher<OFType, IOFMessageListener> ldd =
+                new ListenerDispatcher<OFType, IOFMessageListener>();
+        for (int i = 0; i < listenerCount; i++) {
+            // A few listener classes so receive() is megamorphic, as in the controller
+            switch (i % 3) {
+                case 0: ldd.addListener(type, new ListenerA("a" + i)); break;
+                case 1: ldd.addListener(type, new ListenerB("b" + i)); break;
+                default: ldd.addListener(type, new ListenerC("c" + i)); break;
+            }
+        }
+        messageListeners = new ConcurrentHashMap<OFType, ListenerDispatcher<OFType, IOFMessageListener>>();
+        messageListeners.put(type, ldd);
+        completionListeners = new ConcurrentLinkedQueue<IControllerCompletionListener>();
+        completionListeners.add(new Completion());
+
+        List<IOFMessageListener> ordered = ldd.getOrderedListeners();
+        listenerChains = new IOFMessageListener[OFType.values().length][];
+        listenerChains[type.ordinal()] = ordered.toArray(new IOFMessageListener[ordered.size()]);
+        completionChain = completionListeners.toArray(new IControllerCompletionListener[0]);
+    }
+
+    @Benchmark
+    public void listDispatch() {
+        List<IOFMessageListener> listeners = null;
+        if (messageListeners.containsKey(msg.getType())) {
+            listeners = messageListeners.get(msg.getType()).getOrderedListeners();
+        }
+        if (listeners != null) {
+            boolean timed = msg.getType() == OFType.PACKET_IN;
+            Command cmd;
+            for (IOFMessageListener listener : listeners) {
+                if (timed)
+                    bh.consume(listener);
+                cmd = listener.receive(sw, msg, cntx);
+                if (timed)
+                    bh.consume(listener);
+                if (Command.STOP.equals(cmd)) {
+                    break;
+                }
+            }
+        }
+        for (IControllerCompletionListener listener : completionListeners)
+            listener.onMessageConsumed(sw, msg, cntx);
+    }
+
+    @Benchmark
+    public void compiledDispatch() {
+        IOFMessageListener[] listeners = listenerChains[msg.getType().ordinal()];
+        if (listeners != null) {
+            for (IOFMessageListener listener : listeners) {
+                if (listener.receive(sw, msg, cntx) == Command.STOP) {
+                    break;
+                }
+            }
+        }
+        for (IControllerCompletionListener listener : completionChain)
+            listener.onMessageConsumed(sw, msg, cntx);
+    }
+
+    private abstract class BaseListener implements IOFMessageListener {
+        private final String name;
+
+        BaseListener(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(OFType type, String name) {
+            return false;
+        }
+    }
+
+    private final class ListenerA extends BaseListener {
+        ListenerA(String name) {
+            super(name);
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            bh.consume(msg);
+            return Command.CONTINUE;
+        }
+    }
+
+    private final class ListenerB extends BaseListener {
+        ListenerB(String name) {
+            super(name);
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            bh.consume(cntx);
+            return Command.CONTINUE;
+        }
+    }
+
+    private final class ListenerC extends BaseListener {
+        ListenerC(String name) {
+            super(name);
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            bh.consume(msg.getXid());
+            return Command.CONTINUE;
+        }
+    }
+
+    private final class Completion implements IControllerCompletionListener {
+        @Override
+        public void onMessageConsumed(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            bh.consume(msg);
+        }
+
+        @Override
+        public String getName() {
+            return "completion";
+        }
+    }
+}
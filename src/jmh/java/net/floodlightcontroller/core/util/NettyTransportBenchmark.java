@@ -0,0 +1,145 @@
+package net.floodlightcontroller.core.util;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for a batch of clients connected to a local listener to push a
+ * fixed amount of data each, with the NIO and the native epoll transport.
+ * Where epoll is unavailable the EPOLL run falls back to NIO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NettyTransportBenchmark {
+
+    @Param({"NIO", "EPOLL"})
+    public String type;
+
+    @Param({"50"})
+    public int clients;
+
+    @Param({"500"})
+    public int messages;
+
+    @Param({"128"})
+    public int messageSize;
+
+    private EventLoopGroup boss;
+    private EventLoopGroup workers;
+    private EventLoopGroup clientGroup;
+    private Channel server;
+    private List<Channel> channels;
+    private CountingHandler counter;
+    private byte[] payload;
+
+    @Sharable
+    private static class CountingHandler extends ChannelInboundHandlerAdapter {
+        final AtomicLong received = new AtomicLong();
+        volatile long expected = Long.MAX_VALUE;
+        volatile CountDownLatch done = new CountDownLatch(1);
+
+        void expect(long bytes) {
+            received.set(0);
+            expected = bytes;
+            done = new CountDownLatch(1);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            if (received.addAndGet(buf.readableBytes()) >= expected) {
+                done.countDown();
+            }
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Sharable
+    private static class DiscardHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        NettyTransport transport = new NettyTransport(0, 0, 0, 0)
+        .setType(NettyTransport.Type.valueOf(type)).setWorkerThreads(2);
+        counter = new CountingHandler();
+        boss = transport.newBossGroup(null);
+        workers = transport.newWorkerGroup(null);
+        clientGroup = transport.newWorkerGroup(null);
+        server = transport.configure(new ServerBootstrap().group(boss, workers))
+                .childHandler(counter)
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        InetSocketAddress addr = (InetSocketAddress) server.localAddress();
+
+        Bootstrap b = transport.configure(new Bootstrap().group(clientGroup))
+                .handler(new DiscardHandler());
+        channels = new ArrayList<Channel>();
+        for (int i = 0; i < clients; i++) {
+            channels.add(b.connect(addr).sync().channel());
+        }
+        payload = new byte[messageSize];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (Channel c : channels) {
+            c.close().sync();
+        }
+        server.close().sync();
+        clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        workers.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        boss.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public long push() throws Exception {
+        counter.expect((long) clients * messages * messageSize);
+        for (int m = 0; m < messages; m++) {
+            for (Channel c : channels) {
+                c.write(c.alloc().buffer(messageSize).writeBytes(payload));
+            }
+        }
+        for (Channel c : channels) {
+            c.flush();
+        }
+        if (!counter.done.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Only " + counter.received.get() + " bytes received");
+        }
+        return counter.received.get();
+    }
+}
@@ -0,0 +1,156 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Time to compute a TopologyInstance from scratch, which is dominated by
+ * the all-pairs shortest path trees, on one thread and on a fork/join pool.
+ *
+ * A fat-tree of k-port switches has 5k^2/4 switches, so k = 16, 32 and 44
+ * give 320, 1280 and 2420 switches. The random topology has the same number
+ * of switches as the fat-tree, on a ring with two random extra links per
+ * switch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TopologyComputeBenchmark {
+
+    @Param({"fattree", "random"})
+    public String shape;
+
+    @Param({"16", "32", "44"})
+    public int k;
+
+    /** Pool threads, with 0 for every processor and 1 for no pool */
+    @Param({"1", "0"})
+    public int threads;
+
+    private Map<DatapathId, Set<OFPort>> switchPorts;
+    private Map<NodePortTuple, Set<Link>> links;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        switchPorts = new HashMap<DatapathId, Set<OFPort>>();
+        links = new HashMap<NodePortTuple, Set<Link>>();
+        if (shape.equals("fattree")) {
+            buildFatTree();
+        } else {
+            buildRandom(5 * k * k / 4);
+        }
+        int n = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        pool = n > 1 ? new ForkJoinPool(n) : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Core switches are numbered first, then each pod's aggregation and
+     * edge switches. Ports are allocated in order on each switch.
+     */
+    private void buildFatTree() {
+        int half = k / 2;
+        int core = half * half;
+        for (int pod = 0; pod < k; pod++) {
+            int base = core + pod * k;
+            for (int a = 0; a < half; a++) {
+                long agg = base + a + 1;
+                for (int c = 0; c < half; c++) {
+                    connect(agg, a * half + c + 1);
+                }
+                for (int e = 0; e < half; e++) {
+                    connect(agg, base + half + e + 1);
+                }
+            }
+        }
+    }
+
+    private void buildRandom(int n) {
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            connect(i + 1, (i + 1) % n + 1);
+        }
+        for (int i = 0; i < 2 * n; i++) {
+            int a = random.nextInt(n);
+            int b = random.nextInt(n);
+            if (a != b) {
+                connect(a + 1, b + 1);
+            }
+        }
+    }
+
+    private void connect(long a, long b) {
+        DatapathId da = DatapathId.of(a);
+        DatapathId db = DatapathId.of(b);
+        OFPort pa = nextPort(da);
+        OFPort pb = nextPort(db);
+        for (Link l : new Link[] { new Link(da, pa, db, pb, U64.ZERO), new Link(db, pb, da, pa, U64.ZERO) }) {
+            add(new NodePortTuple(l.getSrc(), l.getSrcPort()), l);
+            add(new NodePortTuple(l.getDst(), l.getDstPort()), l);
+        }
+    }
+
+    private OFPort nextPort(DatapathId sw) {
+        Set<OFPort> ports = switchPorts.get(sw);
+        if (ports == null) {
+            ports = new HashSet<OFPort>();
+            switchPorts.put(sw, ports);
+        }
+        OFPort p = OFPort.of(ports.size() + 1);
+        ports.add(p);
+        return p;
+    }
+
+    private void add(NodePortTuple npt, Link l) {
+        Set<Link> s = links.get(npt);
+        if (s == null) {
+            s = new HashSet<Link>();
+            links.put(npt, s);
+        }
+        s.add(l);
+    }
+
+    @Benchmark
+    public TopologyInstance compute() {
+        TopologyInstance ti = new TopologyInstance(switchPorts, Collections.<NodePortTuple>emptySet(),
+                links, Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(), links, switchPorts);
+        ti.setPathComputationPool(pool);
+        ti.compute();
+        return ti;
+    }
+}
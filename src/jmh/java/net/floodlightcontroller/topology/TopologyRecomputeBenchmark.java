@@ -0,0 +1,154 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Time to build the next TopologyInstance after a single link goes down
+ * or comes back, computing all shortest path trees from scratch against
+ * updating the trees of the previous instance. The fabric is a square
+ * torus of the given number of switches, each linked to four neighbors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopologyRecomputeBenchmark {
+
+    @Param({"64", "144", "256", "529"})
+    public int switchCount;
+
+    private Map<DatapathId, Set<OFPort>> switchPorts;
+    private Map<NodePortTuple, Set<Link>> allLinks;
+    private Map<NodePortTuple, Set<Link>> linksWithoutOne;
+    private TopologyInstance withAll;
+    private TopologyInstance withoutOne;
+
+    @Setup
+    public void setUp() {
+        int side = (int) Math.round(Math.sqrt(switchCount));
+        switchPorts = new HashMap<DatapathId, Set<OFPort>>();
+        allLinks = new HashMap<NodePortTuple, Set<Link>>();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                // Port 1 goes right, port 2 goes down
+                connect(id(side, r, c), 1, id(side, r, (c + 1) % side), 3);
+                connect(id(side, r, c), 2, id(side, (r + 1) % side, c), 4);
+            }
+        }
+        linksWithoutOne = copy(allLinks);
+        DatapathId a = id(side, side / 2, side / 2);
+        DatapathId b = id(side, side / 2, side / 2 + 1);
+        remove(linksWithoutOne, new Link(a, OFPort.of(1), b, OFPort.of(3), U64.ZERO));
+        remove(linksWithoutOne, new Link(b, OFPort.of(3), a, OFPort.of(1), U64.ZERO));
+
+        withAll = instance(allLinks);
+        withAll.compute();
+        withoutOne = instance(linksWithoutOne);
+        withoutOne.compute();
+    }
+
+    private static DatapathId id(int side, int r, int c) {
+        return DatapathId.of(r * side + c + 1);
+    }
+
+    private void connect(DatapathId a, int pa, DatapathId b, int pb) {
+        Link ab = new Link(a, OFPort.of(pa), b, OFPort.of(pb), U64.ZERO);
+        Link ba = new Link(b, OFPort.of(pb), a, OFPort.of(pa), U64.ZERO);
+        for (Link l : new Link[] { ab, ba }) {
+            add(l.getSrc(), l.getSrcPort(), l);
+            add(l.getDst(), l.getDstPort(), l);
+        }
+    }
+
+    private void add(DatapathId sw, OFPort p, Link l) {
+        Set<OFPort> ports = switchPorts.get(sw);
+        if (ports == null) {
+            ports = new HashSet<OFPort>();
+            switchPorts.put(sw, ports);
+        }
+        ports.add(p);
+        NodePortTuple npt = new NodePortTuple(sw, p);
+        Set<Link> links = allLinks.get(npt);
+        if (links == null) {
+            links = new HashSet<Link>();
+            allLinks.put(npt, links);
+        }
+        links.add(l);
+    }
+
+    private static Map<NodePortTuple, Set<Link>> copy(Map<NodePortTuple, Set<Link>> links) {
+        Map<NodePortTuple, Set<Link>> m = new HashMap<NodePortTuple, Set<Link>>();
+        for (Map.Entry<NodePortTuple, Set<Link>> e : links.entrySet()) {
+            m.put(e.getKey(), new HashSet<Link>(e.getValue()));
+        }
+        return m;
+    }
+
+    private static void remove(Map<NodePortTuple, Set<Link>> links, Link l) {
+        for (NodePortTuple npt : new NodePortTuple[] {
+                new NodePortTuple(l.getSrc(), l.getSrcPort()),
+                new NodePortTuple(l.getDst(), l.getDstPort()) }) {
+            Set<Link> s = links.get(npt);
+            s.remove(l);
+            if (s.isEmpty()) links.remove(npt);
+        }
+    }
+
+    private TopologyInstance instance(Map<NodePortTuple, Set<Link>> links) {
+        return new TopologyInstance(switchPorts, Collections.<NodePortTuple>emptySet(),
+                links, Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(), links, switchPorts);
+    }
+
+    @Benchmark
+    public TopologyInstance linkDownFull() {
+        TopologyInstance ti = instance(linksWithoutOne);
+        ti.compute();
+        return ti;
+    }
+
+    @Benchmark
+    public TopologyInstance linkDownIncremental() {
+        TopologyInstance ti = instance(linksWithoutOne);
+        ti.compute(withAll);
+        return ti;
+    }
+
+    @Benchmark
+    public TopologyInstance linkUpFull() {
+        TopologyInstance ti = instance(allLinks);
+        ti.compute();
+        return ti;
+    }
+
+    @Benchmark
+    public TopologyInstance linkUpIncremental() {
+        TopologyInstance ti = instance(allLinks);
+        ti.compute(withoutOne);
+        return ti;
+    }
+}
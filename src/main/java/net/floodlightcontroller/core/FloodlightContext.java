@@ -17,19 +17,208 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
  * event
+ *
+ * Keys are mapped once, process-wide, to small integer slots (see
+ * {@link #getSlot(String)}) and values are held in a plain array indexed
+ * by slot. A context belongs to the single thread processing its message
+ * and is not thread-safe. {@link #reset()} only touches the slots that
+ * were used, so a context can be cheaply recycled between messages.
  * @author readams
  */
 public class FloodlightContext {
-    protected ConcurrentHashMap<String, Object> storage =
-            new ConcurrentHashMap<String, Object>();
+    private static final int INITIAL_SLOTS = 16;
 
-    public ConcurrentHashMap<String, Object> getStorage() {
-        return storage;
+    /* Slot registry, shared by all contexts. Slots are never released. */
+    private static final ConcurrentHashMap<String, Integer> slotsByKey =
+            new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] keysBySlot = new String[0];
+
+    protected Object[] values = new Object[INITIAL_SLOTS];
+    /* Slots currently holding a value, in insertion order */
+    protected int[] used = new int[INITIAL_SLOTS];
+    protected int usedCount;
+
+    /**
+     * Get the slot for a context key, registering the key if it has not
+     * been seen before. Modules should look their keys up once, e.g. in a
+     * static initializer or in init(), and use the int-based accessors on
+     * the hot path.
+     * @param key the context key
+     * @return the slot, stable for the lifetime of the process
+     */
+    public static int getSlot(String key) {
+        Integer slot = slotsByKey.get(key);
+        if (slot != null) return slot;
+        synchronized (slotsByKey) {
+            slot = slotsByKey.get(key);
+            if (slot == null) {
+                String[] keys = Arrays.copyOf(keysBySlot, keysBySlot.length + 1);
+                slot = keys.length - 1;
+                keys[slot] = key;
+                keysBySlot = keys;
+                slotsByKey.put(key, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * @return the key registered for a slot, or null
+     */
+    public static String getKey(int slot) {
+        String[] keys = keysBySlot;
+        return slot >= 0 && slot < keys.length ? keys[slot] : null;
+    }
+
+    public Object get(int slot) {
+        return slot < values.length ? values[slot] : null;
+    }
+
+    /**
+     * Store a value in a slot. Storing null removes the value.
+     */
+    public void put(int slot, Object value) {
+        if (value == null) {
+            remove(slot);
+            return;
+        }
+        if (slot >= values.length) {
+            int size = Math.max(slot + 1, values.length * 2);
+            values = Arrays.copyOf(values, size);
+            used = Arrays.copyOf(used, size);
+        }
+        if (values[slot] == null) {
+            used[usedCount++] = slot;
+        }
+        values[slot] = value;
+    }
+
+    public void remove(int slot) {
+        if (slot >= values.length || values[slot] == null) return;
+        values[slot] = null;
+        for (int i = 0; i < usedCount; i++) {
+            if (used[i] == slot) {
+                System.arraycopy(used, i + 1, used, i, usedCount - i - 1);
+                usedCount--;
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of slots holding a value
+     */
+    public int size() {
+        return usedCount;
+    }
+
+    /**
+     * Remove all values, in O(number of used slots)
+     */
+    public void reset() {
+        for (int i = 0; i < usedCount; i++) {
+            values[used[i]] = null;
+        }
+        usedCount = 0;
+    }
+
+    /**
+     * A live String-keyed view of this context, for code that used the
+     * map that used to back it. Slower than the slot accessors.
+     * @deprecated use {@link FloodlightContextStore} or the slot accessors
+     */
+    @Deprecated
+    public Map<String, Object> getStorage() {
+        return new StorageView();
+    }
+
+    private class StorageView extends AbstractMap<String, Object> {
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? FloodlightContext.this.get(getSlot((String) key)) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            int slot = getSlot(key);
+            Object old = FloodlightContext.this.get(slot);
+            FloodlightContext.this.put(slot, value);
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            if (!(key instanceof String)) return null;
+            int slot = getSlot((String) key);
+            Object old = FloodlightContext.this.get(slot);
+            FloodlightContext.this.remove(slot);
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return usedCount;
+        }
+
+        @Override
+        public void clear() {
+            reset();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return usedCount;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    final int[] slots = Arrays.copyOf(used, usedCount);
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        int next = 0;
+                        int last = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < slots.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            last = slots[next++];
+                            return new SimpleEntry<String, Object>(getKey(last), values[last]);
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0) throw new IllegalStateException();
+                            FloodlightContext.this.remove(last);
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
     }
 }
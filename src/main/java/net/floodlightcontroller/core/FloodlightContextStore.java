@@ -17,18 +17,68 @@
 
 package net.floodlightcontroller.core;
 
+/**
+ * Typed access to values in a {@link FloodlightContext}.
+ *
+ * The String-keyed methods look the key's slot up on every call. A store
+ * bound to a key with {@link #FloodlightContextStore(String)} resolves the
+ * slot once and can use {@link #get(FloodlightContext)} and friends.
+ */
 public class FloodlightContextStore<V> {
+    private final int slot;
+
+    public FloodlightContextStore() {
+        this.slot = -1;
+    }
+
+    /**
+     * Create a store bound to a single key
+     * @param key the context key
+     */
+    public FloodlightContextStore(String key) {
+        this.slot = FloodlightContext.getSlot(key);
+    }
 
-    @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
-        return (V)bc.storage.get(key);
+        return get(bc, FloodlightContext.getSlot(key));
     }
 
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        put(bc, FloodlightContext.getSlot(key), value);
     }
 
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        remove(bc, FloodlightContext.getSlot(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc, int slot) {
+        return (V)bc.get(slot);
+    }
+
+    public void put(FloodlightContext bc, int slot, V value) {
+        bc.put(slot, value);
+    }
+
+    public void remove(FloodlightContext bc, int slot) {
+        bc.remove(slot);
+    }
+
+    public V get(FloodlightContext bc) {
+        return get(bc, boundSlot());
+    }
+
+    public void put(FloodlightContext bc, V value) {
+        put(bc, boundSlot(), value);
+    }
+
+    public void remove(FloodlightContext bc) {
+        remove(bc, boundSlot());
+    }
+
+    private int boundSlot() {
+        if (slot < 0)
+            throw new IllegalStateException("Store is not bound to a context key");
+        return slot;
     }
 }
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
 import io.netty.util.Timer;
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HARole;
@@ -58,10 +59,26 @@ public interface IFloodlightProviderService extends
 
     /**
      * A FloodlightContextStore object that can be used to retrieve the
-     * packet-in payload
+     * packet-in payload. The payload is decoded from the packet view on
+     * first access.
      */
     public static final FloodlightContextStore<Ethernet> bcStore =
-            new FloodlightContextStore<Ethernet>();
+            new PacketInPayloadContextStore();
+
+    /**
+     * A value stored in the floodlight context containing a lazily decoded
+     * view of the payload of a packet-in message. Listeners that only need
+     * a few header fields should prefer this over CONTEXT_PI_PAYLOAD.
+     */
+    public static final String CONTEXT_PI_PACKET_VIEW =
+            "net.floodlightcontroller.core.IFloodlightProvider.piPacketView";
+
+    /**
+     * A FloodlightContextStore object that can be used to retrieve the
+     * packet-in payload view
+     */
+    public static final FloodlightContextStore<PacketView> pvStore =
+            new FloodlightContextStore<PacketView>(CONTEXT_PI_PACKET_VIEW);
 
     /**
      * Service name used in the service directory representing
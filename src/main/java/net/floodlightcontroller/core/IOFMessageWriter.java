@@ -76,4 +76,17 @@ public interface IOFMessageWriter{
      */
     <REPLY extends OFStatsReply> ListenableFuture<List<REPLY>> writeStatsRequest(
             OFStatsRequest<REPLY> request);
+
+    /** write a Stats (Multipart-) request and stream the reply messages to
+     * the subscriber as they arrive, so that large replies need not be held
+     * in memory all at once.
+     *
+     * @param request stats request
+     * @param subscriber receives the replies; if the connection is not
+     *         currently connected, it immediately gets a
+     *         @link{SwitchDisconnectedException}
+     * @see IStatsReplySubscriber
+     */
+    <REPLY extends OFStatsReply> void writeStatsRequest(
+            OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber);
 }
@@ -312,6 +312,30 @@ public interface IOFSwitch extends IOFMessageWriter {
      */
     Iterable<OFMessage> write(Iterable<OFMessage> msglist, LogicalOFMessageCategory category);
 
+    /**
+     * Writes a message to one of the connections of the logical OFMessage
+     * category, chosen by the hash of the flow the message belongs to.
+     * Messages with the same flow hash take the same connection and so stay
+     * in order. If the switch has none of the category's aux connections
+     * open, the message goes over the MAIN connection.
+     * @param m an OF Message
+     * @param category the category of the OF Message to be sent
+     * @param flowHash hash of the flow the message belongs to
+     * @return true upon success; false upon failure
+     */
+    boolean write(OFMessage m, LogicalOFMessageCategory category, long flowHash);
+
+    /**
+     * Writes a message list to one of the connections of the logical
+     * OFMessage category, chosen by flow hash
+     * @param msglist an OF Message list
+     * @param category the category of the OF Message list to be sent
+     * @param flowHash hash of the flow the messages belong to
+     * @return list of failed messages, if any; success denoted by empty list
+     * @see #write(OFMessage, LogicalOFMessageCategory, long)
+     */
+    Iterable<OFMessage> write(Iterable<OFMessage> msglist, LogicalOFMessageCategory category, long flowHash);
+
     /**
      * Get a connection specified by the logical OFMessage category
      * @param category the category for the connection the user desires
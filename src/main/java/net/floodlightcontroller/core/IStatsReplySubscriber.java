@@ -0,0 +1,45 @@
+package net.floodlightcontroller.core;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+
+/**
+ * Receives the replies to a stats (multipart) request one at a time, as
+ * they are decoded, instead of as one list after the last reply.
+ *
+ * onSubscribe is called first. Replies are then delivered in order, and
+ * only as many as the subscriber has asked for with
+ * {@link IStatsReplySubscription#request(long)}. Replies that arrive
+ * before they are asked for are held by the connection, which keeps
+ * reading from the switch; if the subscriber falls too far behind, the
+ * stream fails. The stream ends with exactly one call to onComplete or
+ * onError, unless it is cancelled.
+ *
+ * All methods but onSubscribe are called on the connection's I/O thread
+ * and must not block.
+ *
+ * @see IOFMessageWriter#writeStatsRequest(org.projectfloodlight.openflow.protocol.OFStatsRequest, IStatsReplySubscriber)
+ * @param <REPLY> type of the stats reply
+ */
+public interface IStatsReplySubscriber<REPLY extends OFStatsReply> {
+    /**
+     * Called on the requesting thread before the request is written
+     * @param subscription to ask for replies or cancel the stream
+     */
+    void onSubscribe(IStatsReplySubscription subscription);
+
+    /**
+     * Called for each reply, including the last one
+     */
+    void onReply(REPLY reply);
+
+    /**
+     * Called after the last reply has been delivered
+     */
+    void onComplete();
+
+    /**
+     * Called if the request failed, timed out or the switch disconnected.
+     * No more replies are delivered afterwards.
+     */
+    void onError(Throwable cause);
+}
@@ -0,0 +1,20 @@
+package net.floodlightcontroller.core;
+
+/**
+ * Flow control for a stream of stats replies
+ *
+ * @see IStatsReplySubscriber
+ */
+public interface IStatsReplySubscription {
+    /**
+     * Ask for n more replies. May be called from any thread.
+     * Long.MAX_VALUE asks for all of them.
+     */
+    void request(long n);
+
+    /**
+     * Stop the stream. No more methods of the subscriber are called, and
+     * the replies held for it are dropped. May be called from any thread.
+     */
+    void cancel();
+}
@@ -1,13 +1,23 @@
 package net.floodlightcontroller.core;
 
+import java.util.List;
+
 import javax.annotation.Nonnull;
 
 import org.projectfloodlight.openflow.types.OFAuxId;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Immutable class for logical OF message category.
  * Applications should use these to define the OF Aux connections
  * that they desire.
+ *
+ * A category maps onto one or more consecutive aux ids. Messages written
+ * with a flow hash are spread over those of the category's connections
+ * the switch has actually opened, and go over the MAIN connection if it
+ * has opened none of them.
+ *
  * @author Jason Parraga <Jason.Parraga@bigswitch.com>
  */
 public class LogicalOFMessageCategory {
@@ -16,6 +26,7 @@ public class LogicalOFMessageCategory {
 
     final private String name;
     final private OFAuxId auxId;
+    final private ImmutableList<OFAuxId> auxIds;
 
 
     public LogicalOFMessageCategory(@Nonnull String name, int auxId) {
@@ -23,23 +34,55 @@ public class LogicalOFMessageCategory {
     }
 
     public LogicalOFMessageCategory(@Nonnull String name, OFAuxId auxId) {
+        this(name, auxId, 1);
+    }
+
+    /**
+     * @param name the category name
+     * @param firstAuxId the first aux id of the category
+     * @param numAuxIds the number of consecutive aux ids, starting with
+     * firstAuxId, that the category's traffic is spread over
+     */
+    public LogicalOFMessageCategory(@Nonnull String name, int firstAuxId, int numAuxIds) {
+        this(name, OFAuxId.of(firstAuxId), numAuxIds);
+    }
+
+    private LogicalOFMessageCategory(String name, OFAuxId auxId, int numAuxIds) {
         if (name == null)
             throw new NullPointerException("name must not be null");
+        if (numAuxIds < 1)
+            throw new IllegalArgumentException("numAuxIds must be positive");
         this.name = name;
         this.auxId = auxId;
+        ImmutableList.Builder<OFAuxId> ids = ImmutableList.builder();
+        for (int i = 0; auxId != null && i < numAuxIds; i++) {
+            ids.add(OFAuxId.of(auxId.getValue() + i));
+        }
+        this.auxIds = ids.build();
     }
 
+    /**
+     * @return the first aux id of the category
+     */
     public OFAuxId getAuxId(){
         return this.auxId;
     }
 
+    /**
+     * @return all aux ids of the category, in order
+     */
+    public List<OFAuxId> getAuxIds(){
+        return this.auxIds;
+    }
+
     public String getName(){
         return this.name;
     }
 
     @Override
     public String toString(){
-        return "LogicalOFMessageCategory [name=" + getName() + " OFAuxId=" + getAuxId() + "]";
+        return "LogicalOFMessageCategory [name=" + getName() + " OFAuxId=" + getAuxId()
+                + (auxIds.size() > 1 ? " numAuxIds=" + auxIds.size() : "") + "]";
     }
 
     @Override
@@ -47,6 +90,7 @@ public class LogicalOFMessageCategory {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((auxId == null) ? 0 : auxId.hashCode());
+        result = prime * result + auxIds.size();
         result = prime * result + ((name == null) ? 0 : name.hashCode());
         return result;
     }
@@ -60,6 +104,7 @@ public class LogicalOFMessageCategory {
         if (auxId == null) {
             if (other.auxId != null) return false;
         } else if (!auxId.equals(other.auxId)) return false;
+        if (auxIds.size() != other.auxIds.size()) return false;
         if (name == null) {
             if (other.name != null) return false;
         } else if (!name.equals(other.name)) return false;
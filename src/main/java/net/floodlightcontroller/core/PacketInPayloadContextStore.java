@@ -0,0 +1,33 @@
+package net.floodlightcontroller.core;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
+
+/**
+ * Context store for the packet-in payload. The controller only places a
+ * lazy {@link PacketView} into the context; the legacy {@link Ethernet}
+ * tree is built the first time a listener asks for
+ * {@link IFloodlightProviderService#CONTEXT_PI_PAYLOAD} and is then cached
+ * in the context for the remaining listeners.
+ */
+public class PacketInPayloadContextStore extends FloodlightContextStore<Ethernet> {
+    private static final int PAYLOAD_SLOT =
+            FloodlightContext.getSlot(IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+
+    public PacketInPayloadContextStore() {
+        super(IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+    }
+
+    @Override
+    public Ethernet get(FloodlightContext bc, int slot) {
+        Ethernet eth = super.get(bc, slot);
+        if (eth == null && slot == PAYLOAD_SLOT) {
+            PacketView view = IFloodlightProviderService.pvStore.get(bc);
+            if (view != null) {
+                eth = view.getEthernet();
+                super.put(bc, slot, eth);
+            }
+        }
+        return eth;
+    }
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import io.netty.util.HashedWheelTimer;
@@ -46,6 +47,7 @@ import net.floodlightcontroller.core.IControllerCompletionListener;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IHAListener;
 import net.floodlightcontroller.core.IInfoProvider;
+import net.floodlightcontroller.core.IShutdownListener;
 import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFMessageListener;
@@ -71,7 +73,7 @@ import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.TransportPort;
 
-import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
@@ -104,16 +106,25 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     static final String ERROR_DATABASE = "The controller could not communicate with the system database.";
 
     protected ConcurrentMap<OFType, ListenerDispatcher<OFType,IOFMessageListener>> messageListeners;
+    /*
+     * The ordered listeners of messageListeners compiled into arrays indexed
+     * by OFType.ordinal(), null for types nobody listens to. Rebuilt under
+     * the controller lock on every listener change and swapped in whole, so
+     * dispatch reads them without map lookups or iterators.
+     */
+    private volatile IOFMessageListener[][] listenerChains;
 
     // paag
     protected ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
+    // completionListeners as an array, rebuilt like listenerChains
+    private volatile IControllerCompletionListener[] completionChain;
 
     // The controllerNodeIPsCache maps Controller IDs to their IP address.
     // It's only used by handleControllerNodeIPsChanged
     protected HashMap<String, String> controllerNodeIPsCache;
 
     protected ListenerDispatcher<HAListenerTypeMarker,IHAListener> haListeners;
-    protected Map<String, List<IInfoProvider>> providerMap;
+    protected ConcurrentMap<String, List<IInfoProvider>> providerMap;
     protected BlockingQueue<IUpdate> updates;
     protected ControllerCounters counters;
     protected Timer timer;
@@ -139,7 +150,25 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     private static TransportPort openFlowPort = TransportPort.of(6653); // new registered OF port number
 	private static Set<IPv4Address> openFlowAddresses = new HashSet<IPv4Address>();
 	public static final int SEND_BUFFER_SIZE = 4 * 1024 * 1024;
+	// Outbound buffer water marks; OFConnection pauses its write queue above the high mark
+	public static final int WRITE_BUFFER_HIGH_WATER_MARK = 1024 * 1024;
+	public static final int WRITE_BUFFER_LOW_WATER_MARK = 256 * 1024;
     protected int workerThreads = 16;
+    // Dispatch listeners on a per-switch ordered worker pool instead of
+    // inline on the Netty event loop
+    protected boolean dispatchWorkerPool = false;
+    protected int dispatchShedDepth = 1024;
+    protected SwitchDispatchPool dispatchPool;
+    // Token-bucket budgets for PACKET_INs, checked before dispatch
+    protected boolean packetInAdmission = false;
+    protected Map<PacketInAdmission.PacketInClass, Integer> packetInSwitchRates =
+            Collections.emptyMap();
+    protected Map<PacketInAdmission.PacketInClass, Integer> packetInGlobalRates =
+            Collections.emptyMap();
+    protected int packetInBurstMs = 200;
+    protected int packetInQuarantineAfter = 0;
+    protected int packetInQuarantineTimeout = 10;
+    protected PacketInAdmission admission;
 
     // The id for this controller node. Should be unique for each controller
     // node in a controller cluster.
@@ -181,6 +210,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             FLOW_COLUMN_ACCESS_PRIORITY,
             FLOW_COLUMN_CORE_PRIORITY
     };
+    /**
+     * If set, every packet-in gets a {@link PacketView} in its context. The
+     * view decodes headers on demand, and the full Ethernet tree is only
+     * built when a listener asks for CONTEXT_PI_PAYLOAD.
+     */
     protected static final boolean ALWAYS_DECODE_ETH = true;
 
     // Set of port name prefixes that will be classified as uplink ports,
@@ -399,7 +433,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
+        flcontext.reset();
         flcontext_cache.get().push(flcontext);
     }
 
@@ -422,17 +456,37 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public void handleMessage(IOFSwitch sw, OFMessage m,
                                  FloodlightContext bContext) {
-        Ethernet eth = null;
+        if (admission != null && bContext == null && m.getType() == OFType.PACKET_IN
+                && !admission.admit(sw, (OFPacketIn) m)) {
+            return;
+        }
+        // Messages with a caller-supplied context are dispatched synchronously
+        if (dispatchPool != null && bContext == null
+                && !dispatchPool.isWorkerThread()) {
+            dispatchPool.submit(sw, m);
+            return;
+        }
+        dispatchToListeners(sw, m, bContext);
+    }
+
+    /**
+     * Run the listener chain for a message on the calling thread.
+     * @see #handleMessage(IOFSwitch, OFMessage, FloodlightContext)
+     */
+    protected void dispatchToListeners(IOFSwitch sw, OFMessage m,
+                                       FloodlightContext bContext) {
+        PacketView view = null;
         log.trace("Dispatching OFMessage to listeners.");
         if (this.notifiedRole == HARole.STANDBY) {
             counters.dispatchMessageWhileStandby.increment();
             // We are SLAVE. Do not dispatch messages to listeners.
             return;
         }
+        OFType type = m.getType();
         counters.dispatchMessage.increment();
+        counters.getDispatchMessageCounter(type).increment();
 
-
-        switch (m.getType()) {
+        switch (type) {
             case PACKET_IN:
             	counters.packetIn.increment();
                 OFPacketIn pi = (OFPacketIn)m;
@@ -442,18 +496,13 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                     return;
                 }
                 if (Controller.ALWAYS_DECODE_ETH) {
-                    eth = new Ethernet();
-                    eth.deserialize(pi.getData(), 0, pi.getData().length);
+                    view = new PacketView(pi.getData());
                 }
 
                 // fall through to default case...
 
             default:
-            	log.info("****==="+m.getType().toString()+"===*****");
-                List<IOFMessageListener> listeners = null;
-                if (messageListeners.containsKey(m.getType())) {
-                    listeners = messageListeners.get(m.getType()).getOrderedListeners();
-                }
+                IOFMessageListener[] listeners = listenerChains[type.ordinal()];
 
                 FloodlightContext bc = null;
                 if (listeners != null) {
@@ -466,31 +515,24 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                         bc = bContext;
                     }
 
-                    if (eth != null) {
-                        IFloodlightProviderService.bcStore.put(bc,
-                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
-                                eth);
+                    if (view != null) {
+                        // Drop any stale payload so it is re-decoded from this view
+                        IFloodlightProviderService.bcStore.remove(bc);
+                        IFloodlightProviderService.pvStore.put(bc, view);
                     }
 
 
-                    // Get the starting time (overall and per-component) of
-                    // the processing chain for this packet if performance
-                    // monitoring is turned on
-                    pktinProcTimeService.bootstrap(listeners);
-                    pktinProcTimeService.recordStartTimePktIn();
-                    Command cmd;
-                    for (IOFMessageListener listener : listeners) {
-                        pktinProcTimeService.recordStartTimeComp(listener);
-                        cmd = listener.receive(sw, m, bc);
-                        pktinProcTimeService.recordEndTimeComp(listener);
-
-                        if (Command.STOP.equals(cmd)) {
-                            break;
+                    if (type == OFType.PACKET_IN && pktinProcTimeService.isEnabled()) {
+                        dispatchTimed(listeners, sw, m, bc);
+                    } else {
+                        for (IOFMessageListener listener : listeners) {
+                            if (listener.receive(sw, m, bc) == Command.STOP) {
+                                break;
+                            }
                         }
                     }
-                    pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
                 } else {
-                    if (m.getType() != OFType.BARRIER_REPLY)
+                    if (type != OFType.BARRIER_REPLY)
                         log.warn("Unhandled OF Message: {} from {}", m, sw);
                     else
                         log.debug("Received a Barrier Reply, no listeners for it");
@@ -498,13 +540,32 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                 // paag
                 // And just before we exit the controller loop we see if anyone
                 // is interested in knowing that we are exiting the loop
-                for (IControllerCompletionListener listener:completionListeners)
+                for (IControllerCompletionListener listener : completionChain)
                 	listener.onMessageConsumed(sw, m, bc);
 
                 if ((bContext == null) && (bc != null)) flcontext_free(bc);
         }
     }
 
+    /**
+     * Run a packet-in listener chain while performance monitoring is on,
+     * recording the time spent overall and in each listener. Kept out of
+     * dispatchToListeners so the common path carries no timing calls.
+     */
+    private void dispatchTimed(IOFMessageListener[] listeners, IOFSwitch sw,
+                               OFMessage m, FloodlightContext bc) {
+        pktinProcTimeService.recordStartTimePktIn();
+        for (IOFMessageListener listener : listeners) {
+            pktinProcTimeService.recordStartTimeComp(listener);
+            Command cmd = listener.receive(sw, m, bc);
+            pktinProcTimeService.recordEndTimeComp(listener);
+            if (cmd == Command.STOP) {
+                break;
+            }
+        }
+        pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
+    }
+
     // ***************
     // IFloodlightProvider
     // ***************
@@ -537,6 +598,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public synchronized void addCompletionListener(IControllerCompletionListener listener) {
     	completionListeners.add(listener);
+    	compileCompletionChain();
     }
 
     //paag
@@ -544,6 +606,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     public synchronized void removeCompletionListener(IControllerCompletionListener listener) {
     	String listenerName = listener.getName();
     	if (completionListeners.remove(listener)) {
+    		compileCompletionChain();
     		log.debug("Removing completion listener {}" , listenerName);
     	} else {
     		log.warn("Trying to remove unknown completion listener {}" , listenerName);
@@ -560,6 +623,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.put(type, ldd);
         }
         ldd.addListener(type, listener);
+        compileListenerChain(type);
     }
 
     @Override
@@ -568,7 +632,31 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.get(type);
         if (ldd != null) {
             ldd.removeListener(listener);
+            compileListenerChain(type);
+        }
+    }
+
+    /**
+     * Publish the current listener order for type to the dispatch path.
+     * Must be called with the controller lock held.
+     */
+    private void compileListenerChain(OFType type) {
+        ListenerDispatcher<OFType, IOFMessageListener> ldd =
+            messageListeners.get(type);
+        IOFMessageListener[][] chains = listenerChains.clone();
+        if (ldd == null) {
+            chains[type.ordinal()] = null;
+        } else {
+            List<IOFMessageListener> ordered = ldd.getOrderedListeners();
+            chains[type.ordinal()] =
+                    ordered.toArray(new IOFMessageListener[ordered.size()]);
         }
+        listenerChains = chains;
+    }
+
+    private void compileCompletionChain() {
+        completionChain = completionListeners.toArray(
+                new IControllerCompletionListener[0]);
     }
 
     private void logListeners() {
@@ -596,8 +684,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         log.debug(sb.toString());
     }
 
-    public void removeOFMessageListeners(OFType type) {
+    public synchronized void removeOFMessageListeners(OFType type) {
         messageListeners.remove(type);
+        compileListenerChain(type);
     }
 
     @Override
@@ -619,14 +708,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
         FloodlightContext bc = new FloodlightContext();
 
-        List<IOFMessageListener> listeners = null;
-        if (messageListeners.containsKey(m.getType())) {
-            listeners = messageListeners.get(m.getType()).getOrderedListeners();
-        }
+        IOFMessageListener[] listeners = listenerChains[m.getType().ordinal()];
 
         if (listeners != null) {
             for (IOFMessageListener listener : listeners) {
-                if (Command.STOP.equals(listener.receive(sw, m, bc))) {
+                if (listener.receive(sw, m, bc) == Command.STOP) {
                     break;
                 }
             }
@@ -723,6 +809,49 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         }
         log.info("Number of worker threads set to {}", this.workerThreads);
 
+        String workerPool = configParams.get("dispatchWorkerPool");
+        if (!Strings.isNullOrEmpty(workerPool)) {
+            this.dispatchWorkerPool = workerPool.equalsIgnoreCase("YES")
+                    || workerPool.equalsIgnoreCase("TRUE");
+        }
+        String shedDepth = configParams.get("dispatchShedDepth");
+        if (!Strings.isNullOrEmpty(shedDepth)) {
+            try {
+                this.dispatchShedDepth = Integer.parseInt(shedDepth);
+            } catch (NumberFormatException e) {
+                throw new FloodlightModuleException("Invalid dispatchShedDepth of " + shedDepth + " in config");
+            }
+        }
+        log.info("Dispatch worker pool {}", this.dispatchWorkerPool ? "enabled" : "disabled");
+
+        String admissionEnabled = configParams.get("packetInAdmission");
+        if (!Strings.isNullOrEmpty(admissionEnabled)) {
+            this.packetInAdmission = admissionEnabled.equalsIgnoreCase("YES")
+                    || admissionEnabled.equalsIgnoreCase("TRUE");
+        }
+        String switchRates = configParams.get("packetInSwitchRates");
+        if (!Strings.isNullOrEmpty(switchRates)) {
+            try {
+                this.packetInSwitchRates = PacketInAdmission.parseRates(switchRates);
+            } catch (IllegalArgumentException e) {
+                throw new FloodlightModuleException("Invalid packetInSwitchRates of " + switchRates + " in config");
+            }
+        }
+        String globalRates = configParams.get("packetInGlobalRates");
+        if (!Strings.isNullOrEmpty(globalRates)) {
+            try {
+                this.packetInGlobalRates = PacketInAdmission.parseRates(globalRates);
+            } catch (IllegalArgumentException e) {
+                throw new FloodlightModuleException("Invalid packetInGlobalRates of " + globalRates + " in config");
+            }
+        }
+        this.packetInBurstMs = parseIntParam(configParams, "packetInBurstMs", packetInBurstMs, 1);
+        this.packetInQuarantineAfter = parseIntParam(configParams, "packetInQuarantineAfter",
+                packetInQuarantineAfter, 0);
+        this.packetInQuarantineTimeout = parseIntParam(configParams, "packetInQuarantineTimeout",
+                packetInQuarantineTimeout, 1);
+        log.info("Packet-in admission control {}", this.packetInAdmission ? "enabled" : "disabled");
+
         String addresses = configParams.get("openFlowAddresses");
         if (!Strings.isNullOrEmpty(addresses)) {
             try {
@@ -737,6 +866,23 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         }
     }
 
+    private static int parseIntParam(Map<String, String> configParams, String key,
+            int defaultValue, int min) throws FloodlightModuleException {
+        String value = configParams.get(key);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i >= min) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new FloodlightModuleException("Invalid " + key + " of " + value + " in config");
+    }
+
     /**
      * Initialize internal data structures
      */
@@ -750,8 +896,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         this.haListeners = new ListenerDispatcher<HAListenerTypeMarker, IHAListener>();
         this.controllerNodeIPsCache = new HashMap<String, String>();
         this.updates = new LinkedBlockingQueue<IUpdate>();
-        this.providerMap = new HashMap<String, List<IInfoProvider>>();
+        this.providerMap = new ConcurrentHashMap<String, List<IInfoProvider>>();
         this.completionListeners = new ConcurrentLinkedQueue<IControllerCompletionListener>();
+        this.listenerChains = new IOFMessageListener[OFType.values().length][];
+        this.completionChain = new IControllerCompletionListener[0];
 
         setConfigParams(configParams);
 
@@ -769,6 +917,13 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         this.switchService.addOFSwitchListener(new NotificationSwitchListener());
 
         this.counters = new ControllerCounters(debugCounterService);
+
+        if (packetInAdmission) {
+            this.admission = new PacketInAdmission(packetInSwitchRates,
+                    packetInGlobalRates, packetInBurstMs, packetInQuarantineAfter,
+                    packetInQuarantineTimeout, debugCounterService, counters.prefix);
+            this.switchService.addOFSwitchListener(this.admission);
+        }
      }
 
     /**
@@ -796,6 +951,25 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             this.loadmonitor.startMonitoring(this.threadPoolService.getScheduledExecutor());
         }
 
+        // Move listener dispatch off the Netty event loops if configured
+        if (dispatchWorkerPool) {
+            dispatchPool = new SwitchDispatchPool("OFDispatch", workerThreads,
+                    dispatchShedDepth,
+                    new SwitchDispatchPool.IDispatchHandler() {
+                        @Override
+                        public void dispatch(IOFSwitch sw, OFMessage m) {
+                            dispatchToListeners(sw, m, null);
+                        }
+                    }, debugCounterService, counters.prefix);
+            dispatchPool.start();
+            shutdownService.registerShutdownListener(new IShutdownListener() {
+                @Override
+                public void floodlightIsShuttingDown() {
+                    dispatchPool.shutdown();
+                }
+            });
+        }
+
         // Add our REST API
         restApiService.addRestletRoutable(new CoreWebRoutable());
 
@@ -843,27 +1017,33 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
     @Override
     public void addInfoProvider(String type, IInfoProvider provider) {
-        if (!providerMap.containsKey(type)) {
-            providerMap.put(type, new ArrayList<IInfoProvider>());
+        List<IInfoProvider> providers = providerMap.get(type);
+        if (providers == null) {
+            // modules may register from several startup threads at once
+            providers = new CopyOnWriteArrayList<IInfoProvider>();
+            List<IInfoProvider> existing = providerMap.putIfAbsent(type, providers);
+            if (existing != null) providers = existing;
         }
-        providerMap.get(type).add(provider);
+        providers.add(provider);
     }
 
     @Override
     public void removeInfoProvider(String type, IInfoProvider provider) {
-        if (!providerMap.containsKey(type)) {
+        List<IInfoProvider> providers = providerMap.get(type);
+        if (providers == null) {
             log.debug("Provider type {} doesn't exist.", type);
             return;
         }
-        providerMap.get(type).remove(provider);
+        providers.remove(provider);
     }
 
     @Override
     public Map<String, Object> getControllerInfo(String type) {
-        if (!providerMap.containsKey(type)) return null;
+        List<IInfoProvider> providers = providerMap.get(type);
+        if (providers == null) return null;
 
         Map<String, Object> result = new LinkedHashMap<String, Object>();
-        for (IInfoProvider provider : providerMap.get(type)) {
+        for (IInfoProvider provider : providers) {
             result.putAll(provider.getInfo(type));
         }
         return result;
@@ -1074,6 +1254,21 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     public ControllerCounters getCounters() {
         return this.counters;
     }
+
+    /**
+     * @return the listener dispatch pool, or null if listeners are run
+     * inline on the Netty event loops
+     */
+    public SwitchDispatchPool getDispatchPool() {
+        return this.dispatchPool;
+    }
+
+    /**
+     * @return the packet-in admission control, or null if it is disabled
+     */
+    public PacketInAdmission getPacketInAdmission() {
+        return this.admission;
+    }
 }
 
 
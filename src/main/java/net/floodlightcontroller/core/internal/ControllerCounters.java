@@ -4,6 +4,9 @@ import net.floodlightcontroller.core.IOFSwitchBackend;
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+import org.projectfloodlight.openflow.protocol.OFType;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD",
@@ -17,6 +20,8 @@ public class ControllerCounters {
     public final IDebugCounter dispatchMessageWhileStandby;
     public final IDebugCounter dispatchMessage;
     public final IDebugCounter packetIn;
+    // Indexed by OFType.ordinal()
+    private final IDebugCounter[] dispatchMessageByType;
 
     public ControllerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -34,6 +39,14 @@ public class ControllerCounters {
                                                         "dispatch-message",
                                                         "Number of times an OF message was dispatched "
                                                                 + "to registered modules");
+        OFType[] types = OFType.values();
+        dispatchMessageByType = new IDebugCounter[types.length];
+        for (OFType type : types) {
+            dispatchMessageByType[type.ordinal()] = debugCounters.registerCounter(prefix,
+                    "dispatch-message/" + type.toString().toLowerCase(),
+                    "Number of times an OF message of type " + type
+                            + " was dispatched to registered modules");
+        }
 
         // TODO: FIXME
         // Need a better way to handle these
@@ -45,4 +58,11 @@ public class ControllerCounters {
 
         packetIn = debugCounters.registerCounter(prefix, "packet-in", "Number of packet_in's seen");
     }
+
+    /**
+     * @return the dispatch counter for messages of the given type
+     */
+    public IDebugCounter getDispatchMessageCounter(OFType type) {
+        return dispatchMessageByType[type.ordinal()];
+    }
 }
@@ -0,0 +1,159 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many switch handshakes are in progress at once.
+ *
+ * When many switches connect together, e.g. after a controller restart or
+ * a rack power cycle, starting every handshake immediately has all of them
+ * compete for the same I/O threads and time out together. Handshakes past
+ * the limit wait in a queue, without the handshake timeout running, until
+ * a running one completes or its switch disconnects. Switches that were
+ * connected before are admitted ahead of new ones.
+ *
+ * Queued handshakes are started from the given executor so that no
+ * manager or handler lock is held when they begin.
+ */
+class HandshakeAdmissionController {
+    private static final Logger log =
+            LoggerFactory.getLogger(HandshakeAdmissionController.class);
+
+    private final int maxInProgress;
+    private final Executor executor;
+
+    private final Set<OFSwitchHandshakeHandler> inProgress =
+            Collections.newSetFromMap(new IdentityHashMap<OFSwitchHandshakeHandler, Boolean>());
+    private final ArrayDeque<OFSwitchHandshakeHandler> knownQueue =
+            new ArrayDeque<OFSwitchHandshakeHandler>();
+    private final ArrayDeque<OFSwitchHandshakeHandler> newQueue =
+            new ArrayDeque<OFSwitchHandshakeHandler>();
+
+    /**
+     * @param maxInProgress maximum concurrent handshakes, 0 for no limit
+     * @param executor runs handshakes that were queued
+     */
+    HandshakeAdmissionController(int maxInProgress, Executor executor) {
+        this.maxInProgress = maxInProgress;
+        this.executor = executor;
+    }
+
+    /**
+     * Begin a handshake now on the calling thread if under the limit,
+     * otherwise queue it
+     * @param handler a handler that has not begun its handshake
+     * @param known true if the switch was connected before
+     */
+    void admit(OFSwitchHandshakeHandler handler, boolean known) {
+        synchronized (this) {
+            if (maxInProgress > 0 && inProgress.size() >= maxInProgress) {
+                if (known) {
+                    knownQueue.addLast(handler);
+                } else {
+                    newQueue.addLast(handler);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Queued handshake of {} switch {}, {} in progress, {} waiting",
+                            new Object[] { known ? "known" : "new", handler.getDpid(),
+                                    inProgress.size(), knownQueue.size() + newQueue.size() });
+                }
+                return;
+            }
+            inProgress.add(handler);
+        }
+        begin(handler);
+    }
+
+    /**
+     * The handshake completed or was abandoned; admit the next one.
+     * Does nothing for handlers that are not in progress or queued.
+     */
+    void release(OFSwitchHandshakeHandler handler) {
+        List<OFSwitchHandshakeHandler> next;
+        synchronized (this) {
+            if (!inProgress.remove(handler)) {
+                knownQueue.remove(handler);
+                newQueue.remove(handler);
+                return;
+            }
+            next = admitQueued();
+        }
+        for (final OFSwitchHandshakeHandler h : next) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    begin(h);
+                }
+            });
+        }
+    }
+
+    /**
+     * Release a handler whose main connection has closed. A handler whose
+     * connection is still up is left alone; the switch manager is told
+     * about disconnects by DPID, which may already belong to a newer
+     * handler.
+     */
+    void disconnected(OFSwitchHandshakeHandler handler) {
+        if (!handler.getMainConnection().isConnected()) {
+            release(handler);
+        }
+    }
+
+    /* Must hold the lock */
+    private List<OFSwitchHandshakeHandler> admitQueued() {
+        List<OFSwitchHandshakeHandler> next = new ArrayList<OFSwitchHandshakeHandler>();
+        while (inProgress.size() < maxInProgress) {
+            OFSwitchHandshakeHandler h = poll(knownQueue);
+            if (h == null) {
+                h = poll(newQueue);
+            }
+            if (h == null) {
+                break;
+            }
+            inProgress.add(h);
+            next.add(h);
+        }
+        return next;
+    }
+
+    /* Drop queued handlers whose switch went away while waiting */
+    private static OFSwitchHandshakeHandler poll(ArrayDeque<OFSwitchHandshakeHandler> queue) {
+        for (Iterator<OFSwitchHandshakeHandler> it = queue.iterator(); it.hasNext(); ) {
+            OFSwitchHandshakeHandler h = it.next();
+            it.remove();
+            if (h.getMainConnection().isConnected()) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    private void begin(OFSwitchHandshakeHandler handler) {
+        try {
+            handler.beginHandshake();
+        } catch (RuntimeException e) {
+            log.error("Could not begin handshake with switch " + handler.getDpid(), e);
+            handler.getMainConnection().disconnect();
+            release(handler);
+        }
+    }
+
+    synchronized int getInProgress() {
+        return inProgress.size();
+    }
+
+    synchronized int getQueued() {
+        return knownQueue.size() + newQueue.size();
+    }
+}
@@ -26,7 +26,8 @@ import io.netty.util.Timer;
 import io.netty.util.TimerTask;
 
 /**
- * Trigger a timeout if a switch fails to complete handshake soon enough
+ * Trigger a timeout if a switch fails to complete handshake soon enough.
+ * The clock restarts while the switch handshake is queued for admission.
  */
 public class HandshakeTimeoutHandler extends ChannelInboundHandlerAdapter {
 
@@ -47,20 +48,43 @@ public class HandshakeTimeoutHandler extends ChannelInboundHandlerAdapter {
 
     }
 
-    @Override
-    public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        if (timeoutNanos > 0) {
+    private void schedule(ChannelHandlerContext ctx) {
+        if (timeout == null && timeoutNanos > 0) {
             timeout = timer.newTimeout(new HandshakeTimeoutTask(ctx), timeoutNanos, TimeUnit.NANOSECONDS);
         }
-        super.channelActive(ctx);
     }
 
-    @Override
-    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    private void cancel() {
         if (timeout != null) {
             timeout.cancel();
             timeout = null;
         }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        // Replacing the channel timeout happens after channelActive
+        if (ctx.channel().isActive()) {
+            schedule(ctx);
+        }
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        schedule(ctx);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancel();
         super.channelInactive(ctx);
     }
 
@@ -78,11 +102,16 @@ public class HandshakeTimeoutHandler extends ChannelInboundHandlerAdapter {
                 return;
             }
 
-            if (!ctx.channel().isOpen()) {
+            if (!ctx.channel().isOpen() || ctx.isRemoved()) {
                 return;
             }
-            if (!handshakeHandler.isSwitchHandshakeComplete())
+            if (handshakeHandler.isSwitchHandshakeQueued()) {
+                // Waiting for admission does not count against the switch
+                HandshakeTimeoutHandler.this.timeout = null;
+                schedule(ctx);
+            } else if (!handshakeHandler.isSwitchHandshakeComplete()) {
                 ctx.fireExceptionCaught(EXCEPTION);
+            }
         }
     }
 }
\ No newline at end of file
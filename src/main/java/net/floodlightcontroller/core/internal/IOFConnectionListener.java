@@ -21,4 +21,10 @@ public interface IOFConnectionListener {
     void messageWritten(IOFConnectionBackend connection, OFMessage m);
 
     boolean isSwitchHandshakeComplete(IOFConnectionBackend connection);
+
+    /**
+     * @return true if the switch handshake is waiting to be admitted and
+     * has not sent anything to the switch yet
+     */
+    boolean isSwitchHandshakeQueued(IOFConnectionBackend connection);
 }
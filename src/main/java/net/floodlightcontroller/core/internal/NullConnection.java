@@ -7,6 +7,8 @@ import java.util.Date;
 
 import net.floodlightcontroller.core.IOFConnectionBackend;
 import net.floodlightcontroller.core.IOFMessageWriter;
+import net.floodlightcontroller.core.IStatsReplySubscriber;
+import net.floodlightcontroller.core.IStatsReplySubscription;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.util.IterableUtils;
 
@@ -76,6 +78,21 @@ public class NullConnection implements IOFConnectionBackend, IOFMessageWriter {
         return Futures.immediateFailedFuture(new SwitchDisconnectedException(getDatapathId()));
     }
 
+    @Override
+    public <REPLY extends OFStatsReply> void writeStatsRequest(
+            OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber) {
+        subscriber.onSubscribe(new IStatsReplySubscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new SwitchDisconnectedException(getDatapathId()));
+    }
+
     @Override
     public void cancelAllPendingRequests() {
         // noop
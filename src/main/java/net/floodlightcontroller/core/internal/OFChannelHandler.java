@@ -561,6 +561,18 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		}
 	}
 
+	/**
+	 * Is the switch handshake waiting for admission by the switch manager?
+	 * @return true if the switch handshake has not started yet
+	 */
+	public boolean isSwitchHandshakeQueued() {
+		if (this.state.channelHandshakeComplete) {
+			return connection.getListener().isSwitchHandshakeQueued(connection);
+		} else {
+			return false;
+		}
+	}
+
 	/**
 	 * Notifies the channel listener that we have a valid baseline connection
 	 */
@@ -604,6 +616,15 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		log.info("[{}] Disconnected connection", getConnectionInfoString());
 	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		// Let the connection pause/resume draining its write queue
+		if (this.connection != null) {
+			this.connection.channelWritabilityChanged(ctx.channel().isWritable());
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
 			throws Exception {
@@ -18,15 +18,21 @@
 package net.floodlightcontroller.core.internal;
 
 import java.net.SocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
@@ -41,6 +47,8 @@ import net.floodlightcontroller.core.Deliverable;
 import net.floodlightcontroller.core.DeliverableListenableFuture;
 import net.floodlightcontroller.core.IOFConnection;
 import net.floodlightcontroller.core.IOFConnectionBackend;
+import net.floodlightcontroller.core.IStatsReplySubscriber;
+import net.floodlightcontroller.core.IStatsReplySubscription;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.util.IterableUtils;
@@ -91,7 +99,7 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 	private final Date connectedSince;
 
-	private final Map<Long, Deliverable<?>> xidDeliverableMap;
+	private final ConcurrentMap<Long, Deliverable<?>> xidDeliverableMap;
 
 	private static final long DELIVERABLE_TIME_OUT = 60;
 	private static final TimeUnit DELIVERABLE_TIME_OUT_UNIT = TimeUnit.SECONDS;
@@ -101,26 +109,81 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 	private volatile U64 latency;
 
+	/** Upper bound on the number of messages written by a single flush */
+	static final int MAX_MESSAGES_PER_FLUSH = 256;
 	/**
-	 * Used to write messages to ensure order w/Netty4.
-	 * It also ensures we do not reuse the array, since
-	 * Netty4 will write the object, not the items.
+	 * A flush also ends once the estimated size of its messages reaches
+	 * this many bytes, so a run of large packet-outs or group-mods does
+	 * not go out as one huge buffer
 	 */
-	private class WriteMessageTask implements Runnable {
-		private final Iterable<OFMessage> msglist;
+	static final int MAX_BYTES_PER_FLUSH = 64 * 1024;
+	/**
+	 * Upper bound on the messages waiting in the write queue. It only fills
+	 * up while the channel stays above its write buffer high water mark, and
+	 * writes beyond it fail rather than pile up behind a stuck switch.
+	 */
+	static final int MAX_QUEUED_MESSAGES = 16384;
 
-		public WriteMessageTask(Iterable<OFMessage> msglist) {
-			this.msglist = msglist;
-		}
+	/**
+	 * Outbound write queue. All writes are appended here and drained in
+	 * order by a single FlushTask on the EventLoop, so everything submitted
+	 * during one EventLoop tick goes out with one writeAndFlush.
+	 */
+	private final Queue<OFMessage> writeQueue = new ConcurrentLinkedQueue<OFMessage>();
+	private final AtomicInteger queuedMessages = new AtomicInteger();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+	private final FlushTask flushTask = new FlushTask();
+
+	/*
+	 * Tracks the channel's writability as reported by channelWritabilityChanged.
+	 * Only accessed from the EventLoop.
+	 */
+	private boolean writable = true;
+	private long unwritableSinceNs;
 
+	/**
+	 * Upper bound on the replies of a streamed stats request held for a
+	 * subscriber that has not asked for them yet
+	 */
+	static final int MAX_PENDING_STREAM_REPLIES = 128;
+
+	/**
+	 * Drains the write queue on the EventLoop. Messages are written in
+	 * batches of at most MAX_MESSAGES_PER_FLUSH messages or about
+	 * MAX_BYTES_PER_FLUSH bytes, whichever is reached first, each with a
+	 * single flush.
+	 * Draining stops while the channel is above its write buffer high water
+	 * mark and resumes from {@link #channelWritabilityChanged(boolean)}.
+	 * A new list is handed to the channel for each batch, since Netty4 will
+	 * write the object, not the items. The list carries our counters so the
+	 * encoder can record the encoded size.
+	 */
+	private class FlushTask implements Runnable {
 		@Override
 		public void run() {
-			for (OFMessage m : msglist) {
-				if (logger.isTraceEnabled())
-					logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
+			// clear first, so writes racing with the drain schedule another run
+			flushScheduled.set(false);
+			while (writable) {
+				OFMessageEncoder.Batch batch = null;
+				int bytes = 0;
+				OFMessage m;
+				while ((m = writeQueue.poll()) != null) {
+					queuedMessages.decrementAndGet();
+					if (batch == null)
+						batch = new OFMessageEncoder.Batch(counters);
+					if (logger.isTraceEnabled())
+						logger.trace("{}: send {}", OFConnection.this, m);
+					counters.updateWriteStats(m);
+					batch.add(m);
+					bytes += OFMessageEncoder.estimateSize(m);
+					if (batch.size() >= MAX_MESSAGES_PER_FLUSH || bytes >= MAX_BYTES_PER_FLUSH)
+						break;
+				}
+				if (batch == null)
+					return;
+				counters.updateFlushStats(batch.size());
+				channel.writeAndFlush(batch);
 			}
-			channel.writeAndFlush(msglist);
 		}
 	}
 
@@ -149,12 +212,13 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	}
 
 	/**
-	 * All write methods chain into this write() to use WriteMessageTask.
+	 * All write methods chain into this write() to use the write queue.
 	 *
 	 * Write the list of messages to the switch
 	 *
 	 * @param msgList list of messages to write
 	 * @return list of failed messages; can only fail if channel disconnected
+	 * or MAX_QUEUED_MESSAGES are already waiting to be written
 	 */
 	@Override
 	public Collection<OFMessage> write(final Iterable<OFMessage> msgList) {
@@ -165,20 +229,59 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 						String.valueOf(msgList).substring(0, 80));
 			return IterableUtils.toCollection(msgList);
 		}
+		List<OFMessage> rejected = null;
 		for (OFMessage m : msgList) {
-			if (logger.isTraceEnabled()) {
-				logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
+			if (queuedMessages.incrementAndGet() > MAX_QUEUED_MESSAGES) {
+				queuedMessages.decrementAndGet();
+				if (rejected == null)
+					rejected = new ArrayList<OFMessage>();
+				rejected.add(m);
+				continue;
 			}
+			writeQueue.add(m);
+		}
+		scheduleFlush();
+		if (rejected != null) {
+			counters.updateWriteQueueFullStats(rejected.size());
+			if (logger.isDebugEnabled())
+				logger.debug("{}: write queue full - dropping {} messages", this, rejected.size());
+			return rejected;
 		}
-		this.channel.eventLoop().execute(new WriteMessageTask(msgList));
 		return Collections.emptyList();
 	}
 
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			this.channel.eventLoop().execute(flushTask);
+		}
+	}
+
+	/**
+	 * Called from the EventLoop when the channel crosses its write buffer
+	 * high or low water mark.
+	 * @param isWritable the new writability of the channel
+	 */
+	void channelWritabilityChanged(boolean isWritable) {
+		if (isWritable == writable)
+			return;
+		writable = isWritable;
+		if (!isWritable) {
+			unwritableSinceNs = System.nanoTime();
+			if (logger.isDebugEnabled())
+				logger.debug("{}: write buffer above high water mark, pausing writes", this);
+		} else {
+			counters.updateUnwritableStats(
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - unwritableSinceNs));
+			if (!writeQueue.isEmpty())
+				scheduleFlush();
+		}
+	}
+
 	/**
 	 * Write the single message to the channel
 	 * @param m
-	 * @return true upon success; false upon failure; can only fail if channel disconnected
+	 * @return true upon success; false upon failure; can only fail if channel
+	 * disconnected or the write queue is full
 	 */
 	@Override
 	public boolean write(OFMessage m) {
@@ -194,7 +297,10 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		DeliverableListenableFuture<R> future = new DeliverableListenableFuture<R>();
 		xidDeliverableMap.put(request.getXid(), future);
 		listener.messageWritten(this, request);
-		this.write(request);
+		if (!this.write(request)) {
+			xidDeliverableMap.remove(request.getXid(), future);
+			future.deliverError(writeFailed());
+		}
 		return future;
 	}
 
@@ -238,11 +344,201 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		};
 
 		registerDeliverable(request.getXid(), deliverable);
-		this.write(request);
+		if (!this.write(request)) {
+			xidDeliverableMap.remove(request.getXid(), deliverable);
+			deliverable.deliverError(writeFailed());
+		}
 		return future;
 	}
 
+	@Override
+	public <REPLY extends OFStatsReply> void writeStatsRequest(
+			OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber) {
+		StatsReplyStream<REPLY> stream = new StatsReplyStream<REPLY>(request.getXid(), subscriber);
+		subscriber.onSubscribe(stream);
+		if (!isConnected()) {
+			stream.deliverError(new SwitchDisconnectedException(getDatapathId()));
+			return;
+		}
+		this.xidDeliverableMap.put(request.getXid(), stream);
+		stream.touch();
+		if (!this.write(request))
+			stream.deliverError(writeFailed());
+	}
+
+	/** Why a request could not be queued */
+	private Exception writeFailed() {
+		if (!isConnected())
+			return new SwitchDisconnectedException(getDatapathId());
+		return new IllegalStateException(this + ": write queue full");
+	}
+
+	/**
+	 * Hands the replies of a streamed stats request to its subscriber as the
+	 * subscriber asks for them. Replies that arrive before they are asked
+	 * for are held back, up to MAX_PENDING_STREAM_REPLIES; one more fails
+	 * the stream. Channel reads are never paused for a stream, since a
+	 * switch may send echoes and packet-ins on any of its connections.
+	 *
+	 * The stream times out when neither a reply arrives nor the subscriber
+	 * takes one for DELIVERABLE_TIME_OUT, not when the whole dump takes
+	 * longer than that. All state but the timeout is confined to the
+	 * EventLoop.
+	 */
+	private class StatsReplyStream<REPLY extends OFStatsReply>
+			implements Deliverable<REPLY>, IStatsReplySubscription {
+		private final long xid;
+		private final IStatsReplySubscriber<REPLY> subscriber;
+		private final ArrayDeque<REPLY> pending = new ArrayDeque<REPLY>();
+		private long demand;
+		private boolean lastReceived;
+		private volatile boolean done;
+		private volatile Timeout timeout;
+
+		StatsReplyStream(long xid, IStatsReplySubscriber<REPLY> subscriber) {
+			this.xid = xid;
+			this.subscriber = subscriber;
+		}
+
+		/** Restart the timeout, as the stream is making progress */
+		void touch() {
+			Timeout old = timeout;
+			if (old != null)
+				old.cancel();
+			if (done)
+				return;
+			timeout = timer.newTimeout(new TimerTask() {
+				@Override
+				public void run(Timeout t) {
+					if (t != timeout)
+						return;
+					deliverError(new TimeoutException(
+							"timeout - stats reply stream for xid " + xid + " made no progress"));
+				}
+			}, DELIVERABLE_TIME_OUT, DELIVERABLE_TIME_OUT_UNIT);
+		}
+
+		@Override
+		public void deliver(REPLY reply) {
+			if (done)
+				return;
+			touch();
+			if (pending.size() >= MAX_PENDING_STREAM_REPLIES) {
+				counters.updateStreamOverflowStats();
+				logger.warn("{}: stats reply subscriber for xid {} fell more than {} replies behind",
+						new Object[] { OFConnection.this, xid, MAX_PENDING_STREAM_REPLIES });
+				fail(new IllegalStateException("stats reply subscriber for xid " + xid
+						+ " fell more than " + MAX_PENDING_STREAM_REPLIES + " replies behind"));
+				return;
+			}
+			pending.add(reply);
+			if (!reply.getFlags().contains(OFStatsReplyFlags.REPLY_MORE))
+				lastReceived = true;
+			drain();
+		}
+
+		private void drain() {
+			while (!done && demand > 0 && !pending.isEmpty()) {
+				demand--;
+				try {
+					subscriber.onReply(pending.poll());
+				} catch (RuntimeException e) {
+					logger.warn(OFConnection.this + ": stats reply subscriber for xid " + xid + " failed", e);
+					fail(e);
+					return;
+				}
+			}
+			if (done)
+				return;
+			if (lastReceived && pending.isEmpty()) {
+				finish();
+				subscriber.onComplete();
+			}
+		}
+
+		private void finish() {
+			done = true;
+			Timeout t = timeout;
+			if (t != null)
+				t.cancel();
+			pending.clear();
+			xidDeliverableMap.remove(xid, this);
+		}
+
+		private void fail(Throwable cause) {
+			if (!done) {
+				finish();
+				subscriber.onError(cause);
+			}
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0)
+				throw new IllegalArgumentException("request must be positive");
+			runOnEventLoop(new Runnable() {
+				@Override
+				public void run() {
+					demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+					if (!pending.isEmpty())
+						touch();
+					drain();
+				}
+			});
+		}
+
+		@Override
+		public void cancel() {
+			runOnEventLoop(new Runnable() {
+				@Override
+				public void run() {
+					if (!done)
+						finish();
+				}
+			});
+		}
+
+		@Override
+		public void deliverError(final Throwable cause) {
+			runOnEventLoop(new Runnable() {
+				@Override
+				public void run() {
+					fail(cause);
+				}
+			});
+		}
+
+		@Override
+		public boolean isDone() {
+			return done;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			cancel();
+			return true;
+		}
+	}
+
+	private void runOnEventLoop(Runnable task) {
+		if (channel.eventLoop().inEventLoop()) {
+			task.run();
+			return;
+		}
+		try {
+			channel.eventLoop().execute(task);
+		} catch (RejectedExecutionException e) {
+			// The event loop is gone along with the channel
+			task.run();
+		}
+	}
+
 	public void disconnected() {
+		if (!writeQueue.isEmpty() && logger.isDebugEnabled())
+			logger.debug("{}: dropping {} queued messages on disconnect", this, writeQueue.size());
+		while (writeQueue.poll() != null) {
+			queuedMessages.decrementAndGet();
+		}
 		SwitchDisconnectedException exception = new SwitchDisconnectedException(getDatapathId());
 		for (Long xid : xidDeliverableMap.keySet()) {
 			// protect against other mechanisms running at the same time
@@ -443,6 +739,11 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 			return false;
 		}
 
+		@Override
+		public boolean isSwitchHandshakeQueued(IOFConnectionBackend connection) {
+			return false;
+		}
+
 		@Override
 		public void messageWritten(IOFConnectionBackend connection, OFMessage m) {
 			// TODO Auto-generated method stub
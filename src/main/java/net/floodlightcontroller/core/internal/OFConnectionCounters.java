@@ -99,6 +99,22 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrReadBundleControl;
     private final IDebugCounter ctrReadRequestForward;
 
+    // Write batching counters
+    //
+    private final IDebugCounter ctrFlush;
+    private final IDebugCounter ctrFlushMessages;
+    private final IDebugCounter ctrUnwritable;
+    private final IDebugCounter ctrUnwritableTimeMs;
+    private final IDebugCounter ctrWriteQueueFull;
+    private final IDebugCounter ctrFlushBytes;
+    private final IDebugCounter ctrEncodeUndersized;
+
+    // Throughput counters, to compare the load on the connections of a switch
+    //
+    private final IDebugCounter ctrWriteTotal;
+    private final IDebugCounter ctrReadTotal;
+    private final IDebugCounter ctrStreamOverflow;
+
     private static final Logger logger =
             LoggerFactory.getLogger(OFConnectionCounters.class);
 
@@ -515,6 +531,34 @@ public class OFConnectionCounters {
                                      hierarchy,
                                      stringId,
                                      OFType.TABLE_STATUS.toString());
+
+        // Register write batching counters
+        ctrFlush = counters.registerCounter(COUNTER_MODULE, stringId + "/flush",
+                "Number of flushes of the outbound write queue of this connection");
+        ctrFlushMessages = counters.registerCounter(COUNTER_MODULE, stringId + "/flush/messages",
+                "Number of messages written by all flushes of this connection; "
+                        + "divide by flush for messages per flush");
+        ctrUnwritable = counters.registerCounter(COUNTER_MODULE, stringId + "/unwritable",
+                "Number of times this connection exceeded its write buffer high water mark",
+                IDebugCounterService.MetaData.WARN);
+        ctrUnwritableTimeMs = counters.registerCounter(COUNTER_MODULE, stringId + "/unwritable/time-ms",
+                "Milliseconds this connection spent above its write buffer high water mark");
+        ctrWriteQueueFull = counters.registerCounter(COUNTER_MODULE, stringId + "/write/queue-full",
+                "Number of messages dropped because the write queue of this connection was full",
+                IDebugCounterService.MetaData.DROP);
+        ctrFlushBytes = counters.registerCounter(COUNTER_MODULE, stringId + "/flush/bytes",
+                "Number of bytes encoded by all flushes of this connection; "
+                        + "divide by flush for bytes per flush");
+        ctrEncodeUndersized = counters.registerCounter(COUNTER_MODULE, stringId + "/flush/undersized",
+                "Number of flushes whose encode buffer had to grow past the estimated size");
+
+        ctrWriteTotal = counters.registerCounter(COUNTER_MODULE, stringId + "/write/total",
+                "Number of messages of all types written to this connection");
+        ctrReadTotal = counters.registerCounter(COUNTER_MODULE, stringId + "/read/total",
+                "Number of messages of all types read from this connection");
+        ctrStreamOverflow = counters.registerCounter(COUNTER_MODULE, stringId + "/read/stream-overflow",
+                "Number of streamed stats requests failed because the subscriber fell too far behind",
+                IDebugCounterService.MetaData.WARN);
     }
 
     /**
@@ -527,11 +571,60 @@ public class OFConnectionCounters {
     	return debugCounterService.removeCounterHierarchy(COUNTER_MODULE, dpidAndConnIdString);
     }
 
+   /**
+    * Update the write batching counters after a flush of the outbound queue
+    * @param messages number of messages written by the flush
+    */
+   public void updateFlushStats(int messages) {
+       ctrFlush.increment();
+       ctrFlushMessages.add(messages);
+   }
+
+   /**
+    * Update the encoder counters after a batch has been encoded
+    * @param bytes number of bytes encoded
+    * @param grown true if the preallocated buffer had to be grown
+    */
+   public void updateEncodeStats(int bytes, boolean grown) {
+       ctrFlushBytes.add(bytes);
+       if (grown) {
+           ctrEncodeUndersized.increment();
+       }
+   }
+
+   /**
+    * Update the write batching counters when the channel becomes writable
+    * again
+    * @param unwritableMs time in ms the channel was not writable
+    */
+   public void updateUnwritableStats(long unwritableMs) {
+       ctrUnwritable.increment();
+       ctrUnwritableTimeMs.add(unwritableMs);
+   }
+
+   /**
+    * Update the write counters when messages are dropped because the
+    * write queue is full
+    * @param dropped number of messages dropped
+    */
+   public void updateWriteQueueFullStats(int dropped) {
+       ctrWriteQueueFull.add(dropped);
+   }
+
+   /**
+    * Update the read counters when a streamed stats request is failed
+    * because its subscriber fell too far behind
+    */
+   public void updateStreamOverflowStats() {
+       ctrStreamOverflow.increment();
+   }
+
    /**
     * Update Write Counters for Open flow messages
     * @param ofm openflow message
     */
    public void updateWriteStats(OFMessage ofm) {
+         ctrWriteTotal.increment();
          switch(ofm.getType()){
             case BARRIER_REPLY:
                 ctrWriteBarrierReply.increment();
@@ -685,6 +778,7 @@ public class OFConnectionCounters {
     * @param ofm Open Flow Message
     */
    public void updateReadStats(OFMessage ofm){
+       ctrReadTotal.increment();
        switch(ofm.getType()){
            case BARRIER_REPLY:
                ctrReadBarrierReply.increment();
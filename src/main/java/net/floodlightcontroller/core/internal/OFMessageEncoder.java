@@ -17,7 +17,20 @@
 
 package net.floodlightcontroller.core.internal;
 
+import java.util.ArrayList;
+
+import org.projectfloodlight.openflow.protocol.OFBucket;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFGroupMod;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionWriteActions;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -26,15 +39,143 @@ import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
  * Encode an iterable of openflow messages for output into a ByteBuf, for use in a
- * netty pipeline
+ * netty pipeline.
+ *
+ * The whole iterable is written into a single buffer taken from the channel's
+ * allocator (pooled and direct by default, see NettyTransport). The buffer is
+ * sized up front from an estimate of the encoded length, so large flow-mod and
+ * group-mod batches are not repeatedly grown and copied while being written.
  *
  * @author Andreas Wundsam <andreas.wundsam@bigswitch.com>
  */
 public class OFMessageEncoder extends MessageToByteEncoder<Iterable<OFMessage>> {
+    /* Rough encoded sizes, erring on the large side */
+    private static final int DEFAULT_MESSAGE_SIZE = 64;
+    private static final int ACTION_SIZE = 16;
+    private static final int INSTRUCTION_HEADER_SIZE = 8;
+    private static final int OTHER_INSTRUCTION_SIZE = 24;
+    private static final int OXM_FIELD_SIZE = 16;
+    private static final int OF10_FLOW_MOD_SIZE = 72;
+    private static final int OF10_MATCH_SIZE = 40;
+    private static final int OF11_MATCH_SIZE = 88;
+    private static final int FLOW_MOD_SIZE = 48;
+    private static final int PACKET_OUT_SIZE = 24;
+    private static final int GROUP_MOD_SIZE = 16;
+    private static final int BUCKET_SIZE = 16;
+    private static final int FLOW_STATS_REQUEST_SIZE = 40;
+
+    /**
+     * A batch of messages written by an OFConnection. Carries the
+     * connection's counters so the encoder can account for the bytes
+     * it produces.
+     */
+    static class Batch extends ArrayList<OFMessage> {
+        private static final long serialVersionUID = 1L;
+        private final transient OFConnectionCounters counters;
+
+        Batch(OFConnectionCounters counters) {
+            this.counters = counters;
+        }
+
+        OFConnectionCounters getCounters() {
+            return counters;
+        }
+    }
+
+    public OFMessageEncoder() {
+        super(true);
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Iterable<OFMessage> msgList,
+            boolean preferDirect) throws Exception {
+        int size = estimateSize(msgList);
+        return preferDirect ? ctx.alloc().ioBuffer(size) : ctx.alloc().heapBuffer(size);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, Iterable<OFMessage> msgList, ByteBuf out) throws Exception {
+        int start = out.writerIndex();
+        int capacity = out.capacity();
         for (OFMessage ofm :  msgList) {
             ofm.writeTo(out);
         }
+        if (msgList instanceof Batch) {
+            ((Batch) msgList).getCounters().updateEncodeStats(out.writerIndex() - start,
+                    out.capacity() > capacity);
+        }
+    }
+
+    /**
+     * @return an estimate of the encoded length of all messages
+     */
+    static int estimateSize(Iterable<OFMessage> msgList) {
+        int size = 0;
+        for (OFMessage m : msgList) {
+            size += estimateSize(m);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the encoded length of a message from its type and the
+     * sizes of its match, actions, instructions and buckets. Does not
+     * serialize the message.
+     */
+    static int estimateSize(OFMessage m) {
+        OFVersion v = m.getVersion();
+        switch (m.getType()) {
+        case FLOW_MOD:
+            OFFlowMod fm = (OFFlowMod) m;
+            if (v == OFVersion.OF_10) {
+                return OF10_FLOW_MOD_SIZE + fm.getActions().size() * ACTION_SIZE;
+            }
+            return FLOW_MOD_SIZE + estimateMatchSize(fm.getMatch(), v)
+                    + estimateInstructionsSize(fm.getInstructions());
+        case PACKET_OUT:
+            OFPacketOut po = (OFPacketOut) m;
+            return PACKET_OUT_SIZE + po.getActions().size() * ACTION_SIZE
+                    + po.getData().length;
+        case GROUP_MOD:
+            int size = GROUP_MOD_SIZE;
+            for (OFBucket b : ((OFGroupMod) m).getBuckets()) {
+                size += BUCKET_SIZE + b.getActions().size() * ACTION_SIZE;
+            }
+            return size;
+        case STATS_REQUEST:
+            if (m instanceof OFFlowStatsRequest) {
+                return FLOW_STATS_REQUEST_SIZE
+                        + estimateMatchSize(((OFFlowStatsRequest) m).getMatch(), v);
+            }
+            return DEFAULT_MESSAGE_SIZE;
+        default:
+            return DEFAULT_MESSAGE_SIZE;
+        }
+    }
+
+    private static int estimateMatchSize(Match match, OFVersion v) {
+        if (v == OFVersion.OF_10) return OF10_MATCH_SIZE;
+        if (v == OFVersion.OF_11) return OF11_MATCH_SIZE;
+        int size = 8;
+        for (@SuppressWarnings("unused") MatchField<?> f : match.getMatchFields()) {
+            size += OXM_FIELD_SIZE;
+        }
+        return size;
+    }
+
+    private static int estimateInstructionsSize(Iterable<OFInstruction> instructions) {
+        int size = 0;
+        for (OFInstruction i : instructions) {
+            if (i instanceof OFInstructionApplyActions) {
+                size += INSTRUCTION_HEADER_SIZE
+                        + ((OFInstructionApplyActions) i).getActions().size() * ACTION_SIZE;
+            } else if (i instanceof OFInstructionWriteActions) {
+                size += INSTRUCTION_HEADER_SIZE
+                        + ((OFInstructionWriteActions) i).getActions().size() * ACTION_SIZE;
+            } else {
+                size += OTHER_INSTRUCTION_SIZE;
+            }
+        }
+        return size;
     }
-}
\ No newline at end of file
+}
@@ -42,6 +42,7 @@ import javax.annotation.Nonnull;
 import net.floodlightcontroller.core.IOFConnection;
 import net.floodlightcontroller.core.IOFConnectionBackend;
 import net.floodlightcontroller.core.IOFSwitchBackend;
+import net.floodlightcontroller.core.IStatsReplySubscriber;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.PortChangeEvent;
 import net.floodlightcontroller.core.PortChangeType;
@@ -116,7 +117,7 @@ public class OFSwitch implements IOFSwitchBackend {
 	private Map<TableId, TableFeatures> tableFeaturesByTableId;
 
 	private boolean startDriverHandshakeCalled = false;
-	private final Map<OFAuxId, IOFConnectionBackend> connections;
+	private final ConcurrentMap<OFAuxId, IOFConnectionBackend> connections;
 	private volatile Map<URI, Map<OFAuxId, OFBsnControllerConnection>> controllerConnections;
 	protected OFFactory factory;
 
@@ -799,7 +800,7 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	@Override
 	public void removeConnection(IOFConnectionBackend connection) {
-		this.connections.remove(connection.getAuxId());
+		this.connections.remove(connection.getAuxId(), connection);
 	}
 
 	/**
@@ -816,12 +817,44 @@ public class OFSwitch implements IOFSwitchBackend {
 	}
 
 	public IOFConnection getConnection(LogicalOFMessageCategory category) {
-		if (switchManager.isCategoryRegistered(category)) {
-			return getConnection(category.getAuxId());
-		}
-		else{
+		return getConnection(category, 0);
+	}
+
+	/**
+	 * Gets the connection for a message of the category. The connection is
+	 * picked by flow hash among the category's aux connections that are
+	 * open; if none is, the MAIN connection is used.
+	 * @param category the category of the message
+	 * @param flowHash hash of the flow the message belongs to
+	 * @return the connection to write the message to
+	 */
+	public IOFConnection getConnection(LogicalOFMessageCategory category, long flowHash) {
+		if (!switchManager.isCategoryRegistered(category)) {
 			throw new IllegalArgumentException(category + " is not registered with the floodlight provider service.");
 		}
+		List<OFAuxId> auxIds = category.getAuxIds();
+		int open = 0;
+		for (OFAuxId auxId : auxIds) {
+			IOFConnection c = this.connections.get(auxId);
+			if (c != null && c.isConnected()) {
+				open++;
+			}
+		}
+		if (open > 0) {
+			int pick = open == 1 ? 0 : connectionIndex(flowHash, open);
+			for (OFAuxId auxId : auxIds) {
+				IOFConnection c = this.connections.get(auxId);
+				if (c != null && c.isConnected() && pick-- == 0) {
+					return c;
+				}
+			}
+		}
+		return getConnection(OFAuxId.MAIN);
+	}
+
+	static int connectionIndex(long flowHash, int numConnections) {
+		long h = flowHash * 0x9E3779B97F4A7C15L;
+		return (int) ((h >>> 33) % numConnections);
 	}
 
 	/**
@@ -857,7 +890,17 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	@Override
 	public Collection<OFMessage> write(Iterable<OFMessage> msgList, LogicalOFMessageCategory category) {
-		IOFConnection conn = this.getConnection(category); /* do first to check for supported category */
+		return this.write(msgList, category, 0);
+	}
+
+	@Override
+	public boolean write(OFMessage m, LogicalOFMessageCategory category, long flowHash) {
+		return this.write(Collections.singletonList(m), category, flowHash).isEmpty();
+	}
+
+	@Override
+	public Collection<OFMessage> write(Iterable<OFMessage> msgList, LogicalOFMessageCategory category, long flowHash) {
+		IOFConnection conn = this.getConnection(category, flowHash); /* do first to check for supported category */
 		Collection<OFMessage> validMsgs = new ArrayList<OFMessage>();
 		Collection<OFMessage> invalidMsgs = SwitchRoleMessageValidator.pruneInvalidMessages(
 				msgList, validMsgs, this.getOFFactory().getVersion(), this.isActive());
@@ -1066,6 +1109,11 @@ public class OFSwitch implements IOFSwitchBackend {
 		return addInternalStatsReplyListener(connections.get(OFAuxId.MAIN).writeStatsRequest(request), request);
 	}
 
+	@Override
+	public <REPLY extends OFStatsReply> void writeStatsRequest(OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber) {
+		connections.get(OFAuxId.MAIN).writeStatsRequest(request, subscriber);
+	}
+
 	@Override
 	public <REPLY extends OFStatsReply> ListenableFuture<List<REPLY>> writeStatsRequest(OFStatsRequest<REPLY> request, LogicalOFMessageCategory category) {
 		return addInternalStatsReplyListener(getConnection(category).writeStatsRequest(request), request);
@@ -1316,6 +1364,18 @@ public class OFSwitch implements IOFSwitchBackend {
 		return false;
 	}
 
+	/**
+	 * Replace the tables of this switch with features that were already
+	 * parsed, e.g. from another switch of the same model. The
+	 * TableFeatures instances may be shared with other switches.
+	 *
+	 * @param features the features of each table, in table order
+	 */
+	void setTableFeatures(Map<TableId, TableFeatures> features) {
+		tableFeaturesByTableId = new HashMap<TableId, TableFeatures>(features);
+		tables = new ArrayList<TableId>(features.keySet());
+	}
+
 	@Override
 	public TableFeatures getTableFeatures(TableId table) {
 		return tableFeaturesByTableId.get(table);
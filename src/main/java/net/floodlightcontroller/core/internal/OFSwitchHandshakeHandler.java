@@ -8,6 +8,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -81,6 +83,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Switch handler deals with the switch connection and dispatches
@@ -97,13 +100,23 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	private final IOFConnectionBackend mainConnection;
 	private final SwitchManagerCounters switchManagerCounters;
 	private IOFSwitchBackend sw;
-	private final Map<OFAuxId, IOFConnectionBackend> auxConnections;
+	private final ConcurrentMap<OFAuxId, IOFConnectionBackend> auxConnections;
 	private volatile OFSwitchHandshakeState state;
 	private RoleChanger roleChanger;
 	// Default to 1.4 - This is overwritten by the features reply
 	private OFFactory factory = OFFactories.getFactory(OFVersion.OF_14);
 	private final OFFeaturesReply featuresReply;
 	private final Timer timer;
+	/* Runs reply processing too heavy for the connection's I/O thread */
+	private final Executor handshakeExecutor;
+	/* Table features by switch model, null if not cached */
+	private final TableFeaturesCache tableFeaturesCache;
+
+	/* For the per-state handshake duration counters */
+	private final long createdNs;
+	private long handshakeStartNs;
+	private long stateEnteredNs;
+	private boolean handshakeCompleteCounted;
 
 	private volatile OFControllerRole initialRole = null;
 
@@ -1061,6 +1074,7 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	public class WaitTableFeaturesReplyState extends OFSwitchHandshakeState {
 
 		private ArrayList<OFTableFeaturesStatsReply> replies;
+		private String modelKey;
 		WaitTableFeaturesReplyState() {
 			super(false);
 			replies = new ArrayList<OFTableFeaturesStatsReply>();
@@ -1081,8 +1095,7 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 			if (m.getStatsType() == OFStatsType.TABLE_FEATURES) {
 				replies.add((OFTableFeaturesStatsReply) m);
 				if (!((OFTableFeaturesStatsReply)m).getFlags().contains(OFStatsReplyFlags.REPLY_MORE)) {
-					handleTableFeaturesMessage(replies, false);
-					nextState();
+					processRepliesAndContinue();
 				}
 			} else {
 				/* should only receive TABLE_FEATURES here */
@@ -1105,6 +1118,41 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 
 		}
 
+		/**
+		 * Parsing the table features of a switch with many tables takes
+		 * long enough to hold up every other switch on the same I/O thread
+		 * during a reconnect storm, so it runs on the handshake executor.
+		 * The state machine continues once the switch has its tables.
+		 */
+		private void processRepliesAndContinue() {
+			final List<OFTableFeaturesStatsReply> completeReplies = replies;
+			replies = new ArrayList<OFTableFeaturesStatsReply>();
+			handshakeExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (modelKey != null) {
+							// Switches of the same model share the parsed features
+							((OFSwitch) sw).setTableFeatures(tableFeaturesCache.update(modelKey, completeReplies).getFeatures());
+						} else {
+							handleTableFeaturesMessage(completeReplies, false);
+						}
+					} catch (RuntimeException e) {
+						log.error("Disconnecting switch {}: could not process table features: {}",
+								getSwitchInfoString(), e.getMessage());
+						mainConnection.disconnect();
+						return;
+					}
+					synchronized (OFSwitchHandshakeHandler.this) {
+						// The switch may have disconnected in the meantime
+						if (state == WaitTableFeaturesReplyState.this) {
+							nextState();
+						}
+					}
+				}
+			});
+		}
+
 		private void nextState() {
 			/* move on to the next state */
 			sw.startDriverHandshake();
@@ -1119,9 +1167,23 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		void enterState() {
 			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) < 0) {
 				nextState();
-			} else {
-				sendHandshakeTableFeaturesRequest();
+				return;
+			}
+			// Only an OFSwitch can take features parsed for another switch
+			if (tableFeaturesCache != null && sw instanceof OFSwitch) {
+				modelKey = TableFeaturesCache.modelKey(sw.getOFFactory().getVersion(),
+						sw.getSwitchDescription());
+				TableFeaturesCache.Entry cached = tableFeaturesCache.getTrusted(modelKey);
+				if (cached != null) {
+					log.debug("Using cached table features for switch {}", getSwitchInfoString());
+					switchManagerCounters.tableFeaturesCacheHit.increment();
+					((OFSwitch) sw).setTableFeatures(cached.getFeatures());
+					nextState();
+					return;
+				}
+				switchManagerCounters.tableFeaturesCacheMiss.increment();
 			}
+			sendHandshakeTableFeaturesRequest();
 		}
 
 	}
@@ -1581,11 +1643,30 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 			@Nonnull IOFSwitchManager switchManager,
 			@Nonnull RoleManager roleManager,
 			@Nonnull Timer timer) {
+		this(connection, featuresReply, switchManager, roleManager, timer,
+				MoreExecutors.sameThreadExecutor(), null);
+	}
+
+	/**
+	 * Create a new unconnected OFChannelHandler.
+	 * @param handshakeExecutor runs reply processing that should not block
+	 * the connection's I/O thread
+	 * @param tableFeaturesCache table features by switch model, or null to
+	 * always request and parse them
+	 */
+	OFSwitchHandshakeHandler(@Nonnull IOFConnectionBackend connection,
+			@Nonnull OFFeaturesReply featuresReply,
+			@Nonnull IOFSwitchManager switchManager,
+			@Nonnull RoleManager roleManager,
+			@Nonnull Timer timer,
+			@Nonnull Executor handshakeExecutor,
+			TableFeaturesCache tableFeaturesCache) {
 		Preconditions.checkNotNull(connection, "connection");
 		Preconditions.checkNotNull(featuresReply, "featuresReply");
 		Preconditions.checkNotNull(switchManager, "switchManager");
 		Preconditions.checkNotNull(roleManager, "roleManager");
 		Preconditions.checkNotNull(timer, "timer");
+		Preconditions.checkNotNull(handshakeExecutor, "handshakeExecutor");
 		Preconditions.checkArgument(connection.getAuxId().equals(OFAuxId.MAIN),
 				"connection must be MAIN connection but is %s", connection);
 
@@ -1595,6 +1676,10 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		this.auxConnections = new ConcurrentHashMap<OFAuxId, IOFConnectionBackend>();
 		this.featuresReply = featuresReply;
 		this.timer = timer;
+		this.handshakeExecutor = handshakeExecutor;
+		this.tableFeaturesCache = tableFeaturesCache;
+		this.createdNs = System.nanoTime();
+		this.handshakeStartNs = createdNs;
 		this.switchManagerCounters = switchManager.getCounters();
 		this.factory = OFFactories.getFactory(featuresReply.getVersion());
 		this.roleChanger = new RoleChanger(DEFAULT_ROLE_TIMEOUT_NS);
@@ -1608,9 +1693,16 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 * This begins the switch handshake. We start where the OFChannelHandler
 	 * left off, right after receiving the OFFeaturesReply.
 	 */
-	public void beginHandshake() {
+	public synchronized void beginHandshake() {
 		Preconditions.checkState(state instanceof InitState, "must be in InitState");
 
+		handshakeStartNs = System.nanoTime();
+		long queuedNs = handshakeStartNs - createdNs;
+		if (queuedNs > TimeUnit.MILLISECONDS.toNanos(1)) {
+			switchManagerCounters.handshakeQueued.increment();
+			switchManagerCounters.handshakeQueuedTimeMs.add(TimeUnit.NANOSECONDS.toMillis(queuedNs));
+		}
+
 		if (this.featuresReply.getNTables() > 1) {
 			log.debug("Have {} table(s) for switch {}", this.featuresReply.getNTables(),
 					getSwitchInfoString());
@@ -1722,16 +1814,36 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 * @param state
 	 */
 	private void setState(OFSwitchHandshakeState state) {
+		long now = System.nanoTime();
+		OFSwitchHandshakeState previous = this.state;
+		if (previous != null && !previous.isHandshakeComplete()
+				&& !(previous instanceof InitState)) {
+			switchManagerCounters.updateHandshakeState(previous.getClass().getSimpleName(),
+					TimeUnit.NANOSECONDS.toMillis(now - stateEnteredNs));
+		}
+		if (state.isHandshakeComplete() && !handshakeCompleteCounted) {
+			handshakeCompleteCounted = true;
+			switchManagerCounters.handshakeCompleted.increment();
+			switchManagerCounters.handshakeCompletedTimeMs.add(
+					TimeUnit.NANOSECONDS.toMillis(now - handshakeStartNs));
+		}
+		stateEnteredNs = now;
+
 		this.state = state;
 		state.logState();
 		state.enterState();
 	}
 
-	public void processOFMessage(OFMessage m) {
+	/*
+	 * Messages are processed on the connection's I/O thread, but the state
+	 * machine can also be moved on from the handshake executor, so state
+	 * transitions are serialized on this handler.
+	 */
+	public synchronized void processOFMessage(OFMessage m) {
 		state.processOFMessage(m);
 	}
 
-	public void processWrittenOFMessage(OFMessage m) {
+	public synchronized void processWrittenOFMessage(OFMessage m) {
 		state.processWrittenOFMessage(m);
 	}
 
@@ -1811,9 +1923,13 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 			log.debug("[{}] - Switch Handshake - new aux connection {}", this.getDpid(), connection.getAuxId());
 
 		// Handle new Auxiliary connections if the main connection has completed (i.e. in ACTIVE or STANDBY state)
-		if (this.getState().equals("ACTIVE") || this.getState().equals("STANDBY")) {
+		if (this.state instanceof MasterState || this.state instanceof SlaveState) {
 			auxConnections.put(connection.getAuxId(), connection);
 			connection.setListener(OFSwitchHandshakeHandler.this);
+			// Make the connection available to writes by logical category
+			if (sw != null) {
+				sw.registerConnection(connection);
+			}
 			log.info("Auxiliary connection {} added for {}.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
 		} else {
 			log.info("Auxiliary connection {} initiated for {} before main connection handshake complete. Ignorning aux connection attempt.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
@@ -1884,6 +2000,15 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	/** IOFConnectionListener */
 	@Override
 	public void connectionClosed(IOFConnectionBackend connection) {
+		// Losing an aux connection only moves its traffic back to MAIN
+		if (connection != this.mainConnection) {
+			if (auxConnections.remove(connection.getAuxId(), connection) && sw != null) {
+				sw.removeConnection(connection);
+			}
+			log.info("Auxiliary connection {} of {} closed", connection.getAuxId(), getDpid());
+			return;
+		}
+
 		// Disconnect handler's remaining connections
 		cleanup();
 
@@ -1916,6 +2041,11 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		return state.isHandshakeComplete();
 	}
 
+	@Override
+	public boolean isSwitchHandshakeQueued(IOFConnectionBackend connection) {
+		return state instanceof InitState;
+	}
+
 	public void setSwitchStatus(SwitchStatus status) {
 		if(sw != null) {
 			SwitchStatus oldStatus = sw.getStatus();
@@ -1,5 +1,6 @@
 package net.floodlightcontroller.core.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -17,6 +18,8 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HAListenerTypeMarker;
@@ -40,6 +43,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.rest.SwitchRepresentation;
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugevent.IDebugEventService;
 import net.floodlightcontroller.debugevent.IDebugEventService.EventType;
@@ -74,12 +78,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
@@ -117,6 +120,15 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	private ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
 	private ConcurrentHashMap<DatapathId, IOFSwitchBackend> switches;
 	private ConcurrentHashMap<DatapathId, IOFSwitch> syncedSwitches;
+	/* DPIDs that have completed a handshake since startup */
+	private Set<DatapathId> knownSwitches;
+
+	private static final int DEFAULT_MAX_CONCURRENT_HANDSHAKES = 64;
+	private static final int DEFAULT_HANDSHAKE_WORKER_THREADS = 2;
+	private HandshakeAdmissionController handshakeAdmission;
+	private ExecutorService handshakeExecutor;
+	private static final int DEFAULT_TABLE_FEATURES_TRUST_AFTER = 2;
+	private TableFeaturesCache tableFeaturesCache;
 
 	private ISwitchDriverRegistry driverRegistry;
 
@@ -134,8 +146,9 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	private IDebugEventService debugEventService;
 	private IDebugCounterService debugCounterService;
 
-	private NioEventLoopGroup bossGroup;
-	private NioEventLoopGroup workerGroup;
+	private NettyTransport transport;
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
 	private DefaultChannelGroup cg;
 
 	/** IHAListener Implementation **/
@@ -211,6 +224,17 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 			log.debug("Switch {} status change but not present in sync manager", sw);
 			return;
 		}
+
+		if (oldStatus == SwitchStatus.HANDSHAKE) {
+			// Handshake is over one way or another, let the next one in
+			OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
+			if (handler != null) {
+				handshakeAdmission.release(handler);
+			}
+		}
+		if (newStatus == SwitchStatus.MASTER || newStatus == SwitchStatus.SLAVE) {
+			knownSwitches.add(dpid);
+		}
 		evSwitch.newEventWithFlush(new SwitchEvent(dpid,
 				String.format("%s -> %s",
 						oldStatus,
@@ -259,7 +283,10 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	}
 
 	@Override public void handshakeDisconnected(DatapathId dpid) {
-		this.switchHandlers.remove(dpid);
+		OFSwitchHandshakeHandler handler = this.switchHandlers.remove(dpid);
+		if (handler != null) {
+			handshakeAdmission.disconnected(handler);
+		}
 	}
 
 	public Iterable<IOFSwitch> getActiveSwitches() {
@@ -420,7 +447,8 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 			// Create a new switch handshake handler
 			OFSwitchHandshakeHandler handler =
 					new OFSwitchHandshakeHandler(connection, featuresReply, this,
-							floodlightProvider.getRoleManager(), floodlightProvider.getTimer());
+							floodlightProvider.getRoleManager(), floodlightProvider.getTimer(),
+							handshakeExecutor, tableFeaturesCache);
 
 			OFSwitchHandshakeHandler oldHandler = switchHandlers.put(dpid, handler);
 
@@ -428,9 +456,12 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 			if(oldHandler != null){
 				log.debug("{} is a new main connection, killing old handler connections", connection);
 				oldHandler.cleanup();
+				handshakeAdmission.release(oldHandler);
 			}
 
-			handler.beginHandshake();
+			// Switches we have seen before go ahead of new ones under load
+			handshakeAdmission.admit(handler,
+					knownSwitches.contains(dpid) || syncedSwitches.containsKey(dpid));
 
 		} else {
 			OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
@@ -526,7 +557,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 			TreeSet<OFAuxId> auxConnections = new TreeSet<OFAuxId>();
 
 			for(LogicalOFMessageCategory category : this.logicalOFMessageCategories){
-				auxConnections.add(category.getAuxId());
+				auxConnections.addAll(category.getAuxIds());
 			}
 
 			OFAuxId first = auxConnections.first();
@@ -653,6 +684,7 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		switchHandlers = new ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler>();
 		switches = new ConcurrentHashMap<DatapathId, IOFSwitchBackend>();
 		syncedSwitches = new ConcurrentHashMap<DatapathId, IOFSwitch>();
+		knownSwitches = Collections.newSetFromMap(new ConcurrentHashMap<DatapathId, Boolean>());
 		floodlightProvider.getTimer();
 		counters = new SwitchManagerCounters(debugCounterService);
 		driverRegistry = new NaiveSwitchDriverRegistry(this);
@@ -811,6 +843,71 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		}
 		defaultFactory = computeInitialFactory(ofVersions);
 		ofBitmaps = computeOurVersionBitmaps(ofVersions);
+
+		/*
+		 * Get the netty transport and socket settings for the
+		 * OpenFlow listener. Unset keys keep the built-in defaults.
+		 */
+		try {
+			transport = new NettyTransport(Controller.SEND_BUFFER_SIZE, 0,
+					Controller.WRITE_BUFFER_HIGH_WATER_MARK,
+					Controller.WRITE_BUFFER_LOW_WATER_MARK).setConfigParams(configParams);
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid OpenFlow listener transport config: " + e.getMessage(), e);
+		}
+		log.info("OpenFlow listener using {}", transport);
+
+		/*
+		 * Limit on handshakes in progress at once, 0 for none. Handshakes
+		 * over the limit wait for a running one to finish.
+		 */
+		int maxHandshakes = parseHandshakeParam(configParams, "maxConcurrentHandshakes",
+				DEFAULT_MAX_CONCURRENT_HANDSHAKES, 0);
+		int handshakeThreads = parseHandshakeParam(configParams, "handshakeWorkerThreads",
+				DEFAULT_HANDSHAKE_WORKER_THREADS, 1);
+		handshakeExecutor = Executors.newFixedThreadPool(handshakeThreads,
+				new ThreadFactoryBuilder().setNameFormat("OFSwitchHandshake-%d").setDaemon(true).build());
+		handshakeAdmission = new HandshakeAdmissionController(maxHandshakes, handshakeExecutor);
+		log.info("Allowing {} concurrent switch handshakes with {} handshake worker threads",
+				maxHandshakes == 0 ? "unlimited" : maxHandshakes, handshakeThreads);
+
+		/*
+		 * Cache of table features by switch model. Once the same features
+		 * have been received trustAfter times, handshakes with switches of
+		 * the model use the cached features instead of requesting them.
+		 */
+		String useCache = configParams.get("tableFeaturesCache");
+		if (useCache == null || (!useCache.trim().equalsIgnoreCase("no") && !useCache.trim().equalsIgnoreCase("false"))) {
+			int trustAfter = parseHandshakeParam(configParams, "tableFeaturesCacheTrustAfter",
+					DEFAULT_TABLE_FEATURES_TRUST_AFTER, 0);
+			String cachePath = configParams.get("tableFeaturesCacheFile");
+			File cacheFile = cachePath == null || cachePath.trim().isEmpty() ? null : new File(cachePath.trim());
+			tableFeaturesCache = new TableFeaturesCache(trustAfter, cacheFile);
+			tableFeaturesCache.load();
+			log.info("Caching switch table features, trusted after {} identical replies, saved in {}",
+					trustAfter, cacheFile == null ? "memory only" : cacheFile);
+		} else {
+			tableFeaturesCache = null;
+			log.info("Not caching switch table features");
+		}
+	}
+
+	private static int parseHandshakeParam(Map<String, String> configParams, String key,
+			int defaultValue, int min) throws FloodlightModuleException {
+		String s = configParams.get(key);
+		if (s == null || s.trim().isEmpty()) {
+			return defaultValue;
+		}
+		int v;
+		try {
+			v = Integer.parseInt(s.trim());
+		} catch (NumberFormatException e) {
+			throw new FloodlightModuleException("Invalid " + key + " '" + s + "'", e);
+		}
+		if (v < min) {
+			throw new FloodlightModuleException(key + " must be at least " + min + ", got " + v);
+		}
+		return v;
 	}
 
 	/**
@@ -981,17 +1078,11 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	 */
 	public void bootstrapNetty() {
 		try {
-			bossGroup = new NioEventLoopGroup();
-			workerGroup = new NioEventLoopGroup();
-
-			ServerBootstrap bootstrap = new ServerBootstrap()
-			.group(bossGroup, workerGroup)
-			.channel(NioServerSocketChannel.class)
-			.option(ChannelOption.SO_REUSEADDR, true)
-			.option(ChannelOption.SO_KEEPALIVE, true)
-			.option(ChannelOption.TCP_NODELAY, true)
-			.option(ChannelOption.SO_SNDBUF, Controller.SEND_BUFFER_SIZE);
+			bossGroup = transport.newBossGroup(null);
+			workerGroup = transport.newWorkerGroup(null);
 
+			ServerBootstrap bootstrap = transport.configure(new ServerBootstrap()
+			.group(bossGroup, workerGroup));
 
 			OFChannelInitializer initializer = new OFChannelInitializer(
 					this,
@@ -0,0 +1,503 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token-bucket admission control for PACKET_INs, applied before they are
+ * dispatched to the listeners.
+ *
+ * Packet-ins are sorted into a few classes by a quick look at their
+ * headers, and every class has its own budget per switch and across all
+ * switches. A flood of one class therefore only costs that class, so an
+ * ARP storm on one switch does not starve link discovery on the others.
+ * A rate of 0 leaves a class unlimited.
+ *
+ * If a switch port keeps exceeding its budget for quarantineAfter seconds
+ * in a row, drop flows with a hard timeout are pushed for that port, so
+ * the switch stops sending the traffic for a while. They match ARP or
+ * DHCP on the port, or for other traffic only the source, destination and
+ * ethertype of the offending packet, so the port keeps carrying transit
+ * traffic and link discovery. LLDP and flow summaries are never
+ * quarantined.
+ *
+ * @see Controller#handleMessage
+ */
+public class PacketInAdmission implements IOFSwitchListener {
+    protected static final Logger log = LoggerFactory.getLogger(PacketInAdmission.class);
+
+    public static final int PACKET_IN_ADMISSION_APP_ID = 6;
+    static {
+        AppCookie.registerApp(PACKET_IN_ADMISSION_APP_ID, "packet-in-admission");
+    }
+
+    /* Above the flows of the forwarding and static flow modules */
+    protected static final int QUARANTINE_PRIORITY = 40000;
+
+    /* Layout of the hardware packet summaries, see FlowStatisticsManager */
+    static final int SUMMARY_PAD = 16;
+    static final int SUMMARY_LENGTH = 68;
+
+    private static final int ETH_TYPE_LLDP = 0x88cc;
+    private static final int ETH_TYPE_BDDP = 0x8942;
+    private static final int ETH_TYPE_ARP = 0x0806;
+    private static final int ETH_TYPE_IPV4 = 0x0800;
+    private static final int ETH_TYPE_VLAN = 0x8100;
+    private static final int ETH_TYPE_QINQ = 0x88a8;
+
+    public enum PacketInClass {
+        LLDP, ARP, DHCP, FLOW_SUMMARY, OTHER;
+
+        String counterName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private static final PacketInClass[] CLASSES = PacketInClass.values();
+
+    /**
+     * A token bucket kept as a single theoretical arrival time (GCRA), so
+     * that it can be shared between threads without locking.
+     */
+    static final class TokenBucket {
+        private final long intervalNs;
+        private final long toleranceNs;
+        private final AtomicLong tat;
+
+        /**
+         * @param rate tokens per second
+         * @param burst tokens available after an idle period
+         */
+        TokenBucket(long rate, long burst, long nowNs) {
+            this.intervalNs = Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate);
+            this.toleranceNs = intervalNs * Math.max(1, burst);
+            this.tat = new AtomicLong(nowNs);
+        }
+
+        boolean tryAcquire(long nowNs) {
+            for (;;) {
+                long t = tat.get();
+                long next = (t - nowNs > 0 ? t : nowNs) + intervalNs;
+                if (next - nowNs > toleranceNs) {
+                    return false;
+                }
+                if (tat.compareAndSet(t, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /*
+     * Seconds in a row in which a port has gone over its budget
+     */
+    private static final class PortOverload {
+        private long lastSecond = Long.MIN_VALUE;
+        private int seconds;
+        private long quarantinedUntilNs;
+
+        synchronized boolean dropped(long nowNs, int after, long timeoutNs) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(nowNs);
+            if (second == lastSecond) {
+                return false;
+            }
+            seconds = (second == lastSecond + 1) ? seconds + 1 : 1;
+            lastSecond = second;
+            if (seconds < after || nowNs - quarantinedUntilNs < 0) {
+                return false;
+            }
+            seconds = 0;
+            quarantinedUntilNs = nowNs + timeoutNs;
+            return true;
+        }
+    }
+
+    private final class SwitchState {
+        final TokenBucket[] buckets = new TokenBucket[CLASSES.length];
+        final AtomicLongArray dropped = new AtomicLongArray(CLASSES.length);
+        final ConcurrentMap<String, PortOverload> overload =
+                new ConcurrentHashMap<String, PortOverload>();
+
+        SwitchState(long nowNs) {
+            for (PacketInClass c : CLASSES) {
+                buckets[c.ordinal()] = newBucket(switchRates.get(c), nowNs);
+            }
+        }
+    }
+
+    private final Map<PacketInClass, Integer> switchRates;
+    private final int burstMs;
+    private final int quarantineAfter;
+    private final long quarantineTimeoutNs;
+    private final TokenBucket[] globalBuckets = new TokenBucket[CLASSES.length];
+    private final ConcurrentMap<DatapathId, SwitchState> switches =
+            new ConcurrentHashMap<DatapathId, SwitchState>();
+
+    private final IDebugCounter[] ctrAdmitted = new IDebugCounter[CLASSES.length];
+    private final IDebugCounter[] ctrSwitchDropped = new IDebugCounter[CLASSES.length];
+    private final IDebugCounter[] ctrGlobalDropped = new IDebugCounter[CLASSES.length];
+    private final IDebugCounter ctrQuarantined;
+
+    /**
+     * @param switchRates packet-ins per second allowed per switch for each
+     * class, missing or 0 for no limit
+     * @param globalRates packet-ins per second allowed across all switches
+     * for each class, missing or 0 for no limit
+     * @param burstMs how many milliseconds worth of packet-ins a bucket
+     * admits at once after an idle period
+     * @param quarantineAfter seconds in a row a port must exceed its budget
+     * before a drop flow is pushed, 0 to never push one
+     * @param quarantineTimeout hard timeout of the drop flow in seconds
+     * @param debugCounters the counter service, may be null
+     * @param counterModule counter module to register the counters in
+     */
+    public PacketInAdmission(Map<PacketInClass, Integer> switchRates,
+            Map<PacketInClass, Integer> globalRates, int burstMs,
+            int quarantineAfter, int quarantineTimeout,
+            IDebugCounterService debugCounters, String counterModule) {
+        if (burstMs <= 0)
+            throw new IllegalArgumentException("burstMs must be positive");
+        if (quarantineAfter < 0 || quarantineTimeout <= 0)
+            throw new IllegalArgumentException("Invalid quarantine settings");
+        this.switchRates = new EnumMap<PacketInClass, Integer>(switchRates);
+        this.burstMs = burstMs;
+        this.quarantineAfter = quarantineAfter;
+        this.quarantineTimeoutNs = TimeUnit.SECONDS.toNanos(quarantineTimeout);
+
+        long now = System.nanoTime();
+        for (PacketInClass c : CLASSES) {
+            globalBuckets[c.ordinal()] = newBucket(globalRates.get(c), now);
+        }
+
+        if (debugCounters != null) {
+            String base = "packet-in-admission";
+            debugCounters.registerCounter(counterModule, base,
+                    "Packet-ins checked by admission control");
+            for (PacketInClass c : CLASSES) {
+                String name = base + "/" + c.counterName();
+                debugCounters.registerCounter(counterModule, name,
+                        "Packet-ins classified as " + c);
+                ctrAdmitted[c.ordinal()] = debugCounters.registerCounter(counterModule,
+                        name + "/admitted",
+                        "Number of " + c + " packet-ins dispatched to listeners");
+                ctrSwitchDropped[c.ordinal()] = debugCounters.registerCounter(counterModule,
+                        name + "/switch-dropped",
+                        "Number of " + c + " packet-ins dropped because their switch was over budget",
+                        IDebugCounterService.MetaData.DROP);
+                ctrGlobalDropped[c.ordinal()] = debugCounters.registerCounter(counterModule,
+                        name + "/global-dropped",
+                        "Number of " + c + " packet-ins dropped because all switches together were over budget",
+                        IDebugCounterService.MetaData.DROP);
+            }
+            ctrQuarantined = debugCounters.registerCounter(counterModule,
+                    base + "/quarantine-flows",
+                    "Number of drop flows pushed to switch ports in sustained overload",
+                    IDebugCounterService.MetaData.WARN);
+        } else {
+            ctrQuarantined = null;
+        }
+    }
+
+    private TokenBucket newBucket(Integer rate, long nowNs) {
+        if (rate == null || rate <= 0) {
+            return null;
+        }
+        return new TokenBucket(rate, (long) rate * burstMs / 1000, nowNs);
+    }
+
+    /**
+     * Parse a list of per class rates such as "ARP:200,OTHER:1000"
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    public static Map<PacketInClass, Integer> parseRates(String rates) {
+        Map<PacketInClass, Integer> result = new EnumMap<PacketInClass, Integer>(PacketInClass.class);
+        if (rates == null || rates.trim().isEmpty()) {
+            return result;
+        }
+        for (String entry : rates.split(",")) {
+            String[] kv = entry.trim().split(":");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected CLASS:RATE but got " + entry);
+            }
+            int rate = Integer.parseInt(kv[1].trim());
+            if (rate < 0) {
+                throw new IllegalArgumentException("Negative rate in " + entry);
+            }
+            result.put(PacketInClass.valueOf(kv[0].trim().toUpperCase()), rate);
+        }
+        return result;
+    }
+
+    /**
+     * Charge a packet-in against the budgets of its switch and class.
+     * @return true if the packet-in should be dispatched, false if it was
+     * dropped
+     */
+    public boolean admit(IOFSwitch sw, OFPacketIn pi) {
+        PacketInClass c = classify(pi);
+        int i = c.ordinal();
+        long now = System.nanoTime();
+
+        SwitchState s = switches.get(sw.getId());
+        if (s == null) {
+            SwitchState created = new SwitchState(now);
+            s = switches.putIfAbsent(sw.getId(), created);
+            if (s == null) {
+                s = created;
+            }
+        }
+
+        TokenBucket b = s.buckets[i];
+        if (b != null && !b.tryAcquire(now)) {
+            s.dropped.incrementAndGet(i);
+            if (ctrSwitchDropped[i] != null) {
+                ctrSwitchDropped[i].increment();
+            }
+            if (quarantineAfter > 0 && c != PacketInClass.LLDP
+                    && c != PacketInClass.FLOW_SUMMARY) {
+                checkOverload(sw, s, pi, c, now);
+            }
+            return false;
+        }
+        b = globalBuckets[i];
+        if (b != null && !b.tryAcquire(now)) {
+            if (ctrGlobalDropped[i] != null) {
+                ctrGlobalDropped[i].increment();
+            }
+            return false;
+        }
+        if (ctrAdmitted[i] != null) {
+            ctrAdmitted[i].increment();
+        }
+        return true;
+    }
+
+    private void checkOverload(IOFSwitch sw, SwitchState s, OFPacketIn pi,
+            PacketInClass c, long now) {
+        OFPort inPort = pi.getVersion().compareTo(OFVersion.OF_12) < 0
+                ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT);
+        if (inPort == null) {
+            return;
+        }
+        String key = inPort.getPortNumber() + "/" + c;
+        PortOverload o = s.overload.get(key);
+        if (o == null) {
+            PortOverload created = new PortOverload();
+            o = s.overload.putIfAbsent(key, created);
+            if (o == null) {
+                o = created;
+            }
+        }
+        if (o.dropped(now, quarantineAfter, quarantineTimeoutNs)) {
+            quarantine(sw, inPort, c, pi.getData());
+        }
+    }
+
+    /**
+     * The matches of the drop flows that quarantine a class on a port.
+     * ARP and DHCP, to either port of DHCP, are dropped on the whole port.
+     * Anything else is only dropped for the source, destination and
+     * ethertype of the packet given, since there is no one match for all
+     * of it that spares transit traffic and LLDP.
+     * @return the matches, empty if the class is never quarantined
+     */
+    static List<Match> quarantineMatches(OFFactory factory, OFPort inPort,
+            PacketInClass c, byte[] data) {
+        List<Match> matches = new ArrayList<Match>();
+        switch (c) {
+        case ARP:
+            matches.add(factory.buildMatch()
+                    .setExact(MatchField.IN_PORT, inPort)
+                    .setExact(MatchField.ETH_TYPE, EthType.ARP)
+                    .build());
+            break;
+        case DHCP:
+            for (int port : new int[] { 67, 68 }) {
+                matches.add(factory.buildMatch()
+                        .setExact(MatchField.IN_PORT, inPort)
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setExact(MatchField.IP_PROTO, IpProtocol.UDP)
+                        .setExact(MatchField.UDP_DST, TransportPort.of(port))
+                        .build());
+            }
+            break;
+        case OTHER:
+            int ethType = ethType(data);
+            if (ethType < 0) {
+                break;
+            }
+            matches.add(factory.buildMatch()
+                    .setExact(MatchField.IN_PORT, inPort)
+                    .setExact(MatchField.ETH_DST, MacAddress.of(Arrays.copyOfRange(data, 0, 6)))
+                    .setExact(MatchField.ETH_SRC, MacAddress.of(Arrays.copyOfRange(data, 6, 12)))
+                    .setExact(MatchField.ETH_TYPE, EthType.of(ethType))
+                    .build());
+            break;
+        default:
+            break;
+        }
+        return matches;
+    }
+
+    /*
+     * Drop the class on the port for a while. The hard timeout keeps the
+     * traffic from being cut off for good.
+     */
+    private void quarantine(IOFSwitch sw, OFPort inPort, PacketInClass c, byte[] data) {
+        List<Match> matches = quarantineMatches(sw.getOFFactory(), inPort, c, data);
+        if (matches.isEmpty()) {
+            return;
+        }
+        log.warn("Switch {} port {} has been over its {} packet-in budget for {} s, "
+                + "dropping that traffic for {} s",
+                new Object[] { sw.getId(), inPort, c, quarantineAfter,
+                               TimeUnit.NANOSECONDS.toSeconds(quarantineTimeoutNs) });
+        for (Match m : matches) {
+            OFFlowAdd fm = sw.getOFFactory().buildFlowAdd()
+                    .setMatch(m)
+                    .setPriority(QUARANTINE_PRIORITY)
+                    .setHardTimeout((int) TimeUnit.NANOSECONDS.toSeconds(quarantineTimeoutNs))
+                    .setIdleTimeout(0)
+                    .setBufferId(OFBufferId.NO_BUFFER)
+                    .setCookie(AppCookie.makeCookie(PACKET_IN_ADMISSION_APP_ID, 0))
+                    .setActions(Collections.<OFAction>emptyList())
+                    .build();
+            sw.write(fm);
+        }
+        if (ctrQuarantined != null) {
+            ctrQuarantined.increment();
+        }
+    }
+
+    public static PacketInClass classify(OFPacketIn pi) {
+        Match m = pi.getMatch();
+        boolean exactIpv6Src = m.supports(MatchField.IPV6_SRC) && m.isExact(MatchField.IPV6_SRC);
+        return classify(pi.getData(), exactIpv6Src);
+    }
+
+    /**
+     * Sort a packet-in by its headers, without decoding it.
+     * @param exactIpv6Src whether the packet-in match has an exact IPv6
+     * source, which the hardware leaves out of flow summary packet-ins
+     */
+    static PacketInClass classify(byte[] data, boolean exactIpv6Src) {
+        int len = data.length;
+        if (!exactIpv6Src && len >= SUMMARY_PAD + SUMMARY_LENGTH
+                && (len - SUMMARY_PAD) % SUMMARY_LENGTH == 0
+                && (data[SUMMARY_PAD] & 0xf0) == 0x60) {
+            return PacketInClass.FLOW_SUMMARY;
+        }
+        int off = 12;
+        int ethType = u16(data, off);
+        while (ethType == ETH_TYPE_VLAN || ethType == ETH_TYPE_QINQ) {
+            off += 4;
+            ethType = u16(data, off);
+        }
+        off += 2;
+        switch (ethType) {
+        case ETH_TYPE_LLDP:
+        case ETH_TYPE_BDDP:
+            return PacketInClass.LLDP;
+        case ETH_TYPE_ARP:
+            return PacketInClass.ARP;
+        case ETH_TYPE_IPV4:
+            if (off + 20 > len || (data[off + 9] & 0xff) != IpProtocol.UDP.getIpProtocolNumber()) {
+                break;
+            }
+            int udpPort = u16(data, off + (data[off] & 0x0f) * 4 + 2);
+            if (udpPort == 67 || udpPort == 68) {
+                return PacketInClass.DHCP;
+            }
+            break;
+        default:
+            break;
+        }
+        return PacketInClass.OTHER;
+    }
+
+    /**
+     * @return the ethertype after any VLAN tags, or -1 if the frame is
+     * too short
+     */
+    static int ethType(byte[] data) {
+        int off = 12;
+        int ethType = u16(data, off);
+        while (ethType == ETH_TYPE_VLAN || ethType == ETH_TYPE_QINQ) {
+            off += 4;
+            ethType = u16(data, off);
+        }
+        return ethType;
+    }
+
+    private static int u16(byte[] data, int off) {
+        if (off + 2 > data.length) {
+            return -1;
+        }
+        return ((data[off] & 0xff) << 8) | (data[off + 1] & 0xff);
+    }
+
+    /**
+     * @return packet-ins of the class dropped for exceeding the budget of
+     * the switch since it connected
+     */
+    public long getDropped(DatapathId dpid, PacketInClass c) {
+        SwitchState s = switches.get(dpid);
+        return s == null ? 0 : s.dropped.get(c.ordinal());
+    }
+
+    @Override
+    public void switchRemoved(DatapathId switchId) {
+        switches.remove(switchId);
+    }
+
+    @Override
+    public void switchAdded(DatapathId switchId) {
+    }
+
+    @Override
+    public void switchActivated(DatapathId switchId) {
+    }
+
+    @Override
+    public void switchPortChanged(DatapathId switchId, OFPortDesc port,
+                                  PortChangeType type) {
+    }
+
+    @Override
+    public void switchChanged(DatapathId switchId) {
+    }
+}
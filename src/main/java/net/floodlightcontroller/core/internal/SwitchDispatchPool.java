@@ -0,0 +1,276 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of threads that run the IOFMessageListener chain off the
+ * Netty event loops.
+ *
+ * Every switch is pinned to one worker by its DPID, so messages from a
+ * switch still reach the listeners one at a time and in arrival order. A
+ * listener that blocks only stalls the switches sharing its worker, while
+ * echo and keepalive handling on the event loops carries on.
+ *
+ * Each worker has a single FIFO queue, so shedding never reorders what is
+ * left. A new PACKET_IN is shed while shedDepth PACKET_INs are already
+ * queued on its worker. All other messages (errors, flow-removed,
+ * experimenter, ...) are never shed, but also wait behind the PACKET_INs
+ * queued before them.
+ *
+ * @see Controller#handleMessage
+ */
+public class SwitchDispatchPool {
+    protected static final Logger log = LoggerFactory.getLogger(SwitchDispatchPool.class);
+
+    /**
+     * Runs the listener chain for a message on a worker thread
+     */
+    public interface IDispatchHandler {
+        void dispatch(IOFSwitch sw, OFMessage m);
+    }
+
+    private static final class Task {
+        final IOFSwitch sw;
+        final OFMessage m;
+
+        Task(IOFSwitch sw, OFMessage m) {
+            this.sw = sw;
+            this.m = m;
+        }
+    }
+
+    private static final class DispatchThread extends Thread {
+        DispatchThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    private final String name;
+    private final int shedDepth;
+    private final IDispatchHandler handler;
+    private final Worker[] workers;
+    private volatile boolean running;
+
+    /**
+     * @param name prefix for thread and counter names
+     * @param numWorkers number of worker threads
+     * @param shedDepth PACKET_IN queue depth per worker above which new
+     * packet-ins are dropped
+     * @param handler the dispatch callback
+     * @param debugCounters the counter service, may be null
+     * @param counterModule counter module to register the worker counters in
+     */
+    public SwitchDispatchPool(String name, int numWorkers, int shedDepth,
+            IDispatchHandler handler, IDebugCounterService debugCounters,
+            String counterModule) {
+        if (numWorkers <= 0)
+            throw new IllegalArgumentException("numWorkers must be positive");
+        if (shedDepth <= 0)
+            throw new IllegalArgumentException("shedDepth must be positive");
+        this.name = name;
+        this.shedDepth = shedDepth;
+        this.handler = handler;
+        this.workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Worker(i, debugCounters, counterModule);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (Worker w : workers) {
+            w.thread = new DispatchThread(w, name + "-" + w.index);
+            w.startNs = System.nanoTime();
+            w.thread.start();
+        }
+        log.info("Started {} dispatch worker(s), PACKET_IN shed depth {}",
+                workers.length, shedDepth);
+    }
+
+    /**
+     * Stop the workers. Messages still queued are dropped.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        for (Worker w : workers) {
+            if (w.thread != null) w.thread.interrupt();
+        }
+    }
+
+    /**
+     * Queue a message on the worker owning the switch.
+     * @return false if the message was shed because the worker is overloaded
+     */
+    public boolean submit(IOFSwitch sw, OFMessage m) {
+        Worker w = workers[workerIndex(sw.getId(), workers.length)];
+        return w.offer(new Task(sw, m), m.getType() == OFType.PACKET_IN);
+    }
+
+    /**
+     * @return true if the calling thread is one of the dispatch workers
+     */
+    public boolean isWorkerThread() {
+        return Thread.currentThread() instanceof DispatchThread;
+    }
+
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    public int getShedDepth() {
+        return shedDepth;
+    }
+
+    /**
+     * @return number of messages waiting for the given worker
+     */
+    public int getQueueDepth(int worker) {
+        return workers[worker].depth();
+    }
+
+    /**
+     * @return fraction of wall-clock time the worker has spent running
+     * listeners since it was started
+     */
+    public double getUtilization(int worker) {
+        Worker w = workers[worker];
+        long elapsed = System.nanoTime() - w.startNs;
+        return elapsed <= 0 ? 0 : (double) w.busyNs / elapsed;
+    }
+
+    public long getDispatched(int worker) {
+        return workers[worker].dispatched;
+    }
+
+    public long getShed(int worker) {
+        return workers[worker].shed;
+    }
+
+    static int workerIndex(DatapathId dpid, int numWorkers) {
+        long h = dpid.getLong() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % numWorkers);
+    }
+
+    private final class Worker implements Runnable {
+        final int index;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notEmpty = lock.newCondition();
+        final ArrayDeque<Task> queue = new ArrayDeque<Task>();
+        /* PACKET_INs in the queue, the depth shedding is based on */
+        int queuedPacketIns;
+        Thread thread;
+        volatile long startNs;
+        volatile long busyNs;
+        volatile long dispatched;
+        volatile long shed;
+        final IDebugCounter ctrDispatched;
+        final IDebugCounter ctrShed;
+        final IDebugCounter ctrBusyUs;
+
+        Worker(int index, IDebugCounterService debugCounters, String module) {
+            this.index = index;
+            if (debugCounters != null) {
+                String base = "dispatch-worker-" + index;
+                debugCounters.registerCounter(module, base,
+                        "Messages handled by dispatch worker " + index);
+                ctrDispatched = debugCounters.registerCounter(module, base + "/dispatched",
+                        "Number of messages dispatched to listeners by this worker");
+                ctrShed = debugCounters.registerCounter(module, base + "/packet-in-shed",
+                        "Number of packet-ins dropped because this worker's queue was full",
+                        IDebugCounterService.MetaData.DROP);
+                ctrBusyUs = debugCounters.registerCounter(module, base + "/busy-us",
+                        "Microseconds this worker spent running listeners");
+            } else {
+                ctrDispatched = null;
+                ctrShed = null;
+                ctrBusyUs = null;
+            }
+        }
+
+        int depth() {
+            lock.lock();
+            try {
+                return queue.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean offer(Task t, boolean packetIn) {
+            lock.lock();
+            try {
+                if (packetIn) {
+                    if (queuedPacketIns >= shedDepth) {
+                        shed++;
+                        if (ctrShed != null) ctrShed.increment();
+                        return false;
+                    }
+                    queuedPacketIns++;
+                }
+                queue.addLast(t);
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Task take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    notEmpty.await(1, TimeUnit.SECONDS);
+                    if (!running) return null;
+                }
+                Task t = queue.pollFirst();
+                if (t.m.getType() == OFType.PACKET_IN)
+                    queuedPacketIns--;
+                return t;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Task t;
+                try {
+                    t = take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (t == null) continue;
+                long start = System.nanoTime();
+                try {
+                    handler.dispatch(t.sw, t.m);
+                } catch (Exception e) {
+                    log.error("Exception dispatching " + t.m.getType() +
+                            " from " + t.sw, e);
+                }
+                long busy = System.nanoTime() - start;
+                busyNs += busy;
+                dispatched++;
+                if (ctrDispatched != null) {
+                    ctrDispatched.increment();
+                    ctrBusyUs.add(busy / 1000);
+                }
+            }
+        }
+    }
+}
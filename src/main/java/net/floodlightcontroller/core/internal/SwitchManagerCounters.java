@@ -1,5 +1,8 @@
 package net.floodlightcontroller.core.internal;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -32,8 +35,30 @@ public class SwitchManagerCounters {
     public final IDebugCounter roleReplyReceived;
     public final IDebugCounter roleReplyErrorUnsupported;
     public final IDebugCounter switchSslConfigurationError;
+    public final IDebugCounter handshakeQueued;
+    public final IDebugCounter handshakeQueuedTimeMs;
+    public final IDebugCounter handshakeCompleted;
+    public final IDebugCounter handshakeCompletedTimeMs;
+    public final IDebugCounter handshakeState;
+    public final IDebugCounter tableFeaturesCacheHit;
+    public final IDebugCounter tableFeaturesCacheMiss;
+
+    /** Handshake states whose time is counted, by simple class name */
+    static final String[] HANDSHAKE_STATES = {
+        "WaitPortDescStatsReplyState",
+        "WaitConfigReplyState",
+        "WaitDescriptionStatReplyState",
+        "WaitTableFeaturesReplyState",
+        "WaitSwitchDriverSubHandshakeState",
+        "WaitAppHandshakeState",
+        "WaitInitialRoleState"
+    };
+    private final Map<String, IDebugCounter[]> handshakeStateCounters =
+            new ConcurrentHashMap<String, IDebugCounter[]>();
+    private final IDebugCounterService debugCounters;
 
     public SwitchManagerCounters(IDebugCounterService debugCounters) {
+        this.debugCounters = debugCounters;
         debugCounters.registerModule(prefix);
         invalidPortsChanged =
                 debugCounters.registerCounter(
@@ -209,6 +234,77 @@ public class SwitchManagerCounters {
                                         "IllegalArgumentException, which is likely " +
                                         "due to the switch trying to speak SSL whereas " +
                                         "the controller wants to use vanilla TCP.");
+
+        handshakeQueued =
+                debugCounters.registerCounter(
+                            prefix, "handshake-queued",
+                            "Number of switch handshakes that had to wait " +
+                            "because the maximum number of concurrent " +
+                            "handshakes was in progress");
+        handshakeQueuedTimeMs =
+                debugCounters.registerCounter(
+                            prefix, "handshake-queued/time-ms",
+                            "Total time in ms switch handshakes waited to be " +
+                            "admitted; divide by handshake-queued for the average");
+        handshakeCompleted =
+                debugCounters.registerCounter(
+                            prefix, "handshake-completed",
+                            "Number of switch handshakes that reached " +
+                            "MASTER or SLAVE state");
+        handshakeCompletedTimeMs =
+                debugCounters.registerCounter(
+                            prefix, "handshake-completed/time-ms",
+                            "Total time in ms from admission to completion of " +
+                            "switch handshakes; divide by handshake-completed " +
+                            "for the average");
+        handshakeState =
+                debugCounters.registerCounter(
+                            prefix, "handshake-state",
+                            "Number of switch handshake state transitions");
+        for (String state : HANDSHAKE_STATES) {
+            registerHandshakeStateCounters(state);
+        }
+        tableFeaturesCacheHit =
+                debugCounters.registerCounter(
+                            prefix, "table-features-cache-hit",
+                            "Number of switch handshakes that used cached " +
+                            "table features instead of requesting them");
+        tableFeaturesCacheMiss =
+                debugCounters.registerCounter(
+                            prefix, "table-features-cache-miss",
+                            "Number of switch handshakes that requested " +
+                            "table features because no trusted entry was " +
+                            "cached for the switch model");
+    }
+
+    private IDebugCounter[] registerHandshakeStateCounters(String state) {
+        IDebugCounter[] c = new IDebugCounter[] {
+                debugCounters.registerCounter(
+                            prefix, "handshake-state/" + state,
+                            "Number of times a switch handshake left " + state),
+                debugCounters.registerCounter(
+                            prefix, "handshake-state/" + state + "/time-ms",
+                            "Total time in ms switch handshakes spent in " +
+                            state)
+        };
+        handshakeStateCounters.put(state, c);
+        return c;
+    }
+
+    /**
+     * Account the time a switch handshake spent in one state
+     * @param state simple class name of the state that was left
+     * @param timeMs time spent in the state
+     */
+    public void updateHandshakeState(String state, long timeMs) {
+        IDebugCounter[] c = handshakeStateCounters.get(state);
+        if (c == null) {
+            // e.g. states added by a subclass of the handshake handler
+            c = registerHandshakeStateCounters(state);
+        }
+        handshakeState.increment();
+        c[0].increment();
+        c[1].add(timeMs);
     }
 
     public String getPrefix(){
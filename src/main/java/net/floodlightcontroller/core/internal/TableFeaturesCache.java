@@ -0,0 +1,269 @@
+package net.floodlightcontroller.core.internal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.floodlightcontroller.core.SwitchDescription;
+
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFMessageReader;
+import org.projectfloodlight.openflow.protocol.OFTableFeatures;
+import org.projectfloodlight.openflow.protocol.OFTableFeaturesStatsReply;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.TableId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+/**
+ * Table features of switches, by switch model.
+ *
+ * Switches of the same model and firmware return identical table
+ * features, and parsing them is the most expensive step of an OF1.3
+ * handshake. Entries are keyed by a digest of the OpenFlow version and
+ * the manufacturer, hardware and software descriptions, and hold the
+ * parsed {@link TableFeatures} that all switches of the model share.
+ *
+ * Each entry also records a hash of the raw replies. An entry becomes
+ * trusted once the same replies have been received in trustAfter
+ * handshakes; after that the handshake can use the entry instead of
+ * asking the switch. Replies that differ from the cached ones replace
+ * the entry and start counting again.
+ *
+ * If a file is given, entries are saved to it when they are added or
+ * become trusted, and loaded again on startup.
+ */
+public class TableFeaturesCache {
+	private static final Logger log = LoggerFactory.getLogger(TableFeaturesCache.class);
+	private static final int FILE_FORMAT = 1;
+
+	private final int trustAfter;
+	private final File file;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	public static class Entry {
+		private final String replyHash;
+		private final byte[] replyBytes;
+		private final ImmutableMap<TableId, TableFeatures> features;
+		private volatile int confirmations;
+
+		private Entry(String replyHash, byte[] replyBytes,
+				ImmutableMap<TableId, TableFeatures> features, int confirmations) {
+			this.replyHash = replyHash;
+			this.replyBytes = replyBytes;
+			this.features = features;
+			this.confirmations = confirmations;
+		}
+
+		/**
+		 * @return the features of each table, in the order the switch
+		 * reported them. Shared by every switch of the model.
+		 */
+		public ImmutableMap<TableId, TableFeatures> getFeatures() {
+			return features;
+		}
+
+		public String getReplyHash() {
+			return replyHash;
+		}
+
+		/**
+		 * @return the number of handshakes that received exactly these replies
+		 */
+		public int getConfirmations() {
+			return confirmations;
+		}
+	}
+
+	/**
+	 * @param trustAfter handshakes with identical replies before an entry
+	 * is trusted; 0 to never trust entries
+	 * @param file where entries are kept across restarts, or null
+	 */
+	public TableFeaturesCache(int trustAfter, File file) {
+		this.trustAfter = trustAfter;
+		this.file = file;
+	}
+
+	/**
+	 * @return the cache key for switches of the given model
+	 */
+	public static String modelKey(OFVersion version, SwitchDescription description) {
+		String model = version + "\0" + description.getManufacturerDescription()
+				+ "\0" + description.getHardwareDescription()
+				+ "\0" + description.getSoftwareDescription();
+		return Hashing.sha1().hashString(model, Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * @return the trusted entry for a model, or null if there is none
+	 */
+	public Entry getTrusted(String modelKey) {
+		Entry e = entries.get(modelKey);
+		if (e == null || trustAfter <= 0 || e.confirmations < trustAfter) {
+			return null;
+		}
+		return e;
+	}
+
+	/**
+	 * Record the complete table features replies from a switch.
+	 * @return the entry for the model. If the replies are the same as the
+	 * cached ones the existing parsed features are returned.
+	 */
+	public Entry update(String modelKey, List<OFTableFeaturesStatsReply> replies) {
+		byte[] bytes = serialize(replies);
+		String hash = Hashing.sha1().hashBytes(bytes).toString();
+		boolean changed;
+		Entry e;
+		synchronized (this) {
+			e = entries.get(modelKey);
+			if (e != null && e.replyHash.equals(hash)) {
+				e.confirmations++;
+				changed = e.confirmations == trustAfter;
+			} else {
+				if (e != null) {
+					log.info("Table features of switch model {} changed, replacing cached entry", modelKey);
+				}
+				e = new Entry(hash, bytes, parse(replies), 1);
+				entries.put(modelKey, e);
+				changed = true;
+			}
+		}
+		if (changed) {
+			save();
+		}
+		return e;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/*
+	 * The replies as they would go on the wire, with the XID cleared so
+	 * that the bytes only depend on the switch model.
+	 */
+	private static byte[] serialize(List<OFTableFeaturesStatsReply> replies) {
+		ByteBuf buf = Unpooled.buffer();
+		for (OFTableFeaturesStatsReply reply : replies) {
+			reply.createBuilder().setXid(0).build().writeTo(buf);
+		}
+		byte[] bytes = new byte[buf.readableBytes()];
+		buf.readBytes(bytes);
+		return bytes;
+	}
+
+	private static ImmutableMap<TableId, TableFeatures> parse(List<OFTableFeaturesStatsReply> replies) {
+		Map<TableId, TableFeatures> features = new LinkedHashMap<TableId, TableFeatures>();
+		for (OFTableFeaturesStatsReply reply : replies) {
+			for (OFTableFeatures tf : reply.getEntries()) {
+				features.put(tf.getTableId(), TableFeatures.of(tf));
+			}
+		}
+		return ImmutableMap.copyOf(features);
+	}
+
+	/**
+	 * Load the entries saved in the cache file, if there is one.
+	 * Unreadable files are logged and ignored.
+	 */
+	public void load() {
+		if (file == null || !file.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != FILE_FORMAT) {
+				log.warn("Ignoring table features cache {} of unknown format", file);
+				return;
+			}
+			int n = in.readInt();
+			OFMessageReader<OFMessage> reader = OFFactories.getGenericReader();
+			for (int i = 0; i < n; i++) {
+				String key = in.readUTF();
+				int confirmations = in.readInt();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+
+				List<OFTableFeaturesStatsReply> replies = new ArrayList<OFTableFeaturesStatsReply>();
+				ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+				while (buf.isReadable()) {
+					replies.add((OFTableFeaturesStatsReply) reader.readFrom(buf));
+				}
+				String hash = Hashing.sha1().hashBytes(bytes).toString();
+				entries.put(key, new Entry(hash, bytes, parse(replies), confirmations));
+			}
+			log.info("Loaded table features of {} switch models from {}", n, file);
+		} catch (Exception e) {
+			log.warn("Could not load table features cache {}: {}", file, e.toString());
+			entries.clear();
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	/*
+	 * Written to a temporary file first so that a crash never leaves a
+	 * truncated cache behind.
+	 */
+	private synchronized void save() {
+		if (file == null) {
+			return;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			Map<String, Entry> snapshot = new LinkedHashMap<String, Entry>(entries);
+			out.writeInt(FILE_FORMAT);
+			out.writeInt(snapshot.size());
+			for (Map.Entry<String, Entry> me : snapshot.entrySet()) {
+				Entry e = me.getValue();
+				out.writeUTF(me.getKey());
+				out.writeInt(e.confirmations);
+				out.writeInt(e.replyBytes.length);
+				out.write(e.replyBytes);
+			}
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				log.warn("Could not replace table features cache {}", file);
+			}
+		} catch (IOException e) {
+			log.warn("Could not save table features cache {}: {}", file, e.toString());
+		} finally {
+			closeQuietly(out);
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// nothing more to do
+			}
+		}
+	}
+}
@@ -31,7 +31,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,6 +41,15 @@ import java.util.Properties;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.module.FloodlightModulePriority.Priority;
 
@@ -50,6 +61,12 @@ import com.google.common.collect.Lists;
 
 /**
  * Finds all Floodlight modules in the class path and loads/starts them.
+ *
+ * All modules are initialized before any is started. Within each phase,
+ * modules run on up to floodlight.startupThreads threads, and a module
+ * only runs once the modules providing its declared dependencies have
+ * finished that phase. With one thread, the default when no configuration
+ * sets it, the modules run in dependency order on the calling thread.
  * @author alexreimers
  *
  */
@@ -75,6 +92,14 @@ public class FloodlightModuleLoader {
             "floodlightdefault.properties";
     public static final String FLOODLIGHT_MODULES_KEY =
             "floodlight.modules";
+    public static final String STARTUP_THREADS_KEY =
+            "floodlight.startupThreads";
+    protected static final int DEFAULT_STARTUP_THREADS = 1;
+
+    protected int startupThreads = DEFAULT_STARTUP_THREADS;
+    private long loadStartNs = System.nanoTime();
+    private final Map<String, ModuleStartupTiming> moduleTimings =
+            Collections.synchronizedMap(new LinkedHashMap<String, ModuleStartupTiming>());
 
     public FloodlightModuleLoader() {
         loadedModuleList = Collections.emptyList();
@@ -105,6 +130,16 @@ public class FloodlightModuleLoader {
             return Collections.unmodifiableList(loadedModuleList);
     }
 
+    /**
+     * Gets the init and startUp timeline of the loaded modules
+     * @return the timings in the order modules finished init
+     */
+    public List<ModuleStartupTiming> getModuleTimings() {
+        synchronized (moduleTimings) {
+            return new ArrayList<>(moduleTimings.values());
+        }
+    }
+
     /**
      * Return the location of the config file that was used to initialize
      * floodlight. If no config file was specified (i.e. floodlight was
@@ -290,8 +325,10 @@ public class FloodlightModuleLoader {
         }
 
         parseConfigParameters(prop);
+        parseStartupThreads(prop);
 
         loadedModuleList = moduleList;
+        loadStartNs = System.nanoTime();
 
         initModules(moduleList);
         if(startupModules)
@@ -457,14 +494,20 @@ public class FloodlightModuleLoader {
             }
         }
 
-        for (IFloodlightModule module : moduleSet) {
-            // init the module
-            if (logger.isDebugEnabled()) {
-                logger.debug("Initializing " +
-                             module.getClass().getCanonicalName());
+        runPhase("init", moduleSet, new ModulePhase() {
+            @Override
+            public void run(IFloodlightModule module)
+                    throws FloodlightModuleException {
+                // init the module
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Initializing " +
+                                 module.getClass().getCanonicalName());
+                }
+                long start = elapsedMs();
+                module.init(floodlightModuleContext);
+                getTiming(module).initDone(start, elapsedMs());
             }
-            module.init(floodlightModuleContext);
-        }
+        });
     }
 
     /**
@@ -474,12 +517,206 @@ public class FloodlightModuleLoader {
      */
     protected void startupModules(Collection<IFloodlightModule> moduleSet)
             throws FloodlightModuleException, ClassNotFoundException {
+        runPhase("startUp", moduleSet, new ModulePhase() {
+            @Override
+            public void run(IFloodlightModule m)
+                    throws FloodlightModuleException {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Starting " + m.getClass().getCanonicalName());
+                }
+                long start = elapsedMs();
+                m.startUp(floodlightModuleContext);
+                getTiming(m).startUpDone(start, elapsedMs());
+            }
+        });
+        if (logger.isInfoEnabled()) {
+            logger.info("Modules started in {} ms", elapsedMs());
+        }
+    }
+
+    private long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNs);
+    }
+
+    private ModuleStartupTiming getTiming(IFloodlightModule module) {
+        String name = module.getClass().getCanonicalName();
+        synchronized (moduleTimings) {
+            ModuleStartupTiming t = moduleTimings.get(name);
+            if (t == null) {
+                t = new ModuleStartupTiming(name);
+                moduleTimings.put(name, t);
+            }
+            return t;
+        }
+    }
+
+    /** One phase (init or startUp) of a module's life cycle */
+    private interface ModulePhase {
+        void run(IFloodlightModule module) throws FloodlightModuleException;
+    }
+
+    /**
+     * Find, for each module, the other modules in the set that provide the
+     * services it depends on
+     */
+    private static Map<IFloodlightModule, Set<IFloodlightModule>>
+            getDependencies(Collection<IFloodlightModule> moduleSet) {
+        Map<Class<? extends IFloodlightService>, IFloodlightModule> providers =
+                new HashMap<>();
         for (IFloodlightModule m : moduleSet) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Starting " + m.getClass().getCanonicalName());
+            Collection<Class<? extends IFloodlightService>> servs =
+                    m.getModuleServices();
+            if (servs != null) {
+                for (Class<? extends IFloodlightService> c : servs)
+                    providers.put(c, m);
+            }
+        }
+        Map<IFloodlightModule, Set<IFloodlightModule>> deps =
+                new IdentityHashMap<>();
+        for (IFloodlightModule m : moduleSet) {
+            Set<IFloodlightModule> d = new HashSet<>();
+            Collection<Class<? extends IFloodlightService>> mdeps =
+                    m.getModuleDependencies();
+            if (mdeps != null) {
+                for (Class<? extends IFloodlightService> c : mdeps) {
+                    IFloodlightModule p = providers.get(c);
+                    if (p != null && p != m)
+                        d.add(p);
+                }
+            }
+            deps.put(m, d);
+        }
+        return deps;
+    }
+
+    /**
+     * Run a phase for every module, each one after the modules it depends
+     * on. Independent modules run concurrently on up to startupThreads
+     * threads. The first failure stops any further modules from being
+     * run and is rethrown once the running ones finish.
+     * @param phaseName name of the phase for thread names and errors
+     * @param moduleSet the modules, in an order consistent with their
+     * dependencies
+     * @param phase the phase to run
+     * @throws FloodlightModuleException if a module failed
+     */
+    private void runPhase(String phaseName,
+                          Collection<IFloodlightModule> moduleSet,
+                          final ModulePhase phase)
+                                  throws FloodlightModuleException {
+        if (startupThreads <= 1 || moduleSet.size() <= 1) {
+            for (IFloodlightModule m : moduleSet) {
+                phase.run(m);
+            }
+            return;
+        }
+
+        Map<IFloodlightModule, Set<IFloodlightModule>> deps =
+                getDependencies(moduleSet);
+        Map<IFloodlightModule, List<IFloodlightModule>> dependents =
+                new IdentityHashMap<>();
+        Map<IFloodlightModule, Integer> pending = new IdentityHashMap<>();
+        List<IFloodlightModule> ready = new ArrayList<>();
+        for (IFloodlightModule m : moduleSet) {
+            Set<IFloodlightModule> d = deps.get(m);
+            pending.put(m, d.size());
+            if (d.isEmpty())
+                ready.add(m);
+            for (IFloodlightModule p : d) {
+                List<IFloodlightModule> l = dependents.get(p);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    dependents.put(p, l);
+                }
+                l.add(m);
             }
-            m.startUp(floodlightModuleContext);
         }
+
+        final String threadPrefix = "ModuleLoader-" + phaseName + "-";
+        ExecutorService executor = Executors.newFixedThreadPool(startupThreads,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, threadPrefix + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        ExecutorCompletionService<IFloodlightModule> completion =
+                new ExecutorCompletionService<>(executor);
+        Set<IFloodlightModule> submitted =
+                Collections.newSetFromMap(new IdentityHashMap<IFloodlightModule, Boolean>());
+        Throwable failure = null;
+        int running = 0;
+        try {
+            while (true) {
+                if (failure == null) {
+                    if (running == 0 && ready.isEmpty()) {
+                        // Modules in a dependency cycle never become ready;
+                        // run them in load order as a sequential start would
+                        for (IFloodlightModule m : moduleSet) {
+                            if (!submitted.contains(m)) {
+                                logger.warn("Module {} has a circular dependency, " +
+                                            "running its {} without waiting",
+                                            m.getClass().getCanonicalName(),
+                                            phaseName);
+                                ready.add(m);
+                                break;
+                            }
+                        }
+                    }
+                    for (final IFloodlightModule m : ready) {
+                        if (!submitted.add(m))
+                            continue;
+                        completion.submit(new Callable<IFloodlightModule>() {
+                            @Override
+                            public IFloodlightModule call() throws Exception {
+                                phase.run(m);
+                                return m;
+                            }
+                        });
+                        running++;
+                    }
+                }
+                ready.clear();
+                if (running == 0)
+                    break;
+
+                Future<IFloodlightModule> f = completion.take();
+                running--;
+                try {
+                    IFloodlightModule m = f.get();
+                    List<IFloodlightModule> l = dependents.get(m);
+                    if (l != null) {
+                        for (IFloodlightModule dm : l) {
+                            int left = pending.get(dm) - 1;
+                            pending.put(dm, left);
+                            if (left == 0)
+                                ready.add(dm);
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure instanceof FloodlightModuleException)
+            throw (FloodlightModuleException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw new FloodlightModuleException("Module " + phaseName +
+                                                " interrupted", failure);
     }
 
     /** Tuple of floodlight module and run method */
@@ -572,6 +809,36 @@ public class FloodlightModuleLoader {
         }
     }
 
+    /**
+     * Read the number of threads used to init and start modules
+     * @param prop The properties file to use
+     */
+    protected void parseStartupThreads(Properties prop) throws FloodlightModuleException {
+        String value = System.getProperty(STARTUP_THREADS_KEY);
+        if (value == null && prop != null)
+            value = prop.getProperty(STARTUP_THREADS_KEY);
+        if (value == null || value.trim().isEmpty())
+            return;
+        try {
+            startupThreads = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new FloodlightModuleException("Invalid " + STARTUP_THREADS_KEY +
+                                                " " + value);
+        }
+        if (startupThreads < 1) {
+            throw new FloodlightModuleException(STARTUP_THREADS_KEY +
+                                                " must be at least 1");
+        }
+    }
+
+    public int getStartupThreads() {
+        return startupThreads;
+    }
+
+    public void setStartupThreads(int startupThreads) {
+        this.startupThreads = startupThreads;
+    }
+
     public boolean isStartupModules() {
         return startupModules;
     }
@@ -0,0 +1,75 @@
+package net.floodlightcontroller.core.module;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * When and on which thread a module's init() and startUp() ran.
+ * Times are in milliseconds from the start of module loading; -1 if the
+ * phase has not run.
+ */
+public class ModuleStartupTiming {
+    private final String module;
+    private volatile long initStartMs = -1;
+    private volatile long initMs = -1;
+    private volatile String initThread;
+    private volatile long startUpStartMs = -1;
+    private volatile long startUpMs = -1;
+    private volatile String startUpThread;
+
+    public ModuleStartupTiming(String module) {
+        this.module = module;
+    }
+
+    void initDone(long startMs, long endMs) {
+        initStartMs = startMs;
+        initMs = endMs - startMs;
+        initThread = Thread.currentThread().getName();
+    }
+
+    void startUpDone(long startMs, long endMs) {
+        startUpStartMs = startMs;
+        startUpMs = endMs - startMs;
+        startUpThread = Thread.currentThread().getName();
+    }
+
+    @JsonProperty("module")
+    public String getModule() {
+        return module;
+    }
+
+    @JsonProperty("init-start-ms")
+    public long getInitStartMs() {
+        return initStartMs;
+    }
+
+    @JsonProperty("init-ms")
+    public long getInitMs() {
+        return initMs;
+    }
+
+    @JsonProperty("init-thread")
+    public String getInitThread() {
+        return initThread;
+    }
+
+    @JsonProperty("startup-start-ms")
+    public long getStartUpStartMs() {
+        return startUpStartMs;
+    }
+
+    @JsonProperty("startup-ms")
+    public long getStartUpMs() {
+        return startUpMs;
+    }
+
+    @JsonProperty("startup-thread")
+    public String getStartUpThread() {
+        return startUpThread;
+    }
+
+    @Override
+    public String toString() {
+        return module + " [init " + initMs + "ms at " + initStartMs
+                + ", startUp " + startUpMs + "ms at " + startUpStartMs + "]";
+    }
+}
@@ -97,6 +97,25 @@ public class AppCookie {
         return (int)((cookie.getValue() >>> APP_ID_SHIFT) & APP_ID_MASK);
     }
 
+    /**
+     * The cookie of an application with no user data, to be matched with
+     * {@link #getAppFieldMask()}. Does <em>not</em> check whether the
+     * application id is registered
+     * @param application
+     * @return
+     */
+    static public U64 makeAppCookie(int application) {
+        return U64.of((application & APP_ID_MASK) << APP_ID_SHIFT);
+    }
+
+    /**
+     * @return a cookie mask covering the application id only, e.g. to
+     * request the statistics of all flows of one application
+     */
+    static public U64 getAppFieldMask() {
+        return U64.of(APP_ID_MASK << APP_ID_SHIFT);
+    }
+
     static public int extractUser(U64 cookie) {
         return (int)(cookie.getValue() & USER_MASK);
     }
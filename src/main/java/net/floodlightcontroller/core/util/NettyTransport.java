@@ -0,0 +1,309 @@
+package net.floodlightcontroller.core.util;
+
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * Transport and socket settings for a netty listener or client.
+ *
+ * Picks the native epoll transport when it is requested (or AUTO) and the
+ * native library loads, and falls back to NIO otherwise. Each module owning
+ * a bootstrap reads its own settings from its config params, so the
+ * OpenFlow listener and the sync RPC can be tuned separately:
+ *
+ * <pre>
+ * transport=AUTO|EPOLL|NIO
+ * bossThreads=1
+ * workerThreads=0           (0 = netty default, 2 * cores)
+ * sendBufferSize=4194304    (0 = OS default)
+ * receiveBufferSize=0
+ * writeBufferHighWaterMark=1048576
+ * writeBufferLowWaterMark=262144
+ * pooledAllocator=YES
+ * </pre>
+ */
+public class NettyTransport {
+    protected static final Logger log = LoggerFactory.getLogger(NettyTransport.class);
+
+    public enum Type {
+        AUTO,
+        EPOLL,
+        NIO
+    }
+
+    public static final String TRANSPORT = "transport";
+    public static final String BOSS_THREADS = "bossThreads";
+    public static final String WORKER_THREADS = "workerThreads";
+    public static final String SEND_BUFFER_SIZE = "sendBufferSize";
+    public static final String RECEIVE_BUFFER_SIZE = "receiveBufferSize";
+    public static final String WRITE_BUFFER_HIGH_WATER_MARK = "writeBufferHighWaterMark";
+    public static final String WRITE_BUFFER_LOW_WATER_MARK = "writeBufferLowWaterMark";
+    public static final String POOLED_ALLOCATOR = "pooledAllocator";
+
+    private Type type = Type.AUTO;
+    private int bossThreads = 1;
+    private int workerThreads = 0;
+    private int sendBufferSize;
+    private int receiveBufferSize;
+    private int writeBufferHighWaterMark;
+    private int writeBufferLowWaterMark;
+    private boolean pooledAllocator = true;
+    private volatile boolean epollFailed;
+
+    /**
+     * @param sendBufferSize default SO_SNDBUF, 0 for the OS default
+     * @param receiveBufferSize default SO_RCVBUF, 0 for the OS default
+     * @param writeBufferHighWaterMark default high water mark, 0 for netty's
+     * @param writeBufferLowWaterMark default low water mark, 0 for netty's
+     */
+    public NettyTransport(int sendBufferSize, int receiveBufferSize,
+            int writeBufferHighWaterMark, int writeBufferLowWaterMark) {
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    /**
+     * Override the defaults with any of the keys present in a module's
+     * config params. Absent or empty keys keep their current value.
+     * @throws IllegalArgumentException if a value cannot be parsed
+     */
+    public NettyTransport setConfigParams(Map<String, String> config) {
+        String s = config.get(TRANSPORT);
+        if (!Strings.isNullOrEmpty(s)) {
+            try {
+                type = Type.valueOf(s.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + TRANSPORT + " '" + s +
+                        "', expected one of AUTO, EPOLL or NIO");
+            }
+        }
+        bossThreads = parseInt(config, BOSS_THREADS, bossThreads);
+        workerThreads = parseInt(config, WORKER_THREADS, workerThreads);
+        sendBufferSize = parseInt(config, SEND_BUFFER_SIZE, sendBufferSize);
+        receiveBufferSize = parseInt(config, RECEIVE_BUFFER_SIZE, receiveBufferSize);
+        writeBufferHighWaterMark = parseInt(config, WRITE_BUFFER_HIGH_WATER_MARK,
+                writeBufferHighWaterMark);
+        writeBufferLowWaterMark = parseInt(config, WRITE_BUFFER_LOW_WATER_MARK,
+                writeBufferLowWaterMark);
+        s = config.get(POOLED_ALLOCATOR);
+        if (!Strings.isNullOrEmpty(s)) {
+            pooledAllocator = s.trim().equalsIgnoreCase("yes") || s.trim().equalsIgnoreCase("true");
+        }
+        if (writeBufferHighWaterMark > 0 && writeBufferLowWaterMark > writeBufferHighWaterMark) {
+            throw new IllegalArgumentException(WRITE_BUFFER_LOW_WATER_MARK + " " +
+                    writeBufferLowWaterMark + " exceeds " + WRITE_BUFFER_HIGH_WATER_MARK +
+                    " " + writeBufferHighWaterMark);
+        }
+        return this;
+    }
+
+    private static int parseInt(Map<String, String> config, String key, int current) {
+        String s = config.get(key);
+        if (Strings.isNullOrEmpty(s)) return current;
+        int v;
+        try {
+            v = Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + " '" + s + "'");
+        }
+        if (v < 0) {
+            throw new IllegalArgumentException(key + " must not be negative, got " + v);
+        }
+        return v;
+    }
+
+    public Type getConfiguredType() {
+        return type;
+    }
+
+    public NettyTransport setType(Type type) {
+        this.type = type;
+        return this;
+    }
+
+    public NettyTransport setBossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+        return this;
+    }
+
+    public NettyTransport setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public boolean isPooledAllocator() {
+        return pooledAllocator;
+    }
+
+    /**
+     * @return true if channels will use the native epoll transport. EPOLL
+     * that cannot be loaded or started falls back to NIO with a warning.
+     */
+    public boolean isEpoll() {
+        if (type == Type.NIO || epollFailed) return false;
+        if (Epoll.isAvailable()) return true;
+        if (type == Type.EPOLL) {
+            log.warn("Native epoll transport requested but unavailable ({}), using NIO",
+                    Epoll.unavailabilityCause() == null ? "unknown cause"
+                            : Epoll.unavailabilityCause().toString());
+        }
+        return false;
+    }
+
+    public EventLoopGroup newBossGroup(ThreadFactory threadFactory) {
+        return newEventLoopGroup(bossThreads, threadFactory);
+    }
+
+    public EventLoopGroup newWorkerGroup(ThreadFactory threadFactory) {
+        return newEventLoopGroup(workerThreads, threadFactory);
+    }
+
+    private EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        if (isEpoll()) {
+            try {
+                return threadFactory == null ? new EpollEventLoopGroup(threads)
+                        : new EpollEventLoopGroup(threads, threadFactory);
+            } catch (Throwable t) {
+                /* The native library can load and still fail to set up
+                   its event loops, e.g. on JVMs without sun.misc.Unsafe */
+                log.warn("Could not create native epoll event loop, using NIO", t);
+                epollFailed = true;
+            }
+        }
+        return threadFactory == null ? new NioEventLoopGroup(threads)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    /**
+     * @return the server channel class matching the given event loop group
+     */
+    public static Class<? extends ServerChannel> serverChannelClass(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup ? EpollServerSocketChannel.class
+                : NioServerSocketChannel.class;
+    }
+
+    /**
+     * @return the client channel class matching the given event loop group
+     */
+    public static Class<? extends SocketChannel> channelClass(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup ? EpollSocketChannel.class
+                : NioSocketChannel.class;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return pooledAllocator ? PooledByteBufAllocator.DEFAULT
+                : UnpooledByteBufAllocator.DEFAULT;
+    }
+
+    /**
+     * Set the channel class and the per-connection options on a server
+     * bootstrap whose groups have already been set.
+     */
+    public ServerBootstrap configure(ServerBootstrap bootstrap) {
+        bootstrap.channel(serverChannelClass(bootstrap.group()))
+        .option(ChannelOption.SO_REUSEADDR, true)
+        .option(ChannelOption.ALLOCATOR, getAllocator())
+        .childOption(ChannelOption.SO_KEEPALIVE, true)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childOption(ChannelOption.ALLOCATOR, getAllocator());
+        if (sendBufferSize > 0)
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        if (receiveBufferSize > 0) {
+            /* Must be set on the listening socket to apply to the TCP window */
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (writeBufferHighWaterMark > 0) {
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK,
+                    writeBufferHighWaterMark);
+        }
+        if (writeBufferLowWaterMark > 0) {
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK,
+                    writeBufferLowWaterMark);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Set the channel class and socket options on a client bootstrap whose
+     * group has already been set.
+     */
+    public Bootstrap configure(Bootstrap bootstrap) {
+        bootstrap.channel(channelClass(bootstrap.group()))
+        .option(ChannelOption.SO_REUSEADDR, true)
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .option(ChannelOption.ALLOCATOR, getAllocator());
+        if (sendBufferSize > 0)
+            bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+        if (receiveBufferSize > 0)
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        if (writeBufferHighWaterMark > 0) {
+            bootstrap.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK,
+                    writeBufferHighWaterMark);
+        }
+        if (writeBufferLowWaterMark > 0) {
+            bootstrap.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK,
+                    writeBufferLowWaterMark);
+        }
+        return bootstrap;
+    }
+
+    @Override
+    public String toString() {
+        return "NettyTransport [type=" + type + ", epoll=" + isEpoll()
+                + ", bossThreads=" + bossThreads + ", workerThreads=" + workerThreads
+                + ", sendBufferSize=" + sendBufferSize
+                + ", receiveBufferSize=" + receiveBufferSize
+                + ", writeBufferHighWaterMark=" + writeBufferHighWaterMark
+                + ", writeBufferLowWaterMark=" + writeBufferLowWaterMark
+                + ", pooledAllocator=" + pooledAllocator + "]";
+    }
+}
@@ -0,0 +1,116 @@
+package net.floodlightcontroller.core.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.floodlightcontroller.core.IStatsReplySubscriber;
+import net.floodlightcontroller.core.IStatsReplySubscription;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+
+/**
+ * A bounded stats reply subscriber for a consumer on another thread.
+ *
+ * At most capacity replies are buffered here. The connection is asked for
+ * a new reply each time one is taken. Replies the switch sends ahead of
+ * that are held by the connection up to a fixed limit, past which the
+ * stream fails, so the consumer has to keep up with the switch but never
+ * makes the whole dump pile up in memory.
+ *
+ * <pre>
+ * StatsReplyQueue&lt;OFFlowStatsReply&gt; q = new StatsReplyQueue&lt;OFFlowStatsReply&gt;(16);
+ * sw.writeStatsRequest(request, q);
+ * OFFlowStatsReply reply;
+ * while ((reply = q.take(10, TimeUnit.SECONDS)) != null) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <REPLY> type of the stats reply
+ */
+public class StatsReplyQueue<REPLY extends OFStatsReply> implements IStatsReplySubscriber<REPLY> {
+    private static final Object END = new Object();
+
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final int capacity;
+    /* Replies, then END or a Failure */
+    private final LinkedBlockingQueue<Object> queue;
+    private volatile IStatsReplySubscription subscription;
+    private Object last;
+
+    /**
+     * @param capacity number of replies buffered ahead of the consumer
+     */
+    public StatsReplyQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.queue = new LinkedBlockingQueue<Object>(capacity + 1);
+    }
+
+    @Override
+    public void onSubscribe(IStatsReplySubscription subscription) {
+        this.subscription = subscription;
+        subscription.request(capacity);
+    }
+
+    @Override
+    public void onReply(REPLY reply) {
+        queue.add(reply);
+    }
+
+    @Override
+    public void onComplete() {
+        queue.add(END);
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+        queue.add(new Failure(cause));
+    }
+
+    /**
+     * Wait for the next reply
+     * @return the next reply, or null after the last one
+     * @throws ExecutionException if the request failed
+     * @throws TimeoutException if no reply arrived in time
+     */
+    @SuppressWarnings("unchecked")
+    public REPLY take(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Object o = last;
+        if (o == null) {
+            o = queue.poll(timeout, unit);
+            if (o == null)
+                throw new TimeoutException("no stats reply within " + timeout + " " + unit);
+        }
+        if (o == END) {
+            last = END;
+            return null;
+        }
+        if (o instanceof Failure) {
+            last = o;
+            throw new ExecutionException(((Failure) o).cause);
+        }
+        subscription.request(1);
+        return (REPLY) o;
+    }
+
+    /**
+     * Stop the stream, e.g. when the consumer gives up early
+     */
+    public void cancel() {
+        IStatsReplySubscription s = subscription;
+        if (s != null)
+            s.cancel();
+    }
+}
@@ -0,0 +1,23 @@
+package net.floodlightcontroller.core.web;
+
+import java.util.List;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import net.floodlightcontroller.core.module.FloodlightModuleLoader;
+import net.floodlightcontroller.core.module.ModuleStartupTiming;
+
+/**
+ * Returns when, for how long and on which thread each loaded module ran
+ * its init() and startUp()
+ */
+public class ModuleStartupResource extends ServerResource {
+    @Get("json")
+    public List<ModuleStartupTiming> retrieve() {
+        FloodlightModuleLoader floodlightModuleLoader =
+                (FloodlightModuleLoader) getContext().getAttributes().
+                get(FloodlightModuleLoader.class.getCanonicalName());
+        return floodlightModuleLoader.getModuleTimings();
+    }
+}
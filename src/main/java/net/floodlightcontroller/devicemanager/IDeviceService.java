@@ -69,11 +69,23 @@ public interface IDeviceService extends IFloodlightService {
 
     /**
      * A FloodlightContextStore object that can be used to interact with the
-     * FloodlightContext information created by BVS manager.
+     * FloodlightContext information created by BVS manager. It looks the
+     * key up on every call; the bound stores below do not.
      */
     public static final FloodlightContextStore<IDevice> fcStore =
         new FloodlightContextStore<IDevice>();
 
+    /**
+     * Stores bound to the source, destination and original destination
+     * device of the current packet-in
+     */
+    public static final FloodlightContextStore<IDevice> srcDeviceStore =
+        new FloodlightContextStore<IDevice>(CONTEXT_SRC_DEVICE);
+    public static final FloodlightContextStore<IDevice> dstDeviceStore =
+        new FloodlightContextStore<IDevice>(CONTEXT_DST_DEVICE);
+    public static final FloodlightContextStore<IDevice> origDstDeviceStore =
+        new FloodlightContextStore<IDevice>(CONTEXT_ORIG_DST_DEVICE);
+
     /**
      * Get the device with the given device key.
      *
@@ -1197,7 +1197,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		// Store the source device in the context
-		fcStore.put(cntx, CONTEXT_SRC_DEVICE, srcDevice);
+		srcDeviceStore.put(cntx, srcDevice);
 
 		// Find the device matching the destination from the entity
 		// classes of the source.
@@ -1210,7 +1210,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (dstEntity != null) {
 			dstDevice = findDestByEntity(srcDevice.getEntityClass(), dstEntity);
 			if (dstDevice != null)
-				fcStore.put(cntx, CONTEXT_DST_DEVICE, dstDevice);
+				dstDeviceStore.put(cntx, dstDevice);
 			else
 				cntNoDest.increment();
 		} else {
@@ -32,13 +32,13 @@ import net.floodlightcontroller.core.module.IFloodlightService;
  */
 @Deprecated
 public interface IFlowReconcileEngineService extends IFloodlightService {
+    public static final String FLOWRECONCILE_APP_INSTANCE_NAME = "net.floodlightcontroller.flowcache.appInstanceName";
     /**
      * A FloodlightContextStore object that can be used to interact with the
      * FloodlightContext information about flowCache.
      */
     public static final FloodlightContextStore<String> fcStore =
-        new FloodlightContextStore<String>();
-    public static final String FLOWRECONCILE_APP_INSTANCE_NAME = "net.floodlightcontroller.flowcache.appInstanceName";
+        new FloodlightContextStore<String>(FLOWRECONCILE_APP_INSTANCE_NAME);
     /**
      * Submit a network flow query with query parameters specified in ReconcileQueryObj
      * object. The query object can be created using one of the new ReconcileQueryObj
@@ -40,6 +40,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.util.StatsReplyQueue;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -71,6 +72,8 @@ import net.floodlightcontroller.util.OFMatchWithSwDpid;
 public class PortDownReconciliation implements IFloodlightModule,
     ITopologyListener, IFlowReconcileListener {
     protected static Logger log = LoggerFactory.getLogger(PortDownReconciliation.class);
+    // Flow stats replies read ahead of the reconciliation while streaming
+    protected static final int FLOW_STATS_REPLIES_BUFFERED = 4;
 
     protected ITopologyService topology;
     protected IOFSwitchService switchService;
@@ -199,14 +202,17 @@ public class PortDownReconciliation implements IFloodlightModule,
                     // ingress ports of those matches
                     Map<OFPort, List<Match>> invalidBaseIngressAndMatches = new HashMap<OFPort, List<Match>>();
 
-                    // Get the invalid flows
-                    List<OFFlowStatsReply> flows = getFlows(sw, ofmr.outPort);
+                    // Stream the invalid flows, a reply at a time
+                    StatsReplyQueue<OFFlowStatsReply> flows = streamFlows(sw, ofmr.outPort);
+                    boolean anyFlows = false;
 
                     // Analyze all the flows with outPorts equaling the downed
                     // port and extract OFMatch's to trace back to neighbors
-                    for (OFFlowStatsReply flow : flows) {
+                    OFFlowStatsReply flow;
+                    while ((flow = nextFlows(sw, flows)) != null) {
                     	// Create a reference to the match for ease
                     	for (OFFlowStatsEntry entry : flow.getEntries()) {
+                    		anyFlows = true;
                     		Match match = entry.getMatch();
 
                     		// Here we utilize an index of input ports which point
@@ -227,7 +233,7 @@ public class PortDownReconciliation implements IFloodlightModule,
                     }
 
                     // Remove invalid flows from the base switch, if they exist
-                    if (!flows.isEmpty()) {
+                    if (anyFlows) {
                         log.debug("Removing flows on switch : " + sw.getId()
                                   + " with outport: " + ofmr.outPort);
                         clearFlowMods(sw, ofmr.outPort);
@@ -314,6 +320,39 @@ public class PortDownReconciliation implements IFloodlightModule,
         return statsReply;
     }
 
+    /**
+     * @param sw
+     *            the switch object that we wish to get flows from
+     * @param outPort
+     *            the output action port we wish to find flows with
+     * @return a queue to take the flow stats replies from as they arrive
+     */
+    protected StatsReplyQueue<OFFlowStatsReply> streamFlows(IOFSwitch sw, OFPort outPort) {
+        OFFlowStatsRequest req = sw.getOFFactory().buildFlowStatsRequest()
+        		.setMatch(sw.getOFFactory().buildMatch().build())
+        		.setOutPort(outPort)
+        		.setTableId(TableId.ALL)
+        		.build();
+        StatsReplyQueue<OFFlowStatsReply> replies =
+                new StatsReplyQueue<OFFlowStatsReply>(FLOW_STATS_REPLIES_BUFFERED);
+        sw.writeStatsRequest(req, replies);
+        return replies;
+    }
+
+    /**
+     * @return the next flow stats reply, or null after the last one or
+     * if the request failed
+     */
+    private OFFlowStatsReply nextFlows(IOFSwitch sw, StatsReplyQueue<OFFlowStatsReply> replies) {
+        try {
+            return replies.take(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("Failure retrieving statistics from switch " + sw, e);
+            replies.cancel();
+            return null;
+        }
+    }
+
     /**
      * @param sw
      *            The switch we wish to remove flows from
@@ -380,11 +419,13 @@ public class PortDownReconciliation implements IFloodlightModule,
         Map<OFPort, List<Match>> invalidNeighborIngressAndMatches = new HashMap<OFPort, List<Match>>();
 
         for (OFPort outPort : invalidOutportAndMatch.keySet()) {
-            // Get the flows on the switch
-            List<OFFlowStatsReply> flows = getFlows(sw, outPort);
+            // Stream the flows on the switch, a reply at a time, since a
+            // hardware switch may have too many to hold at once
+            StatsReplyQueue<OFFlowStatsReply> flows = streamFlows(sw, outPort);
 
             // Analyze all the flows with outPorts pointing to problematic route
-            for (OFFlowStatsReply flow : flows) {
+            OFFlowStatsReply flow;
+            while ((flow = nextFlows(sw, flows)) != null) {
             	for (OFFlowStatsEntry entry : flow.getEntries()) {
             		// Loop through all the problematic matches
             		for (Match match : invalidOutportAndMatch.get(outPort)) {
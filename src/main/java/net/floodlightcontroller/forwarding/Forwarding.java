@@ -222,11 +222,11 @@ IOFSwitchListener{
 
 	protected void doForwardFlow(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
-		IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
+		IDevice dstDevice = IDeviceService.dstDeviceStore.get(cntx);
 		DatapathId source = sw.getId();
 
 		if (dstDevice != null) {
-			IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
+			IDevice srcDevice = IDeviceService.srcDeviceStore.get(cntx);
 
 			if (srcDevice == null) {
 				log.error("No device entry found for source device. Is the device manager running? If so, report bug.");
@@ -295,13 +295,14 @@ IOFSwitchListener{
 				return;
 			}
 
+			Match m = createMatchFromPacket(sw, inPort, cntx);
+			U64 cookie = AppCookie.makeCookie(FORWARDING_APP_ID, 0);
+
+			// Spread flows over the paths between the switches by their match
 			Route route = routingEngineService.getRoute(source,
 					inPort,
 					dstDap.getSwitchDPID(),
-					dstDap.getPort(), U64.of(0)); //cookie = 0, i.e., default route
-
-			Match m = createMatchFromPacket(sw, inPort, cntx);
-			U64 cookie = AppCookie.makeCookie(FORWARDING_APP_ID, 0);
+					dstDap.getPort(), U64.of(0), m.hashCode()); //cookie = 0, i.e., default route
 
 			if (route != null) {
 				log.debug("pushRoute inPort={} route={} " +
@@ -35,6 +35,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +54,7 @@ import net.floodlightcontroller.core.IInfoProvider;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -135,6 +137,10 @@ IFloodlightModule, IInfoProvider {
 
 	public static final String MODULE_NAME = "linkdiscovery";
 
+	/* LLDP and BDDP go over the first aux connection if the switch opened one */
+	public static final LogicalOFMessageCategory DISCOVERY_CATEGORY =
+			new LogicalOFMessageCategory("DISCOVERY", 1);
+
 	// Names of table/fields for links in the storage API
 	private static final String TOPOLOGY_TABLE_NAME = "controller_topologyconfig";
 	private static final String TOPOLOGY_ID = "id";
@@ -241,7 +247,7 @@ IFloodlightModule, IInfoProvider {
 	 * topology aware components are called in the order they were added to the
 	 * the array
 	 */
-	protected ArrayList<ILinkDiscoveryListener> linkDiscoveryAware;
+	protected List<ILinkDiscoveryListener> linkDiscoveryAware;
 	protected BlockingQueue<LDUpdate> updates;
 	protected Thread updatesThread;
 
@@ -1218,7 +1224,7 @@ IFloodlightModule, IInfoProvider {
 
 		// send
 		// no more try-catch. switch will silently fail
-		iofSwitch.write(pob.build());
+		iofSwitch.write(pob.build(), DISCOVERY_CATEGORY);
 	}
 
 	/**
@@ -2000,6 +2006,7 @@ IFloodlightModule, IInfoProvider {
 		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		debugEventService = context.getServiceImpl(IDebugEventService.class);
 		shutdownService = context.getServiceImpl(IShutdownService.class);
+		switchService.registerLogicalOFMessageCategory(DISCOVERY_CATEGORY);
 
 		// read our config options
 		Map<String, String> configOptions = context.getConfigParams(this);
@@ -2037,7 +2044,7 @@ IFloodlightModule, IInfoProvider {
 		this.autoPortFastFeature = AUTOPORTFAST_DEFAULT;
 
 		// We create this here because there is no ordering guarantee
-		this.linkDiscoveryAware = new ArrayList<ILinkDiscoveryListener>();
+		this.linkDiscoveryAware = new CopyOnWriteArrayList<ILinkDiscoveryListener>();
 		this.lock = new ReentrantReadWriteLock();
 		this.updates = new LinkedBlockingQueue<LDUpdate>();
 		this.links = new HashMap<Link, LinkInfo>();
@@ -0,0 +1,400 @@
+package net.floodlightcontroller.loadgen;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
+import org.projectfloodlight.openflow.protocol.OFCapabilities;
+import org.projectfloodlight.openflow.protocol.OFConfigFlags;
+import org.projectfloodlight.openflow.protocol.OFControllerRole;
+import org.projectfloodlight.openflow.protocol.OFEchoRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFPortConfig;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFPortFeatures;
+import org.projectfloodlight.openflow.protocol.OFPortState;
+import org.projectfloodlight.openflow.protocol.OFPortStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFTableFeatures;
+import org.projectfloodlight.openflow.protocol.OFTableStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One simulated OpenFlow 1.3 switch.
+ *
+ * It answers the controller's side of the handshake, echo, barrier, role
+ * and stats requests, and once it has been given a role and the run has
+ * started, sends packet-ins and times the flow-mods and packet-outs that
+ * answer them.
+ *
+ * Everything runs on the channel's event loop, so none of the state here
+ * needs locking.
+ */
+class FakeSwitch extends ChannelInboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(FakeSwitch.class);
+    private static final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private static final long TICK_US = 1000;
+
+    private final int index;
+    private final DatapathId dpid;
+    private final LoadGenerator.Settings settings;
+    private final LoadGeneratorStats stats;
+    private final PacketInGenerator generator;
+    private final long responseTimeoutNs;
+
+    private ChannelHandlerContext ctx;
+    private ScheduledFuture<?> ticker;
+    private boolean ready;
+    private long seq;
+    private double credits;
+    private long portPacketIns;
+    /* Packet-in key to the time it was sent, oldest first */
+    private final LinkedHashMap<Integer, Long> outstanding = new LinkedHashMap<Integer, Long>();
+    private final List<OFMessage> out = new ArrayList<OFMessage>();
+
+    FakeSwitch(int index, LoadGenerator.Settings settings, LoadGeneratorStats stats) {
+        this.index = index;
+        this.dpid = DatapathId.of(settings.dpidBase + index);
+        this.settings = settings;
+        this.stats = stats;
+        this.generator = new PacketInGenerator(settings.workload, index,
+                settings.hosts, settings.summaries);
+        this.responseTimeoutNs = TimeUnit.MILLISECONDS.toNanos(settings.responseTimeoutMs);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        stats.switchesConnected.incrementAndGet();
+        out.add(factory.buildHello().setXid(0).build());
+        flush();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        stats.switchesDisconnected.incrementAndGet();
+        if (ready) {
+            stats.switchesReady.decrementAndGet();
+        }
+        log.warn("Switch {} disconnected", dpid);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("Switch " + dpid + " closing after error", cause);
+        ctx.close();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        @SuppressWarnings("unchecked")
+        List<OFMessage> msgs = (List<OFMessage>) msg;
+        for (OFMessage m : msgs) {
+            processMessage(m);
+        }
+        if (ready && settings.rate == 0) {
+            // Throughput mode: keep the window full
+            sendPacketIns(Integer.MAX_VALUE);
+        }
+        flush();
+    }
+
+    private void flush() {
+        if (!out.isEmpty()) {
+            ctx.writeAndFlush(new ArrayList<OFMessage>(out), ctx.voidPromise());
+            out.clear();
+        }
+    }
+
+    private void processMessage(OFMessage m) {
+        switch (m.getType()) {
+        case HELLO:
+            break;
+        case FEATURES_REQUEST:
+            out.add(factory.buildFeaturesReply()
+                    .setXid(m.getXid())
+                    .setDatapathId(dpid)
+                    .setNBuffers(settings.unbuffered ? 0 : 256)
+                    .setNTables((short) 1)
+                    .setAuxiliaryId(OFAuxId.MAIN)
+                    .setCapabilities(EnumSet.of(OFCapabilities.FLOW_STATS,
+                            OFCapabilities.TABLE_STATS, OFCapabilities.PORT_STATS))
+                    .build());
+            break;
+        case GET_CONFIG_REQUEST:
+            out.add(factory.buildGetConfigReply()
+                    .setXid(m.getXid())
+                    .setFlags(EnumSet.noneOf(OFConfigFlags.class))
+                    .setMissSendLen(0xffff)
+                    .build());
+            break;
+        case SET_CONFIG:
+            break;
+        case BARRIER_REQUEST:
+            out.add(factory.buildBarrierReply().setXid(m.getXid()).build());
+            break;
+        case ECHO_REQUEST:
+            stats.echoRequests.incrementAndGet();
+            out.add(factory.buildEchoReply()
+                    .setXid(m.getXid())
+                    .setData(((OFEchoRequest) m).getData())
+                    .build());
+            break;
+        case ROLE_REQUEST:
+            OFRoleRequest rr = (OFRoleRequest) m;
+            OFControllerRole role = rr.getRole() == OFControllerRole.ROLE_NOCHANGE
+                    ? OFControllerRole.ROLE_EQUAL : rr.getRole();
+            out.add(factory.buildRoleReply()
+                    .setXid(m.getXid())
+                    .setRole(role)
+                    .setGenerationId(rr.getGenerationId())
+                    .build());
+            if (role != OFControllerRole.ROLE_SLAVE) {
+                ready();
+            }
+            break;
+        case STATS_REQUEST:
+            stats.statsRequests.incrementAndGet();
+            processStatsRequest((OFStatsRequest<?>) m);
+            break;
+        case FLOW_MOD:
+            stats.flowMods.incrementAndGet();
+            answered(((OFFlowMod) m).getBufferId(), null);
+            break;
+        case PACKET_OUT:
+            stats.packetOuts.incrementAndGet();
+            OFPacketOut po = (OFPacketOut) m;
+            answered(po.getBufferId(), po.getData());
+            break;
+        default:
+            log.trace("Switch {} ignoring {}", dpid, m.getType());
+            break;
+        }
+    }
+
+    private void processStatsRequest(OFStatsRequest<?> m) {
+        switch (m.getStatsType()) {
+        case DESC:
+            out.add(factory.buildDescStatsReply()
+                    .setXid(m.getXid())
+                    .setMfrDesc("Floodlight")
+                    .setHwDesc("Load generator")
+                    .setSwDesc("OF1.3 fake switch")
+                    .setSerialNum(Integer.toString(index))
+                    .setDpDesc(dpid.toString())
+                    .build());
+            break;
+        case PORT_DESC:
+            List<OFPortDesc> ports = new ArrayList<OFPortDesc>(settings.ports);
+            for (int p = 1; p <= settings.ports; p++) {
+                ports.add(factory.buildPortDesc()
+                        .setPortNo(OFPort.of(p))
+                        .setHwAddr(MacAddress.of(0x0A0000000000L | ((long) index << 16) | p))
+                        .setName("eth" + p)
+                        .setConfig(EnumSet.noneOf(OFPortConfig.class))
+                        .setState(EnumSet.of(OFPortState.LIVE))
+                        .setCurr(EnumSet.of(OFPortFeatures.PF_10GB_FD))
+                        .setCurrSpeed(10000000)
+                        .setMaxSpeed(10000000)
+                        .build());
+            }
+            out.add(factory.buildPortDescStatsReply().setXid(m.getXid()).setEntries(ports).build());
+            break;
+        case TABLE_FEATURES:
+            out.add(factory.buildTableFeaturesStatsReply()
+                    .setXid(m.getXid())
+                    .setEntries(Collections.<OFTableFeatures>emptyList())
+                    .build());
+            break;
+        case PORT:
+            List<OFPortStatsEntry> entries = new ArrayList<OFPortStatsEntry>(settings.ports);
+            long perPort = portPacketIns / settings.ports;
+            for (int p = 1; p <= settings.ports; p++) {
+                entries.add(factory.buildPortStatsEntry()
+                        .setPortNo(OFPort.of(p))
+                        .setRxPackets(U64.of(perPort))
+                        .setTxPackets(U64.of(perPort))
+                        .build());
+            }
+            out.add(factory.buildPortStatsReply().setXid(m.getXid()).setEntries(entries).build());
+            break;
+        case FLOW:
+            out.add(factory.buildFlowStatsReply()
+                    .setXid(m.getXid())
+                    .setEntries(Collections.<OFFlowStatsEntry>emptyList())
+                    .build());
+            break;
+        case AGGREGATE:
+            out.add(factory.buildAggregateStatsReply()
+                    .setXid(m.getXid())
+                    .setPacketCount(U64.ZERO)
+                    .setByteCount(U64.ZERO)
+                    .setFlowCount(0)
+                    .build());
+            break;
+        case TABLE:
+            out.add(factory.buildTableStatsReply()
+                    .setXid(m.getXid())
+                    .setEntries(Collections.singletonList((OFTableStatsEntry) factory.buildTableStatsEntry()
+                            .setTableId(TableId.ZERO)
+                            .setLookupCount(U64.of(portPacketIns))
+                            .build()))
+                    .build());
+            break;
+        default:
+            out.add(factory.errorMsgs().buildBadRequestErrorMsg()
+                    .setXid(m.getXid())
+                    .setCode(OFBadRequestCode.BAD_STAT)
+                    .build());
+            break;
+        }
+    }
+
+    private void ready() {
+        if (ready) {
+            return;
+        }
+        ready = true;
+        stats.switchesReady.incrementAndGet();
+        log.debug("Switch {} completed handshake", dpid);
+        ticker = ctx.executor().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, TICK_US, TICK_US, TimeUnit.MICROSECONDS);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (Iterator<Long> it = outstanding.values().iterator(); it.hasNext(); ) {
+            if (now - it.next() < responseTimeoutNs) {
+                break;
+            }
+            it.remove();
+            stats.timedOut.incrementAndGet();
+        }
+        if (!stats.isSending()) {
+            credits = 0;
+            return;
+        }
+        if (settings.rate > 0) {
+            // At most one second worth of packet-ins is saved up
+            credits = Math.min(credits + settings.rate * TICK_US / 1e6, settings.rate);
+            credits -= sendPacketIns((int) credits);
+        } else {
+            sendPacketIns(Integer.MAX_VALUE);
+        }
+        flush();
+    }
+
+    /**
+     * Send up to max packet-ins, fewer if the window is full or the
+     * channel cannot take more
+     * @return the number sent
+     */
+    private int sendPacketIns(int max) {
+        if (!stats.isSending()) {
+            return 0;
+        }
+        int window = settings.window > 0 ? settings.window : Integer.MAX_VALUE;
+        int sent = 0;
+        while (sent < max && outstanding.size() < window && ctx.channel().isWritable()) {
+            sendPacketIn();
+            sent++;
+        }
+        return sent;
+    }
+
+    private void sendPacketIn() {
+        long n = seq++;
+        int key = (int) (n & 0x7fffffff);
+        byte[] frame = generator.frame(n);
+        OFBufferId bufferId = OFBufferId.NO_BUFFER;
+        if (!settings.unbuffered) {
+            bufferId = OFBufferId.of(key);
+        } else if (settings.workload != PacketInWorkload.FLOW_SUMMARY) {
+            // Unbuffered packet-outs echo the frame; find the key at its end
+            frame = appendKey(frame, key);
+        }
+        OFPort inPort = OFPort.of(1 + (int) (n % settings.ports));
+        out.add(factory.buildPacketIn()
+                .setXid(0)
+                .setBufferId(bufferId)
+                .setTotalLen(frame.length)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setTableId(TableId.ZERO)
+                .setCookie(U64.ZERO)
+                .setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, inPort).build())
+                .setData(frame)
+                .build());
+        outstanding.put(key, System.nanoTime());
+        portPacketIns++;
+        stats.packetIns.incrementAndGet();
+    }
+
+    private static byte[] appendKey(byte[] frame, int key) {
+        byte[] b = new byte[frame.length + 4];
+        System.arraycopy(frame, 0, b, 0, frame.length);
+        b[frame.length] = (byte) (key >>> 24);
+        b[frame.length + 1] = (byte) (key >>> 16);
+        b[frame.length + 2] = (byte) (key >>> 8);
+        b[frame.length + 3] = (byte) key;
+        return b;
+    }
+
+    /*
+     * Match a flow-mod or packet-out to the packet-in it answers, by buffer
+     * ID or by the key at the end of the echoed frame. Responses that
+     * match nothing, e.g. the controller's own flows, are only counted.
+     */
+    private void answered(OFBufferId bufferId, byte[] data) {
+        Integer key = null;
+        if (bufferId != null && !bufferId.equals(OFBufferId.NO_BUFFER)) {
+            key = bufferId.getInt();
+        } else if (data != null && data.length >= 4 && settings.unbuffered) {
+            int n = data.length;
+            key = ((data[n - 4] & 0xff) << 24) | ((data[n - 3] & 0xff) << 16)
+                    | ((data[n - 2] & 0xff) << 8) | (data[n - 1] & 0xff);
+        }
+        if (key == null) {
+            return;
+        }
+        Long sentNs = outstanding.remove(key);
+        if (sentNs != null) {
+            stats.answered.incrementAndGet();
+            stats.responseLatency.record(System.nanoTime() - sentNs);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package net.floodlightcontroller.loadgen;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.internal.OFMessageDecoder;
+import net.floodlightcontroller.core.internal.OFMessageEncoder;
+import net.floodlightcontroller.core.util.NettyTransport;
+import net.floodlightcontroller.perfmon.LatencyHistogram;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Command-line load generator that measures how much packet-in load a
+ * controller on the local host can take, in the spirit of cbench.
+ *
+ * It connects a number of simulated OpenFlow 1.3 switches, waits for all
+ * of them to complete the handshake, and then has every switch send
+ * packet-ins. Each second it prints the packet-in and response rates and
+ * the percentiles of the time from a packet-in to the first flow-mod or
+ * packet-out that answers it, followed by a summary over the whole run.
+ *
+ * With --rate 0 each switch keeps --window packet-ins unanswered at all
+ * times (cbench throughput mode; --window 1 is cbench latency mode).
+ * Otherwise each switch sends --rate packet-ins per second, limited by
+ * --window if it is not 0.
+ *
+ * Example, 16 switches in throughput mode for 30 seconds:
+ * <pre>
+ * java -cp target/floodlight.jar net.floodlightcontroller.loadgen.LoadGenerator -s 16 -d 30
+ * </pre>
+ */
+public class LoadGenerator {
+    protected static class Settings {
+        @Option(name="--help", aliases="-h", usage="Show help")
+        protected boolean help;
+
+        @Option(name="--host", aliases="-c",
+                usage="Controller address (default \"localhost\")")
+        protected String host = "localhost";
+
+        @Option(name="--port", aliases="-p",
+                usage="Controller OpenFlow port (default 6653)")
+        protected int port = 6653;
+
+        @Option(name="--switches", aliases="-s",
+                usage="Number of simulated switches (default 16)")
+        protected int switches = 16;
+
+        @Option(name="--ports", usage="Ports per switch (default 4)")
+        protected int ports = 4;
+
+        @Option(name="--hosts", aliases="-M",
+                usage="Hosts (MACs) per switch (default 1000)")
+        protected int hosts = 1000;
+
+        @Option(name="--dpid-base",
+                usage="DPID of the first switch; the others follow (default 1)")
+        protected long dpidBase = 1;
+
+        @Option(name="--workload", aliases="-w",
+                usage="NEW_MAC, ARP, IPV4_TCP, IPV6_TCP or FLOW_SUMMARY (default NEW_MAC)")
+        protected PacketInWorkload workload = PacketInWorkload.NEW_MAC;
+
+        @Option(name="--summaries",
+                usage="Packet summaries per packet-in for FLOW_SUMMARY (default 20)")
+        protected int summaries = 20;
+
+        @Option(name="--rate", aliases="-r",
+                usage="Packet-ins per second per switch, 0 to keep the window full (default 0)")
+        protected int rate = 0;
+
+        @Option(name="--window",
+                usage="Unanswered packet-ins allowed per switch, 0 for no limit (default 64)")
+        protected int window = 64;
+
+        @Option(name="--unbuffered",
+                usage="Send packet-ins without buffer IDs, so responses carry the frame")
+        protected boolean unbuffered = false;
+
+        @Option(name="--response-timeout",
+                usage="Milliseconds after which an unanswered packet-in is counted as lost (default 1000)")
+        protected int responseTimeoutMs = 1000;
+
+        @Option(name="--duration", aliases="-d",
+                usage="Seconds to measure for (default 10)")
+        protected int duration = 10;
+
+        @Option(name="--warmup",
+                usage="Seconds of load before measuring starts (default 2)")
+        protected int warmup = 2;
+
+        @Option(name="--connect-delay",
+                usage="Milliseconds between switch connections (default 0)")
+        protected int connectDelayMs = 0;
+
+        @Option(name="--handshake-timeout",
+                usage="Seconds to wait for all switches to complete the handshake (default 60)")
+        protected int handshakeTimeout = 60;
+
+        @Option(name="--threads", aliases="-t",
+                usage="Event loop threads, 0 for netty's default (default 0)")
+        protected int threads = 0;
+
+        CmdLineParser parser = new CmdLineParser(this);
+
+        protected void init(String[] args) {
+            try {
+                parser.parseArgument(args);
+            } catch (CmdLineException e) {
+                System.err.println(e.getMessage());
+                parser.printUsage(System.err);
+                System.exit(1);
+            }
+            if (help) {
+                parser.printUsage(System.err);
+                System.exit(1);
+            }
+            if (switches < 1 || switches > 0xffff || ports < 1 || hosts < 2 || hosts > 0xffff
+                    || summaries < 1 || rate < 0 || window < 0 || duration < 1 || warmup < 0
+                    || (rate == 0 && window == 0)) {
+                System.err.println("Invalid arguments: need 1 <= switches <= 65535, ports >= 1, " +
+                                   "2 <= hosts <= 65535, summaries >= 1, duration >= 1, " +
+                                   "and a window if the rate is 0");
+                parser.printUsage(System.err);
+                System.exit(1);
+            }
+        }
+    }
+
+    private final Settings settings;
+    private final LoadGeneratorStats stats;
+    private final PrintStream out = System.out;
+
+    public LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.stats = new LoadGeneratorStats(settings.duration + settings.warmup);
+    }
+
+    /**
+     * @return the process exit code
+     */
+    public int run() throws InterruptedException {
+        NettyTransport transport = new NettyTransport(0, 0, 0, 0)
+                .setWorkerThreads(settings.threads);
+        EventLoopGroup group = transport.newWorkerGroup(
+                new ThreadFactoryBuilder().setNameFormat("FakeSwitch-%d").setDaemon(true).build());
+        try {
+            Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NettyTransport.channelClass(group))
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, transport.getAllocator());
+
+            out.printf("Connecting %d switches to %s:%d, workload %s%n",
+                    settings.switches, settings.host, settings.port, settings.workload);
+            for (int i = 0; i < settings.switches; i++) {
+                final int index = i;
+                bootstrap.clone()
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                .addLast("ofmessagedecoder", new OFMessageDecoder())
+                                .addLast("ofmessageencoder", new OFMessageEncoder())
+                                .addLast("fakeswitch", new FakeSwitch(index, settings, stats));
+                        }
+                    })
+                    .connect(settings.host, settings.port);
+                if (settings.connectDelayMs > 0) {
+                    Thread.sleep(settings.connectDelayMs);
+                }
+            }
+
+            if (!awaitHandshakes()) {
+                return 1;
+            }
+
+            stats.setSending(true);
+            if (settings.warmup > 0) {
+                out.printf("Warming up for %d s%n", settings.warmup);
+                report(settings.warmup, false);
+            }
+            stats.responseLatency.reset();
+            LoadGeneratorStats.Snapshot start = stats.snapshot();
+            List<Double> responseRates = report(settings.duration, true);
+            LoadGeneratorStats.Snapshot end = stats.snapshot();
+            stats.setSending(false);
+
+            summarize(start, end, responseRates);
+            return 0;
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private boolean awaitHandshakes() throws InterruptedException {
+        long startNs = System.nanoTime();
+        long deadline = startNs + TimeUnit.SECONDS.toNanos(settings.handshakeTimeout);
+        while (stats.switchesReady.get() < settings.switches && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+        int ready = stats.switchesReady.get();
+        if (ready == 0) {
+            out.printf("No switch completed the handshake within %d s (%d connected)%n",
+                    settings.handshakeTimeout, stats.switchesConnected.get());
+            return false;
+        }
+        if (ready < settings.switches) {
+            out.printf("Only %d of %d switches completed the handshake within %d s, continuing%n",
+                    ready, settings.switches, settings.handshakeTimeout);
+        } else {
+            out.printf("%d switches completed the handshake in %d ms%n", ready, ms);
+        }
+        return true;
+    }
+
+    /**
+     * Print one line per second for the given number of seconds
+     * @return the response rate of each second
+     */
+    private List<Double> report(int seconds, boolean measuring) throws InterruptedException {
+        List<Double> responseRates = new ArrayList<Double>(seconds);
+        if (measuring) {
+            out.printf("%5s %8s %10s %10s %10s %10s %8s %9s %9s %9s%n",
+                    "sec", "switches", "pkt-in/s", "answered/s", "flow-mod/s", "pkt-out/s",
+                    "lost/s", "p50-us", "p99-us", "p999-us");
+        }
+        LoadGeneratorStats.Snapshot prev = stats.snapshot();
+        long next = prev.nanoTime;
+        for (int i = 1; i <= seconds; i++) {
+            next += TimeUnit.SECONDS.toNanos(1);
+            long sleepNs = next - System.nanoTime();
+            if (sleepNs > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNs);
+            }
+            LoadGeneratorStats.Snapshot now = stats.snapshot();
+            LatencyHistogram h = stats.responseLatency.tick();
+            double secs = (now.nanoTime - prev.nanoTime) / 1e9;
+            double answered = (now.answered - prev.answered) / secs;
+            responseRates.add(answered);
+            if (measuring) {
+                out.printf("%5d %8d %10.0f %10.0f %10.0f %10.0f %8.0f %9.1f %9.1f %9.1f%n",
+                        i, stats.switchesReady.get(),
+                        (now.packetIns - prev.packetIns) / secs, answered,
+                        (now.flowMods - prev.flowMods) / secs,
+                        (now.packetOuts - prev.packetOuts) / secs,
+                        (now.timedOut - prev.timedOut) / secs,
+                        h.getP50() / 1e3, h.getP99() / 1e3, h.getP999() / 1e3);
+            }
+            prev = now;
+        }
+        return responseRates;
+    }
+
+    private void summarize(LoadGeneratorStats.Snapshot start, LoadGeneratorStats.Snapshot end,
+            List<Double> responseRates) {
+        double secs = (end.nanoTime - start.nanoTime) / 1e9;
+        double min = Double.MAX_VALUE, max = 0, sum = 0, sumSq = 0;
+        for (double r : responseRates) {
+            min = Math.min(min, r);
+            max = Math.max(max, r);
+            sum += r;
+            sumSq += r * r;
+        }
+        int n = responseRates.size();
+        double avg = sum / n;
+        double stdev = Math.sqrt(Math.max(0, sumSq / n - avg * avg));
+        LatencyHistogram h = stats.responseLatency.getHistogram(0);
+
+        out.printf("RESULT: %d switches, %d s: answered packet-ins/s min/max/avg/stdev = %.0f/%.0f/%.0f/%.0f%n",
+                stats.switchesReady.get(), n, min, max, avg, stdev);
+        out.printf("  sent %d packet-ins (%.0f/s), received %d flow-mods and %d packet-outs, %d packet-ins unanswered%n",
+                end.packetIns - start.packetIns, (end.packetIns - start.packetIns) / secs,
+                end.flowMods - start.flowMods, end.packetOuts - start.packetOuts,
+                end.timedOut - start.timedOut);
+        out.printf("  response latency us: mean %.1f p50 %.1f p99 %.1f p99.9 %.1f max %.1f (%d samples)%n",
+                h.getMean() / 1e3, h.getP50() / 1e3, h.getP99() / 1e3, h.getP999() / 1e3,
+                h.getMax() / 1e3, h.getCount());
+        out.printf("  answered %d echo and %d stats requests, %d switches disconnected%n",
+                stats.echoRequests.get(), stats.statsRequests.get(),
+                stats.switchesDisconnected.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = new Settings();
+        settings.init(args);
+        System.exit(new LoadGenerator(settings).run());
+    }
+}
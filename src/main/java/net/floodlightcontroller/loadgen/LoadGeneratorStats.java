@@ -0,0 +1,67 @@
+package net.floodlightcontroller.loadgen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.perfmon.LatencyRecorder;
+
+/**
+ * Counters shared by all simulated switches of a load generator run.
+ */
+class LoadGeneratorStats {
+    final AtomicInteger switchesConnected = new AtomicInteger();
+    final AtomicInteger switchesReady = new AtomicInteger();
+    final AtomicInteger switchesDisconnected = new AtomicInteger();
+
+    final AtomicLong packetIns = new AtomicLong();
+    final AtomicLong flowMods = new AtomicLong();
+    final AtomicLong packetOuts = new AtomicLong();
+    /* Packet-ins that got their first flow-mod or packet-out */
+    final AtomicLong answered = new AtomicLong();
+    /* Packet-ins that got no response before the response timeout */
+    final AtomicLong timedOut = new AtomicLong();
+    final AtomicLong statsRequests = new AtomicLong();
+    final AtomicLong echoRequests = new AtomicLong();
+
+    /* Time from packet-in to its first flow-mod or packet-out */
+    final LatencyRecorder responseLatency;
+
+    private volatile boolean sending;
+
+    LoadGeneratorStats(int reportIntervals) {
+        responseLatency = new LatencyRecorder("response", reportIntervals);
+    }
+
+    boolean isSending() {
+        return sending;
+    }
+
+    void setSending(boolean sending) {
+        this.sending = sending;
+    }
+
+    /**
+     * A point in time copy of the message counters
+     */
+    static class Snapshot {
+        final long nanoTime;
+        final long packetIns;
+        final long flowMods;
+        final long packetOuts;
+        final long answered;
+        final long timedOut;
+
+        Snapshot(LoadGeneratorStats s) {
+            nanoTime = System.nanoTime();
+            packetIns = s.packetIns.get();
+            flowMods = s.flowMods.get();
+            packetOuts = s.packetOuts.get();
+            answered = s.answered.get();
+            timedOut = s.timedOut.get();
+        }
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+}
@@ -0,0 +1,176 @@
+package net.floodlightcontroller.loadgen;
+
+import java.nio.ByteBuffer;
+
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.IPv6;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.packet.UDP;
+
+import org.projectfloodlight.openflow.types.ArpOpcode;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+/**
+ * Builds the frames carried in the packet-ins of one simulated switch.
+ *
+ * Each switch has its own set of hosts, so MACs and addresses never
+ * collide between switches. The n-th packet goes from host n to host
+ * n + 1, cycling through the set.
+ */
+class PacketInGenerator {
+    /* Layout of the hardware packet summaries, see FlowStatisticsManager */
+    static final int SUMMARY_PAD = 16;
+    static final int SUMMARY_LENGTH = 68;
+
+    private static final byte TCP_SYN = 0x02;
+
+    private final PacketInWorkload workload;
+    private final int switchIndex;
+    private final int hosts;
+    private final int summariesPerPacketIn;
+
+    /**
+     * @param switchIndex distinguishes the hosts of this switch from those
+     * of the others, at most 2^16 switches
+     * @param hosts number of hosts behind the switch, at most 2^16
+     * @param summariesPerPacketIn records per packet-in for FLOW_SUMMARY
+     */
+    PacketInGenerator(PacketInWorkload workload, int switchIndex, int hosts,
+            int summariesPerPacketIn) {
+        this.workload = workload;
+        this.switchIndex = switchIndex;
+        this.hosts = hosts;
+        this.summariesPerPacketIn = summariesPerPacketIn;
+    }
+
+    private MacAddress mac(int host) {
+        return MacAddress.of(0x020000000000L | ((long) switchIndex << 16) | host);
+    }
+
+    private IPv4Address ipv4(int host) {
+        return IPv4Address.of(0x0A000000 | (((switchIndex << 16) + host) & 0xFFFFFF));
+    }
+
+    private IPv6Address ipv6(int host) {
+        return IPv6Address.of(0xFD00000000000000L, ((long) switchIndex << 16) | host);
+    }
+
+    /**
+     * @return the frame of the seq-th packet-in of this switch
+     */
+    byte[] frame(long seq) {
+        int src = (int) (seq % hosts);
+        int dst = (int) ((seq + 1) % hosts);
+        int srcPort = 1024 + (int) (seq % 50000);
+
+        Ethernet eth = new Ethernet()
+            .setSourceMACAddress(mac(src))
+            .setDestinationMACAddress(mac(dst));
+        switch (workload) {
+        case NEW_MAC:
+            eth.setEtherType(EthType.IPv4);
+            eth.setPayload(new IPv4()
+                .setTtl((byte) 64)
+                .setProtocol(IpProtocol.UDP)
+                .setSourceAddress(ipv4(src))
+                .setDestinationAddress(ipv4(dst))
+                .setPayload(new UDP()
+                    .setSourcePort(TransportPort.of(srcPort))
+                    .setDestinationPort(TransportPort.of(9))
+                    .setPayload(new Data(new byte[18]))));
+            break;
+        case ARP:
+            eth.setDestinationMACAddress(MacAddress.BROADCAST);
+            eth.setEtherType(EthType.ARP);
+            eth.setPayload(new ARP()
+                .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setHardwareAddressLength((byte) 6)
+                .setProtocolAddressLength((byte) 4)
+                .setOpCode(ArpOpcode.REQUEST)
+                .setSenderHardwareAddress(mac(src))
+                .setSenderProtocolAddress(ipv4(src))
+                .setTargetHardwareAddress(MacAddress.NONE)
+                .setTargetProtocolAddress(ipv4(dst)));
+            break;
+        case IPV4_TCP:
+            eth.setEtherType(EthType.IPv4);
+            eth.setPayload(new IPv4()
+                .setTtl((byte) 64)
+                .setProtocol(IpProtocol.TCP)
+                .setSourceAddress(ipv4(src))
+                .setDestinationAddress(ipv4(dst))
+                .setPayload(syn(srcPort)));
+            break;
+        case IPV6_TCP:
+            eth.setEtherType(EthType.IPv6);
+            eth.setPayload(new IPv6()
+                .setVersion((byte) 6)
+                .setHopLimit((byte) 64)
+                .setNextHeader(IpProtocol.TCP)
+                .setSourceAddress(ipv6(src))
+                .setDestinationAddress(ipv6(dst))
+                .setPayload(syn(srcPort)));
+            break;
+        case FLOW_SUMMARY:
+            return summaries(seq);
+        default:
+            throw new IllegalStateException("Unknown workload " + workload);
+        }
+        return eth.serialize();
+    }
+
+    private static TCP syn(int srcPort) {
+        return new TCP()
+            .setSourcePort(TransportPort.of(srcPort))
+            .setDestinationPort(TransportPort.of(80))
+            .setFlags(TCP_SYN)
+            .setWindowSize((short) 8192);
+    }
+
+    /*
+     * Each record is an IPv6 header, a TCP header, a 32-bit timestamp and
+     * the input port, padded to SUMMARY_LENGTH. Consecutive records
+     * belong to consecutive flows.
+     */
+    private byte[] summaries(long seq) {
+        ByteBuffer bb = ByteBuffer.allocate(SUMMARY_PAD + summariesPerPacketIn * SUMMARY_LENGTH);
+        bb.position(SUMMARY_PAD);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        for (int i = 0; i < summariesPerPacketIn; i++) {
+            long n = seq * summariesPerPacketIn + i;
+            int src = (int) (n % hosts);
+            int dst = (int) ((n + 1) % hosts);
+            int start = bb.position();
+            // IPv6 header
+            bb.putInt(6 << 28);
+            bb.putShort((short) 20);
+            bb.put((byte) IpProtocol.TCP.getIpProtocolNumber());
+            bb.put((byte) 64);
+            bb.put(ipv6(src).getBytes());
+            bb.put(ipv6(dst).getBytes());
+            // TCP header
+            bb.putShort((short) (1024 + n % 50000));
+            bb.putShort((short) 80);
+            bb.putInt((int) n);
+            bb.putInt(0);
+            bb.putShort((short) ((5 << 12) | TCP_SYN));
+            bb.putShort((short) 8192);
+            bb.putShort((short) 0);
+            bb.putShort((short) 0);
+            // Timestamp and input port
+            bb.putInt(now);
+            bb.put((byte) (1 + n % 48));
+            bb.position(start + SUMMARY_LENGTH);
+        }
+        return bb.array();
+    }
+}
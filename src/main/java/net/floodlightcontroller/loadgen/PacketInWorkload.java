@@ -0,0 +1,20 @@
+package net.floodlightcontroller.loadgen;
+
+/**
+ * Kinds of packet-in the load generator can send.
+ */
+public enum PacketInWorkload {
+    /** Ethernet/IPv4/UDP between a rotating set of MACs, like cbench */
+    NEW_MAC,
+    /** ARP requests between the simulated hosts */
+    ARP,
+    /** IPv4 TCP SYNs between the simulated hosts */
+    IPV4_TCP,
+    /** IPv6 TCP SYNs between the simulated hosts */
+    IPV6_TCP,
+    /**
+     * Packet summaries as exported by the hardware switches to the flow
+     * statistics module: a pad followed by a batch of fixed size records
+     */
+    FLOW_SUMMARY
+}
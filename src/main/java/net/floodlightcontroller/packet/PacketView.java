@@ -0,0 +1,354 @@
+package net.floodlightcontroller.packet;
+
+/**
+ * A read-only, lazily decoded view of an Ethernet frame.
+ *
+ * Headers are parsed on demand straight from the wrapped byte[] and are
+ * returned as primitives, so inspecting a packet-in does not allocate an
+ * {@link Ethernet} object tree. The legacy tree is only built (once) when
+ * {@link #getEthernet()} is called.
+ *
+ * A view is not thread-safe; it is meant to live in the FloodlightContext
+ * of a single message. Accessors return {@link #NONE} when the requested
+ * header is absent or truncated.
+ */
+public class PacketView {
+    public static final int NONE = -1;
+
+    private static final int ETH_HEADER_LEN = 14;
+    private static final int VLAN_TAG_LEN = 4;
+    private static final int ETH_TYPE_VLAN = 0x8100;
+    private static final int IPV4_MIN_HEADER_LEN = 20;
+    private static final int IPV6_HEADER_LEN = 40;
+
+    private static final int IPV6_EXT_HOP_BY_HOP = 0;
+    private static final int IPV6_EXT_ROUTING = 43;
+    private static final int IPV6_EXT_FRAGMENT = 44;
+    private static final int IPV6_EXT_AH = 51;
+    private static final int IPV6_EXT_DEST_OPTS = 60;
+
+    private static final int PROTO_TCP = 6;
+    private static final int PROTO_UDP = 17;
+    private static final int PROTO_SCTP = 132;
+
+    private byte[] data;
+    private int offset;
+    private int length;
+
+    private boolean l2Parsed;
+    private int etherType;
+    private short vlanId;
+    private byte priorityCode;
+    private int l3Offset;
+
+    private boolean l3Parsed;
+    private int ipProtocol;
+    private int l4Offset;
+
+    private Ethernet ethernet;
+
+    public PacketView(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public PacketView(byte[] data, int offset, int length) {
+        wrap(data, offset, length);
+    }
+
+    /**
+     * Point this view at a new frame, discarding any cached parse state.
+     * Allows a single view to be reused across messages.
+     * @return this view
+     */
+    public PacketView wrap(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid offset " + offset +
+                    " / length " + length + " for buffer of " + data.length);
+        }
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.l2Parsed = false;
+        this.l3Parsed = false;
+        this.ethernet = null;
+        return this;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    // ***************
+    // Layer 2
+    // ***************
+
+    /**
+     * @return the destination MAC in the low 48 bits, or NONE if truncated
+     */
+    public long getDestinationMAC() {
+        if (length < ETH_HEADER_LEN) return NONE;
+        return getU48(offset);
+    }
+
+    /**
+     * @return the source MAC in the low 48 bits, or NONE if truncated
+     */
+    public long getSourceMAC() {
+        if (length < ETH_HEADER_LEN) return NONE;
+        return getU48(offset + 6);
+    }
+
+    public boolean isBroadcast() {
+        return getDestinationMAC() == 0xffffffffffffL;
+    }
+
+    public boolean isMulticast() {
+        return length >= ETH_HEADER_LEN && (data[offset] & 0x01) != 0;
+    }
+
+    /**
+     * @return the ethertype following any 802.1Q tag, or NONE if truncated
+     */
+    public int getEtherType() {
+        parseL2();
+        return etherType;
+    }
+
+    /**
+     * @return the 802.1Q VLAN id, or {@link Ethernet#VLAN_UNTAGGED}
+     */
+    public short getVlanID() {
+        parseL2();
+        return vlanId;
+    }
+
+    public byte getPriorityCode() {
+        parseL2();
+        return priorityCode;
+    }
+
+    // ***************
+    // Layer 3
+    // ***************
+
+    public boolean isIPv4() {
+        return getEtherType() == (Ethernet.TYPE_IPv4 & 0xffff);
+    }
+
+    public boolean isIPv6() {
+        return getEtherType() == (Ethernet.TYPE_IPv6 & 0xffff);
+    }
+
+    public boolean isARP() {
+        return getEtherType() == (Ethernet.TYPE_ARP & 0xffff);
+    }
+
+    public boolean isLLDP() {
+        return getEtherType() == (Ethernet.TYPE_LLDP & 0xffff);
+    }
+
+    /**
+     * @return the IPv4 protocol or IPv6 upper-layer next header (after
+     * skipping extension headers), or NONE if not IP
+     */
+    public int getIpProtocol() {
+        parseL3();
+        return ipProtocol;
+    }
+
+    /**
+     * @return the raw IPv4 source address; only meaningful if {@link #isIPv4()}
+     */
+    public int getIPv4Source() {
+        return isIPv4() && hasL3(IPV4_MIN_HEADER_LEN) ? getInt(l3Offset + 12) : 0;
+    }
+
+    /**
+     * @return the raw IPv4 destination address; only meaningful if {@link #isIPv4()}
+     */
+    public int getIPv4Destination() {
+        return isIPv4() && hasL3(IPV4_MIN_HEADER_LEN) ? getInt(l3Offset + 16) : 0;
+    }
+
+    public long getIPv6SourceHigh() {
+        return isIPv6() && hasL3(IPV6_HEADER_LEN) ? getLong(l3Offset + 8) : 0;
+    }
+
+    public long getIPv6SourceLow() {
+        return isIPv6() && hasL3(IPV6_HEADER_LEN) ? getLong(l3Offset + 16) : 0;
+    }
+
+    public long getIPv6DestinationHigh() {
+        return isIPv6() && hasL3(IPV6_HEADER_LEN) ? getLong(l3Offset + 24) : 0;
+    }
+
+    public long getIPv6DestinationLow() {
+        return isIPv6() && hasL3(IPV6_HEADER_LEN) ? getLong(l3Offset + 32) : 0;
+    }
+
+    // ***************
+    // Layer 4
+    // ***************
+
+    /**
+     * @return the TCP/UDP/SCTP source port, or NONE for other protocols,
+     * non-initial fragments and truncated packets
+     */
+    public int getTransportSource() {
+        parseL3();
+        return hasPorts() ? getU16(l4Offset) : NONE;
+    }
+
+    /**
+     * @return the TCP/UDP/SCTP destination port, or NONE for other protocols,
+     * non-initial fragments and truncated packets
+     */
+    public int getTransportDestination() {
+        parseL3();
+        return hasPorts() ? getU16(l4Offset + 2) : NONE;
+    }
+
+    /**
+     * @return the offset into {@link #getData()} of the transport header, or
+     * NONE if it could not be located
+     */
+    public int getTransportOffset() {
+        parseL3();
+        return l4Offset;
+    }
+
+    // ***************
+    // Legacy object tree
+    // ***************
+
+    /**
+     * Fully deserialize the frame into an {@link Ethernet} tree. The result
+     * is cached, so later calls (and later listeners) share the same object.
+     */
+    public Ethernet getEthernet() {
+        if (ethernet == null) {
+            Ethernet eth = new Ethernet();
+            eth.deserialize(data, offset, length);
+            ethernet = eth;
+        }
+        return ethernet;
+    }
+
+    /**
+     * @return true if {@link #getEthernet()} has already been called
+     */
+    public boolean isEthernetDecoded() {
+        return ethernet != null;
+    }
+
+    // ***************
+    // Parsing
+    // ***************
+
+    private void parseL2() {
+        if (l2Parsed) return;
+        l2Parsed = true;
+        vlanId = Ethernet.VLAN_UNTAGGED;
+        priorityCode = 0;
+        if (length < ETH_HEADER_LEN) {
+            etherType = NONE;
+            l3Offset = NONE;
+            return;
+        }
+        int pos = offset + 12;
+        int type = getU16(pos);
+        if (type == ETH_TYPE_VLAN) {
+            if (length < ETH_HEADER_LEN + VLAN_TAG_LEN) {
+                etherType = NONE;
+                l3Offset = NONE;
+                return;
+            }
+            int tci = getU16(pos + 2);
+            priorityCode = (byte) ((tci >> 13) & 0x07);
+            vlanId = (short) (tci & 0x0fff);
+            pos += VLAN_TAG_LEN;
+            type = getU16(pos);
+        }
+        etherType = type;
+        l3Offset = pos + 2;
+    }
+
+    private void parseL3() {
+        if (l3Parsed) return;
+        l3Parsed = true;
+        ipProtocol = NONE;
+        l4Offset = NONE;
+        if (isIPv4()) {
+            if (!hasL3(IPV4_MIN_HEADER_LEN)) return;
+            int ihl = (data[l3Offset] & 0x0f) * 4;
+            ipProtocol = data[l3Offset + 9] & 0xff;
+            int fragOffset = getU16(l3Offset + 6) & IPv4.IPV4_OFFSET_MASK;
+            if (ihl >= IPV4_MIN_HEADER_LEN && fragOffset == 0 && hasL3(ihl)) {
+                l4Offset = l3Offset + ihl;
+            }
+        } else if (isIPv6()) {
+            if (!hasL3(IPV6_HEADER_LEN)) return;
+            int next = data[l3Offset + 6] & 0xff;
+            int pos = l3Offset + IPV6_HEADER_LEN;
+            int end = offset + length;
+            boolean initialFragment = true;
+            while (pos + 8 <= end) {
+                if (next == IPV6_EXT_HOP_BY_HOP || next == IPV6_EXT_ROUTING
+                        || next == IPV6_EXT_DEST_OPTS) {
+                    int hdrLen = ((data[pos + 1] & 0xff) + 1) * 8;
+                    next = data[pos] & 0xff;
+                    pos += hdrLen;
+                } else if (next == IPV6_EXT_FRAGMENT) {
+                    initialFragment = (getU16(pos + 2) & 0xfff8) == 0;
+                    next = data[pos] & 0xff;
+                    pos += 8;
+                } else if (next == IPV6_EXT_AH) {
+                    int hdrLen = ((data[pos + 1] & 0xff) + 2) * 4;
+                    next = data[pos] & 0xff;
+                    pos += hdrLen;
+                } else {
+                    break;
+                }
+            }
+            ipProtocol = next;
+            if (initialFragment && pos <= end) {
+                l4Offset = pos;
+            }
+        }
+    }
+
+    private boolean hasL3(int bytes) {
+        return l3Offset != NONE && l3Offset + bytes <= offset + length;
+    }
+
+    private boolean hasPorts() {
+        return l4Offset != NONE && l4Offset + 4 <= offset + length
+                && (ipProtocol == PROTO_TCP || ipProtocol == PROTO_UDP
+                        || ipProtocol == PROTO_SCTP);
+    }
+
+    private int getU16(int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private int getInt(int pos) {
+        return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+                | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+    }
+
+    private long getU48(int pos) {
+        return ((long) getU16(pos) << 32) | (getInt(pos + 2) & 0xffffffffL);
+    }
+
+    private long getLong(int pos) {
+        return ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xffffffffL);
+    }
+}
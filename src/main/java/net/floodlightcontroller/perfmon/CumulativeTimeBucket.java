@@ -18,43 +18,49 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import net.floodlightcontroller.core.IOFMessageListener;
 
+/**
+ * Processing time of packet-ins as a whole and per listener. Updated
+ * without a lock from every thread processing packet-ins; the average and
+ * deviation are derived when read.
+ */
 @JsonSerialize(using=CumulativeTimeBucketJSONSerializer.class)
 public class CumulativeTimeBucket {
-    private long startTime_ns; // First pkt time-stamp in this bucket
-    private Map<Integer, OneComponentTime> compStats;
-    private long totalPktCnt;
-    private long totalProcTimeNs; // total processing time for one pkt in
-    private long sumSquaredProcTimeNs2;
-    private long maxTotalProcTimeNs;
-    private long minTotalProcTimeNs;
-    private long avgTotalProcTimeNs;
-    private long sigmaTotalProcTimeNs; // std. deviation
+    private volatile long startTime_ns; // First pkt time-stamp in this bucket
+    private ConcurrentMap<Integer, OneComponentTime> compStats;
+    private final AtomicLong totalPktCnt = new AtomicLong();
+    private final AtomicLong totalProcTimeNs = new AtomicLong(); // total processing time for one pkt in
+    private final AtomicLong sumSquaredProcTimeNs2 = new AtomicLong();
+    private final AtomicLong maxTotalProcTimeNs = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong minTotalProcTimeNs = new AtomicLong(Long.MAX_VALUE);
+    private volatile long sigmaTotalProcTimeNs; // std. deviation
 
     public long getStartTimeNs() {
         return startTime_ns;
     }
 
     public long getTotalPktCnt() {
-        return totalPktCnt;
+        return totalPktCnt.get();
     }
 
     public long getAverageProcTimeNs() {
-        return avgTotalProcTimeNs;
+        long n = totalPktCnt.get();
+        return n == 0 ? 0 : totalProcTimeNs.get() / n;
     }
 
     public long getMinTotalProcTimeNs() {
-        return minTotalProcTimeNs;
+        return minTotalProcTimeNs.get();
     }
 
     public long getMaxTotalProcTimeNs() {
-        return maxTotalProcTimeNs;
+        return maxTotalProcTimeNs.get();
     }
 
     public long getTotalSigmaProcTimeNs() {
@@ -78,21 +84,16 @@ public class CumulativeTimeBucket {
         startTime_ns = System.nanoTime();
     }
 
-    private void updateSquaredProcessingTime(long curTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(curTimeNs, 2));
-    }
-
     /**
      * Resets all counters and counters for each component time
      */
     public void reset() {
         startTime_ns = System.nanoTime();
-        totalPktCnt = 0;
-        totalProcTimeNs = 0;
-        avgTotalProcTimeNs = 0;
-        sumSquaredProcTimeNs2 = 0;
-        maxTotalProcTimeNs = Long.MIN_VALUE;
-        minTotalProcTimeNs = Long.MAX_VALUE;
+        totalPktCnt.set(0);
+        totalProcTimeNs.set(0);
+        sumSquaredProcTimeNs2.set(0);
+        maxTotalProcTimeNs.set(Long.MIN_VALUE);
+        minTotalProcTimeNs.set(Long.MAX_VALUE);
         sigmaTotalProcTimeNs = 0;
         for (OneComponentTime oct : compStats.values()) {
             oct.resetAllCounters();
@@ -102,9 +103,10 @@ public class CumulativeTimeBucket {
     private void computeSigma() {
         // Computes std. deviation from the sum of count numbers and from
         // the sum of the squares of count numbers
-        double temp = totalProcTimeNs;
-        temp = Math.pow(temp, 2) / totalPktCnt;
-        temp = (sumSquaredProcTimeNs2 - temp) / totalPktCnt;
+        long n = totalPktCnt.get();
+        double temp = totalProcTimeNs.get();
+        temp = Math.pow(temp, 2) / n;
+        temp = (sumSquaredProcTimeNs2.get() - temp) / n;
         sigmaTotalProcTimeNs = (long) Math.sqrt(temp);
     }
 
@@ -118,21 +120,23 @@ public class CumulativeTimeBucket {
     }
 
     public void updatePerPacketCounters(long procTimeNs) {
-        totalPktCnt++;
-        totalProcTimeNs += procTimeNs;
-        avgTotalProcTimeNs = totalProcTimeNs / totalPktCnt;
-        updateSquaredProcessingTime(procTimeNs);
-
-        if (procTimeNs > maxTotalProcTimeNs) {
-            maxTotalProcTimeNs = procTimeNs;
-        }
-
-        if (procTimeNs < minTotalProcTimeNs) {
-            minTotalProcTimeNs = procTimeNs;
-        }
+        totalPktCnt.incrementAndGet();
+        totalProcTimeNs.addAndGet(procTimeNs);
+        sumSquaredProcTimeNs2.addAndGet((long) Math.pow(procTimeNs, 2));
+        OneComponentTime.raiseTo(maxTotalProcTimeNs, procTimeNs);
+        OneComponentTime.lowerTo(minTotalProcTimeNs, procTimeNs);
     }
 
     public void updateOneComponent(IOFMessageListener l, long procTimeNs) {
-        compStats.get(l.hashCode()).updatePerPacketCounters(procTimeNs);
+        OneComponentTime oct = compStats.get(l.hashCode());
+        if (oct == null) {
+            // A listener added after the bucket was created
+            OneComponentTime added = new OneComponentTime(l);
+            oct = compStats.putIfAbsent(added.hashCode(), added);
+            if (oct == null) {
+                oct = added;
+            }
+        }
+        oct.updatePerPacketCounters(procTimeNs);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.Map;
+
+/**
+ * Receives the packet-in latency histograms of each completed interval
+ * @see IPktInProcessingTimeService#addLatencySnapshotListener(ILatencySnapshotListener)
+ */
+public interface ILatencySnapshotListener {
+    /**
+     * Called from the perfmon timer thread once per interval while
+     * performance monitoring is enabled. Implementations must not block.
+     * @param intervalSeconds length of the interval
+     * @param histograms histograms of the samples recorded during the
+     * interval, keyed by listener name and
+     * {@link IPktInProcessingTimeService#PIPELINE} for the whole chain
+     */
+    public void latencySnapshot(int intervalSeconds, Map<String, LatencyHistogram> histograms);
+}
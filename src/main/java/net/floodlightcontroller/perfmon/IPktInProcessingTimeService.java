@@ -17,6 +17,7 @@
 package net.floodlightcontroller.perfmon;
 
 import java.util.List;
+import java.util.Map;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 
@@ -27,6 +28,11 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 
 public interface IPktInProcessingTimeService extends IFloodlightService {
 
+    /**
+     * Name of the histogram covering the whole listener chain
+     */
+    public static final String PIPELINE = "pipeline";
+
     /**
      * Creates time buckets for a set of modules to measure their performance
      * @param listeners The message listeners to create time buckets for
@@ -50,4 +56,22 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public void setEnabled(boolean enabled);
 
     public CumulativeTimeBucket getCtb();
+
+    /**
+     * Latency percentiles over a sliding window, per listener and for
+     * the whole chain under {@link #PIPELINE}
+     * @param windowSeconds window length, rounded up to whole intervals.
+     * 0 or less covers everything since the last reset.
+     * @return histograms keyed by listener name
+     */
+    public Map<String, LatencyHistogram> getLatencyHistograms(int windowSeconds);
+
+    /**
+     * Clear the latency histograms
+     */
+    public void resetLatencyHistograms();
+
+    public void addLatencySnapshotListener(ILatencySnapshotListener listener);
+
+    public void removeLatencySnapshotListener(ILatencySnapshotListener listener);
 }
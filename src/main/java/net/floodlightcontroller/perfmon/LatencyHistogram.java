@@ -0,0 +1,144 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * An immutable log-linear latency histogram, as produced by a
+ * {@link LatencyRecorder}.
+ *
+ * Values (in ns) below 2^SUB_BUCKET_BITS have a bucket each. Every power of
+ * two above that is split into 2^SUB_BUCKET_BITS equal buckets, so the
+ * relative error of a reported percentile is at most 1/16 (6.25%).
+ * Values of 2^MAX_EXPONENT ns (about 18 minutes) or more share the last
+ * bucket. Percentiles report the upper bound of the bucket they fall in,
+ * capped at the exact maximum.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40;
+    static final int NUM_BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private final long count;
+    private final long max;
+    private final long sum;
+
+    LatencyHistogram(long[] counts, long max, long sum) {
+        this.counts = counts;
+        long c = 0;
+        for (long n : counts) {
+            c += n;
+        }
+        this.count = c;
+        this.max = c == 0 ? 0 : max;
+        this.sum = sum;
+    }
+
+    static LatencyHistogram empty() {
+        return new LatencyHistogram(new long[NUM_BUCKETS], 0, 0);
+    }
+
+    /**
+     * @return the bucket a value is counted in
+     */
+    static int bucketIndex(long valueNs) {
+        if (valueNs < SUB_BUCKETS) {
+            return valueNs < 0 ? 0 : (int) valueNs;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(valueNs);
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (valueNs >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value counted in a bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    @JsonProperty("count")
+    public long getCount() {
+        return count;
+    }
+
+    @JsonProperty("max-ns")
+    public long getMax() {
+        return max;
+    }
+
+    @JsonProperty("mean-ns")
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in ns at or below which the given percentage of
+     * samples fall, or 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    @JsonProperty("p50-ns")
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @JsonProperty("p99-ns")
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @JsonProperty("p999-ns")
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    @JsonIgnore
+    long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * @return a histogram of the samples in this one but not in older
+     */
+    LatencyHistogram subtract(LatencyHistogram older, long windowMax) {
+        long[] c = Arrays.copyOf(counts, counts.length);
+        for (int i = 0; i < c.length; i++) {
+            c[i] -= older.counts[i];
+        }
+        return new LatencyHistogram(c, windowMax, sum - older.sum);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram [count=" + count + ", p50=" + getP50()
+                + ", p99=" + getP99() + ", p999=" + getP999()
+                + ", max=" + max + "]";
+    }
+}
@@ -0,0 +1,179 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies from many threads into a {@link LatencyHistogram}
+ * without locking.
+ *
+ * Each recording thread gets its own shard of counters that only it
+ * writes, so {@link #record(long)} is a thread-local lookup and a couple of
+ * ordered stores. Readers merge the shards.
+ *
+ * Sliding windows are built from a ring of cumulative snapshots taken by
+ * {@link #tick()}, which the owner calls once per interval. A window of k
+ * intervals is the live cumulative histogram minus the snapshot taken k+1
+ * ticks ago, i.e. k whole intervals plus the one in progress.
+ */
+public class LatencyRecorder {
+    private final String name;
+    private final int numIntervals;
+
+    private final CopyOnWriteArrayList<Shard> shards = new CopyOnWriteArrayList<Shard>();
+    private final ThreadLocal<Shard> localShard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            Shard s = new Shard(numIntervals + 1);
+            shards.add(s);
+            return s;
+        }
+    };
+
+    /* Current interval, advanced by tick(). Indexes the per-shard max ring. */
+    private volatile int epoch;
+    /* Cumulative snapshots at the last numIntervals + 1 ticks; guarded by this */
+    private final LatencyHistogram[] history;
+    private LatencyHistogram baseline = LatencyHistogram.empty();
+    private long ticks;
+
+    private static final class Shard {
+        final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.NUM_BUCKETS);
+        final AtomicLongArray maxByEpoch;
+        volatile long sum;
+
+        Shard(int ringSize) {
+            maxByEpoch = new AtomicLongArray(ringSize);
+        }
+
+        /* Only called by the owning thread */
+        void record(long valueNs, int slot) {
+            int i = LatencyHistogram.bucketIndex(valueNs);
+            counts.lazySet(i, counts.get(i) + 1);
+            sum = sum + valueNs;
+            if (valueNs > maxByEpoch.get(slot)) {
+                maxByEpoch.lazySet(slot, valueNs);
+            }
+        }
+    }
+
+    /**
+     * @param name the name reported with this recorder's histograms
+     * @param numIntervals number of tick intervals kept for sliding windows
+     */
+    public LatencyRecorder(String name, int numIntervals) {
+        if (numIntervals <= 0)
+            throw new IllegalArgumentException("numIntervals must be positive");
+        this.name = name;
+        this.numIntervals = numIntervals;
+        this.history = new LatencyHistogram[numIntervals + 1];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNumIntervals() {
+        return numIntervals;
+    }
+
+    /**
+     * Record one latency sample
+     * @param valueNs the latency in nanoseconds
+     */
+    public void record(long valueNs) {
+        localShard.get().record(valueNs, epoch % (numIntervals + 1));
+    }
+
+    private long[] mergeCounts() {
+        long[] counts = new long[LatencyHistogram.NUM_BUCKETS];
+        for (Shard s : shards) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += s.counts.get(i);
+            }
+        }
+        return counts;
+    }
+
+    private long mergeSum() {
+        long sum = 0;
+        for (Shard s : shards) {
+            sum += s.sum;
+        }
+        return sum;
+    }
+
+    /* Largest sample over the given number of most recent epochs */
+    private long mergeMax(int epochs) {
+        long max = 0;
+        int e = epoch;
+        int ring = numIntervals + 1;
+        for (Shard s : shards) {
+            for (int k = 0; k < epochs && k < ring; k++) {
+                max = Math.max(max, s.maxByEpoch.get(((e - k) % ring + ring) % ring));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Close the current interval. Should be called at a fixed rate.
+     * @return the histogram of the interval that was just closed
+     */
+    public synchronized LatencyHistogram tick() {
+        LatencyHistogram now = new LatencyHistogram(mergeCounts(), 0, mergeSum());
+        LatencyHistogram previous = snapshotAt(0);
+        LatencyHistogram interval = now.subtract(previous, mergeMax(1));
+
+        history[(int) (ticks % history.length)] = now;
+        ticks++;
+        // Clear the max slot about to be reused before moving into it
+        int next = (epoch + 1) % (numIntervals + 1);
+        for (Shard s : shards) {
+            s.maxByEpoch.set(next, 0);
+        }
+        epoch = epoch + 1;
+        return interval;
+    }
+
+    /* The cumulative snapshot taken k ticks before the latest one, or the
+       baseline if there have not been that many ticks since the reset */
+    private LatencyHistogram snapshotAt(int k) {
+        if (k >= ticks) {
+            return baseline;
+        }
+        return history[(int) ((ticks - 1 - k) % history.length)];
+    }
+
+    /**
+     * @param intervals window size in tick intervals, clamped to the
+     * number of intervals kept. The window also includes the samples of
+     * the interval in progress. 0 or less returns everything since the
+     * last reset.
+     * @return the histogram of samples in the window
+     */
+    public synchronized LatencyHistogram getHistogram(int intervals) {
+        LatencyHistogram now = new LatencyHistogram(mergeCounts(), 0, mergeSum());
+        if (intervals <= 0) {
+            return now.subtract(baseline, mergeMax(numIntervals + 1));
+        }
+        int k = Math.min(intervals, numIntervals);
+        return now.subtract(snapshotAt(k), mergeMax(k + 1));
+    }
+
+    /**
+     * Forget all samples recorded so far
+     */
+    public synchronized void reset() {
+        baseline = new LatencyHistogram(mergeCounts(), 0, mergeSum());
+        for (int i = 0; i < history.length; i++) {
+            history[i] = null;
+        }
+        ticks = 0;
+        for (Shard s : shards) {
+            for (int i = 0; i < s.maxByEpoch.length(); i++) {
+                s.maxByEpoch.set(i, 0);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -122,4 +123,24 @@ public class NullPktInProcessingTime
     public CumulativeTimeBucket getCtb() {
         return ctb;
     }
+
+    @Override
+    public Map<String, LatencyHistogram> getLatencyHistograms(int windowSeconds) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void resetLatencyHistograms() {
+
+    }
+
+    @Override
+    public void addLatencySnapshotListener(ILatencySnapshotListener listener) {
+
+    }
+
+    @Override
+    public void removeLatencySnapshotListener(ILatencySnapshotListener listener) {
+
+    }
 }
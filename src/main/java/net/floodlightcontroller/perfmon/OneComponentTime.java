@@ -16,25 +16,29 @@
 
 package net.floodlightcontroller.perfmon;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import net.floodlightcontroller.core.IOFMessageListener;
 
 /**
  * Holds OF message processing time information for one IFloodlightModule.
+ * The counters are updated without a lock from every thread processing
+ * packet-ins; the average and deviation are derived when read.
  * @author Subrata
  */
 public class OneComponentTime {
     private int compId; // hascode of IOFMessageListener
     private String compName;
-    private int pktCnt;
+    private final AtomicInteger pktCnt = new AtomicInteger();
     // all times in nanoseconds
-    private long totalProcTimeNs;
-    private long sumSquaredProcTimeNs2; // squared
-    private long maxProcTimeNs;
-    private long minProcTimeNs;
-    private long avgProcTimeNs;
-    private long sigmaProcTimeNs;  // std. deviation
+    private final AtomicLong totalProcTimeNs = new AtomicLong();
+    private final AtomicLong sumSquaredProcTimeNs2 = new AtomicLong(); // squared
+    private final AtomicLong maxProcTimeNs = new AtomicLong();
+    private final AtomicLong minProcTimeNs = new AtomicLong();
+    private volatile long sigmaProcTimeNs;  // std. deviation
 
     public OneComponentTime(IOFMessageListener module) {
         compId = module.hashCode();
@@ -43,12 +47,11 @@ public class OneComponentTime {
     }
 
     public void resetAllCounters() {
-        maxProcTimeNs = Long.MIN_VALUE;
-        minProcTimeNs = Long.MAX_VALUE;
-        pktCnt = 0;
-        totalProcTimeNs = 0;
-        sumSquaredProcTimeNs2 = 0;
-        avgProcTimeNs = 0;
+        maxProcTimeNs.set(Long.MIN_VALUE);
+        minProcTimeNs.set(Long.MAX_VALUE);
+        pktCnt.set(0);
+        totalProcTimeNs.set(0);
+        sumSquaredProcTimeNs2.set(0);
         sigmaProcTimeNs = 0;
     }
 
@@ -59,27 +62,28 @@ public class OneComponentTime {
 
     @JsonProperty("num-packets")
     public int getPktCnt() {
-        return pktCnt;
+        return pktCnt.get();
     }
 
     @JsonProperty("total")
     public long getSumProcTimeNs() {
-        return totalProcTimeNs;
+        return totalProcTimeNs.get();
     }
 
     @JsonProperty("max")
     public long getMaxProcTimeNs() {
-        return maxProcTimeNs;
+        return maxProcTimeNs.get();
     }
 
     @JsonProperty("min")
     public long getMinProcTimeNs() {
-        return minProcTimeNs;
+        return minProcTimeNs.get();
     }
 
     @JsonProperty("average")
     public long getAvgProcTimeNs() {
-        return avgProcTimeNs;
+        int n = pktCnt.get();
+        return n == 0 ? 0 : totalProcTimeNs.get() / n;
     }
 
     @JsonProperty("std-dev")
@@ -89,57 +93,41 @@ public class OneComponentTime {
 
     @JsonProperty("average-squared")
     public long getSumSquaredProcTimeNs() {
-        return sumSquaredProcTimeNs2;
+        return sumSquaredProcTimeNs2.get();
     }
 
     // Methods used to update the counters
 
-    private void increasePktCount() {
-        pktCnt++;
-    }
-
-    private void updateTotalProcessingTime(long procTimeNs) {
-        totalProcTimeNs += procTimeNs;
-    }
-
-    private void updateAvgProcessTime() {
-        avgProcTimeNs = totalProcTimeNs / pktCnt;
-    }
-
-    private void updateSquaredProcessingTime(long procTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(procTimeNs, 2));
-    }
-
-    private void calculateMinProcTime(long curTimeNs) {
-        if (curTimeNs < minProcTimeNs)
-            minProcTimeNs = curTimeNs;
+    static void lowerTo(AtomicLong min, long value) {
+        long cur;
+        while (value < (cur = min.get()) && !min.compareAndSet(cur, value));
     }
 
-    private void calculateMaxProcTime(long curTimeNs) {
-        if (curTimeNs > maxProcTimeNs)
-            maxProcTimeNs = curTimeNs;
+    static void raiseTo(AtomicLong max, long value) {
+        long cur;
+        while (value > (cur = max.get()) && !max.compareAndSet(cur, value));
     }
 
     public void computeSigma() {
         // Computes std. deviation from the sum of count numbers and from
         // the sum of the squares of count numbers
-        double temp = totalProcTimeNs;
-        temp = Math.pow(temp, 2) / pktCnt;
-        temp = (sumSquaredProcTimeNs2 - temp) / pktCnt;
+        int n = pktCnt.get();
+        double temp = totalProcTimeNs.get();
+        temp = Math.pow(temp, 2) / n;
+        temp = (sumSquaredProcTimeNs2.get() - temp) / n;
         sigmaProcTimeNs = (long) Math.sqrt(temp);
     }
 
     public void updatePerPacketCounters(long procTimeNs) {
-        increasePktCount();
-        updateTotalProcessingTime(procTimeNs);
-        calculateMinProcTime(procTimeNs);
-        calculateMaxProcTime(procTimeNs);
-        updateAvgProcessTime();
-        updateSquaredProcessingTime(procTimeNs);
+        pktCnt.incrementAndGet();
+        totalProcTimeNs.addAndGet(procTimeNs);
+        lowerTo(minProcTimeNs, procTimeNs);
+        raiseTo(maxProcTimeNs, procTimeNs);
+        sumSquaredProcTimeNs2.addAndGet((long) Math.pow(procTimeNs, 2));
     }
 
     @Override
     public int hashCode() {
         return compId;
     }
-}
\ No newline at end of file
+}
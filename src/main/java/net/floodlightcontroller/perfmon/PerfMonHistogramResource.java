@@ -0,0 +1,36 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.Map;
+
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Return packet-in latency percentiles per listener and for the whole
+ * pipeline. The optional "window" query parameter is the sliding window
+ * in seconds (default 60, 0 for everything since the last reset).
+ */
+public class PerfMonHistogramResource extends ServerResource {
+    protected static final int DEFAULT_WINDOW_SECONDS = 60;
+
+    @Get("json")
+    public Map<String, LatencyHistogram> retrieve() {
+        IPktInProcessingTimeService pktinProcTime =
+                (IPktInProcessingTimeService)getContext().getAttributes().
+                    get(IPktInProcessingTimeService.class.getCanonicalName());
+
+        int window = DEFAULT_WINDOW_SECONDS;
+        String param = getQueryValue("window");
+        if (param != null) {
+            try {
+                window = Integer.parseInt(param);
+            } catch (NumberFormatException e) {
+                setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid window " + param);
+                return null;
+            }
+        }
+        setStatus(Status.SUCCESS_OK, "OK");
+        return pktinProcTime.getLatencyHistograms(window);
+    }
+}
@@ -24,6 +24,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -34,6 +39,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFType;
@@ -63,6 +69,11 @@ import org.slf4j.LoggerFactory;
  * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
  *    syslog is generated instead
  *
+ * Alongside the buckets, latencies are recorded into per-thread
+ * {@link LatencyRecorder}s, one per listener and one for the whole chain,
+ * which back the percentile histograms. Start times are kept per thread
+ * since packet-ins are processed on many netty workers at once, and the
+ * time buckets count with atomics rather than under a shared lock.
  */
 public class PktInProcessingTime
     implements IFloodlightModule, IPktInProcessingTimeService {
@@ -71,6 +82,7 @@ public class PktInProcessingTime
 	protected IFloodlightProviderService floodlightProvider;
     // Our dependencies
     private IRestApiService restApi;
+    private IThreadPoolService threadPoolService;
 
     protected long ptWarningThresholdInNano;
 
@@ -86,7 +98,7 @@ public class PktInProcessingTime
     protected boolean isInited = false;
     // Maintains the time when the last packet was processed
     protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    private volatile CumulativeTimeBucket ctb = null;
 
 
     /***
@@ -96,6 +108,22 @@ public class PktInProcessingTime
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
     protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
                                 ONE_BUCKET_DURATION_SECONDS * 1000000000;
+    protected static final int BUCKET_SET_SIZE = 30;
+
+    private final LatencyRecorder pipelineRecorder =
+            new LatencyRecorder(PIPELINE, BUCKET_SET_SIZE);
+    private final ConcurrentMap<String, LatencyRecorder> listenerRecorders =
+            new ConcurrentHashMap<String, LatencyRecorder>();
+    private final List<ILatencySnapshotListener> snapshotListeners =
+            new CopyOnWriteArrayList<ILatencySnapshotListener>();
+
+    /* [0] is the start of the packet, [1] the start of the current listener */
+    private final ThreadLocal<long[]> startTimesNs = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
 
     @Override
     public void bootstrap(List<IOFMessageListener> listeners) {
@@ -121,19 +149,31 @@ public class PktInProcessingTime
         return ctb;
     }
 
-    private long startTimePktNs;
-    private long startTimeCompNs;
+    private LatencyRecorder getListenerRecorder(IOFMessageListener listener) {
+        String name = listener.getName();
+        LatencyRecorder r = listenerRecorders.get(name);
+        if (r == null) {
+            r = new LatencyRecorder(name, BUCKET_SET_SIZE);
+            LatencyRecorder existing = listenerRecorders.putIfAbsent(name, r);
+            if (existing != null) {
+                r = existing;
+            }
+        }
+        return r;
+    }
+
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            startTimesNs.get()[1] = System.nanoTime();
         }
     }
 
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
+            long procTime = System.nanoTime() - startTimesNs.get()[1];
+            getListenerRecorder(listener).record(procTime);
             ctb.updateOneComponent(listener, procTime);
         }
     }
@@ -141,14 +181,15 @@ public class PktInProcessingTime
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            startTimesNs.get()[0] = System.nanoTime();
         }
     }
 
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
+            long procTimeNs = System.nanoTime() - startTimesNs.get()[0];
+            pipelineRecorder.record(procTimeNs);
             ctb.updatePerPacketCounters(procTimeNs);
 
             if (ptWarningThresholdInNano > 0 &&
@@ -159,6 +200,56 @@ public class PktInProcessingTime
         }
     }
 
+    @Override
+    public Map<String, LatencyHistogram> getLatencyHistograms(int windowSeconds) {
+        int intervals = windowSeconds <= 0 ? 0 :
+            (windowSeconds + ONE_BUCKET_DURATION_SECONDS - 1) / ONE_BUCKET_DURATION_SECONDS;
+        Map<String, LatencyHistogram> m = new HashMap<String, LatencyHistogram>();
+        m.put(PIPELINE, pipelineRecorder.getHistogram(intervals));
+        for (LatencyRecorder r : listenerRecorders.values()) {
+            m.put(r.getName(), r.getHistogram(intervals));
+        }
+        return m;
+    }
+
+    @Override
+    public void resetLatencyHistograms() {
+        pipelineRecorder.reset();
+        for (LatencyRecorder r : listenerRecorders.values()) {
+            r.reset();
+        }
+    }
+
+    @Override
+    public void addLatencySnapshotListener(ILatencySnapshotListener listener) {
+        snapshotListeners.add(listener);
+    }
+
+    @Override
+    public void removeLatencySnapshotListener(ILatencySnapshotListener listener) {
+        snapshotListeners.remove(listener);
+    }
+
+    /**
+     * Close the current interval of every recorder and hand the interval
+     * histograms to the snapshot listeners
+     */
+    protected void tick() {
+        Map<String, LatencyHistogram> m = new HashMap<String, LatencyHistogram>();
+        m.put(PIPELINE, pipelineRecorder.tick());
+        for (LatencyRecorder r : listenerRecorders.values()) {
+            m.put(r.getName(), r.tick());
+        }
+        if (!isEnabled()) return;
+        for (ILatencySnapshotListener l : snapshotListeners) {
+            try {
+                l.latencySnapshot(ONE_BUCKET_DURATION_SECONDS, m);
+            } catch (Exception e) {
+                logger.error("Exception in latency snapshot listener", e);
+            }
+        }
+    }
+
     // IFloodlightModule methods
 
     @Override
@@ -187,6 +278,7 @@ public class PktInProcessingTime
                 new ArrayList<Class<? extends IFloodlightService>>();
         l.add(IRestApiService.class);
         l.add(IFloodlightProviderService.class);
+        l.add(IThreadPoolService.class);
         return l;
     }
 
@@ -196,6 +288,7 @@ public class PktInProcessingTime
     	floodlightProvider = context
                 .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+        threadPoolService = context.getServiceImpl(IThreadPoolService.class);
     }
 
     @Override
@@ -203,6 +296,18 @@ public class PktInProcessingTime
         // Add our REST API
         restApi.addRestletRoutable(new PerfWebRoutable());
 
+        ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+        ses.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Exception e) {
+                    logger.error("Exception in latency histogram timer", e);
+                }
+            }
+        }, ONE_BUCKET_DURATION_SECONDS, ONE_BUCKET_DURATION_SECONDS, TimeUnit.SECONDS);
+
         // TODO - Alex - change this to a config option
         ptWarningThresholdInNano = Long.parseLong(System.getProperty(
              "net.floodlightcontroller.core.PTWarningThresholdInMilli", "0")) * 1000000;
@@ -184,7 +184,10 @@ public class RestApiServer implements IFloodlightModule, IRestApiService {
 
 	@Override
 	public void addRestletRoutable(RestletRoutable routable) {
-		restlets.add(routable);
+		// Modules may start up concurrently
+		synchronized (restlets) {
+			restlets.add(routable);
+		}
 	}
 
 	@Override
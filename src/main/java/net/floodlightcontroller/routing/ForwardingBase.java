@@ -165,7 +165,7 @@ public abstract class ForwardingBase implements IOFMessageListener {
 			log.info("SXT_DBG:-----receive  packet_in-----");
 			IRoutingDecision decision = null;
 			if (cntx != null) {
-				decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+				decision = RoutingDecision.rtStore.get(cntx);
 			}
 			return this.processPacketInMessage(sw, (OFPacketIn) msg, decision, cntx);
 		default:
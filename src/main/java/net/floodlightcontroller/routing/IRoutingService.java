@@ -70,6 +70,33 @@ public interface IRoutingService extends IFloodlightService {
      */
     public Route getRoute(DatapathId srcId, OFPort srcPort, DatapathId dstId, OFPort dstPort, U64 cookie, boolean tunnelEnabled);
 
+    /**
+     * Provides one of the routes between srcPort on src and dstPort on dst,
+     * chosen by a hash of the flow so that flows between the same switches
+     * are spread over all the paths kept for them. The same flow hash gets
+     * the same route until the topology changes.
+     * @param src Source switch DPID.
+     * @param srcPort Source port on source switch.
+     * @param dst Destination switch DPID.
+     * @param dstPort dstPort on Destination switch.
+     * @param cookie cookie (usage determined by implementation; ignored by topology instance now).
+     * @param flowHash a hash of the fields that identify the flow.
+     */
+    public Route getRoute(DatapathId srcId, OFPort srcPort, DatapathId dstId, OFPort dstPort, U64 cookie, int flowHash);
+
+    /**
+     * Provides one of the routes between srcPort on src and dstPort on dst,
+     * chosen by a hash of the flow.
+     * @param src Source switch DPID.
+     * @param srcPort Source port on source switch.
+     * @param dst Destination switch DPID.
+     * @param dstPort dstPort on Destination switch.
+     * @param cookie cookie (usage determined by implementation; ignored by topology instance now).
+     * @param flowHash a hash of the fields that identify the flow.
+     * @param tunnelEnabled boolean option.
+     */
+    public Route getRoute(DatapathId srcId, OFPort srcPort, DatapathId dstId, OFPort dstPort, U64 cookie, int flowHash, boolean tunnelEnabled);
+
     /** return all routes, if available */
     public ArrayList<Route> getRoutes(DatapathId longSrcDpid, DatapathId longDstDpid, boolean tunnelEnabled);
 
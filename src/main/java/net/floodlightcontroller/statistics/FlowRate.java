@@ -0,0 +1,73 @@
+package net.floodlightcontroller.statistics;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import net.floodlightcontroller.statistics.web.FlowRateSerializer;
+
+/**
+ * Traffic of a flow, or of a group of flows, as of the last flow
+ * statistics poll
+ */
+@JsonSerialize(using=FlowRateSerializer.class)
+public class FlowRate {
+	private final double bytesPerSecond;
+	private final double packetsPerSecond;
+	private final long bytes;
+	private final long packets;
+	private final int flows;
+
+	FlowRate(double bytesPerSecond, double packetsPerSecond, long bytes, long packets, int flows) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.packetsPerSecond = packetsPerSecond;
+		this.bytes = bytes;
+		this.packets = packets;
+		this.flows = flows;
+	}
+
+	/**
+	 * @return the sum of this and another rate
+	 */
+	FlowRate add(FlowRate other) {
+		return new FlowRate(bytesPerSecond + other.bytesPerSecond,
+				packetsPerSecond + other.packetsPerSecond,
+				bytes + other.bytes, packets + other.packets, flows + other.flows);
+	}
+
+	public double getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	public double getBitsPerSecond() {
+		return bytesPerSecond * 8;
+	}
+
+	public double getPacketsPerSecond() {
+		return packetsPerSecond;
+	}
+
+	/**
+	 * @return the byte count of the flow; see {@link IFlowRateService}
+	 * for what it counts in a group of flows
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getPackets() {
+		return packets;
+	}
+
+	/**
+	 * @return the number of flows measured
+	 */
+	public int getFlows() {
+		return flows;
+	}
+
+	@Override
+	public String toString() {
+		return "FlowRate [bytesPerSecond=" + bytesPerSecond + ", packetsPerSecond="
+				+ packetsPerSecond + ", bytes=" + bytes + ", packets=" + packets
+				+ ", flows=" + flows + "]";
+	}
+}
@@ -0,0 +1,300 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+/**
+ * Polls the flow statistics of every switch and keeps the rate of each
+ * flow, the rates of each cookie and application across switches, and the
+ * traffic counted per application.
+ *
+ * Each configured application is polled separately with a cookie mask
+ * selecting its flows, so the replies stay small when the tables are
+ * mostly filled by other applications. OpenFlow 1.0 has no cookie mask;
+ * those switches return their whole table to every poll and the flows of
+ * other applications are skipped here. With no applications configured,
+ * all flows are polled at once.
+ *
+ * The flows of a switch are kept per application in a
+ * {@link FlowStatsTable}, holding no more than the flows present at the
+ * last poll and at most maxFlowsPerSwitch of them. The rollups by cookie
+ * are rebuilt after every poll of a switch and replaced as a whole, so
+ * readers never see half a poll.
+ */
+class FlowStatsCollector {
+	/** Application filter that polls all flows */
+	static final int ALL_APPS = -1;
+
+	private final int[] apps;
+	private final int maxFlowsPerSwitch;
+	private final List<StatsPoller> pollers = new ArrayList<StatsPoller>();
+
+	private final ConcurrentMap<DatapathId, SwitchFlows> switches = new ConcurrentHashMap<DatapathId, SwitchFlows>();
+	private final ConcurrentMap<Integer, AtomicLong[]> appTotals = new ConcurrentHashMap<Integer, AtomicLong[]>();
+
+	private final IDebugCounter ctrEvicted;
+	private final IDebugCounter ctrUntracked;
+
+	/**
+	 * @param apps the application ids to poll, or empty to poll all flows
+	 * @param maxFlowsPerSwitch flows tracked per switch and application at most
+	 */
+	FlowStatsCollector(IOFSwitchService switchService, ScheduledExecutorService executor,
+			IDebugCounterService debugCounters, String counterModule, int[] apps,
+			int maxFlowsPerSwitch, long intervalMs, long maxIntervalMs, long timeoutMs,
+			int maxOutstanding) {
+		if (maxFlowsPerSwitch < 1)
+			throw new IllegalArgumentException("maxFlowsPerSwitch must be positive");
+		this.apps = apps.length == 0 ? new int[] { ALL_APPS } : apps.clone();
+		this.maxFlowsPerSwitch = maxFlowsPerSwitch;
+
+		for (int i = 0; i < this.apps.length; i++) {
+			String name = this.apps[i] == ALL_APPS ? "flow-stats" : "flow-stats-app-" + this.apps[i];
+			pollers.add(new StatsPoller(name, switchService, executor, debugCounters, counterModule,
+					new AppPoll(i), intervalMs, maxIntervalMs, timeoutMs, maxOutstanding));
+		}
+		ctrEvicted = debugCounters.registerCounter(counterModule, "flow-stats-evicted",
+				"Number of flows forgotten after they left a switch");
+		ctrUntracked = debugCounters.registerCounter(counterModule, "flow-stats-untracked",
+				"Number of polled flows not tracked because a switch had too many",
+				IDebugCounterService.MetaData.WARN);
+	}
+
+	void start() {
+		switches.clear();
+		for (StatsPoller p : pollers) {
+			p.start();
+		}
+	}
+
+	void stop() {
+		for (StatsPoller p : pollers) {
+			p.stop();
+		}
+	}
+
+	/**
+	 * @return the key of a flow in a {@link FlowStatsTable}
+	 */
+	static long flowKey(long cookie, int table, int priority, int matchHash) {
+		long h = cookie;
+		h = h * 0x9E3779B97F4A7C15L + table;
+		h = h * 0x9E3779B97F4A7C15L + priority;
+		h = h * 0x9E3779B97F4A7C15L + matchHash;
+		return h ^ (h >>> 31);
+	}
+
+	private static long flowKey(U64 cookie, TableId table, int priority, Match match) {
+		return flowKey(cookie.getValue(), table.getValue(), priority, match.hashCode());
+	}
+
+	/**
+	 * @return the index of the poller of an application, or -1 if its
+	 * flows are not polled
+	 */
+	private int filterOf(int app) {
+		for (int i = 0; i < apps.length; i++) {
+			if (apps[i] == app || apps[i] == ALL_APPS)
+				return i;
+		}
+		return -1;
+	}
+
+	FlowRate getFlowRate(DatapathId dpid, TableId table, int priority, Match match, U64 cookie) {
+		SwitchFlows s = switches.get(dpid);
+		int filter = filterOf(AppCookie.extractApp(cookie));
+		if (s == null || filter < 0)
+			return null;
+		FlowStatsTable t = s.tables[filter];
+		synchronized (t) {
+			return t.get(flowKey(cookie, table, priority, match));
+		}
+	}
+
+	Map<Integer, FlowRate> getAppRates() {
+		Map<Integer, FlowRate> rates = new HashMap<Integer, FlowRate>();
+		for (SwitchFlows s : switches.values()) {
+			for (int i = 0; i < apps.length; i++) {
+				Map<U64, FlowRate> cookies = s.cookieRates.get(i);
+				if (cookies == null)
+					continue;
+				for (Map.Entry<U64, FlowRate> e : cookies.entrySet()) {
+					merge(rates, AppCookie.extractApp(e.getKey()), e.getValue());
+				}
+			}
+		}
+		Map<Integer, FlowRate> result = new HashMap<Integer, FlowRate>();
+		for (Map.Entry<Integer, AtomicLong[]> e : appTotals.entrySet()) {
+			FlowRate r = rates.get(e.getKey());
+			result.put(e.getKey(), new FlowRate(r == null ? 0 : r.getBytesPerSecond(),
+					r == null ? 0 : r.getPacketsPerSecond(), e.getValue()[1].get(),
+					e.getValue()[0].get(), r == null ? 0 : r.getFlows()));
+		}
+		return result;
+	}
+
+	Map<U64, FlowRate> getCookieRates(int app) {
+		Map<U64, FlowRate> result = new HashMap<U64, FlowRate>();
+		int filter = filterOf(app);
+		if (filter < 0)
+			return result;
+		for (SwitchFlows s : switches.values()) {
+			Map<U64, FlowRate> cookies = s.cookieRates.get(filter);
+			if (cookies == null)
+				continue;
+			for (Map.Entry<U64, FlowRate> e : cookies.entrySet()) {
+				if (AppCookie.extractApp(e.getKey()) == app)
+					merge(result, e.getKey(), e.getValue());
+			}
+		}
+		return result;
+	}
+
+	private static <K> void merge(Map<K, FlowRate> m, K key, FlowRate rate) {
+		FlowRate old = m.get(key);
+		m.put(key, old == null ? rate : old.add(rate));
+	}
+
+	private void addToTotal(int app, long packets, long bytes) {
+		AtomicLong[] total = appTotals.get(app);
+		if (total == null) {
+			total = new AtomicLong[] { new AtomicLong(), new AtomicLong() };
+			AtomicLong[] old = appTotals.putIfAbsent(app, total);
+			if (old != null)
+				total = old;
+		}
+		total[0].addAndGet(packets);
+		total[1].addAndGet(bytes);
+	}
+
+	/**
+	 * Flows of one switch, per poller
+	 */
+	private class SwitchFlows {
+		final FlowStatsTable[] tables = new FlowStatsTable[apps.length];
+		final AtomicReferenceArray<Map<U64, FlowRate>> cookieRates =
+				new AtomicReferenceArray<Map<U64, FlowRate>>(apps.length);
+
+		SwitchFlows() {
+			for (int i = 0; i < tables.length; i++) {
+				tables[i] = new FlowStatsTable(maxFlowsPerSwitch);
+			}
+		}
+	}
+
+	/**
+	 * Polls the flows of one application, or all flows
+	 */
+	private class AppPoll implements StatsPoller.Handler {
+		private final int filter;
+		private final int app;
+
+		AppPoll(int filter) {
+			this.filter = filter;
+			this.app = apps[filter];
+		}
+
+		@Override
+		public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+			OFFlowStatsRequest.Builder b = sw.getOFFactory().buildFlowStatsRequest()
+					.setMatch(sw.getOFFactory().buildMatch().build())
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL);
+			if (app != ALL_APPS && sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				b.setCookie(AppCookie.makeAppCookie(app))
+				.setCookieMask(AppCookie.getAppFieldMask());
+			}
+			return b.build();
+		}
+
+		@Override
+		public void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies) {
+			SwitchFlows s = switches.get(dpid);
+			if (s == null) {
+				s = new SwitchFlows();
+				SwitchFlows old = switches.putIfAbsent(dpid, s);
+				if (old != null)
+					s = old;
+			}
+			long now = System.currentTimeMillis();
+			long[] delta = new long[2];
+			/* Growth per application: packets, bytes */
+			Map<Integer, long[]> growth = new HashMap<Integer, long[]>();
+			final Map<U64, FlowRate> cookies = new HashMap<U64, FlowRate>();
+			int evicted;
+			int untracked;
+
+			FlowStatsTable t = s.tables[filter];
+			synchronized (t) {
+				t.beginPoll();
+				for (OFStatsReply r : replies) {
+					for (OFFlowStatsEntry e : ((OFFlowStatsReply) r).getEntries()) {
+						int entryApp = AppCookie.extractApp(e.getCookie());
+						if (app != ALL_APPS && entryApp != app)
+							continue;
+						long durationMs = e.getDurationSec() * 1000 + e.getDurationNsec() / 1000000;
+						if (!t.update(flowKey(e.getCookie(), e.getTableId(), e.getPriority(), e.getMatch()),
+								e.getCookie().getValue(), e.getPacketCount().getValue(),
+								e.getByteCount().getValue(), durationMs, now, delta))
+							continue;
+						long[] g = growth.get(entryApp);
+						if (g == null) {
+							g = new long[2];
+							growth.put(entryApp, g);
+						}
+						g[0] += delta[0];
+						g[1] += delta[1];
+					}
+				}
+				evicted = t.endPoll();
+				untracked = t.getDropped();
+				t.forEach(new FlowStatsTable.Visitor() {
+					@Override
+					public void visit(long cookie, FlowRate rate) {
+						merge(cookies, U64.of(cookie), rate);
+					}
+				});
+			}
+			s.cookieRates.set(filter, Collections.unmodifiableMap(cookies));
+
+			for (Map.Entry<Integer, long[]> e : growth.entrySet()) {
+				addToTotal(e.getKey(), e.getValue()[0], e.getValue()[1]);
+			}
+			if (evicted > 0)
+				ctrEvicted.add(evicted);
+			if (untracked > 0)
+				ctrUntracked.add(untracked);
+		}
+
+		@Override
+		public void onSwitchGone(DatapathId dpid) {
+			switches.remove(dpid);
+		}
+	}
+}
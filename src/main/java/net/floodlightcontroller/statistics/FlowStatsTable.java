@@ -0,0 +1,268 @@
+package net.floodlightcontroller.statistics;
+
+/**
+ * Flow counters of one switch from one poll to the next, keyed by a 64-bit
+ * flow key in an open-addressing table of primitive arrays.
+ *
+ * A poll is bracketed by {@link #beginPoll()} and {@link #endPoll()}. Every
+ * flow in the reply is passed to {@link #update}, which returns its growth
+ * since the previous poll and keeps its current rate. Flows missing from a
+ * poll have been removed from the switch and are evicted by endPoll, so the
+ * table only ever holds the flows present at the last poll, up to maxFlows.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+class FlowStatsTable {
+	private static final long EMPTY = 0;
+	/* A key that collides with EMPTY is stored as this instead */
+	private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+	private static final int MIN_CAPACITY = 16;
+
+	private final int maxFlows;
+	private long[] keys;
+	private long[] cookies;
+	private long[] packets;
+	private long[] bytes;
+	private long[] durationMs;
+	private long[] seenMs;
+	private int[] generation;
+	private float[] packetRate;
+	private float[] byteRate;
+	private int size;
+	private int currentGeneration;
+	private int dropped;
+
+	FlowStatsTable(int maxFlows) {
+		if (maxFlows < 1)
+			throw new IllegalArgumentException("maxFlows must be positive");
+		this.maxFlows = maxFlows;
+		allocate(MIN_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		cookies = new long[capacity];
+		packets = new long[capacity];
+		bytes = new long[capacity];
+		durationMs = new long[capacity];
+		seenMs = new long[capacity];
+		generation = new int[capacity];
+		packetRate = new float[capacity];
+		byteRate = new float[capacity];
+	}
+
+	void beginPoll() {
+		currentGeneration++;
+		dropped = 0;
+	}
+
+	/**
+	 * Record the counters of a flow
+	 * @param durationMs time since the flow was installed as reported by
+	 * the switch, or -1 if unknown
+	 * @param nowMs time of the poll
+	 * @param delta receives the growth of the packet and byte counters
+	 * since the previous poll, or since the flow was installed
+	 * @return false if the flow is new and the table is full
+	 */
+	boolean update(long key, long cookie, long packetCount, long byteCount,
+			long flowDurationMs, long nowMs, long[] delta) {
+		if (key == EMPTY)
+			key = ZERO_KEY;
+		int slot = find(key);
+		if (slot < 0) {
+			if (size >= maxFlows) {
+				dropped++;
+				return false;
+			}
+			if ((size + 1) * 2 > keys.length)
+				grow();
+			slot = insertionSlot(key);
+			keys[slot] = key;
+			size++;
+			delta[0] = packetCount;
+			delta[1] = byteCount;
+			/* Average over the flow's life so far */
+			setRates(slot, packetCount, byteCount, flowDurationMs);
+		} else {
+			boolean reinstalled = flowDurationMs >= 0 && durationMs[slot] >= 0
+					&& flowDurationMs < durationMs[slot];
+			if (reinstalled || packetCount < packets[slot] || byteCount < bytes[slot]) {
+				delta[0] = packetCount;
+				delta[1] = byteCount;
+				setRates(slot, packetCount, byteCount, flowDurationMs);
+			} else {
+				delta[0] = packetCount - packets[slot];
+				delta[1] = byteCount - bytes[slot];
+				/* Prefer the switch's clock over the time the replies happened to arrive */
+				long elapsedMs = flowDurationMs >= 0 && durationMs[slot] >= 0
+						? flowDurationMs - durationMs[slot] : nowMs - seenMs[slot];
+				setRates(slot, delta[0], delta[1], elapsedMs);
+			}
+		}
+		cookies[slot] = cookie;
+		packets[slot] = packetCount;
+		bytes[slot] = byteCount;
+		durationMs[slot] = flowDurationMs;
+		seenMs[slot] = nowMs;
+		generation[slot] = currentGeneration;
+		return true;
+	}
+
+	private void setRates(int slot, long packetDelta, long byteDelta, long elapsedMs) {
+		if (elapsedMs > 0) {
+			packetRate[slot] = (float) (packetDelta * 1000.0 / elapsedMs);
+			byteRate[slot] = (float) (byteDelta * 1000.0 / elapsedMs);
+		} else if (elapsedMs < 0) {
+			packetRate[slot] = 0;
+			byteRate[slot] = 0;
+		}
+		/* else no time has passed; keep the previous rate */
+	}
+
+	/**
+	 * Evict the flows that were not in the poll
+	 * @return the number of flows evicted
+	 */
+	int endPoll() {
+		int evicted = 0;
+		int i = 0;
+		while (i < keys.length) {
+			if (keys[i] != EMPTY && generation[i] != currentGeneration) {
+				remove(i);
+				evicted++;
+				/* remove() may have shifted another entry into slot i */
+			} else {
+				i++;
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return the number of new flows not tracked during the current poll
+	 * because the table was full
+	 */
+	int getDropped() {
+		return dropped;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the current state of a flow, or null if the flow is not in
+	 * the table
+	 */
+	FlowRate get(long key) {
+		if (key == EMPTY)
+			key = ZERO_KEY;
+		int slot = find(key);
+		return slot < 0 ? null : rateAt(slot);
+	}
+
+	/**
+	 * Visitor over all flows of the table
+	 */
+	interface Visitor {
+		void visit(long cookie, FlowRate rate);
+	}
+
+	void forEach(Visitor v) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY)
+				v.visit(cookies[i], rateAt(i));
+		}
+	}
+
+	private FlowRate rateAt(int slot) {
+		return new FlowRate(byteRate[slot], packetRate[slot], bytes[slot], packets[slot], 1);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int find(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return i;
+			if (keys[i] == EMPTY)
+				return -1;
+		}
+	}
+
+	private int insertionSlot(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Empty slot i, shifting back later entries of its probe run so that
+	 * lookups never stop early at the hole
+	 */
+	private void remove(int i) {
+		int mask = keys.length - 1;
+		int hole = i;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (keys[j] == EMPTY)
+				break;
+			int home = hash(keys[j]) & mask;
+			/* Move j into the hole unless its home lies cyclically in (hole, j] */
+			boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+			if (!stays) {
+				move(j, hole);
+				hole = j;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+	}
+
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		cookies[to] = cookies[from];
+		packets[to] = packets[from];
+		bytes[to] = bytes[from];
+		durationMs[to] = durationMs[from];
+		seenMs[to] = seenMs[from];
+		generation[to] = generation[from];
+		packetRate[to] = packetRate[from];
+		byteRate[to] = byteRate[from];
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldCookies = cookies;
+		long[] oldPackets = packets;
+		long[] oldBytes = bytes;
+		long[] oldDuration = durationMs;
+		long[] oldSeen = seenMs;
+		int[] oldGeneration = generation;
+		float[] oldPacketRate = packetRate;
+		float[] oldByteRate = byteRate;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY)
+				continue;
+			int slot = insertionSlot(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			cookies[slot] = oldCookies[i];
+			packets[slot] = oldPackets[i];
+			bytes[slot] = oldBytes[i];
+			durationMs[slot] = oldDuration[i];
+			seenMs[slot] = oldSeen[i];
+			generation[slot] = oldGeneration[i];
+			packetRate[slot] = oldPacketRate[i];
+			byteRate[slot] = oldByteRate[i];
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.Map;
+
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.core.module.IFloodlightService;
+
+/**
+ * Traffic of the flows installed in the switches, from periodic flow
+ * statistics polls. Rates are as of each switch's last poll, so they lag
+ * by up to the polling interval, and are only available while statistics
+ * collection is enabled.
+ */
+public interface IFlowRateService extends IFloodlightService {
+
+	/**
+	 * @param cookie the cookie the flow was installed with
+	 * @return the rate of a flow, identified the same way as in a flow
+	 * removal, or null if the flow was not in the switch's last poll
+	 */
+	public FlowRate getFlowRate(DatapathId dpid, TableId table, int priority, Match match, U64 cookie);
+
+	/**
+	 * @return the rates of all flows in all switches by the application id
+	 * of their cookies. Byte and packet counts add up the growth of every
+	 * flow between polls, including flows that have been removed since; a
+	 * flow first seen by a poll counts in full.
+	 */
+	public Map<Integer, FlowRate> getAppRates();
+
+	/**
+	 * @return the rates of the flows of one application in all switches,
+	 * by cookie. Byte and packet counts are the sums of the counters of the
+	 * flows currently installed.
+	 */
+	public Map<U64, FlowRate> getCookieRates(int appId);
+}
@@ -14,5 +14,11 @@ public interface IStatisticsService extends IFloodlightService {
 
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption();
 
+	/**
+	 * @return the counter history of a port, or null if the port has not
+	 * been polled yet
+	 */
+	public PortCounterHistory getPortHistory(DatapathId dpid, OFPort p);
+
 	public void collectStatistics(boolean collect);
 }
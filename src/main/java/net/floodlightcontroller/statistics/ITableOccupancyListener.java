@@ -0,0 +1,17 @@
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.statistics.TableOccupancy.Pressure;
+
+public interface ITableOccupancyListener {
+	/**
+	 * Called when a table of a switch crosses a pressure threshold, up
+	 * or down. Called from the thread that handled the table statistics,
+	 * so implementations must not block.
+	 * @param dpid the switch
+	 * @param previous the pressure before the poll
+	 * @param occupancy the poll that crossed the threshold
+	 */
+	public void tablePressureChanged(DatapathId dpid, Pressure previous, TableOccupancy occupancy);
+}
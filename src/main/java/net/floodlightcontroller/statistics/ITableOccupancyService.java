@@ -0,0 +1,43 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+
+import net.floodlightcontroller.core.module.IFloodlightService;
+
+public interface ITableOccupancyService extends IFloodlightService {
+
+	/**
+	 * @return the last poll of a table, or null if it has not been polled
+	 */
+	public TableOccupancy getOccupancy(DatapathId dpid, TableId table);
+
+	/**
+	 * @return the last poll of every table of a switch
+	 */
+	public Map<TableId, TableOccupancy> getOccupancy(DatapathId dpid);
+
+	/**
+	 * @return the polls of a table kept, oldest first
+	 */
+	public List<TableOccupancy> getHistory(DatapathId dpid, TableId table);
+
+	/**
+	 * Ask whether a table has room for more entries before writing them.
+	 * Entries admitted are counted against the table until its next poll,
+	 * so callers that are refused should not retry before then. Tables
+	 * that have not been polled, or whose size the switch does not report,
+	 * admit everything.
+	 * @param count the number of entries to be added
+	 * @return false if adding the entries would fill the table beyond the
+	 * admission threshold, or the switch recently reported a full table
+	 */
+	public boolean admitFlows(DatapathId dpid, TableId table, int count);
+
+	public void addListener(ITableOccupancyListener listener);
+
+	public void removeListener(ITableOccupancyListener listener);
+}
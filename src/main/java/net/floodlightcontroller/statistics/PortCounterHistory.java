@@ -0,0 +1,253 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raw port counters of one switch port over time, kept at several
+ * resolutions.
+ *
+ * Every resolution is a fixed-size ring of samples. The finest resolution
+ * (step 0) keeps every poll; a coarser one keeps the first sample of each
+ * step. A sample is stored as the increase of each counter since the
+ * previous sample of its ring, as a float, and the time since that sample
+ * in ms, as an int: 36 bytes instead of 72 for the raw values. Increases
+ * up to 2^24 are exact and larger ones are off by at most one part in
+ * 2^24. Rates are only computed when read, at whatever step the reader
+ * asks for, by adding up the increases between the samples used.
+ *
+ * Recording and reading may happen on different threads.
+ */
+public class PortCounterHistory {
+	/**
+	 * The counters kept for each sample
+	 */
+	public enum PortCounter {
+		RX_BYTES, TX_BYTES, RX_PACKETS, TX_PACKETS,
+		RX_ERRORS, TX_ERRORS, RX_DROPPED, TX_DROPPED
+	}
+
+	static final int COUNTERS = PortCounter.values().length;
+	private static final long WRAP_32 = 1L << 32;
+
+	/**
+	 * One resolution
+	 */
+	private static final class Ring {
+		final long stepMs;
+		final int capacity;
+		/* Per sample: ms since the previous sample, and the counter increases */
+		final int[] elapsedMs;
+		final float[] deltas;
+		int next;
+		int size;
+		long lastBucket = -1;
+		long oldestMs;
+		long newestMs;
+		/* Raw counters of the newest sample, to compute the next increases */
+		final long[] newest = new long[COUNTERS];
+
+		Ring(long stepMs, int capacity) {
+			this.stepMs = stepMs;
+			this.capacity = capacity;
+			this.elapsedMs = new int[capacity];
+			this.deltas = new float[capacity * COUNTERS];
+		}
+
+		void add(long timeMs, long[] counters) {
+			if (stepMs > 0) {
+				long bucket = timeMs / stepMs;
+				if (bucket == lastBucket)
+					return;
+				lastBucket = bucket;
+			}
+			long elapsed = timeMs - newestMs;
+			if (size > 0 && elapsed != (int) elapsed) {
+				/* Weeks without a sample, or a clock jump: start over */
+				size = 0;
+			}
+			int base = next * COUNTERS;
+			if (size == 0) {
+				oldestMs = timeMs;
+				elapsedMs[next] = 0;
+				for (int c = 0; c < COUNTERS; c++)
+					deltas[base + c] = 0;
+			} else {
+				if (size == capacity) {
+					/* Overwriting the oldest sample; the one after it becomes the oldest */
+					oldestMs += elapsedMs[(next + 1) % capacity];
+				}
+				elapsedMs[next] = (int) elapsed;
+				for (int c = 0; c < COUNTERS; c++)
+					deltas[base + c] = counterDelta(newest[c], counters[c]);
+			}
+			newestMs = timeMs;
+			System.arraycopy(counters, 0, newest, 0, COUNTERS);
+			next = (next + 1) % capacity;
+			if (size < capacity)
+				size++;
+		}
+
+		/** Slot of the i-th oldest sample */
+		int slot(int i) {
+			return (next - size + i + capacity) % capacity;
+		}
+
+		long oldestMs() {
+			return size == 0 ? Long.MAX_VALUE : oldestMs;
+		}
+	}
+
+	private final Ring[] rings;
+
+	/**
+	 * @param stepsMs step of each resolution in ms, finest first; 0 keeps
+	 * every sample
+	 * @param capacities number of samples kept at each resolution
+	 */
+	public PortCounterHistory(long[] stepsMs, int[] capacities) {
+		if (stepsMs.length == 0 || stepsMs.length != capacities.length)
+			throw new IllegalArgumentException("Need one capacity per resolution");
+		rings = new Ring[stepsMs.length];
+		for (int i = 0; i < stepsMs.length; i++) {
+			if (stepsMs[i] < 0 || capacities[i] < 2 || (i > 0 && stepsMs[i] <= stepsMs[i - 1]))
+				throw new IllegalArgumentException("Invalid resolution " + stepsMs[i] + "ms x " + capacities[i]);
+			rings[i] = new Ring(stepsMs[i], capacities[i]);
+		}
+	}
+
+	/**
+	 * Record the counters read from the switch at timeMs
+	 * @param counters indexed by {@link PortCounter#ordinal()}
+	 */
+	public synchronized void record(long timeMs, long[] counters) {
+		if (counters.length != COUNTERS)
+			throw new IllegalArgumentException("Expected " + COUNTERS + " counters");
+		for (Ring r : rings) {
+			r.add(timeMs, counters);
+		}
+	}
+
+	/**
+	 * Rates between fromMs and toMs, at stepMs or coarser
+	 *
+	 * The finest resolution that still holds fromMs, to within one of its
+	 * steps, is used, or the one going furthest back if none does. Samples
+	 * closer together than stepMs are skipped, so the rates are averages
+	 * over at least stepMs.
+	 *
+	 * @return rates in time order, empty if fewer than two samples fall
+	 * into the range
+	 */
+	public synchronized List<PortRate> getRates(long fromMs, long toMs, long stepMs) {
+		Ring ring = pickRing(fromMs);
+		if (ring == null)
+			return Collections.emptyList();
+		List<PortRate> rates = new ArrayList<PortRate>();
+		double[] increase = new double[COUNTERS];
+		boolean started = false;
+		long prevMs = 0;
+		long t = ring.oldestMs;
+		for (int i = 0; i < ring.size; i++) {
+			int slot = ring.slot(i);
+			if (i > 0)
+				t += ring.elapsedMs[slot];
+			if (started) {
+				for (int c = 0; c < COUNTERS; c++)
+					increase[c] += ring.deltas[slot * COUNTERS + c];
+			}
+			if (t < fromMs)
+				continue;
+			if (t > toMs)
+				break;
+			if (!started) {
+				started = true;
+				prevMs = t;
+				continue;
+			}
+			long elapsedMs = t - prevMs;
+			if (elapsedMs <= 0 || elapsedMs < stepMs)
+				continue;
+			double[] perSecond = new double[COUNTERS];
+			for (int c = 0; c < COUNTERS; c++) {
+				perSecond[c] = increase[c] * 1000.0 / elapsedMs;
+				increase[c] = 0;
+			}
+			rates.add(new PortRate(prevMs, t, perSecond));
+			prevMs = t;
+		}
+		return rates;
+	}
+
+	/**
+	 * The p-th percentile (0-100, nearest rank) of the rates of counter c
+	 * between fromMs and toMs at stepMs or coarser
+	 * @return the percentile, or NaN if there are no rates in the range
+	 */
+	public double getPercentile(PortCounter c, long fromMs, long toMs, long stepMs, double p) {
+		return percentile(getRates(fromMs, toMs, stepMs), c, p);
+	}
+
+	/**
+	 * The p-th percentile (0-100, nearest rank) of counter c over the given rates
+	 * @return the percentile, or NaN if there are no rates
+	 */
+	public static double percentile(List<PortRate> rates, PortCounter c, double p) {
+		if (p < 0 || p > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		if (rates.isEmpty())
+			return Double.NaN;
+		double[] values = new double[rates.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rates.get(i).getPerSecond(c);
+		}
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(p / 100 * values.length);
+		return values[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * @return time of the newest sample, or -1 if there is none
+	 */
+	public synchronized long getLastUpdateMs() {
+		Ring r = rings[0];
+		return r.size == 0 ? -1 : r.newestMs;
+	}
+
+	/*
+	 * A ring holds fromMs if its oldest sample is less than one of its
+	 * steps later, since a ring of n samples at step s only reaches back
+	 * (n - 1) * s and a bit.
+	 */
+	private Ring pickRing(long fromMs) {
+		Ring furthest = null;
+		for (Ring r : rings) {
+			if (r.size < 2)
+				continue;
+			if (r.oldestMs() - r.stepMs <= fromMs)
+				return r;
+			if (furthest == null || r.oldestMs() < furthest.oldestMs())
+				furthest = r;
+		}
+		return furthest;
+	}
+
+	/**
+	 * Increase of a counter from prev to cur
+	 *
+	 * A counter that went down has either wrapped or been reset, e.g. by a
+	 * switch reboot. It is taken as wrapped at 32 or 64 bits if prev was in
+	 * the upper half of that range, and as reset to zero otherwise.
+	 */
+	static long counterDelta(long prev, long cur) {
+		if ((cur ^ Long.MIN_VALUE) >= (prev ^ Long.MIN_VALUE))
+			return cur - prev;
+		if (prev >= WRAP_32 / 2 && prev < WRAP_32 && cur >= 0 && cur < WRAP_32)
+			return cur + WRAP_32 - prev;
+		if (prev < 0)
+			return cur - prev; /* modulo 2^64 */
+		return cur;
+	}
+}
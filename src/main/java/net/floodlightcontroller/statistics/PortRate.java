@@ -0,0 +1,45 @@
+package net.floodlightcontroller.statistics;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import net.floodlightcontroller.statistics.PortCounterHistory.PortCounter;
+import net.floodlightcontroller.statistics.web.PortRateSerializer;
+
+/**
+ * Average rates of the port counters between two samples
+ */
+@JsonSerialize(using=PortRateSerializer.class)
+public class PortRate {
+	private final long startMs;
+	private final long endMs;
+	private final double[] perSecond;
+
+	PortRate(long startMs, long endMs, double[] perSecond) {
+		this.startMs = startMs;
+		this.endMs = endMs;
+		this.perSecond = perSecond;
+	}
+
+	public long getStartTime() {
+		return startMs;
+	}
+
+	public long getEndTime() {
+		return endMs;
+	}
+
+	/**
+	 * @return the average increase of counter c per second
+	 */
+	public double getPerSecond(PortCounter c) {
+		return perSecond[c.ordinal()];
+	}
+
+	public double getBitsPerSecondRx() {
+		return perSecond[PortCounter.RX_BYTES.ordinal()] * 8;
+	}
+
+	public double getBitsPerSecondTx() {
+		return perSecond[PortCounter.TX_BYTES.ordinal()] * 8;
+	}
+}
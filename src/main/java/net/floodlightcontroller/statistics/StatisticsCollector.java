@@ -1,14 +1,14 @@
 package net.floodlightcontroller.statistics;
 
-import java.lang.Thread.State;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -36,31 +36,62 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.statistics.PortCounterHistory.PortCounter;
 import net.floodlightcontroller.statistics.web.SwitchStatisticsWebRoutable;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.NodePortTuple;
 
-public class StatisticsCollector implements IFloodlightModule, IStatisticsService {
+public class StatisticsCollector implements IFloodlightModule, IStatisticsService, IFlowRateService {
 	private static final Logger log = LoggerFactory.getLogger(StatisticsCollector.class);
 
 	private static IOFSwitchService switchService;
 	private static IThreadPoolService threadPoolService;
 	private static IRestApiService restApiService;
+	private static IDebugCounterService debugCounterService;
 
 	private static boolean isEnabled = false;
 
 	private static int portStatsInterval = 10; /* could be set by REST API, so not final */
-	private static ScheduledFuture<?> portStatsCollector;
+	private static int maxPortStatsInterval = 60;
+	private static int maxOutstandingRequests = 64;
+	private static StatsPoller portStatsCollector;
+	private static ScheduledFuture<?> portStatsExpiry;
+	private static int maxTrackedPorts = 4096;
+	private static IDebugCounter ctrHistoryUntracked;
+	private static IDebugCounter ctrHistoryEvicted;
+	private static int flowStatsInterval = 30;
+	private static int maxFlowsPerSwitch = 50000;
+	private static int[] flowStatsApps = new int[0];
+	private static volatile FlowStatsCollector flowStatsCollector;
 
 	private static final long BITS_PER_BYTE = 8;
 	private static final long MILLIS_PER_SEC = 1000;
 
 	private static final String INTERVAL_PORT_STATS_STR = "collectionIntervalPortStatsSeconds";
+	private static final String MAX_INTERVAL_PORT_STATS_STR = "maxCollectionIntervalPortStatsSeconds";
+	private static final String MAX_OUTSTANDING_STR = "maxOutstandingStatsRequests";
+	private static final String HISTORY_RESOLUTIONS_STR = "portHistoryResolutions";
+	private static final String MAX_TRACKED_PORTS_STR = "maxTrackedPorts";
+	private static final String INTERVAL_FLOW_STATS_STR = "collectionIntervalFlowStatsSeconds";
+	private static final String MAX_FLOWS_PER_SWITCH_STR = "maxFlowsPerSwitch";
+	private static final String FLOW_STATS_APPS_STR = "flowStatsApps";
 	private static final String ENABLED_STR = "enable";
+	private static final String COUNTER_MODULE = "statistics";
 
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> portStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
+	/* Updated from switch I/O threads as replies arrive, one switch at a time */
+	private static final ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth> portStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final ConcurrentHashMap<NodePortTuple, PortCounterHistory> portHistories = new ConcurrentHashMap<NodePortTuple, PortCounterHistory>();
+	/* Ports in the last reply of each switch, to forget the ones that go away */
+	private static final ConcurrentHashMap<DatapathId, Set<OFPort>> replyPorts = new ConcurrentHashMap<DatapathId, Set<OFPort>>();
+
+	/* Resolutions of the port counter history: every poll for 90 polls, then minutes for an hour and quarter hours for a day */
+	private static long[] historyStepsMs = { 0, 60 * MILLIS_PER_SEC, 900 * MILLIS_PER_SEC };
+	private static int[] historyCapacities = { 90, 61, 96 };
 
 	/**
 	 * Run periodically to collect all port statistics. This only collects
@@ -78,94 +109,146 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * for a single switch's reply. This must happen to compare the byte
 	 * counts and to get an elapsed time.
 	 *
+	 * Each switch's reply is processed as soon as it arrives; the polling
+	 * schedule is up to {@link StatsPoller}.
+	 *
 	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
 	 *
 	 */
-	private class PortStatsCollector implements Runnable {
+	private class PortStatsCollector implements StatsPoller.Handler {
+
+		@Override
+		public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+			return buildStatsRequest(sw, OFStatsType.PORT);
+		}
 
 		@Override
-		public void run() {
-			log.info("PORTSTATISTICS RUNNING");
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				for (OFStatsReply r : e.getValue()) {
-					OFPortStatsReply psr = (OFPortStatsReply) r;
-					for (OFPortStatsEntry pse : psr.getEntries()) {
-						NodePortTuple npt = new NodePortTuple(e.getKey(), pse.getPortNo());
-						SwitchPortBandwidth spb;
-						if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
-							if (portStats.containsKey(npt)) { /* update */
-								spb = portStats.get(npt);
-							} else if (tentativePortStats.containsKey(npt)) { /* finish */
-								spb = tentativePortStats.get(npt);
-								tentativePortStats.remove(npt);
-							} else {
-								log.error("Inconsistent state between tentative and official port stats lists.");
-								return;
-							}
-
-							/* Get counted bytes over the elapsed period. Check for counter overflow. */
-							U64 rxBytesCounted;
-							U64 txBytesCounted;
-							if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
-								U64 lower = pse.getRxBytes();
-								rxBytesCounted = upper.add(lower);
-							} else {
-								rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
-							}
-							if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
-								U64 lower = pse.getTxBytes();
-								txBytesCounted = upper.add(lower);
-							} else {
-								txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
-							}
-							long timeDifSec = (System.currentTimeMillis() - spb.getUpdateTime()) / MILLIS_PER_SEC;
-							portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(),
-									U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec),
-									U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec),
-									pse.getRxBytes(), pse.getTxBytes())
-									);
-
-						} else { /* initialize */
-							tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
+		public void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies) {
+			long now = System.currentTimeMillis();
+			Set<OFPort> ports = new HashSet<OFPort>();
+			for (OFStatsReply r : replies) {
+				OFPortStatsReply psr = (OFPortStatsReply) r;
+				for (OFPortStatsEntry pse : psr.getEntries()) {
+					ports.add(pse.getPortNo());
+					NodePortTuple npt = new NodePortTuple(dpid, pse.getPortNo());
+					recordHistory(npt, now, pse);
+					SwitchPortBandwidth spb;
+					if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
+						if (portStats.containsKey(npt)) { /* update */
+							spb = portStats.get(npt);
+						} else if (tentativePortStats.containsKey(npt)) { /* finish */
+							spb = tentativePortStats.get(npt);
+							tentativePortStats.remove(npt);
+						} else {
+							log.error("Inconsistent state between tentative and official port stats lists.");
+							return;
 						}
+
+						/* Get counted bytes over the elapsed period, allowing for counter wrap and reset */
+						U64 rxBytesCounted = U64.ofRaw(PortCounterHistory.counterDelta(
+								spb.getPriorByteValueRx().getValue(), pse.getRxBytes().getValue()));
+						U64 txBytesCounted = U64.ofRaw(PortCounterHistory.counterDelta(
+								spb.getPriorByteValueTx().getValue(), pse.getTxBytes().getValue()));
+						/* Polls of a switch are jittered and may come less than a second apart */
+						long timeDifMs = Math.max(1, now - spb.getUpdateTime());
+						portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(),
+								U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMs),
+								U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMs),
+								pse.getRxBytes(), pse.getTxBytes())
+								);
+
+					} else { /* initialize */
+						tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
 					}
 				}
 			}
+			/* The request is for all ports, so a port missing from the reply has been removed */
+			Set<OFPort> previous = replyPorts.put(dpid, ports);
+			if (previous != null) {
+				for (OFPort p : previous) {
+					if (!ports.contains(p))
+						forgetPort(new NodePortTuple(dpid, p));
+				}
+			}
+		}
+
+		@Override
+		public void onSwitchGone(DatapathId dpid) {
+			Set<OFPort> ports = replyPorts.remove(dpid);
+			if (ports != null) {
+				for (OFPort p : ports) {
+					forgetPort(new NodePortTuple(dpid, p));
+				}
+			}
 		}
 	}
 
+	private static void forgetPort(NodePortTuple npt) {
+		portStats.remove(npt);
+		tentativePortStats.remove(npt);
+		if (portHistories.remove(npt) != null && ctrHistoryEvicted != null)
+			ctrHistoryEvicted.increment();
+	}
+
 	/**
-	 * Single thread for collecting switch statistics and
-	 * containing the reply.
-	 *
-	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
-	 *
+	 * Forget the ports that have not been in a reply for expiryMs, in case
+	 * a switch went away while it was not being polled
 	 */
-	private class GetStatisticsThread extends Thread {
-		private List<OFStatsReply> statsReply;
-		private DatapathId switchId;
-		private OFStatsType statType;
-
-		public GetStatisticsThread(DatapathId switchId, OFStatsType statType) {
-			this.switchId = switchId;
-			this.statType = statType;
-			this.statsReply = null;
+	static void expirePorts(long now, long expiryMs) {
+		for (Map.Entry<NodePortTuple, SwitchPortBandwidth> e : portStats.entrySet()) {
+			if (now - e.getValue().getUpdateTime() > expiryMs)
+				forgetPort(e.getKey());
 		}
-
-		public List<OFStatsReply> getStatisticsReply() {
-			return statsReply;
+		for (Map.Entry<NodePortTuple, SwitchPortBandwidth> e : tentativePortStats.entrySet()) {
+			if (now - e.getValue().getUpdateTime() > expiryMs)
+				forgetPort(e.getKey());
+		}
+		for (Map.Entry<NodePortTuple, PortCounterHistory> e : portHistories.entrySet()) {
+			if (now - e.getValue().getLastUpdateMs() > expiryMs)
+				forgetPort(e.getKey());
 		}
+		for (DatapathId dpid : replyPorts.keySet()) {
+			if (switchService.getSwitch(dpid) == null)
+				replyPorts.remove(dpid);
+		}
+	}
 
-		public DatapathId getSwitchId() {
-			return switchId;
+	private static void recordHistory(NodePortTuple npt, long timeMs, OFPortStatsEntry pse) {
+		PortCounterHistory h = portHistories.get(npt);
+		if (h == null) {
+			if (portHistories.size() >= maxTrackedPorts) {
+				if (ctrHistoryUntracked != null)
+					ctrHistoryUntracked.increment();
+				return;
+			}
+			h = new PortCounterHistory(historyStepsMs, historyCapacities);
+			PortCounterHistory old = portHistories.putIfAbsent(npt, h);
+			if (old != null)
+				h = old;
 		}
+		long[] counters = new long[PortCounter.values().length];
+		counters[PortCounter.RX_BYTES.ordinal()] = pse.getRxBytes().getValue();
+		counters[PortCounter.TX_BYTES.ordinal()] = pse.getTxBytes().getValue();
+		counters[PortCounter.RX_PACKETS.ordinal()] = pse.getRxPackets().getValue();
+		counters[PortCounter.TX_PACKETS.ordinal()] = pse.getTxPackets().getValue();
+		counters[PortCounter.RX_ERRORS.ordinal()] = pse.getRxErrors().getValue();
+		counters[PortCounter.TX_ERRORS.ordinal()] = pse.getTxErrors().getValue();
+		counters[PortCounter.RX_DROPPED.ordinal()] = pse.getRxDropped().getValue();
+		counters[PortCounter.TX_DROPPED.ordinal()] = pse.getTxDropped().getValue();
+		h.record(timeMs, counters);
+	}
 
-		@Override
-		public void run() {
-			statsReply = getSwitchStatistics(switchId, statType);
+	/**
+	 * Parse resolutions given as step:samples pairs, with the step in
+	 * seconds, e.g. "0:90,60:61"
+	 */
+	static void parseHistoryResolutions(String value, List<Long> stepsMs, List<Integer> capacities) {
+		for (String res : value.split(",")) {
+			String[] parts = res.trim().split(":");
+			if (parts.length != 2)
+				throw new IllegalArgumentException("Expected step:samples, got " + res);
+			stepsMs.add(Long.parseLong(parts[0].trim()) * MILLIS_PER_SEC);
+			capacities.add(Integer.parseInt(parts[1].trim()));
 		}
 	}
 
@@ -178,6 +261,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		Collection<Class<? extends IFloodlightService>> l =
 				new ArrayList<Class<? extends IFloodlightService>>();
 		l.add(IStatisticsService.class);
+		l.add(IFlowRateService.class);
 		return l;
 	}
 
@@ -186,6 +270,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		Map<Class<? extends IFloodlightService>, IFloodlightService> m =
 				new HashMap<Class<? extends IFloodlightService>, IFloodlightService>();
 		m.put(IStatisticsService.class, this);
+		m.put(IFlowRateService.class, this);
 		return m;
 	}
 
@@ -196,6 +281,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		l.add(IOFSwitchService.class);
 		l.add(IThreadPoolService.class);
 		l.add(IRestApiService.class);
+		l.add(IDebugCounterService.class);
 		return l;
 	}
 
@@ -205,6 +291,13 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		switchService = context.getServiceImpl(IOFSwitchService.class);
 		threadPoolService = context.getServiceImpl(IThreadPoolService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
+		debugCounterService.registerModule(COUNTER_MODULE);
+		ctrHistoryUntracked = debugCounterService.registerCounter(COUNTER_MODULE, "port-history-untracked",
+				"Number of port stats not kept in a history because " + MAX_TRACKED_PORTS_STR + " ports already were",
+				IDebugCounterService.MetaData.WARN);
+		ctrHistoryEvicted = debugCounterService.registerCounter(COUNTER_MODULE, "port-history-evicted",
+				"Number of port histories forgotten after their port or switch went away");
 
 		Map<String, String> config = context.getConfigParams(this);
 		if (config.containsKey(ENABLED_STR)) {
@@ -224,6 +317,107 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 			}
 		}
 		log.info("Port statistics collection interval set to {}s", portStatsInterval);
+
+		if (config.containsKey(MAX_INTERVAL_PORT_STATS_STR)) {
+			try {
+				maxPortStatsInterval = Integer.parseInt(config.get(MAX_INTERVAL_PORT_STATS_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_INTERVAL_PORT_STATS_STR, maxPortStatsInterval);
+			}
+		}
+		if (config.containsKey(MAX_OUTSTANDING_STR)) {
+			try {
+				maxOutstandingRequests = Integer.parseInt(config.get(MAX_OUTSTANDING_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_OUTSTANDING_STR, maxOutstandingRequests);
+			}
+		}
+		if (portStatsInterval < 1 || maxPortStatsInterval < portStatsInterval || maxOutstandingRequests < 1) {
+			throw new FloodlightModuleException("Invalid statistics collection parameters: interval "
+					+ portStatsInterval + "s, max interval " + maxPortStatsInterval
+					+ "s, max outstanding requests " + maxOutstandingRequests);
+		}
+		log.info("Port statistics collection backs off to at most {}s, with at most {} requests outstanding",
+				maxPortStatsInterval, maxOutstandingRequests);
+
+		String resolutions = config.get(HISTORY_RESOLUTIONS_STR);
+		if (resolutions != null && !resolutions.trim().isEmpty()) {
+			List<Long> steps = new ArrayList<Long>();
+			List<Integer> capacities = new ArrayList<Integer>();
+			try {
+				parseHistoryResolutions(resolutions, steps, capacities);
+				historyStepsMs = new long[steps.size()];
+				historyCapacities = new int[steps.size()];
+				for (int i = 0; i < steps.size(); i++) {
+					historyStepsMs[i] = steps.get(i);
+					historyCapacities[i] = capacities.get(i);
+				}
+				/* Fail here rather than on the first reply */
+				new PortCounterHistory(historyStepsMs, historyCapacities);
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Invalid " + HISTORY_RESOLUTIONS_STR + " '"
+						+ resolutions + "': " + e.getMessage());
+			}
+		}
+
+		if (config.containsKey(MAX_TRACKED_PORTS_STR)) {
+			try {
+				maxTrackedPorts = Integer.parseInt(config.get(MAX_TRACKED_PORTS_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_TRACKED_PORTS_STR, maxTrackedPorts);
+			}
+		}
+		if (maxTrackedPorts < 0) {
+			throw new FloodlightModuleException("Invalid " + MAX_TRACKED_PORTS_STR + " " + maxTrackedPorts);
+		}
+
+		if (config.containsKey(INTERVAL_FLOW_STATS_STR)) {
+			try {
+				flowStatsInterval = Integer.parseInt(config.get(INTERVAL_FLOW_STATS_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", INTERVAL_FLOW_STATS_STR, flowStatsInterval);
+			}
+		}
+		if (config.containsKey(MAX_FLOWS_PER_SWITCH_STR)) {
+			try {
+				maxFlowsPerSwitch = Integer.parseInt(config.get(MAX_FLOWS_PER_SWITCH_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_FLOWS_PER_SWITCH_STR, maxFlowsPerSwitch);
+			}
+		}
+		String apps = config.get(FLOW_STATS_APPS_STR);
+		if (apps != null && !apps.trim().isEmpty()) {
+			try {
+				flowStatsApps = parseAppIds(apps);
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Invalid " + FLOW_STATS_APPS_STR + " '"
+						+ apps + "': " + e.getMessage());
+			}
+		}
+		if (flowStatsInterval < 0 || maxFlowsPerSwitch < 1) {
+			throw new FloodlightModuleException("Invalid flow statistics collection parameters: interval "
+					+ flowStatsInterval + "s, max flows per switch " + maxFlowsPerSwitch);
+		}
+		if (flowStatsInterval == 0) {
+			log.info("Flow statistics collection disabled");
+		} else {
+			log.info("Flow statistics collection interval set to {}s, for {}", flowStatsInterval,
+					flowStatsApps.length == 0 ? "all applications" : FLOW_STATS_APPS_STR + " " + apps.trim());
+		}
+	}
+
+	/**
+	 * Parse a comma-separated list of application ids, decimal or hex
+	 */
+	static int[] parseAppIds(String value) {
+		String[] parts = value.split(",");
+		int[] ids = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			ids[i] = Integer.decode(parts[i].trim());
+			if (ids[i] < 0 || ids[i] != AppCookie.extractApp(AppCookie.makeAppCookie(ids[i])))
+				throw new IllegalArgumentException("Not an application id: " + parts[i].trim());
+		}
+		return ids;
 	}
 
 	@Override
@@ -250,6 +444,33 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		return Collections.unmodifiableMap(portStats);
 	}
 
+	@Override
+	public PortCounterHistory getPortHistory(DatapathId dpid, OFPort p) {
+		return portHistories.get(new NodePortTuple(dpid, p));
+	}
+
+	/*
+	 * IFlowRateService implementation
+	 */
+
+	@Override
+	public FlowRate getFlowRate(DatapathId dpid, TableId table, int priority, Match match, U64 cookie) {
+		FlowStatsCollector c = flowStatsCollector;
+		return c == null ? null : c.getFlowRate(dpid, table, priority, match, cookie);
+	}
+
+	@Override
+	public Map<Integer, FlowRate> getAppRates() {
+		FlowStatsCollector c = flowStatsCollector;
+		return c == null ? Collections.<Integer, FlowRate>emptyMap() : c.getAppRates();
+	}
+
+	@Override
+	public Map<U64, FlowRate> getCookieRates(int appId) {
+		FlowStatsCollector c = flowStatsCollector;
+		return c == null ? Collections.<U64, FlowRate>emptyMap() : c.getCookieRates(appId);
+	}
+
 	@Override
 	public synchronized void collectStatistics(boolean collect) {
 		if (collect && !isEnabled) {
@@ -267,77 +488,51 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 */
 
 	/**
-	 * Start all stats threads.
+	 * Start polling switches.
 	 */
 	private void startStatisticsCollection() {
-		portStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new PortStatsCollector(), portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
 		tentativePortStats.clear(); /* must clear out, otherwise might have huge BW result if present and wait a long time before re-enabling stats */
-		log.warn("Statistics collection thread(s) started");
-	}
-
-	/**
-	 * Stop all stats threads.
-	 */
-	private void stopStatisticsCollection() {
-		if (!portStatsCollector.cancel(false)) {
-			log.error("Could not cancel port stats thread");
-		} else {
-			log.warn("Statistics collection thread(s) stopped");
+		long intervalMs = TimeUnit.SECONDS.toMillis(portStatsInterval);
+		portStatsCollector = new StatsPoller("port-stats", switchService,
+				threadPoolService.getScheduledExecutor(), debugCounterService, COUNTER_MODULE,
+				new PortStatsCollector(), intervalMs, TimeUnit.SECONDS.toMillis(maxPortStatsInterval),
+				Math.max(MILLIS_PER_SEC, intervalMs / 2), maxOutstandingRequests);
+		portStatsCollector.start();
+		final long expiryMs = 3 * TimeUnit.SECONDS.toMillis(maxPortStatsInterval);
+		portStatsExpiry = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					expirePorts(System.currentTimeMillis(), expiryMs);
+				} catch (Exception e) {
+					log.error("Exception expiring port statistics", e);
+				}
+			}
+		}, expiryMs, expiryMs, TimeUnit.MILLISECONDS);
+		if (flowStatsInterval > 0) {
+			long flowIntervalMs = TimeUnit.SECONDS.toMillis(flowStatsInterval);
+			if (flowStatsCollector == null) {
+				flowStatsCollector = new FlowStatsCollector(switchService,
+						threadPoolService.getScheduledExecutor(), debugCounterService, COUNTER_MODULE,
+						flowStatsApps, maxFlowsPerSwitch, flowIntervalMs,
+						Math.max(flowIntervalMs, TimeUnit.SECONDS.toMillis(maxPortStatsInterval)),
+						Math.max(MILLIS_PER_SEC, flowIntervalMs / 2), maxOutstandingRequests);
+			}
+			flowStatsCollector.start();
 		}
+		log.warn("Statistics collection started");
 	}
 
 	/**
-	 * Retrieve the statistics from all switches in parallel.
-	 * @param dpids
-	 * @param statsType
-	 * @return
+	 * Stop polling switches.
 	 */
-	private Map<DatapathId, List<OFStatsReply>> getSwitchStatistics(Set<DatapathId> dpids, OFStatsType statsType) {
-		HashMap<DatapathId, List<OFStatsReply>> model = new HashMap<DatapathId, List<OFStatsReply>>();
-
-		List<GetStatisticsThread> activeThreads = new ArrayList<GetStatisticsThread>(dpids.size());
-		List<GetStatisticsThread> pendingRemovalThreads = new ArrayList<GetStatisticsThread>();
-		GetStatisticsThread t;
-		for (DatapathId d : dpids) {
-			t = new GetStatisticsThread(d, statsType);
-			activeThreads.add(t);
-			t.start();
-		}
-
-		/* Join all the threads after the timeout. Set a hard timeout
-		 * of 12 seconds for the threads to finish. If the thread has not
-		 * finished the switch has not replied yet and therefore we won't
-		 * add the switch's stats to the reply.
-		 */
-		for (int iSleepCycles = 0; iSleepCycles < portStatsInterval; iSleepCycles++) {
-			for (GetStatisticsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					model.put(curThread.getSwitchId(), curThread.getStatisticsReply());
-					pendingRemovalThreads.add(curThread);
-				}
-			}
-
-			/* remove the threads that have completed the queries to the switches */
-			for (GetStatisticsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
-			}
-
-			/* clear the list so we don't try to double remove them */
-			pendingRemovalThreads.clear();
-
-			/* if we are done finish early */
-			if (activeThreads.isEmpty()) {
-				break;
-			}
-
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
-			}
+	private void stopStatisticsCollection() {
+		portStatsCollector.stop();
+		portStatsExpiry.cancel(false);
+		if (flowStatsCollector != null) {
+			flowStatsCollector.stop();
 		}
-
-		return model;
+		log.warn("Statistics collection stopped");
 	}
 
 	/**
@@ -351,118 +546,129 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		IOFSwitch sw = switchService.getSwitch(switchId);
 		ListenableFuture<?> future;
 		List<OFStatsReply> values = null;
-		Match match;
 		if (sw != null) {
-			OFStatsRequest<?> req = null;
-			switch (statsType) {
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildFlowStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildAggregateStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case PORT:
-				req = sw.getOFFactory().buildPortStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.build();
-				break;
-			case QUEUE:
-				req = sw.getOFFactory().buildQueueStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.setQueueId(UnsignedLong.MAX_VALUE.longValue())
-				.build();
-				break;
-			case DESC:
-				req = sw.getOFFactory().buildDescStatsRequest()
-				.build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupStatsRequest()
-							.build();
+			OFStatsRequest<?> req = buildStatsRequest(sw, statsType);
+			try {
+				if (req != null) {
+					future = sw.writeStatsRequest(req);
+					values = (List<OFStatsReply>) future.get(portStatsInterval / 2, TimeUnit.SECONDS);
 				}
-				break;
+			} catch (Exception e) {
+				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+			}
+		}
+		return values;
+	}
 
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterStatsRequest()
-							.setMeterId(OFMeterSerializerVer13.ALL_VAL)
-							.build();
-				}
-				break;
+	/**
+	 * Build a request for all statistics of the given type.
+	 * @param sw
+	 * @param statsType
+	 * @return the request, or null if the switch's OpenFlow version
+	 * does not support the type
+	 */
+	protected OFStatsRequest<?> buildStatsRequest(IOFSwitch sw, OFStatsType statsType) {
+		Match match;
+		OFStatsRequest<?> req = null;
+		switch (statsType) {
+		case FLOW:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildFlowStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case AGGREGATE:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildAggregateStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case PORT:
+			req = sw.getOFFactory().buildPortStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.build();
+			break;
+		case QUEUE:
+			req = sw.getOFFactory().buildQueueStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.setQueueId(UnsignedLong.MAX_VALUE.longValue())
+			.build();
+			break;
+		case DESC:
+			req = sw.getOFFactory().buildDescStatsRequest()
+			.build();
+			break;
+		case GROUP:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupStatsRequest()
+						.build();
+			}
+			break;
 
-			case GROUP_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupDescStatsRequest()
-							.build();
-				}
-				break;
+		case METER:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterStatsRequest()
+						.setMeterId(OFMeterSerializerVer13.ALL_VAL)
+						.build();
+			}
+			break;
 
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupDescStatsRequest()
+						.build();
+			}
+			break;
 
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterConfigStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case METER_CONFIG:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterConfigStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableStatsRequest()
-							.build();
-				}
-				break;
+		case METER_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableFeaturesStatsRequest()
-							.build();
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildPortDescStatsRequest()
-							.build();
-				}
-				break;
-			case EXPERIMENTER:
-			default:
-				log.error("Stats Request Type {} not implemented yet", statsType.name());
-				break;
+		case TABLE:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableStatsRequest()
+						.build();
 			}
+			break;
 
-			try {
-				if (req != null) {
-					future = sw.writeStatsRequest(req);
-					values = (List<OFStatsReply>) future.get(portStatsInterval / 2, TimeUnit.SECONDS);
-				}
-			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+		case TABLE_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableFeaturesStatsRequest()
+						.build();
+			}
+			break;
+		case PORT_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildPortDescStatsRequest()
+						.build();
 			}
+			break;
+		case EXPERIMENTER:
+		default:
+			log.error("Stats Request Type {} not implemented yet", statsType.name());
+			break;
 		}
-		return values;
+		return req;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,447 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+/**
+ * Polls one kind of statistics from every switch without blocking a
+ * thread per switch or per poll.
+ *
+ * Each switch has its own schedule. It starts at a random offset into the
+ * interval and is re-armed with some jitter after every reply, so polls of
+ * many switches stay spread out instead of going out together. At most
+ * maxOutstanding requests are in flight at once; switches that come due
+ * while the limit is reached wait in line for a free slot. A request that
+ * is not answered within the timeout is given up on.
+ *
+ * The interval of a switch grows when its replies are slow compared to the
+ * interval or time out, and shrinks back towards the base interval once it
+ * keeps up again.
+ *
+ * Replies are handed to the {@link Handler} as soon as each switch answers,
+ * on the thread that completed the request, which is usually a switch I/O
+ * thread. Replies of one switch are never handled concurrently.
+ *
+ * @see StatisticsCollector
+ */
+class StatsPoller {
+	private static final Logger log = LoggerFactory.getLogger(StatsPoller.class);
+
+	/** Largest relative deviation of a poll from the switch's interval */
+	static final double JITTER = 0.1;
+	/** The interval of a switch is kept at least this many times its reply latency */
+	static final int LATENCY_FACTOR = 4;
+	/** Weight of a new latency sample in the moving average */
+	static final double LATENCY_ALPHA = 0.25;
+
+	/**
+	 * What to request from a switch and what to do with the replies
+	 */
+	interface Handler {
+		/**
+		 * @return the request for sw, or null to skip sw this round
+		 */
+		OFStatsRequest<?> buildRequest(IOFSwitch sw);
+
+		/**
+		 * Called with the complete reply of a switch
+		 */
+		void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies);
+
+		/**
+		 * Called when a switch that was polled is found to be gone
+		 */
+		void onSwitchGone(DatapathId dpid);
+	}
+
+	private final IOFSwitchService switchService;
+	private final ScheduledExecutorService executor;
+	private final Handler handler;
+	private final long baseIntervalMs;
+	private final long maxIntervalMs;
+	private final long timeoutMs;
+
+	private final Semaphore outstanding;
+	private final ConcurrentLinkedQueue<SwitchPoll> waiting = new ConcurrentLinkedQueue<SwitchPoll>();
+	private final ConcurrentMap<DatapathId, SwitchPoll> polls = new ConcurrentHashMap<DatapathId, SwitchPoll>();
+	private final Random random = new Random();
+
+	private final IDebugCounter ctrRequests;
+	private final IDebugCounter ctrDeferred;
+	private final IDebugCounter ctrTimeouts;
+	private final IDebugCounter ctrErrors;
+
+	private volatile boolean running;
+	private ScheduledFuture<?> discovery;
+
+	/**
+	 * @param name counter name of this poller, e.g. "port-stats"
+	 * @param baseIntervalMs interval of a switch that replies quickly
+	 * @param maxIntervalMs interval of a switch is never raised above this
+	 * @param timeoutMs time allowed for a switch to reply
+	 * @param maxOutstanding number of requests in flight at most
+	 */
+	StatsPoller(String name, IOFSwitchService switchService, ScheduledExecutorService executor,
+			IDebugCounterService debugCounters, String counterModule, Handler handler,
+			long baseIntervalMs, long maxIntervalMs, long timeoutMs, int maxOutstanding) {
+		if (baseIntervalMs <= 0 || maxIntervalMs < baseIntervalMs || timeoutMs <= 0 || maxOutstanding <= 0)
+			throw new IllegalArgumentException("Invalid polling parameters");
+		this.switchService = switchService;
+		this.executor = executor;
+		this.handler = handler;
+		this.baseIntervalMs = baseIntervalMs;
+		this.maxIntervalMs = maxIntervalMs;
+		this.timeoutMs = timeoutMs;
+		this.outstanding = new Semaphore(maxOutstanding);
+
+		debugCounters.registerCounter(counterModule, name, "Statistics polling of " + name);
+		ctrRequests = debugCounters.registerCounter(counterModule, name + "/requests",
+				"Number of statistics requests sent");
+		ctrDeferred = debugCounters.registerCounter(counterModule, name + "/deferred",
+				"Number of polls that waited for another request to finish");
+		ctrTimeouts = debugCounters.registerCounter(counterModule, name + "/timeouts",
+				"Number of statistics requests not answered in time",
+				IDebugCounterService.MetaData.WARN);
+		ctrErrors = debugCounters.registerCounter(counterModule, name + "/errors",
+				"Number of statistics requests that failed",
+				IDebugCounterService.MetaData.WARN);
+	}
+
+	/**
+	 * Start polling all switches, and switches that connect later
+	 */
+	synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		discovery = executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				discoverSwitches();
+			}
+		}, 0, baseIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop polling. Requests in flight are left to finish, but their
+	 * replies are no longer handled.
+	 */
+	synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		discovery.cancel(false);
+		for (SwitchPoll p : polls.values()) {
+			p.cancel();
+		}
+		polls.clear();
+		waiting.clear();
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the current polling interval of a switch, or -1 if the
+	 * switch is not polled
+	 */
+	long getIntervalMs(DatapathId dpid) {
+		SwitchPoll p = polls.get(dpid);
+		return p == null ? -1 : p.intervalMs;
+	}
+
+	/**
+	 * Add switches that are not polled yet, each at a random offset into
+	 * the base interval. Switches that went away drop out when their next
+	 * poll comes due.
+	 */
+	void discoverSwitches() {
+		if (!running)
+			return;
+		for (DatapathId dpid : switchService.getAllSwitchDpids()) {
+			if (polls.containsKey(dpid))
+				continue;
+			SwitchPoll p = new SwitchPoll(dpid);
+			if (polls.putIfAbsent(dpid, p) == null) {
+				p.schedule((long) (random.nextDouble() * baseIntervalMs));
+			}
+		}
+	}
+
+	/**
+	 * Poll a switch now, or as soon as a request slot is free. If a poll
+	 * of the switch is already waiting, nothing more is done; if one is in
+	 * flight, the switch is polled again once it has answered.
+	 */
+	void pollNow(DatapathId dpid) {
+		SwitchPoll p = polls.get(dpid);
+		if (p != null && p.pollNow())
+			sendWaiting();
+	}
+
+	private void sendWaiting() {
+		while (!waiting.isEmpty() && outstanding.tryAcquire()) {
+			SwitchPoll p = waiting.poll();
+			if (p == null) {
+				outstanding.release();
+				break;
+			}
+			p.send();
+		}
+	}
+
+	private void releaseSlot() {
+		outstanding.release();
+		sendWaiting();
+	}
+
+	/**
+	 * The interval to use after a poll that took latencyMs on average, or
+	 * timed out.
+	 */
+	static long nextIntervalMs(long currentMs, double latencyMs, boolean timedOut,
+			long baseMs, long maxMs) {
+		long next;
+		if (timedOut) {
+			next = currentMs * 2;
+		} else {
+			long target = Math.max(baseMs, (long) (latencyMs * LATENCY_FACTOR));
+			// Back off at once, but come back down gradually
+			next = target > currentMs ? target : (currentMs + target) / 2;
+		}
+		return Math.min(maxMs, Math.max(baseMs, next));
+	}
+
+	private long jittered(long intervalMs) {
+		return intervalMs + (long) ((random.nextDouble() * 2 - 1) * JITTER * intervalMs);
+	}
+
+	/**
+	 * Polling state of one switch. A switch is idle with its next poll
+	 * scheduled, waiting for a request slot, or has a request in flight,
+	 * so there is never more than one request or one schedule per switch.
+	 */
+	private class SwitchPoll {
+		private final DatapathId dpid;
+		private volatile long intervalMs = baseIntervalMs;
+		private volatile double latencyMs = -1;
+		/* The fields below are guarded by this */
+		private ScheduledFuture<?> next;
+		/** Bumped whenever next is replaced, so a stale timer does nothing */
+		private int generation;
+		private boolean queued;
+		private boolean inFlight;
+		private boolean pollAgain;
+
+		SwitchPoll(DatapathId dpid) {
+			this.dpid = dpid;
+		}
+
+		synchronized void schedule(long delayMs) {
+			if (!running || polls.get(dpid) != this)
+				return;
+			final int g = ++generation;
+			next = executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (due(g))
+						sendWaiting();
+				}
+			}, delayMs, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void cancel() {
+			generation++;
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+
+		private synchronized boolean due(int g) {
+			if (g != generation || queued || inFlight)
+				return false;
+			next = null;
+			return enqueue();
+		}
+
+		/**
+		 * @return whether the switch was added to the waiting line
+		 */
+		synchronized boolean pollNow() {
+			if (queued)
+				return false;
+			if (inFlight) {
+				pollAgain = true;
+				return false;
+			}
+			cancel();
+			return enqueue();
+		}
+
+		private boolean enqueue() {
+			if (!running)
+				return false;
+			if (outstanding.availablePermits() == 0)
+				ctrDeferred.increment();
+			queued = true;
+			waiting.add(this);
+			return true;
+		}
+
+		/** Send the request, holding a slot */
+		void send() {
+			synchronized (this) {
+				queued = false;
+				inFlight = true;
+			}
+			IOFSwitch sw = switchService.getSwitch(dpid);
+			if (sw == null || !running) {
+				polls.remove(dpid, this);
+				releaseSlot();
+				if (sw == null)
+					handler.onSwitchGone(dpid);
+				return;
+			}
+			OFStatsRequest<?> request;
+			try {
+				request = handler.buildRequest(sw);
+			} catch (RuntimeException e) {
+				log.error("Could not build statistics request for switch " + dpid, e);
+				request = null;
+			}
+			if (request == null) {
+				completed();
+				releaseSlot();
+				return;
+			}
+			ctrRequests.increment();
+			PendingRequest r = new PendingRequest(this, sw.writeStatsRequest(request));
+			r.arm();
+		}
+
+		void replied(long elapsedMs) {
+			latencyMs = latencyMs < 0 ? elapsedMs
+					: LATENCY_ALPHA * elapsedMs + (1 - LATENCY_ALPHA) * latencyMs;
+			intervalMs = nextIntervalMs(intervalMs, latencyMs, false, baseIntervalMs, maxIntervalMs);
+			completed();
+		}
+
+		void failed(boolean timedOut) {
+			if (timedOut) {
+				intervalMs = nextIntervalMs(intervalMs, latencyMs, true, baseIntervalMs, maxIntervalMs);
+				log.debug("Statistics request to switch {} timed out; polling every {}ms",
+						dpid, intervalMs);
+			}
+			completed();
+		}
+
+		/**
+		 * The request is done with: poll again at once if that was asked
+		 * for meanwhile, or else schedule the next poll. The caller frees
+		 * the request slot afterwards, which sends the waiting line.
+		 */
+		private synchronized void completed() {
+			inFlight = false;
+			if (pollAgain) {
+				pollAgain = false;
+				enqueue();
+			} else {
+				schedule(jittered(intervalMs));
+			}
+		}
+	}
+
+	/**
+	 * A request in flight. Completed exactly once, by the reply, a failure
+	 * or the timeout, whichever comes first.
+	 */
+	private class PendingRequest implements Runnable, FutureCallback<List<? extends OFStatsReply>> {
+		private final SwitchPoll poll;
+		private final ListenableFuture<? extends List<? extends OFStatsReply>> future;
+		private final long startNs = System.nanoTime();
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeout;
+
+		PendingRequest(SwitchPoll poll, ListenableFuture<? extends List<? extends OFStatsReply>> future) {
+			this.poll = poll;
+			this.future = future;
+		}
+
+		void arm() {
+			timeout = executor.schedule(this, timeoutMs, TimeUnit.MILLISECONDS);
+			Futures.addCallback(future, this);
+		}
+
+		private boolean finish() {
+			if (!done.compareAndSet(false, true))
+				return false;
+			ScheduledFuture<?> t = timeout;
+			if (t != null)
+				t.cancel(false);
+			return true;
+		}
+
+		@Override
+		public void onSuccess(List<? extends OFStatsReply> replies) {
+			if (!finish())
+				return;
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+			// Handle the replies before the switch can be polled again
+			if (running && replies != null) {
+				try {
+					handler.onReplies(poll.dpid, replies);
+				} catch (RuntimeException e) {
+					log.error("Error handling statistics of switch " + poll.dpid, e);
+				}
+			}
+			poll.replied(elapsedMs);
+			releaseSlot();
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			if (!finish())
+				return;
+			ctrErrors.increment();
+			log.debug("Statistics request to switch {} failed: {}", poll.dpid, t.toString());
+			poll.failed(false);
+			releaseSlot();
+		}
+
+		/** Timed out */
+		@Override
+		public void run() {
+			if (!finish())
+				return;
+			ctrTimeouts.increment();
+			future.cancel(false);
+			poll.failed(true);
+			releaseSlot();
+		}
+	}
+}
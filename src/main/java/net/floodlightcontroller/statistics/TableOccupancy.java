@@ -0,0 +1,94 @@
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.types.TableId;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import net.floodlightcontroller.statistics.web.TableOccupancySerializer;
+
+/**
+ * Occupancy of a flow table as of one table statistics poll
+ */
+@JsonSerialize(using=TableOccupancySerializer.class)
+public class TableOccupancy {
+	/**
+	 * How close a table is to running out of entries
+	 */
+	public enum Pressure {
+		NORMAL,
+		/** Above the warning threshold */
+		WARNING,
+		/** Above the critical threshold */
+		CRITICAL,
+		/** No entries left */
+		FULL
+	}
+
+	private final TableId tableId;
+	private final long timeMs;
+	private final long activeCount;
+	private final long maxEntries;
+	private final long lookupCount;
+	private final long matchedCount;
+	private final Pressure pressure;
+
+	TableOccupancy(TableId tableId, long timeMs, long activeCount, long maxEntries,
+			long lookupCount, long matchedCount, Pressure pressure) {
+		this.tableId = tableId;
+		this.timeMs = timeMs;
+		this.activeCount = activeCount;
+		this.maxEntries = maxEntries;
+		this.lookupCount = lookupCount;
+		this.matchedCount = matchedCount;
+		this.pressure = pressure;
+	}
+
+	public TableId getTableId() {
+		return tableId;
+	}
+
+	/**
+	 * @return the time of the poll in ms since the epoch
+	 */
+	public long getTime() {
+		return timeMs;
+	}
+
+	public long getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @return the size of the table, or 0 if the switch did not say
+	 */
+	public long getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getLookupCount() {
+		return lookupCount;
+	}
+
+	public long getMatchedCount() {
+		return matchedCount;
+	}
+
+	/**
+	 * @return the fraction of the table in use, or -1 if the size of the
+	 * table is unknown
+	 */
+	public double getOccupancy() {
+		return maxEntries > 0 ? (double) activeCount / maxEntries : -1;
+	}
+
+	public Pressure getPressure() {
+		return pressure;
+	}
+
+	@Override
+	public String toString() {
+		return "TableOccupancy [tableId=" + tableId + ", time=" + timeMs
+				+ ", activeCount=" + activeCount + ", maxEntries=" + maxEntries
+				+ ", pressure=" + pressure + "]";
+	}
+}
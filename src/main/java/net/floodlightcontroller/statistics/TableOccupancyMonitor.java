@@ -0,0 +1,467 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.projectfloodlight.openflow.protocol.OFErrorMsg;
+import org.projectfloodlight.openflow.protocol.OFErrorType;
+import org.projectfloodlight.openflow.protocol.OFFlowModFailedCode;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFTableStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFTableStatsReply;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.errormsg.OFFlowModFailedErrorMsg;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.internal.TableFeatures;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.statistics.TableOccupancy.Pressure;
+import net.floodlightcontroller.statistics.web.TableOccupancyWebRoutable;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+
+/**
+ * Polls the table statistics of every switch to see how full its flow
+ * tables are, so that modules can stop adding flows before a small
+ * hardware table overflows rather than learn of it from flow-mod errors.
+ *
+ * The size of a table comes from its table features, or from the table
+ * statistics of switches older than OpenFlow 1.3. Each table moves between
+ * the pressure levels of {@link Pressure} as its occupancy crosses the
+ * warning and critical thresholds; it has to drop a margin below a
+ * threshold to move back down, so a table hovering at a threshold does not
+ * flap. Listeners are told of every change.
+ *
+ * A table-full flow-mod error from a switch closes admission to all its
+ * tables and polls it at once.
+ */
+public class TableOccupancyMonitor implements IFloodlightModule, ITableOccupancyService, IOFMessageListener {
+	private static final Logger log = LoggerFactory.getLogger(TableOccupancyMonitor.class);
+
+	/** How far below a threshold a table has to drop to go back down a level */
+	static final double CLEAR_MARGIN = 0.05;
+	/** Table statistics requests in flight at most; replies are small */
+	private static final int MAX_OUTSTANDING = 16;
+
+	private static final String ENABLED_STR = "enable";
+	private static final String INTERVAL_STR = "collectionIntervalSeconds";
+	private static final String MAX_INTERVAL_STR = "maxCollectionIntervalSeconds";
+	private static final String WARNING_STR = "warningThreshold";
+	private static final String CRITICAL_STR = "criticalThreshold";
+	private static final String ADMISSION_STR = "admissionThreshold";
+	private static final String HISTORY_SIZE_STR = "historySize";
+	private static final String COUNTER_MODULE = "tableoccupancy";
+
+	private IFloodlightProviderService floodlightProviderService;
+	private IOFSwitchService switchService;
+	private IThreadPoolService threadPoolService;
+	private IDebugCounterService debugCounterService;
+	private IRestApiService restApiService;
+
+	private boolean isEnabled = false;
+	private int interval = 10;
+	private int maxInterval = 60;
+	private double warningThreshold = 0.8;
+	private double criticalThreshold = 0.95;
+	private double admissionThreshold = 0.95;
+	private int historySize = 360;
+
+	private StatsPoller poller;
+	private final ConcurrentMap<DatapathId, SwitchTables> switches = new ConcurrentHashMap<DatapathId, SwitchTables>();
+	private final List<ITableOccupancyListener> listeners = new CopyOnWriteArrayList<ITableOccupancyListener>();
+
+	private IDebugCounter ctrPressureChanges;
+	private IDebugCounter ctrAdmitted;
+	private IDebugCounter ctrRejected;
+	private IDebugCounter ctrTableFull;
+
+	/**
+	 * @return the pressure of a table at the given occupancy, coming from
+	 * the previous pressure
+	 */
+	static Pressure pressureOf(double occupancy, Pressure previous, double warning, double critical) {
+		if (occupancy < 0)
+			return Pressure.NORMAL;
+		if (occupancy >= 1)
+			return Pressure.FULL;
+		Pressure p;
+		if (occupancy >= critical)
+			p = Pressure.CRITICAL;
+		else if (occupancy >= warning)
+			p = Pressure.WARNING;
+		else
+			p = Pressure.NORMAL;
+		if (p.compareTo(previous) >= 0)
+			return p;
+		/* Going down: only as far as the margin allows */
+		if (previous.compareTo(Pressure.CRITICAL) >= 0 && occupancy >= critical - CLEAR_MARGIN)
+			return Pressure.CRITICAL;
+		if (previous.compareTo(Pressure.WARNING) >= 0 && occupancy >= warning - CLEAR_MARGIN)
+			return Pressure.WARNING;
+		return p;
+	}
+
+	/**
+	 * Tables of one switch. The poller never handles two replies of one
+	 * switch at once; admission runs concurrently from any thread.
+	 */
+	static class SwitchTables {
+		final ConcurrentMap<TableId, TableState> tables = new ConcurrentHashMap<TableId, TableState>();
+		volatile boolean full;
+	}
+
+	/**
+	 * Polls of one table, and the entries admitted since the last one
+	 */
+	static class TableState {
+		private final ArrayDeque<TableOccupancy> history = new ArrayDeque<TableOccupancy>();
+		private final int historySize;
+		private TableOccupancy last;
+		private long admitted;
+
+		TableState(int historySize) {
+			this.historySize = historySize;
+		}
+
+		/**
+		 * @return the pressure before this poll
+		 */
+		synchronized Pressure record(TableOccupancy o) {
+			Pressure previous = last == null ? Pressure.NORMAL : last.getPressure();
+			if (history.size() >= historySize)
+				history.removeFirst();
+			history.addLast(o);
+			last = o;
+			admitted = 0;
+			return previous;
+		}
+
+		synchronized TableOccupancy getLast() {
+			return last;
+		}
+
+		synchronized List<TableOccupancy> getHistory() {
+			return new ArrayList<TableOccupancy>(history);
+		}
+
+		synchronized boolean admit(int count, double threshold) {
+			if (last == null || last.getMaxEntries() <= 0) {
+				return true;
+			}
+			if (last.getActiveCount() + admitted + count > last.getMaxEntries() * threshold) {
+				return false;
+			}
+			admitted += count;
+			return true;
+		}
+	}
+
+	class TableStatsHandler implements StatsPoller.Handler {
+
+		@Override
+		public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+			return sw.getOFFactory().buildTableStatsRequest().build();
+		}
+
+		@Override
+		public void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies) {
+			IOFSwitch sw = switchService.getSwitch(dpid);
+			SwitchTables st = switches.get(dpid);
+			if (st == null) {
+				st = new SwitchTables();
+				SwitchTables old = switches.putIfAbsent(dpid, st);
+				if (old != null)
+					st = old;
+			}
+			long now = System.currentTimeMillis();
+			for (OFStatsReply r : replies) {
+				for (OFTableStatsEntry e : ((OFTableStatsReply) r).getEntries()) {
+					TableState ts = st.tables.get(e.getTableId());
+					if (ts == null) {
+						ts = new TableState(historySize);
+						TableState old = st.tables.putIfAbsent(e.getTableId(), ts);
+						if (old != null)
+							ts = old;
+					}
+					long max = getMaxEntries(sw, e);
+					TableOccupancy previous = ts.getLast();
+					Pressure pressure = pressureOf(max > 0 ? (double) e.getActiveCount() / max : -1,
+							previous == null ? Pressure.NORMAL : previous.getPressure(),
+							warningThreshold, criticalThreshold);
+					TableOccupancy o = new TableOccupancy(e.getTableId(), now, e.getActiveCount(), max,
+							e.getLookupCount().getValue(), e.getMatchedCount().getValue(), pressure);
+					Pressure was = ts.record(o);
+					if (was != pressure) {
+						pressureChanged(dpid, was, o);
+					}
+				}
+			}
+			/* The switch has told us how full it is now */
+			st.full = false;
+		}
+
+		@Override
+		public void onSwitchGone(DatapathId dpid) {
+			switches.remove(dpid);
+		}
+	}
+
+	/**
+	 * @return the size of a table from its features, or from its statistics
+	 * if the switch has no table features, or 0 if unknown
+	 */
+	private static long getMaxEntries(IOFSwitch sw, OFTableStatsEntry e) {
+		TableFeatures tf = sw == null ? null : sw.getTableFeatures(e.getTableId());
+		if (tf != null && tf.getMaxEntries() > 0) {
+			return tf.getMaxEntries();
+		}
+		try {
+			return e.getMaxEntries();
+		} catch (UnsupportedOperationException ex) {
+			/* Not in the table statistics since OpenFlow 1.3 */
+			return 0;
+		}
+	}
+
+	private void pressureChanged(DatapathId dpid, Pressure previous, TableOccupancy o) {
+		ctrPressureChanges.increment();
+		if (o.getPressure().compareTo(previous) > 0) {
+			log.warn("Switch {} table {} is {}: {} of {} entries in use", new Object[] { dpid,
+					o.getTableId(), o.getPressure(), o.getActiveCount(), o.getMaxEntries() });
+		} else {
+			log.info("Switch {} table {} is {}: {} of {} entries in use", new Object[] { dpid,
+					o.getTableId(), o.getPressure(), o.getActiveCount(), o.getMaxEntries() });
+		}
+		for (ITableOccupancyListener l : listeners) {
+			l.tablePressureChanged(dpid, previous, o);
+		}
+	}
+
+	/*
+	 * ITableOccupancyService implementation
+	 */
+
+	@Override
+	public TableOccupancy getOccupancy(DatapathId dpid, TableId table) {
+		SwitchTables st = switches.get(dpid);
+		TableState ts = st == null ? null : st.tables.get(table);
+		return ts == null ? null : ts.getLast();
+	}
+
+	@Override
+	public Map<TableId, TableOccupancy> getOccupancy(DatapathId dpid) {
+		SwitchTables st = switches.get(dpid);
+		if (st == null) {
+			return Collections.emptyMap();
+		}
+		Map<TableId, TableOccupancy> result = new HashMap<TableId, TableOccupancy>();
+		for (Map.Entry<TableId, TableState> e : st.tables.entrySet()) {
+			TableOccupancy o = e.getValue().getLast();
+			if (o != null) {
+				result.put(e.getKey(), o);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<TableOccupancy> getHistory(DatapathId dpid, TableId table) {
+		SwitchTables st = switches.get(dpid);
+		TableState ts = st == null ? null : st.tables.get(table);
+		return ts == null ? Collections.<TableOccupancy>emptyList() : ts.getHistory();
+	}
+
+	@Override
+	public boolean admitFlows(DatapathId dpid, TableId table, int count) {
+		SwitchTables st = switches.get(dpid);
+		if (st == null) {
+			return true;
+		}
+		TableState ts = st.tables.get(table);
+		if (st.full || (ts != null && !ts.admit(count, admissionThreshold))) {
+			ctrRejected.increment();
+			return false;
+		}
+		ctrAdmitted.increment();
+		return true;
+	}
+
+	@Override
+	public void addListener(ITableOccupancyListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(ITableOccupancyListener listener) {
+		listeners.remove(listener);
+	}
+
+	/*
+	 * IOFMessageListener implementation
+	 */
+
+	@Override
+	public String getName() {
+		return "tableoccupancy";
+	}
+
+	@Override
+	public boolean isCallbackOrderingPrereq(OFType type, String name) {
+		return false;
+	}
+
+	@Override
+	public boolean isCallbackOrderingPostreq(OFType type, String name) {
+		return false;
+	}
+
+	@Override
+	public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+		OFErrorMsg error = (OFErrorMsg) msg;
+		if (error.getErrType() != OFErrorType.FLOW_MOD_FAILED) {
+			return Command.CONTINUE;
+		}
+		OFFlowModFailedCode code = ((OFFlowModFailedErrorMsg) error).getCode();
+		if (code == OFFlowModFailedCode.TABLE_FULL || code == OFFlowModFailedCode.ALL_TABLES_FULL) {
+			ctrTableFull.increment();
+			SwitchTables st = switches.get(sw.getId());
+			if (st != null) {
+				st.full = true;
+			}
+			if (poller != null) {
+				poller.pollNow(sw.getId());
+			}
+		}
+		return Command.CONTINUE;
+	}
+
+	/*
+	 * IFloodlightModule implementation
+	 */
+
+	@Override
+	public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+		Collection<Class<? extends IFloodlightService>> l =
+				new ArrayList<Class<? extends IFloodlightService>>();
+		l.add(ITableOccupancyService.class);
+		return l;
+	}
+
+	@Override
+	public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+		Map<Class<? extends IFloodlightService>, IFloodlightService> m =
+				new HashMap<Class<? extends IFloodlightService>, IFloodlightService>();
+		m.put(ITableOccupancyService.class, this);
+		return m;
+	}
+
+	@Override
+	public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+		Collection<Class<? extends IFloodlightService>> l =
+				new ArrayList<Class<? extends IFloodlightService>>();
+		l.add(IFloodlightProviderService.class);
+		l.add(IOFSwitchService.class);
+		l.add(IThreadPoolService.class);
+		l.add(IDebugCounterService.class);
+		l.add(IRestApiService.class);
+		return l;
+	}
+
+	@Override
+	public void init(FloodlightModuleContext context)
+			throws FloodlightModuleException {
+		floodlightProviderService = context.getServiceImpl(IFloodlightProviderService.class);
+		switchService = context.getServiceImpl(IOFSwitchService.class);
+		threadPoolService = context.getServiceImpl(IThreadPoolService.class);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
+		restApiService = context.getServiceImpl(IRestApiService.class);
+		debugCounterService.registerModule(COUNTER_MODULE);
+		ctrPressureChanges = debugCounterService.registerCounter(COUNTER_MODULE, "pressure-changes",
+				"Number of times a table crossed an occupancy threshold");
+		ctrAdmitted = debugCounterService.registerCounter(COUNTER_MODULE, "admitted",
+				"Number of flow admission requests granted");
+		ctrRejected = debugCounterService.registerCounter(COUNTER_MODULE, "rejected",
+				"Number of flow admission requests refused for lack of table space",
+				IDebugCounterService.MetaData.WARN);
+		ctrTableFull = debugCounterService.registerCounter(COUNTER_MODULE, "table-full-errors",
+				"Number of table full errors from switches", IDebugCounterService.MetaData.WARN);
+
+		Map<String, String> config = context.getConfigParams(this);
+		if (config.containsKey(ENABLED_STR)) {
+			isEnabled = Boolean.parseBoolean(config.get(ENABLED_STR).trim());
+		}
+		try {
+			if (config.containsKey(INTERVAL_STR)) {
+				interval = Integer.parseInt(config.get(INTERVAL_STR).trim());
+			}
+			if (config.containsKey(MAX_INTERVAL_STR)) {
+				maxInterval = Integer.parseInt(config.get(MAX_INTERVAL_STR).trim());
+			}
+			if (config.containsKey(WARNING_STR)) {
+				warningThreshold = Double.parseDouble(config.get(WARNING_STR).trim());
+			}
+			if (config.containsKey(CRITICAL_STR)) {
+				criticalThreshold = Double.parseDouble(config.get(CRITICAL_STR).trim());
+			}
+			if (config.containsKey(ADMISSION_STR)) {
+				admissionThreshold = Double.parseDouble(config.get(ADMISSION_STR).trim());
+			}
+			if (config.containsKey(HISTORY_SIZE_STR)) {
+				historySize = Integer.parseInt(config.get(HISTORY_SIZE_STR).trim());
+			}
+		} catch (NumberFormatException e) {
+			throw new FloodlightModuleException("Invalid table occupancy configuration: " + e.getMessage());
+		}
+		if (interval < 1 || maxInterval < interval || historySize < 1) {
+			throw new FloodlightModuleException("Invalid table occupancy polling parameters: interval "
+					+ interval + "s, max interval " + maxInterval + "s, history size " + historySize);
+		}
+		if (warningThreshold <= 0 || criticalThreshold < warningThreshold || criticalThreshold > 1
+				|| admissionThreshold <= 0 || admissionThreshold > 1) {
+			throw new FloodlightModuleException("Invalid table occupancy thresholds: warning "
+					+ warningThreshold + ", critical " + criticalThreshold + ", admission " + admissionThreshold);
+		}
+	}
+
+	@Override
+	public void startUp(FloodlightModuleContext context)
+			throws FloodlightModuleException {
+		restApiService.addRestletRoutable(new TableOccupancyWebRoutable());
+		if (!isEnabled) {
+			log.info("Table occupancy monitoring disabled");
+			return;
+		}
+		floodlightProviderService.addOFMessageListener(OFType.ERROR, this);
+		long intervalMs = TimeUnit.SECONDS.toMillis(interval);
+		poller = new StatsPoller("table-stats", switchService, threadPoolService.getScheduledExecutor(),
+				debugCounterService, COUNTER_MODULE, new TableStatsHandler(), intervalMs,
+				TimeUnit.SECONDS.toMillis(maxInterval), Math.max(1000, intervalMs / 2), MAX_OUTSTANDING);
+		poller.start();
+		log.info("Table occupancy polled every {}s; warning at {}, critical at {}",
+				new Object[] { interval, warningThreshold, criticalThreshold });
+	}
+}
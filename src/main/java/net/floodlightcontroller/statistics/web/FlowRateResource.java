@@ -0,0 +1,41 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.floodlightcontroller.statistics.FlowRate;
+import net.floodlightcontroller.statistics.IFlowRateService;
+
+import org.projectfloodlight.openflow.types.U64;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Flow rates of all applications, or by cookie for one application when
+ * the request has an application id
+ */
+public class FlowRateResource extends ServerResource {
+
+	@Get("json")
+	public Object retrieve() {
+		IFlowRateService flowRateService = (IFlowRateService) getContext().getAttributes().get(IFlowRateService.class.getCanonicalName());
+		String a = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.APP_STR);
+		if (a == null) {
+			return flowRateService.getAppRates();
+		}
+		int app;
+		try {
+			app = Integer.decode(a.trim());
+		} catch (NumberFormatException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Could not parse application id " + a);
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+		Map<String, FlowRate> result = new HashMap<String, FlowRate>();
+		for (Map.Entry<U64, FlowRate> e : flowRateService.getCookieRates(app).entrySet()) {
+			result.put(e.getKey().toString(), e.getValue());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,24 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.io.IOException;
+
+import net.floodlightcontroller.statistics.FlowRate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class FlowRateSerializer extends JsonSerializer<FlowRate> {
+
+	@Override
+	public void serialize(FlowRate rate, JsonGenerator jGen, SerializerProvider serializer) throws IOException, JsonProcessingException {
+		jGen.writeStartObject();
+		jGen.writeNumberField("bits-per-second", (long) rate.getBitsPerSecond());
+		jGen.writeNumberField("packets-per-second", rate.getPacketsPerSecond());
+		jGen.writeNumberField("bytes", rate.getBytes());
+		jGen.writeNumberField("packets", rate.getPackets());
+		jGen.writeNumberField("flows", rate.getFlows());
+		jGen.writeEndObject();
+	}
+}
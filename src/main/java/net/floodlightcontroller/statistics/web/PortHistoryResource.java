@@ -0,0 +1,86 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.PortCounterHistory;
+import net.floodlightcontroller.statistics.PortRate;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Port counter rates over a time range. Query parameters, all optional:
+ * "start" and "end" in ms since the epoch, or "window" in seconds back
+ * from now (default 3600); "step" in seconds to downsample to (default 0,
+ * every sample kept).
+ */
+public class PortHistoryResource extends ServerResource {
+	protected static final long DEFAULT_WINDOW_SECONDS = 3600;
+
+	@Get("json")
+	public Object retrieve() {
+		PortCounterHistory history = getHistory();
+		if (history == null) {
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+		try {
+			long[] range = getRange();
+			List<PortRate> rates = history.getRates(range[0], range[1],
+					getLongQueryValue("step", 0) * 1000);
+			return rates;
+		} catch (NumberFormatException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid query parameter: " + e.getMessage());
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+	}
+
+	/**
+	 * @return the history of the port in the request, or null after setting
+	 * an error status
+	 */
+	protected PortCounterHistory getHistory() {
+		IStatisticsService statisticsService = (IStatisticsService) getContext().getAttributes().get(IStatisticsService.class.getCanonicalName());
+		String d = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.DPID_STR);
+		String p = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.PORT_STR);
+		DatapathId dpid;
+		OFPort port;
+		try {
+			dpid = DatapathId.of(d);
+			port = OFPort.of(Integer.parseInt(p));
+		} catch (Exception e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Could not parse DPID " + d + " or port " + p);
+			return null;
+		}
+		PortCounterHistory history = statisticsService.getPortHistory(dpid, port);
+		if (history == null) {
+			setStatus(Status.CLIENT_ERROR_NOT_FOUND, "No statistics collected for " + dpid + " port " + port);
+		}
+		return history;
+	}
+
+	/**
+	 * @return the start and end of the requested range in ms
+	 */
+	protected long[] getRange() {
+		long end = getLongQueryValue("end", System.currentTimeMillis());
+		long start = getLongQueryValue("start", end - getLongQueryValue("window", DEFAULT_WINDOW_SECONDS) * 1000);
+		return new long[] { start, end };
+	}
+
+	protected long getLongQueryValue(String name, long defaultValue) {
+		String value = getQueryValue(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new NumberFormatException(name + "=" + value);
+		}
+	}
+}
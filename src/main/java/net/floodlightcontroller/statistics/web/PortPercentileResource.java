@@ -0,0 +1,105 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.statistics.PortCounterHistory;
+import net.floodlightcontroller.statistics.PortCounterHistory.PortCounter;
+import net.floodlightcontroller.statistics.PortRate;
+
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+
+/**
+ * A percentile of each port counter rate over a time range, e.g. the p95
+ * receive rate over the last hour. Takes the range parameters of
+ * {@link PortHistoryResource}, "p" for the percentile (default 95) and
+ * "step" in seconds (default 60). Utilization against the current port
+ * speed is included when the switch reports it.
+ */
+public class PortPercentileResource extends PortHistoryResource {
+	protected static final long DEFAULT_STEP_SECONDS = 60;
+	protected static final double DEFAULT_PERCENTILE = 95;
+
+	@Get("json")
+	@Override
+	public Object retrieve() {
+		PortCounterHistory history = getHistory();
+		if (history == null) {
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+		long[] range;
+		long step;
+		double p = DEFAULT_PERCENTILE;
+		try {
+			range = getRange();
+			step = getLongQueryValue("step", DEFAULT_STEP_SECONDS);
+			String value = getQueryValue("p");
+			if (value != null) {
+				p = Double.parseDouble(value.trim());
+			}
+		} catch (NumberFormatException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid query parameter: " + e.getMessage());
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+		if (p < 0 || p > 100) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Percentile must be between 0 and 100");
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+
+		List<PortRate> rates = history.getRates(range[0], range[1], step * 1000);
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("start", range[0]);
+		result.put("end", range[1]);
+		result.put("percentile", p);
+		result.put("samples", rates.size());
+		if (rates.isEmpty()) {
+			return result;
+		}
+		for (PortCounter c : PortCounter.values()) {
+			result.put(PortRateSerializer.counterName(c) + "-per-second",
+					PortCounterHistory.percentile(rates, c, p));
+		}
+		double rxBits = PortCounterHistory.percentile(rates, PortCounter.RX_BYTES, p) * 8;
+		double txBits = PortCounterHistory.percentile(rates, PortCounter.TX_BYTES, p) * 8;
+		result.put("bits-per-second-rx", (long) rxBits);
+		result.put("bits-per-second-tx", (long) txBits);
+
+		long speedKbps = getCurrentSpeedKbps();
+		if (speedKbps > 0) {
+			result.put("utilization-rx", rxBits / (speedKbps * 1000.0));
+			result.put("utilization-tx", txBits / (speedKbps * 1000.0));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the current speed of the port in kbps, or 0 if unknown
+	 */
+	private long getCurrentSpeedKbps() {
+		IOFSwitchService switchService = (IOFSwitchService) getContext().getAttributes().get(IOFSwitchService.class.getCanonicalName());
+		String d = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.DPID_STR);
+		String p = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.PORT_STR);
+		IOFSwitch sw = switchService.getSwitch(DatapathId.of(d));
+		if (sw == null) {
+			return 0;
+		}
+		OFPortDesc pd = sw.getPort(OFPort.of(Integer.parseInt(p)));
+		if (pd == null || pd.getVersion() == OFVersion.OF_10) {
+			return 0;
+		}
+		try {
+			return pd.getCurrSpeed();
+		} catch (UnsupportedOperationException e) {
+			return 0;
+		}
+	}
+}
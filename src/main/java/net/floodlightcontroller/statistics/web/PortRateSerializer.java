@@ -0,0 +1,31 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.io.IOException;
+
+import net.floodlightcontroller.statistics.PortCounterHistory.PortCounter;
+import net.floodlightcontroller.statistics.PortRate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class PortRateSerializer extends JsonSerializer<PortRate> {
+
+	@Override
+	public void serialize(PortRate rate, JsonGenerator jGen, SerializerProvider serializer) throws IOException, JsonProcessingException {
+		jGen.writeStartObject();
+		jGen.writeNumberField("start", rate.getStartTime());
+		jGen.writeNumberField("end", rate.getEndTime());
+		jGen.writeNumberField("bits-per-second-rx", (long) rate.getBitsPerSecondRx());
+		jGen.writeNumberField("bits-per-second-tx", (long) rate.getBitsPerSecondTx());
+		for (PortCounter c : PortCounter.values()) {
+			jGen.writeNumberField(counterName(c) + "-per-second", rate.getPerSecond(c));
+		}
+		jGen.writeEndObject();
+	}
+
+	static String counterName(PortCounter c) {
+		return c.name().toLowerCase().replace('_', '-');
+	}
+}
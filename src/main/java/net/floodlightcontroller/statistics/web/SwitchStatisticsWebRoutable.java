@@ -9,6 +9,7 @@ import org.restlet.routing.Router;
 public class SwitchStatisticsWebRoutable implements RestletRoutable {
 	protected static final String DPID_STR = "dpid";
 	protected static final String PORT_STR = "port";
+	protected static final String APP_STR = "app";
 	protected static final String ENABLE_STR = "enable";
 	protected static final String DISABLE_STR = "disable";
 
@@ -16,6 +17,10 @@ public class SwitchStatisticsWebRoutable implements RestletRoutable {
     public Router getRestlet(Context context) {
         Router router = new Router(context);
         router.attach("/bandwidth/{" + DPID_STR + "}/{" + PORT_STR + "}/json", BandwidthResource.class);
+        router.attach("/history/{" + DPID_STR + "}/{" + PORT_STR + "}/json", PortHistoryResource.class);
+        router.attach("/percentile/{" + DPID_STR + "}/{" + PORT_STR + "}/json", PortPercentileResource.class);
+        router.attach("/flows/json", FlowRateResource.class);
+        router.attach("/flows/{" + APP_STR + "}/json", FlowRateResource.class);
         router.attach("/config/enable/json", ConfigResource.class);
         router.attach("/config/disable/json", ConfigResource.class);
         return router;
@@ -0,0 +1,44 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.statistics.ITableOccupancyService;
+import net.floodlightcontroller.statistics.TableOccupancy;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * The last poll of every table of a switch, or all the polls kept of one
+ * table
+ */
+public class TableOccupancyResource extends ServerResource {
+
+	@Get("json")
+	public Object retrieve() {
+		ITableOccupancyService occupancyService = (ITableOccupancyService) getContext().getAttributes().get(ITableOccupancyService.class.getCanonicalName());
+		String d = (String) getRequestAttributes().get(TableOccupancyWebRoutable.DPID_STR);
+		String t = (String) getRequestAttributes().get(TableOccupancyWebRoutable.TABLE_STR);
+		DatapathId dpid;
+		TableId table = null;
+		try {
+			dpid = DatapathId.of(d);
+			if (t != null) {
+				table = TableId.of(Integer.parseInt(t));
+			}
+		} catch (Exception e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Could not parse DPID " + d + " or table " + t);
+			return Collections.singletonMap("ERROR", getStatus().getDescription());
+		}
+		if (table != null) {
+			return occupancyService.getHistory(dpid, table);
+		}
+		List<TableOccupancy> tables = new ArrayList<TableOccupancy>(occupancyService.getOccupancy(dpid).values());
+		return tables;
+	}
+}
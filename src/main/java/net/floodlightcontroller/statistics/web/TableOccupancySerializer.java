@@ -0,0 +1,27 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.io.IOException;
+
+import net.floodlightcontroller.statistics.TableOccupancy;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class TableOccupancySerializer extends JsonSerializer<TableOccupancy> {
+
+	@Override
+	public void serialize(TableOccupancy to, JsonGenerator jGen, SerializerProvider serializer) throws IOException, JsonProcessingException {
+		jGen.writeStartObject();
+		jGen.writeNumberField("table", to.getTableId().getValue());
+		jGen.writeNumberField("time", to.getTime());
+		jGen.writeNumberField("active-count", to.getActiveCount());
+		jGen.writeNumberField("max-entries", to.getMaxEntries());
+		jGen.writeNumberField("lookup-count", to.getLookupCount());
+		jGen.writeNumberField("matched-count", to.getMatchedCount());
+		jGen.writeNumberField("occupancy", to.getOccupancy());
+		jGen.writeStringField("pressure", to.getPressure().toString());
+		jGen.writeEndObject();
+	}
+}
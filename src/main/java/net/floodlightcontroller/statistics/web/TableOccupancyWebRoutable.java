@@ -0,0 +1,24 @@
+package net.floodlightcontroller.statistics.web;
+
+import net.floodlightcontroller.restserver.RestletRoutable;
+
+import org.restlet.Context;
+import org.restlet.routing.Router;
+
+public class TableOccupancyWebRoutable implements RestletRoutable {
+	protected static final String DPID_STR = "dpid";
+	protected static final String TABLE_STR = "table";
+
+	@Override
+	public Router getRestlet(Context context) {
+		Router router = new Router(context);
+		router.attach("/{" + DPID_STR + "}/json", TableOccupancyResource.class);
+		router.attach("/{" + DPID_STR + "}/{" + TABLE_STR + "}/history/json", TableOccupancyResource.class);
+		return router;
+	}
+
+	@Override
+	public String basePath() {
+		return "/wm/tableoccupancy";
+	}
+}
@@ -33,6 +33,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,9 +57,9 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
 
     protected static final String DEFAULT_PRIMARY_KEY_NAME = "id";
 
-    private Map<String,String> tablePrimaryKeyMap = new HashMap<String,String>();
-    private Map<String, Map<String,ColumnIndexMode>> tableIndexedColumnMap =
-        new HashMap<String,Map<String,ColumnIndexMode>>();
+    private Map<String,String> tablePrimaryKeyMap = new ConcurrentHashMap<String,String>();
+    private ConcurrentMap<String, Map<String,ColumnIndexMode>> tableIndexedColumnMap =
+        new ConcurrentHashMap<String,Map<String,ColumnIndexMode>>();
 
     abstract static class NoSqlPredicate {
 
@@ -599,8 +601,11 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
     public void setColumnIndexMode(String tableName, String columnName, ColumnIndexMode indexMode) {
         Map<String, ColumnIndexMode> indexedColumnMap = tableIndexedColumnMap.get(tableName);
         if (indexedColumnMap == null) {
-            indexedColumnMap = new HashMap<String,ColumnIndexMode>();
-            tableIndexedColumnMap.put(tableName, indexedColumnMap);
+            indexedColumnMap = new ConcurrentHashMap<String,ColumnIndexMode>();
+            Map<String, ColumnIndexMode> existing =
+                tableIndexedColumnMap.putIfAbsent(tableName, indexedColumnMap);
+            if (existing != null)
+                indexedColumnMap = existing;
         }
         indexedColumnMap.put(columnName, indexMode);
     }
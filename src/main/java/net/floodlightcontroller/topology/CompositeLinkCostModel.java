@@ -0,0 +1,116 @@
+package net.floodlightcontroller.topology;
+
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
+
+/**
+ * Link cost made of a fixed cost per hop, the link latency measured by link
+ * discovery, and a penalty for congestion. Utilisation is the higher of the
+ * transmit rate of the source port and the receive rate of the destination
+ * port, over the current speed of the source port.
+ *
+ * cost = HOP_COST + latencyCostPerMs * latency
+ *      + congestionCost * (utilisation - threshold) / (1 - threshold)
+ *
+ * where the last term only counts above the threshold and is capped at
+ * congestionCost. A hop costs 10 so that latency and congestion can be
+ * weighed in fractions of a hop.
+ */
+public class CompositeLinkCostModel implements ILinkCostModel {
+	public static final int HOP_COST = 10;
+
+	private final IStatisticsService statisticsService;
+	private final IOFSwitchService switchService;
+	private final double latencyCostPerMs;
+	private final int congestionCost;
+	private final double congestionThreshold;
+	private final long defaultSpeedKbps;
+
+	/**
+	 * @param statisticsService port bandwidth, or null to leave out congestion
+	 * @param switchService port speeds
+	 * @param latencyCostPerMs the cost added per millisecond of latency
+	 * @param congestionCost the cost added to a fully used link
+	 * @param congestionThreshold the utilisation, from 0 to 1, above which
+	 * congestion is added
+	 * @param defaultSpeedKbps the speed of ports that do not report one
+	 */
+	public CompositeLinkCostModel(IStatisticsService statisticsService, IOFSwitchService switchService,
+			double latencyCostPerMs, int congestionCost, double congestionThreshold, long defaultSpeedKbps) {
+		if (latencyCostPerMs < 0 || congestionCost < 0) {
+			throw new IllegalArgumentException("Link costs must not be negative");
+		}
+		if (congestionThreshold < 0 || congestionThreshold >= 1) {
+			throw new IllegalArgumentException("Congestion threshold must be in [0, 1)");
+		}
+		if (defaultSpeedKbps <= 0) {
+			throw new IllegalArgumentException("Default port speed must be positive");
+		}
+		this.statisticsService = statisticsService;
+		this.switchService = switchService;
+		this.latencyCostPerMs = latencyCostPerMs;
+		this.congestionCost = congestionCost;
+		this.congestionThreshold = congestionThreshold;
+		this.defaultSpeedKbps = defaultSpeedKbps;
+	}
+
+	@Override
+	public int getCost(Link link) {
+		double cost = HOP_COST;
+		if (link.getLatency() != null) {
+			cost += latencyCostPerMs * link.getLatency().getValue();
+		}
+		double u = getUtilisation(link);
+		if (u > congestionThreshold) {
+			cost += congestionCost * Math.min(1.0, (u - congestionThreshold) / (1 - congestionThreshold));
+		}
+		return (int) Math.max(1, Math.min(TopologyInstance.MAX_LINK_WEIGHT, Math.round(cost)));
+	}
+
+	/**
+	 * @return the utilisation of the link from 0, or 0 if unknown
+	 */
+	protected double getUtilisation(Link link) {
+		if (statisticsService == null) {
+			return 0;
+		}
+		long bps = 0;
+		SwitchPortBandwidth tx = statisticsService.getBandwidthConsumption(link.getSrc(), link.getSrcPort());
+		if (tx != null) {
+			bps = tx.getBitsPerSecondTx().getValue();
+		}
+		SwitchPortBandwidth rx = statisticsService.getBandwidthConsumption(link.getDst(), link.getDstPort());
+		if (rx != null) {
+			bps = Math.max(bps, rx.getBitsPerSecondRx().getValue());
+		}
+		if (bps <= 0) {
+			return 0;
+		}
+		return bps / (getSpeedKbps(link.getSrc(), link.getSrcPort()) * 1000.0);
+	}
+
+	private long getSpeedKbps(DatapathId dpid, OFPort port) {
+		IOFSwitch sw = switchService == null ? null : switchService.getSwitch(dpid);
+		if (sw == null) {
+			return defaultSpeedKbps;
+		}
+		OFPortDesc pd = sw.getPort(port);
+		if (pd == null || pd.getVersion() == OFVersion.OF_10) {
+			return defaultSpeedKbps;
+		}
+		try {
+			long speed = pd.getCurrSpeed();
+			return speed > 0 ? speed : defaultSpeedKbps;
+		} catch (UnsupportedOperationException e) {
+			return defaultSpeedKbps;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package net.floodlightcontroller.topology;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Gives the cost of using a link for routing. The topology asks for the
+ * cost of every link periodically, on its own thread, and only recomputes
+ * routes when a cost moves far enough from the cost last used; see
+ * {@link ITopologyService#setLinkCostModel}.
+ */
+public interface ILinkCostModel {
+	/**
+	 * @param link a link, with its latency as last reported by link discovery
+	 * @return the cost of the link, from 1 to {@link TopologyInstance#MAX_LINK_WEIGHT}
+	 */
+	public int getCost(Link link);
+}
@@ -44,6 +44,14 @@ public interface ITopologyService extends IFloodlightService  {
 	 */
 	public Date getLastUpdateTime();
 
+	/**
+	 * Route over the costs given by a model instead of the configured
+	 * one. Costs are sampled periodically, and routes are recomputed when
+	 * the cost of a link moves far enough from the cost in use.
+	 * @param model the link cost model, or null to route by hop count
+	 */
+	public void setLinkCostModel(ILinkCostModel model);
+
 	/*******************************************************
 	 * PORT FUNCTIONS
 	 *******************************************************/
@@ -0,0 +1,92 @@
+package net.floodlightcontroller.topology;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Keeps the link costs routes are computed with. A link's cost only moves
+ * to the cost its model currently gives once the two differ by more than a
+ * band around the cost in use, so that costs driven by noisy measurements
+ * do not flap and routes are only recomputed for real changes.
+ *
+ * Only used from the topology thread.
+ */
+class LinkCostTracker {
+	protected static final Logger log = LoggerFactory.getLogger(LinkCostTracker.class);
+
+	private final ILinkCostModel model;
+	private final double hysteresis;
+	private final int minChange;
+	private final Map<Link, Integer> costs = new HashMap<Link, Integer>();
+
+	/**
+	 * @param hysteresis the change, relative to the cost in use, a new cost
+	 * must exceed to replace it
+	 * @param minChange the smallest change that replaces a cost in use
+	 */
+	LinkCostTracker(ILinkCostModel model, double hysteresis, int minChange) {
+		this.model = model;
+		this.hysteresis = hysteresis;
+		this.minChange = minChange;
+	}
+
+	/**
+	 * Ask the model for the cost of every link again.
+	 * @param links the links of the topology, with their latest latency
+	 * @return true if the cost of a link already in use changed
+	 */
+	boolean update(Set<Link> links) {
+		costs.keySet().retainAll(links);
+		boolean changed = false;
+		for (Link l : links) {
+			Integer current = costs.get(l);
+			int cost = modelCost(l, current);
+			if (current == null) {
+				costs.put(l, cost);
+			} else if (Math.abs(cost - current) >= Math.max(minChange, hysteresis * current)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Cost of link {} changed from {} to {}", new Object[] { l, current, cost });
+				}
+				costs.put(l, cost);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the costs in use for the given links; links new to the
+	 * tracker start at their current cost
+	 */
+	Map<Link, Integer> getCosts(Set<Link> links) {
+		Map<Link, Integer> result = new HashMap<Link, Integer>();
+		for (Link l : links) {
+			Integer cost = costs.get(l);
+			if (cost == null) {
+				cost = modelCost(l, null);
+				costs.put(l, cost);
+			}
+			result.put(l, cost);
+		}
+		return result;
+	}
+
+	/*
+	 * A model failing for a link keeps its cost in use, or the cost of a
+	 * hop if it has none yet
+	 */
+	private int modelCost(Link l, Integer current) {
+		try {
+			return Math.max(1, Math.min(TopologyInstance.MAX_LINK_WEIGHT, model.getCost(l)));
+		} catch (RuntimeException e) {
+			log.warn("Could not compute the cost of link {}: {}", l, e.getMessage());
+			return current == null ? 1 : current;
+		}
+	}
+}
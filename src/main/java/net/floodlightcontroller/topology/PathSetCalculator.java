@@ -0,0 +1,286 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+/**
+ * Computes the set of paths between two switches that flows may be spread
+ * over, either every path of the shortest cost (ECMP) or the k shortest
+ * loop-free paths by Yen's algorithm.
+ *
+ * Graphs are given the way {@link TopologyInstance} builds them: the links
+ * of each node, in both directions, with a cost per link that defaults to 1.
+ * In both cases the first path is the path of the destination rooted tree,
+ * so that a caller always picking the first path gets the single path route.
+ */
+class PathSetCalculator {
+    public enum Mode {
+        /** All paths of the least cost */
+        ECMP,
+        /** The k least cost paths, of any cost */
+        KSP
+    }
+
+    private final Map<DatapathId, Set<Link>> links;
+    private final Map<Link, Integer> linkCost;
+
+    PathSetCalculator(Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost) {
+        this.links = links;
+        this.linkCost = linkCost;
+    }
+
+    private int cost(Link l) {
+        Integer w = linkCost == null ? null : linkCost.get(l);
+        return w == null ? 1 : w;
+    }
+
+    /*
+     * Links of a node towards other nodes, ordered by the next node and
+     * then the port, so that path sets do not depend on hash set order
+     */
+    private List<Link> outLinks(DatapathId node) {
+        List<Link> out = new ArrayList<Link>();
+        Set<Link> nl = links.get(node);
+        if (nl == null) return out;
+        for (Link l : nl) {
+            if (l.getSrc().equals(node) && !l.getDst().equals(node)) {
+                out.add(l);
+            }
+        }
+        Collections.sort(out, LINK_ORDER);
+        return out;
+    }
+
+    private static final Comparator<Link> LINK_ORDER = new Comparator<Link>() {
+        @Override
+        public int compare(Link a, Link b) {
+            int c = a.getDst().compareTo(b.getDst());
+            return c != 0 ? c : a.getSrcPort().compareTo(b.getSrcPort());
+        }
+    };
+
+    /**
+     * @param tree the shortest path tree rooted at dst
+     * @return up to max paths from src to dst, as lists of links, or an
+     * empty list if there is no path
+     */
+    List<List<Link>> paths(Mode mode, BroadcastTree tree, DatapathId src, DatapathId dst, int max) {
+        List<Link> first = treePath(tree, src, dst);
+        if (first == null) return Collections.emptyList();
+        if (max <= 1) return Collections.singletonList(first);
+        return mode == Mode.KSP ? kShortest(first, src, dst, max) : equalCost(tree, src, dst, max);
+    }
+
+    private List<Link> treePath(BroadcastTree tree, DatapathId src, DatapathId dst) {
+        if (tree == null || src.equals(dst)) return null;
+        List<Link> path = new ArrayList<Link>();
+        DatapathId n = src;
+        while (!n.equals(dst)) {
+            Link l = tree.getTreeLink(n);
+            if (l == null) return null;
+            path.add(l);
+            n = l.getDst();
+        }
+        return path;
+    }
+
+    /*
+     * A link u->v is on a least cost path to the root if cost(u) is the
+     * link cost plus cost(v). Since costs strictly decrease along such
+     * links, following them depth first cannot loop. The tree link is
+     * tried first at every node, so the tree path comes out first.
+     */
+    private List<List<Link>> equalCost(BroadcastTree tree, DatapathId src, DatapathId dst, int max) {
+        Map<DatapathId, Integer> costs = tree.getCosts();
+        List<List<Link>> result = new ArrayList<List<Link>>();
+        List<Link> path = new ArrayList<Link>();
+        List<List<Link>> choices = new ArrayList<List<Link>>();
+        List<Integer> chosen = new ArrayList<Integer>();
+        choices.add(downhill(tree, costs, src));
+        chosen.add(0);
+        while (!choices.isEmpty() && result.size() < max) {
+            int depth = choices.size() - 1;
+            List<Link> options = choices.get(depth);
+            int i = chosen.get(depth);
+            if (i >= options.size()) {
+                choices.remove(depth);
+                chosen.remove(depth);
+                if (depth > 0) {
+                    path.remove(depth - 1);
+                    chosen.set(depth - 1, chosen.get(depth - 1) + 1);
+                }
+                continue;
+            }
+            Link l = options.get(i);
+            if (l.getDst().equals(dst)) {
+                List<Link> p = new ArrayList<Link>(path);
+                p.add(l);
+                result.add(p);
+                chosen.set(depth, i + 1);
+            } else {
+                path.add(l);
+                choices.add(downhill(tree, costs, l.getDst()));
+                chosen.add(0);
+            }
+        }
+        return result;
+    }
+
+    private List<Link> downhill(BroadcastTree tree, Map<DatapathId, Integer> costs, DatapathId node) {
+        Integer c = costs.get(node);
+        List<Link> result = new ArrayList<Link>();
+        if (c == null) return result;
+        Link treeLink = tree.getTreeLink(node);
+        if (treeLink != null) result.add(treeLink);
+        for (Link l : outLinks(node)) {
+            Integer d = costs.get(l.getDst());
+            if (d != null && d + cost(l) == c && !l.equals(treeLink)) {
+                result.add(l);
+            }
+        }
+        return result;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final List<Link> path;
+        final int cost;
+
+        Candidate(List<Link> path, int cost) {
+            this.path = path;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            if (cost != o.cost) return cost < o.cost ? -1 : 1;
+            return path.size() < o.path.size() ? -1 : (path.size() == o.path.size() ? 0 : 1);
+        }
+    }
+
+    /*
+     * Yen's algorithm: every next path branches off one of the paths found
+     * so far at some node, through a link none of those paths with the
+     * same prefix took, and avoids the nodes of the prefix.
+     */
+    private List<List<Link>> kShortest(List<Link> first, DatapathId src, DatapathId dst, int k) {
+        List<List<Link>> result = new ArrayList<List<Link>>();
+        result.add(first);
+        Set<List<Link>> seen = new HashSet<List<Link>>();
+        seen.add(first);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+        while (result.size() < k) {
+            List<Link> last = result.get(result.size() - 1);
+            for (int i = 0; i < last.size(); i++) {
+                DatapathId spur = last.get(i).getSrc();
+                List<Link> root = last.subList(0, i);
+                Set<Link> excludedLinks = new HashSet<Link>();
+                for (List<Link> p : result) {
+                    if (p.size() > i && p.subList(0, i).equals(root)) {
+                        excludedLinks.add(p.get(i));
+                    }
+                }
+                Set<DatapathId> excludedNodes = new HashSet<DatapathId>();
+                for (Link l : root) {
+                    excludedNodes.add(l.getSrc());
+                }
+                List<Link> spurPath = shortest(spur, dst, excludedLinks, excludedNodes);
+                if (spurPath == null) continue;
+                List<Link> p = new ArrayList<Link>(root);
+                p.addAll(spurPath);
+                if (seen.add(p)) {
+                    candidates.add(new Candidate(p, pathCost(p)));
+                }
+            }
+            Candidate next = candidates.poll();
+            if (next == null) break;
+            result.add(next.path);
+        }
+        return result;
+    }
+
+    private int pathCost(List<Link> path) {
+        int c = 0;
+        for (Link l : path) {
+            c += cost(l);
+        }
+        return c;
+    }
+
+    private static class NodeDist implements Comparable<NodeDist> {
+        final DatapathId node;
+        final int dist;
+
+        NodeDist(DatapathId node, int dist) {
+            this.node = node;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(NodeDist o) {
+            if (dist != o.dist) return dist < o.dist ? -1 : 1;
+            return node.compareTo(o.node);
+        }
+    }
+
+    /*
+     * Source rooted Dijkstra from src to dst, stopping at dst
+     */
+    private List<Link> shortest(DatapathId src, DatapathId dst, Set<Link> excludedLinks,
+            Set<DatapathId> excludedNodes) {
+        Map<DatapathId, Integer> dist = new HashMap<DatapathId, Integer>();
+        Map<DatapathId, Link> prev = new HashMap<DatapathId, Link>();
+        Set<DatapathId> done = new HashSet<DatapathId>();
+        PriorityQueue<NodeDist> queue = new PriorityQueue<NodeDist>();
+        dist.put(src, 0);
+        queue.add(new NodeDist(src, 0));
+        while (!queue.isEmpty()) {
+            NodeDist nd = queue.poll();
+            if (!done.add(nd.node)) continue;
+            if (nd.node.equals(dst)) break;
+            for (Link l : outLinks(nd.node)) {
+                DatapathId v = l.getDst();
+                if (excludedLinks.contains(l) || excludedNodes.contains(v) || done.contains(v)) continue;
+                int d = nd.dist + cost(l);
+                Integer current = dist.get(v);
+                if (current == null || d < current) {
+                    dist.put(v, d);
+                    prev.put(v, l);
+                    queue.add(new NodeDist(v, d));
+                }
+            }
+        }
+        if (!done.contains(dst)) return null;
+        List<Link> path = new ArrayList<Link>();
+        for (DatapathId n = dst; !n.equals(src); n = prev.get(n).getSrc()) {
+            path.add(prev.get(n));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
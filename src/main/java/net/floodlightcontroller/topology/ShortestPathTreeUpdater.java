@@ -0,0 +1,327 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+/**
+ * Brings the destination-rooted shortest path trees of a graph up to date
+ * after some of its links changed, instead of running Dijkstra again from
+ * every node.
+ *
+ * A tree is only touched if a removed link is one of its tree links, or if
+ * an added link shortens the path of some node to its root; all other trees
+ * are returned as they are. In a touched tree, only the nodes whose tree
+ * path went over a removed link lose their distance. Those are repaired by
+ * a Dijkstra seeded from their links to the rest of the tree, and then the
+ * shorter paths opened up by added links are propagated outwards from the
+ * nodes they start at, in the manner of Ramalingam and Reps.
+ *
+ * Graphs are given the way {@link TopologyInstance} builds them: the links
+ * of each node, in both directions, with a cost per link that defaults to 1.
+ * Among paths of equal cost, the updated tree may choose a different one
+ * than a full computation would.
+ */
+class ShortestPathTreeUpdater {
+    /** Above this many changed links a full computation is usually faster */
+    static final int MAX_CHANGED_LINKS = 64;
+
+    private final Map<DatapathId, Set<Link>> links;
+    private final Map<Link, Integer> linkCost;
+    private final Set<Link> removed = new HashSet<Link>();
+    private final Set<Link> added = new HashSet<Link>();
+    private final Set<DatapathId> removedNodes = new HashSet<DatapathId>();
+    private final Set<DatapathId> addedNodes = new HashSet<DatapathId>();
+    private int treesUpdated;
+
+    /**
+     * @return an updater from the previous to the new graph, or null if
+     * too much has changed to be worth updating
+     */
+    static ShortestPathTreeUpdater between(Map<DatapathId, Set<Link>> previousLinks,
+            Map<Link, Integer> previousCost,
+            Map<DatapathId, Set<Link>> links,
+            Map<Link, Integer> linkCost) {
+        ShortestPathTreeUpdater u = new ShortestPathTreeUpdater(links, linkCost);
+        Map<Link, Integer> before = allLinks(previousLinks, previousCost);
+        Map<Link, Integer> after = allLinks(links, linkCost);
+        for (Map.Entry<Link, Integer> e : before.entrySet()) {
+            Integer w = after.get(e.getKey());
+            if (w == null || !w.equals(e.getValue())) {
+                u.removed.add(e.getKey());
+            }
+        }
+        for (Map.Entry<Link, Integer> e : after.entrySet()) {
+            Integer w = before.get(e.getKey());
+            if (w == null || !w.equals(e.getValue())) {
+                u.added.add(e.getKey());
+            }
+        }
+        if (u.removed.size() + u.added.size() > MAX_CHANGED_LINKS) {
+            return null;
+        }
+        for (DatapathId n : previousLinks.keySet()) {
+            if (!links.containsKey(n)) u.removedNodes.add(n);
+        }
+        for (DatapathId n : links.keySet()) {
+            if (!previousLinks.containsKey(n)) u.addedNodes.add(n);
+        }
+        return u;
+    }
+
+    private ShortestPathTreeUpdater(Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost) {
+        this.links = links;
+        this.linkCost = linkCost;
+    }
+
+    private static Map<Link, Integer> allLinks(Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost) {
+        Map<Link, Integer> all = new HashMap<Link, Integer>();
+        for (Set<Link> s : links.values()) {
+            for (Link l : s) {
+                if (!l.getSrc().equals(l.getDst())) {
+                    all.put(l, cost(linkCost, l));
+                }
+            }
+        }
+        return all;
+    }
+
+    private static int cost(Map<Link, Integer> linkCost, Link l) {
+        Integer w = linkCost == null ? null : linkCost.get(l);
+        return w == null ? 1 : w;
+    }
+
+    boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty() && removedNodes.isEmpty() && addedNodes.isEmpty();
+    }
+
+    /**
+     * @return the links gone from the graph, including links whose cost changed
+     */
+    Set<Link> getRemovedLinks() {
+        return removed;
+    }
+
+    /**
+     * @return the links new to the graph, including links whose cost changed
+     */
+    Set<Link> getAddedLinks() {
+        return added;
+    }
+
+    /**
+     * @return the number of trees changed by {@link #update} so far
+     */
+    int getTreesUpdated() {
+        return treesUpdated;
+    }
+
+    /**
+     * @param previous the trees of the previous graph by root
+     * @return the trees of the new graph, with the trees that did not
+     * change being the same objects. Trees of nodes new to the graph are
+     * missing and have to be computed in full.
+     */
+    Map<DatapathId, BroadcastTree> update(Map<DatapathId, BroadcastTree> previous) {
+        Map<DatapathId, BroadcastTree> result = new HashMap<DatapathId, BroadcastTree>();
+        for (Map.Entry<DatapathId, BroadcastTree> e : previous.entrySet()) {
+            if (!links.containsKey(e.getKey())) continue;
+            BroadcastTree tree = updateTree(e.getValue());
+            if (tree != e.getValue()) {
+                treesUpdated++;
+            }
+            result.put(e.getKey(), tree);
+        }
+        return result;
+    }
+
+    /**
+     * @return the tree itself if no change affects it, or an updated copy
+     */
+    BroadcastTree updateTree(BroadcastTree tree) {
+        Map<DatapathId, Link> next = tree.getLinks();
+        Map<DatapathId, Integer> costs = tree.getCosts();
+        List<DatapathId> cut = new ArrayList<DatapathId>();
+        for (Link l : removed) {
+            if (l.equals(next.get(l.getSrc()))) {
+                cut.add(l.getSrc());
+            }
+        }
+        boolean affected = !cut.isEmpty() || !addedNodes.isEmpty();
+        for (DatapathId n : removedNodes) {
+            affected |= costs.containsKey(n);
+        }
+        if (!affected) {
+            for (Link l : added) {
+                if (dist(costs, l.getDst()) + cost(linkCost, l) < dist(costs, l.getSrc())) {
+                    affected = true;
+                    break;
+                }
+            }
+        }
+        if (!affected) {
+            return tree;
+        }
+
+        HashMap<DatapathId, Link> newNext = new HashMap<DatapathId, Link>(next);
+        HashMap<DatapathId, Integer> newCosts = new HashMap<DatapathId, Integer>(costs);
+        for (DatapathId n : addedNodes) {
+            newNext.put(n, null);
+            newCosts.put(n, TopologyInstance.MAX_PATH_WEIGHT);
+        }
+        if (!cut.isEmpty()) {
+            repairRemoved(newNext, newCosts, cut);
+        }
+        propagateAdded(newNext, newCosts);
+        for (DatapathId n : removedNodes) {
+            newNext.remove(n);
+            newCosts.remove(n);
+        }
+        return new BroadcastTree(newNext, newCosts);
+    }
+
+    private static int dist(Map<DatapathId, Integer> costs, DatapathId n) {
+        Integer c = costs.get(n);
+        return c == null ? TopologyInstance.MAX_PATH_WEIGHT : c;
+    }
+
+    /**
+     * Give new paths to the nodes whose tree path went over a removed link,
+     * using only links present both before and after the change
+     */
+    private void repairRemoved(HashMap<DatapathId, Link> next, HashMap<DatapathId, Integer> costs,
+            List<DatapathId> cut) {
+        Map<DatapathId, List<DatapathId>> children = new HashMap<DatapathId, List<DatapathId>>();
+        for (Map.Entry<DatapathId, Link> e : next.entrySet()) {
+            Link l = e.getValue();
+            if (l == null) continue;
+            List<DatapathId> c = children.get(l.getDst());
+            if (c == null) {
+                c = new ArrayList<DatapathId>();
+                children.put(l.getDst(), c);
+            }
+            c.add(e.getKey());
+        }
+
+        /* Every node below a removed tree link */
+        Set<DatapathId> orphans = new HashSet<DatapathId>();
+        ArrayDeque<DatapathId> queue = new ArrayDeque<DatapathId>(cut);
+        while (!queue.isEmpty()) {
+            DatapathId n = queue.poll();
+            if (!orphans.add(n)) continue;
+            List<DatapathId> c = children.get(n);
+            if (c != null) queue.addAll(c);
+        }
+        for (DatapathId n : orphans) {
+            next.put(n, null);
+            costs.put(n, TopologyInstance.MAX_PATH_WEIGHT);
+        }
+
+        PriorityQueue<NodeDist> pq = new PriorityQueue<NodeDist>();
+        for (DatapathId n : orphans) {
+            Set<Link> nl = links.get(n);
+            if (nl == null) continue;
+            for (Link l : nl) {
+                if (!l.getSrc().equals(n) || l.getDst().equals(n) || added.contains(l)
+                        || orphans.contains(l.getDst())) continue;
+                int d = dist(costs, l.getDst());
+                if (d >= TopologyInstance.MAX_PATH_WEIGHT) continue;
+                d += cost(linkCost, l);
+                if (d < costs.get(n)) {
+                    costs.put(n, d);
+                    next.put(n, l);
+                }
+            }
+            if (costs.get(n) < TopologyInstance.MAX_PATH_WEIGHT) {
+                pq.add(new NodeDist(n, costs.get(n)));
+            }
+        }
+        relax(pq, next, costs, true);
+    }
+
+    /**
+     * Shorten the paths through added links, and the paths leading to them
+     */
+    private void propagateAdded(HashMap<DatapathId, Link> next, HashMap<DatapathId, Integer> costs) {
+        PriorityQueue<NodeDist> pq = new PriorityQueue<NodeDist>();
+        for (Link l : added) {
+            DatapathId u = l.getSrc();
+            if (u.equals(l.getDst()) || !costs.containsKey(u)) continue;
+            int d = dist(costs, l.getDst());
+            if (d >= TopologyInstance.MAX_PATH_WEIGHT) continue;
+            d += cost(linkCost, l);
+            if (d < costs.get(u)) {
+                costs.put(u, d);
+                next.put(u, l);
+                pq.add(new NodeDist(u, d));
+            }
+        }
+        relax(pq, next, costs, false);
+    }
+
+    /**
+     * Dijkstra from the queued nodes towards the nodes with links to them
+     * @param skipAdded whether links added by the change are left out
+     */
+    private void relax(PriorityQueue<NodeDist> pq, HashMap<DatapathId, Link> next,
+            HashMap<DatapathId, Integer> costs, boolean skipAdded) {
+        while (!pq.isEmpty()) {
+            NodeDist nd = pq.poll();
+            if (nd.dist > costs.get(nd.node)) continue;
+            Set<Link> nl = links.get(nd.node);
+            if (nl == null) continue;
+            for (Link l : nl) {
+                DatapathId neighbor = l.getSrc();
+                if (!l.getDst().equals(nd.node) || neighbor.equals(nd.node)) continue;
+                if (skipAdded && added.contains(l)) continue;
+                Integer current = costs.get(neighbor);
+                if (current == null) continue;
+                int d = nd.dist + cost(linkCost, l);
+                if (d < current) {
+                    costs.put(neighbor, d);
+                    next.put(neighbor, l);
+                    pq.add(new NodeDist(neighbor, d));
+                }
+            }
+        }
+    }
+
+    private static class NodeDist implements Comparable<NodeDist> {
+        final DatapathId node;
+        final int dist;
+
+        NodeDist(DatapathId node, int dist) {
+            this.node = node;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(NodeDist o) {
+            return dist < o.dist ? -1 : (dist == o.dist ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+/**
+ * An immutable snapshot of a graph for computing destination rooted
+ * shortest path trees without hashing switches and links.
+ *
+ * Switches get dense ids in the order of their DatapathId, and the links
+ * into each switch are kept in compressed sparse row arrays with their
+ * costs. Trees are computed over primitive arrays, by breadth first search
+ * when every link costs 1 and by Dijkstra with an indexed binary heap
+ * otherwise, and only turned into a {@link BroadcastTree} when asked for.
+ *
+ * Both searches visit switches by distance and then by DatapathId, and the
+ * links of a switch in the order of its link set, so they build the same
+ * trees as {@link TopologyInstance#dijkstra} on the same input.
+ */
+final class TopologyGraph {
+    private final DatapathId[] nodes;
+    private final Map<DatapathId, Integer> ids;
+    /** Links into node i are at [inStart[i], inStart[i + 1]) */
+    private final int[] inStart;
+    private final int[] inFrom;
+    private final int[] inCost;
+    private final Link[] inLink;
+    private final boolean unitCost;
+
+    /**
+     * @param links the links of each node, in either direction; a node's
+     * links from itself are ignored
+     * @param linkCost the cost of each link, with 1 for links not in it
+     */
+    static TopologyGraph of(Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost) {
+        return new TopologyGraph(links, linkCost);
+    }
+
+    private TopologyGraph(Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost) {
+        int n = links.size();
+        long[] sorted = new long[n];
+        int i = 0;
+        for (DatapathId d : links.keySet()) {
+            sorted[i++] = d.getLong();
+        }
+        Arrays.sort(sorted);
+        nodes = new DatapathId[n];
+        ids = new HashMap<DatapathId, Integer>(n * 4 / 3 + 1);
+        for (i = 0; i < n; i++) {
+            nodes[i] = DatapathId.of(sorted[i]);
+            ids.put(nodes[i], i);
+        }
+
+        int edges = 0;
+        for (Set<Link> s : links.values()) {
+            edges += s.size();
+        }
+        inStart = new int[n + 1];
+        int[] from = new int[edges];
+        int[] cost = new int[edges];
+        Link[] link = new Link[edges];
+        boolean unit = true;
+        int e = 0;
+        for (i = 0; i < n; i++) {
+            inStart[i] = e;
+            for (Link l : links.get(nodes[i])) {
+                Integer src = ids.get(l.getSrc());
+                if (src == null || src == i) continue;
+                Integer w = linkCost == null ? null : linkCost.get(l);
+                from[e] = src;
+                cost[e] = w == null ? 1 : w;
+                link[e] = l;
+                unit &= cost[e] == 1;
+                e++;
+            }
+        }
+        inStart[n] = e;
+        inFrom = Arrays.copyOf(from, e);
+        inCost = Arrays.copyOf(cost, e);
+        inLink = Arrays.copyOf(link, e);
+        unitCost = unit;
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the shortest path tree towards a node of the graph
+     * @param search scratch space from {@link #newSearch}, which must not
+     * be used by other threads at the same time
+     */
+    Tree tree(DatapathId root, Search search) {
+        Integer r = ids.get(root);
+        if (r == null) {
+            throw new IllegalArgumentException("Switch " + root + " is not in the graph");
+        }
+        int n = nodes.length;
+        int[] dist = new int[n];
+        int[] next = new int[n];
+        Arrays.fill(dist, TopologyInstance.MAX_PATH_WEIGHT);
+        Arrays.fill(next, -1);
+        search.ensureCapacity(n);
+        if (unitCost) {
+            bfs(r, dist, next, search.queue);
+        } else {
+            dijkstra(r, dist, next, search);
+        }
+        return new Tree(dist, next);
+    }
+
+    /**
+     * @return scratch space for searches over graphs of up to the given
+     * number of nodes; it grows when used on larger graphs
+     */
+    static Search newSearch(int capacity) {
+        return new Search(capacity);
+    }
+
+    /*
+     * Nodes are expanded a level at a time, in id order within a level,
+     * which is the order Dijkstra would take them in.
+     */
+    private void bfs(int root, int[] dist, int[] next, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        dist[root] = 0;
+        while (head < tail) {
+            int levelEnd = tail;
+            Arrays.sort(queue, head, levelEnd);
+            for (; head < levelEnd; head++) {
+                int u = queue[head];
+                int d = dist[u] + 1;
+                for (int e = inStart[u]; e < inStart[u + 1]; e++) {
+                    int v = inFrom[e];
+                    if (dist[v] != TopologyInstance.MAX_PATH_WEIGHT) continue;
+                    dist[v] = d;
+                    next[v] = e;
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    private void dijkstra(int root, int[] dist, int[] next, Search s) {
+        int[] heap = s.heap;
+        int[] pos = s.pos;
+        boolean[] done = s.done;
+        Arrays.fill(pos, 0, nodes.length, -1);
+        Arrays.fill(done, 0, nodes.length, false);
+        dist[root] = 0;
+        heap[0] = root;
+        pos[root] = 0;
+        int size = 1;
+        while (size > 0) {
+            int u = heap[0];
+            pos[u] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                pos[heap[0]] = 0;
+                siftDown(heap, pos, dist, size, 0);
+            }
+            done[u] = true;
+            for (int e = inStart[u]; e < inStart[u + 1]; e++) {
+                int v = inFrom[e];
+                if (done[v]) continue;
+                int d = dist[u] + inCost[e];
+                if (d >= dist[v]) continue;
+                dist[v] = d;
+                next[v] = e;
+                if (pos[v] < 0) {
+                    heap[size] = v;
+                    pos[v] = size;
+                    size++;
+                }
+                siftUp(heap, pos, dist, pos[v]);
+            }
+        }
+    }
+
+    private static boolean before(int[] dist, int a, int b) {
+        return dist[a] < dist[b] || (dist[a] == dist[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int[] pos, int[] dist, int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (!before(dist, v, p)) break;
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+
+    private static void siftDown(int[] heap, int[] pos, int[] dist, int size, int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(dist, heap[child + 1], heap[child])) {
+                child++;
+            }
+            int c = heap[child];
+            if (!before(dist, c, v)) break;
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+
+    /**
+     * Scratch arrays for one search at a time
+     */
+    static final class Search {
+        private int[] queue;
+        private int[] heap;
+        private int[] pos;
+        private boolean[] done;
+
+        private Search(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            queue = new int[capacity];
+            heap = new int[capacity];
+            pos = new int[capacity];
+            done = new boolean[capacity];
+        }
+
+        private void ensureCapacity(int n) {
+            if (queue.length < n) {
+                allocate(n);
+            }
+        }
+    }
+
+    /**
+     * A shortest path tree, held as the distance and the index of the next
+     * link of each node
+     */
+    final class Tree {
+        private final int[] dist;
+        private final int[] next;
+
+        private Tree(int[] dist, int[] next) {
+            this.dist = dist;
+            this.next = next;
+        }
+
+        BroadcastTree toBroadcastTree() {
+            int n = nodes.length;
+            HashMap<DatapathId, Link> links = new HashMap<DatapathId, Link>(n * 4 / 3 + 1);
+            HashMap<DatapathId, Integer> costs = new HashMap<DatapathId, Integer>(n * 4 / 3 + 1);
+            for (int i = 0; i < n; i++) {
+                links.put(nodes[i], next[i] < 0 ? null : inLink[next[i]]);
+                costs.put(nodes[i], dist[i]);
+            }
+            return new BroadcastTree(links, costs);
+        }
+    }
+}
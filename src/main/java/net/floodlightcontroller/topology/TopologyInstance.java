@@ -18,13 +18,17 @@ package net.floodlightcontroller.topology;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import net.floodlightcontroller.routing.BroadcastTree;
 import net.floodlightcontroller.routing.Link;
@@ -42,6 +46,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * A representation of a network topology.  Used internally by
@@ -56,6 +62,7 @@ public class TopologyInstance {
     public static final int MAX_LINK_WEIGHT = 10000;
     public static final int MAX_PATH_WEIGHT = Integer.MAX_VALUE - MAX_LINK_WEIGHT - 1;
     public static final int PATH_CACHE_SIZE = 1000;
+    public static final int DEFAULT_MAX_PATHS = 4;
 
     protected static Logger log = LoggerFactory.getLogger(TopologyInstance.class);
 
@@ -79,7 +86,6 @@ public class TopologyInstance {
     // States for routing
     protected Map<DatapathId, BroadcastTree> destinationRootedTrees;
 
-    protected Map<DatapathId, Set<NodePortTuple>> clusterPorts;
     protected Map<DatapathId, BroadcastTree> clusterBroadcastTrees;
 
     protected Map<DatapathId, Set<NodePortTuple>> clusterBroadcastNodePorts;
@@ -96,6 +102,23 @@ public class TopologyInstance {
 	// Maps broadcast ports to DatapathId
     protected Map<DatapathId, Set<OFPort>> broadcastPortMap;
 
+    // Graphs the trees were computed on, so that the next instance can
+    // update the trees rather than compute them again
+    protected Map<Link, Integer> clusterLinkCost;
+    protected Map<DatapathId, Set<Link>> fullTreeLinks;
+    protected Map<Link, Integer> fullTreeLinkCost;
+
+    // Pool the shortest path trees are computed on, or null to compute
+    // them on the calling thread
+    protected ForkJoinPool pathComputationPool;
+
+    // Link changes from the previous instance, or null if the trees were
+    // computed from scratch
+    protected ShortestPathTreeUpdater fullTreeChanges;
+
+    // Cost of each link from the link cost model, or null for hop count
+    protected Map<Link, Integer> linkCosts;
+
 
     protected class PathCacheLoader extends CacheLoader<RouteId, Route> {
         TopologyInstance ti;
@@ -114,6 +137,19 @@ public class TopologyInstance {
     private final PathCacheLoader pathCacheLoader = new PathCacheLoader(this);
     protected LoadingCache<RouteId, Route> pathcache;
 
+    // Sets of paths between switch pairs for multipath routing
+    protected PathSetCalculator.Mode pathSetMode = PathSetCalculator.Mode.ECMP;
+    protected int maxPaths = DEFAULT_MAX_PATHS;
+    protected LoadingCache<RouteId, List<Route>> pathSetCache;
+
+    /*
+     * Read side indexes, built at the end of compute. Once an instance is
+     * published, nothing in it changes except the route caches, so readers
+     * need no locks.
+     */
+    protected Map<DatapathId, SwitchIndex> switchIndexes = Collections.emptyMap();
+    protected Map<DatapathId, Set<Link>> allLinksBySwitch = Collections.emptyMap();
+
     public TopologyInstance(Map<DatapathId, Set<OFPort>> switchPorts,
                             Set<NodePortTuple> blockedPorts,
                             Map<NodePortTuple, Set<Link>> switchPortLinks,
@@ -166,9 +202,53 @@ public class TopologyInstance {
                                     return pathCacheLoader.load(rid);
                                 }
                             });
+        pathSetCache = buildPathSetCache(PATH_CACHE_SIZE);
+    }
+
+    private LoadingCache<RouteId, List<Route>> buildPathSetCache(int size) {
+        return CacheBuilder.newBuilder().concurrencyLevel(4)
+                .maximumSize(size)
+                .build(new CacheLoader<RouteId, List<Route>>() {
+                    public List<Route> load(RouteId rid) {
+                        return buildPathSet(rid);
+                    }
+                });
+    }
+
+    /**
+     * Route over the given link costs instead of hop count. Links missing
+     * from the map cost 1, and tunnel links keep their own cost. Must be
+     * called before {@link #compute}.
+     */
+    public void setLinkCosts(Map<Link, Integer> linkCosts) {
+        this.linkCosts = linkCosts;
+    }
+
+    /**
+     * Set how many paths, and which, are kept per switch pair for
+     * multipath routing. Must be called before {@link #compute}.
+     * @param mode equal cost paths only, or the k shortest paths
+     * @param maxPaths the most paths kept per pair, with 1 for the
+     * single path route only
+     * @param cacheSize the most switch pairs whose paths are kept
+     */
+    void setMultipath(PathSetCalculator.Mode mode, int maxPaths, int cacheSize) {
+        this.pathSetMode = mode;
+        this.maxPaths = maxPaths;
+        this.pathSetCache = buildPathSetCache(cacheSize);
     }
 
     public void compute() {
+        compute(null);
+    }
+
+    /**
+     * Compute the topology, reusing the shortest path trees and cached
+     * routes of the previous instance where the links they depend on
+     * have not changed.
+     * @param previous the instance this one replaces, or null
+     */
+    public void compute(TopologyInstance previous) {
         // Step 1: Compute clusters ignoring broadcast domain links
         // Create nodes for clusters in the higher level topology
         // Must ignore blocked links.
@@ -181,7 +261,7 @@ public class TopologyInstance {
         // Step 2. Compute shortest path trees in each cluster for
         // unicast routing.  The trees are rooted at the destination.
         // Cost for tunnel links and direct links are the same.
-        calculateShortestPathTreeInClusters();
+        calculateShortestPathTreeInClusters(previous);
 
 		// Step 3. Compute broadcast tree in each cluster.
         // Cost for tunnel links are high to discourage use of
@@ -193,7 +273,9 @@ public class TopologyInstance {
         // Step 4. Compute e2e shortest path trees on entire topology for unicast routing.
 		// The trees are rooted at the destination.
         // Cost for tunnel links and direct links are the same.
-		calculateAllShortestPaths();
+		calculateAllShortestPaths(previous);
+		copyUnaffectedRoutes(previous);
+		copyUnaffectedPathSets(previous);
 
 		// Step 5. Compute broadcast tree for the whole topology (needed to avoid loops).
         // Cost for tunnel links are high to discourage use of
@@ -205,29 +287,143 @@ public class TopologyInstance {
 		// Step 6. Compute set of ports for broadcasting. Edge ports are included.
        	calculateBroadcastPortMap();
 
-        // Step 7. print topology.
+        // Step 7. Precompute what the ITopologyService queries read, and
+        // make the sets handed out to callers immutable.
+        buildSwitchIndexes();
+
+        // Step 8. print topology.
         printTopology();
     }
 
+    /**
+     * The answers to per switch topology queries, held in immutable sets
+     * so that packet-in handling needs one map lookup per query.
+     */
+    protected static final class SwitchIndex {
+        /** Ports with links other than broadcast domain and tunnel links */
+        final Set<OFPort> portsWithLinks;
+        /** Ports with any link; the other ports are edge ports */
+        final Set<OFPort> linkPorts;
+        /** Ports with links inside the openflow domain */
+        final Set<OFPort> openflowLinkPorts;
+        /** Edge ports and ports on the broadcast tree, or null if none */
+        final Set<OFPort> broadcastPorts;
+        /** Ports on the broadcast tree of the whole topology */
+        final Set<OFPort> broadcastTreePorts;
+        /** Null if the switch is in no openflow domain */
+        final DatapathId clusterId;
+        final Set<DatapathId> clusterNodes;
+
+        SwitchIndex(Set<OFPort> portsWithLinks, Set<OFPort> linkPorts,
+                Set<OFPort> openflowLinkPorts, Set<OFPort> broadcastPorts,
+                Set<OFPort> broadcastTreePorts, DatapathId clusterId,
+                Set<DatapathId> clusterNodes) {
+            this.portsWithLinks = portsWithLinks;
+            this.linkPorts = linkPorts;
+            this.openflowLinkPorts = openflowLinkPorts;
+            this.broadcastPorts = broadcastPorts;
+            this.broadcastTreePorts = broadcastTreePorts;
+            this.clusterId = clusterId;
+            this.clusterNodes = clusterNodes;
+        }
+    }
+
+    protected void buildSwitchIndexes() {
+        Map<DatapathId, Set<OFPort>> linkPorts = new HashMap<DatapathId, Set<OFPort>>();
+        Map<DatapathId, Set<Link>> linksBySwitch = new HashMap<DatapathId, Set<Link>>();
+        for (Map.Entry<NodePortTuple, Set<Link>> e : allLinks.entrySet()) {
+            if (e.getValue() == null || e.getValue().isEmpty()) continue;
+            DatapathId sw = e.getKey().getNodeId();
+            addPort(linkPorts, sw, e.getKey().getPortId());
+            Set<Link> s = linksBySwitch.get(sw);
+            if (s == null) {
+                s = new HashSet<Link>();
+                linksBySwitch.put(sw, s);
+            }
+            s.addAll(e.getValue());
+        }
+        Map<DatapathId, Set<OFPort>> openflowLinkPorts = new HashMap<DatapathId, Set<OFPort>>();
+        for (NodePortTuple npt : switchPortLinks.keySet()) {
+            addPort(openflowLinkPorts, npt.getNodeId(), npt.getPortId());
+        }
+        Map<DatapathId, Set<OFPort>> broadcastTreePorts = new HashMap<DatapathId, Set<OFPort>>();
+        for (NodePortTuple npt : broadcastNodePorts) {
+            addPort(broadcastTreePorts, npt.getNodeId(), npt.getPortId());
+        }
+        Map<Cluster, Set<DatapathId>> clusterNodes = new IdentityHashMap<Cluster, Set<DatapathId>>();
+        for (Cluster c : clusters) {
+            clusterNodes.put(c, ImmutableSet.copyOf(c.getNodes()));
+        }
+
+        Set<DatapathId> indexed = new HashSet<DatapathId>(switches);
+        indexed.addAll(linkPorts.keySet());
+        indexed.addAll(openflowLinkPorts.keySet());
+        indexed.addAll(switchClusterMap.keySet());
+        ImmutableMap.Builder<DatapathId, SwitchIndex> indexes = ImmutableMap.builder();
+        for (DatapathId sw : indexed) {
+            Cluster c = switchClusterMap.get(sw);
+            Set<OFPort> bp = broadcastPortMap.get(sw);
+            indexes.put(sw, new SwitchIndex(
+                    switchPorts.containsKey(sw) ? ImmutableSet.copyOf(switchPorts.get(sw)) : null,
+                    immutablePorts(linkPorts, sw),
+                    immutablePorts(openflowLinkPorts, sw),
+                    bp == null ? null : ImmutableSet.copyOf(bp),
+                    immutablePorts(broadcastTreePorts, sw),
+                    c == null ? null : c.getId(),
+                    c == null ? null : clusterNodes.get(c)));
+        }
+        switchIndexes = indexes.build();
+
+        ImmutableMap.Builder<DatapathId, Set<Link>> links = ImmutableMap.builder();
+        for (Map.Entry<DatapathId, Set<Link>> e : linksBySwitch.entrySet()) {
+            links.put(e.getKey(), ImmutableSet.copyOf(e.getValue()));
+        }
+        allLinksBySwitch = links.build();
+        switches = ImmutableSet.copyOf(switches);
+        blockedPorts = ImmutableSet.copyOf(blockedPorts);
+    }
+
+    private static void addPort(Map<DatapathId, Set<OFPort>> ports, DatapathId sw, OFPort p) {
+        Set<OFPort> s = ports.get(sw);
+        if (s == null) {
+            s = new HashSet<OFPort>();
+            ports.put(sw, s);
+        }
+        s.add(p);
+    }
+
+    private static Set<OFPort> immutablePorts(Map<DatapathId, Set<OFPort>> ports, DatapathId sw) {
+        Set<OFPort> s = ports.get(sw);
+        return s == null ? ImmutableSet.<OFPort>of() : ImmutableSet.copyOf(s);
+    }
+
 	/*
 	 * Checks if OF port is edge port
 	 */
     public boolean isEdge(DatapathId sw, OFPort portId) {
-		NodePortTuple np = new NodePortTuple(sw, portId);
-		if (allLinks.get(np) == null || allLinks.get(np).isEmpty()) {
-			return true;
-		}
-		else {
-			return false;
-		}
+        SwitchIndex idx = switchIndexes.get(sw);
+        return idx == null || !idx.linkPorts.contains(portId);
+    }
+
+    private boolean hasLinks(NodePortTuple npt) {
+        Set<Link> links = allLinks.get(npt);
+        return links != null && !links.isEmpty();
     }
 
 	/*
 	 * Returns broadcast ports for the given DatapathId
 	 */
     public Set<OFPort> swBroadcastPorts(DatapathId sw){
-    	return this.broadcastPortMap.get(sw);
+        SwitchIndex idx = switchIndexes.get(sw);
+        return idx == null ? null : idx.broadcastPorts;
+    }
 
+    /**
+     * @return the links at the ports of each switch, including
+     * broadcast domain and tunnel links
+     */
+    public Map<DatapathId, Set<Link>> getAllLinks() {
+        return allLinksBySwitch;
     }
 
     public void printTopology() {
@@ -655,14 +851,36 @@ public class TopologyInstance {
 		return ret;
 	}
 
+    /**
+     * The cost of a tunnel link, which is more than any path without
+     * tunnels: the number of switches plus one, in units of the costliest
+     * link. It is kept low enough that a path over tunnels between all
+     * switches still costs less than MAX_PATH_WEIGHT.
+     */
+    protected int tunnelWeight() {
+        int n = switchPorts.size() + 1;
+        int maxCost = 1;
+        if (linkCosts != null) {
+            for (Integer c : linkCosts.values()) {
+                if (c != null && c > maxCost) maxCost = c;
+            }
+        }
+        return (int) Math.min((long) n * maxCost, MAX_PATH_WEIGHT / n);
+    }
+
     /*
 	 * Modification of the calculateShortestPathTreeInClusters (dealing with whole topology, not individual clusters)
 	 */
     public void calculateAllShortestPaths() {
+        calculateAllShortestPaths(null);
+    }
+
+    protected void calculateAllShortestPaths(TopologyInstance previous) {
     	this.broadcastNodePorts.clear();
     	this.destinationRootedFullTrees.clear();
-    	Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
-        int tunnel_weight = switchPorts.size() + 1;
+    	Map<Link, Integer> linkCost = linkCosts == null ?
+    	        new HashMap<Link, Integer>() : new HashMap<Link, Integer>(linkCosts);
+        int tunnel_weight = tunnelWeight();
 
         for (NodePortTuple npt : tunnelPorts) {
             if (allLinks.get(npt) == null) continue;
@@ -689,9 +907,33 @@ public class TopologyInstance {
             }
         }
 
-        for (DatapathId node : linkDpidMap.keySet()) {
-        	BroadcastTree tree = dijkstra(linkDpidMap, node, linkCost, true);
-            destinationRootedFullTrees.put(node, tree);
+        fullTreeLinks = linkDpidMap;
+        fullTreeLinkCost = linkCost;
+
+        ShortestPathTreeUpdater updater = null;
+        if (previous != null && previous.fullTreeLinks != null) {
+            updater = ShortestPathTreeUpdater.between(previous.fullTreeLinks,
+                    previous.fullTreeLinkCost, linkDpidMap, linkCost);
+        }
+        fullTreeChanges = updater;
+        Map<DatapathId, BroadcastTree> updated = Collections.emptyMap();
+        if (updater != null) {
+            updated = updater.update(previous.destinationRootedFullTrees);
+            if (log.isDebugEnabled()) {
+                log.debug("Updated {} of {} shortest path trees", updater.getTreesUpdated(),
+                        linkDpidMap.size());
+            }
+        }
+        // The first tree is the broadcast tree. It is always computed in
+        // full, so that it does not depend on how the topology got here.
+        List<DatapathId> roots = new ArrayList<DatapathId>(linkDpidMap.keySet());
+        BroadcastTree[] trees = new BroadcastTree[roots.size()];
+        for (int i = 1; i < trees.length; i++) {
+            trees[i] = updated.get(roots.get(i));
+        }
+        computeTrees(Collections.nCopies(roots.size(), linkDpidMap), roots, linkCost, trees);
+        for (int i = 0; i < trees.length; i++) {
+            destinationRootedFullTrees.put(roots.get(i), trees[i]);
         }
 
 		//finiteBroadcastTree is randomly chosen in this implementation
@@ -701,11 +943,16 @@ public class TopologyInstance {
     }
 
     protected void calculateShortestPathTreeInClusters() {
+        calculateShortestPathTreeInClusters(null);
+    }
+
+    protected void calculateShortestPathTreeInClusters(TopologyInstance previous) {
         pathcache.invalidateAll();
         destinationRootedTrees.clear();
 
-        Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
-        int tunnel_weight = switchPorts.size() + 1;
+        Map<Link, Integer> linkCost = linkCosts == null ?
+                new HashMap<Link, Integer>() : new HashMap<Link, Integer>(linkCosts);
+        int tunnel_weight = tunnelWeight();
 
         for (NodePortTuple npt : tunnelPorts) {
             if (switchPortLinks.get(npt) == null) continue;
@@ -715,14 +962,225 @@ public class TopologyInstance {
             }
         }
 
+        clusterLinkCost = linkCost;
+
+        Map<DatapathId, Cluster> previousClusters = new HashMap<DatapathId, Cluster>();
+        if (previous != null && previous.clusterLinkCost != null) {
+            for (Cluster c : previous.clusters) {
+                previousClusters.put(c.getId(), c);
+            }
+        }
+        // The trees of all clusters are computed together, so that many
+        // small clusters still spread over the path computation pool
+        List<Map<DatapathId, Set<Link>>> graphs = new ArrayList<Map<DatapathId, Set<Link>>>();
+        List<DatapathId> roots = new ArrayList<DatapathId>();
+        List<BroadcastTree> reused = new ArrayList<BroadcastTree>();
         for (Cluster c : clusters) {
+            // A cluster keeps its id, the lowest node id, through most changes
+            Cluster pc = previousClusters.get(c.getId());
+            ShortestPathTreeUpdater updater = null;
+            if (pc != null) {
+                updater = ShortestPathTreeUpdater.between(pc.links,
+                        previous.clusterLinkCost, c.links, linkCost);
+            }
+            Map<DatapathId, BroadcastTree> updated = Collections.emptyMap();
+            if (updater != null) {
+                Map<DatapathId, BroadcastTree> trees = new HashMap<DatapathId, BroadcastTree>();
+                for (DatapathId node : pc.links.keySet()) {
+                    BroadcastTree tree = previous.destinationRootedTrees.get(node);
+                    if (tree != null) {
+                        trees.put(node, tree);
+                    }
+                }
+                updated = updater.update(trees);
+            }
             for (DatapathId node : c.links.keySet()) {
-                BroadcastTree tree = clusterDijkstra(c, node, linkCost, true);
-                destinationRootedTrees.put(node, tree);
+                // The tree of the cluster id is its broadcast tree; see above
+                graphs.add(c.links);
+                roots.add(node);
+                reused.add(node.equals(c.getId()) ? null : updated.get(node));
+            }
+        }
+        BroadcastTree[] trees = reused.toArray(new BroadcastTree[reused.size()]);
+        computeTrees(graphs, roots, linkCost, trees);
+        for (int i = 0; i < trees.length; i++) {
+            destinationRootedTrees.put(roots.get(i), trees[i]);
+        }
+    }
+
+    /**
+     * Use the given pool to compute shortest path trees. Without a pool,
+     * or with a pool of one thread, trees are computed on the calling thread.
+     */
+    public void setPathComputationPool(ForkJoinPool pool) {
+        this.pathComputationPool = pool;
+    }
+
+    /**
+     * Compute the destination rooted trees missing from an array, in
+     * parallel if a path computation pool has been set. Each distinct
+     * graph is turned into a {@link TopologyGraph} once, which all of its
+     * trees are then computed on.
+     * @param graphs the links of the graph of each tree
+     * @param roots the root of each tree
+     * @param trees the trees already known, with null for those to compute;
+     * the computed trees are stored into it
+     */
+    protected void computeTrees(List<Map<DatapathId, Set<Link>>> graphs, List<DatapathId> roots,
+            Map<Link, Integer> linkCost, BroadcastTree[] trees) {
+        int[] missing = new int[trees.length];
+        TopologyGraph[] compact = new TopologyGraph[trees.length];
+        Map<Map<DatapathId, Set<Link>>, TopologyGraph> built =
+                new IdentityHashMap<Map<DatapathId, Set<Link>>, TopologyGraph>();
+        int count = 0;
+        for (int i = 0; i < trees.length; i++) {
+            if (trees[i] != null) continue;
+            missing[count++] = i;
+            TopologyGraph g = built.get(graphs.get(i));
+            if (g == null) {
+                g = TopologyGraph.of(graphs.get(i), linkCost);
+                built.put(graphs.get(i), g);
             }
+            compact[i] = g;
+        }
+        ForkJoinPool pool = pathComputationPool;
+        if (pool == null || pool.getParallelism() < 2 || count < 2) {
+            new TreeTask(compact, roots, trees, missing, 0, count, count).invoke();
+        } else {
+            int grain = Math.max(1, count / (pool.getParallelism() * 4));
+            pool.invoke(new TreeTask(compact, roots, trees, missing, 0, count, grain));
         }
     }
 
+    /**
+     * Computes the trees at missing[from] up to missing[to], splitting the
+     * range until it is at most grain trees long. Each task stores only into
+     * its own slots of the array and reuses its own search scratch space.
+     */
+    protected static class TreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TopologyGraph[] graphs;
+        private final List<DatapathId> roots;
+        private final BroadcastTree[] trees;
+        private final int[] missing;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        TreeTask(TopologyGraph[] graphs, List<DatapathId> roots, BroadcastTree[] trees,
+                int[] missing, int from, int to, int grain) {
+            this.graphs = graphs;
+            this.roots = roots;
+            this.trees = trees;
+            this.missing = missing;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                if (from == to) return;
+                TopologyGraph.Search search = TopologyGraph.newSearch(graphs[missing[from]].size());
+                for (int i = from; i < to; i++) {
+                    int j = missing[i];
+                    trees[j] = graphs[j].tree(roots.get(j), search).toBroadcastTree();
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TreeTask(graphs, roots, trees, missing, from, mid, grain),
+                        new TreeTask(graphs, roots, trees, missing, mid, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Carry over the cached routes of the previous instance to destinations
+     * whose shortest path tree has not changed
+     */
+    protected void copyUnaffectedRoutes(TopologyInstance previous) {
+        if (previous == null) return;
+        int copied = 0;
+        for (Map.Entry<RouteId, Route> e : previous.pathcache.asMap().entrySet()) {
+            RouteId id = e.getKey();
+            BroadcastTree tree = destinationRootedFullTrees.get(id.getDst());
+            if (tree != null && tree == previous.destinationRootedFullTrees.get(id.getDst())
+                    && switches.contains(id.getSrc()) && switches.contains(id.getDst())) {
+                pathcache.put(id, e.getValue());
+                copied++;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Kept {} of {} cached routes", copied, previous.pathcache.size());
+        }
+    }
+
+    /**
+     * Carry over the path sets of the previous instance that are still
+     * complete. A set is dropped if one of its paths uses a removed link,
+     * or if its destination tree changed. Equal cost sets are also dropped
+     * if an added link is on a least cost path to the destination, and k
+     * shortest path sets if any link was added, since the new link may
+     * make a shorter path than those in the set.
+     */
+    protected void copyUnaffectedPathSets(TopologyInstance previous) {
+        if (previous == null || fullTreeChanges == null
+                || previous.pathSetMode != pathSetMode || previous.maxPaths != maxPaths) {
+            return;
+        }
+        Set<Link> removed = fullTreeChanges.getRemovedLinks();
+        Set<Link> added = fullTreeChanges.getAddedLinks();
+        if (pathSetMode == PathSetCalculator.Mode.KSP && !added.isEmpty()) return;
+
+        Map<DatapathId, Boolean> keep = new HashMap<DatapathId, Boolean>();
+        int copied = 0;
+        for (Map.Entry<RouteId, List<Route>> e : previous.pathSetCache.asMap().entrySet()) {
+            DatapathId dst = e.getKey().getDst();
+            if (!switches.contains(e.getKey().getSrc()) || !switches.contains(dst)) continue;
+            Boolean k = keep.get(dst);
+            if (k == null) {
+                BroadcastTree tree = destinationRootedFullTrees.get(dst);
+                k = tree != null && tree == previous.destinationRootedFullTrees.get(dst);
+                for (Link l : added) {
+                    if (!k) break;
+                    int far = tree.getCost(l.getDst());
+                    /* A link out of an unreachable node is on no path to dst */
+                    if (far < 0 || far >= MAX_PATH_WEIGHT) continue;
+                    int via = far + fullTreeLinkCost(l);
+                    k = via != tree.getCost(l.getSrc());
+                }
+                keep.put(dst, k);
+            }
+            if (!k || usesAny(e.getValue(), removed)) continue;
+            pathSetCache.put(e.getKey(), e.getValue());
+            copied++;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Kept {} of {} path sets", copied, previous.pathSetCache.size());
+        }
+    }
+
+    private int fullTreeLinkCost(Link l) {
+        Integer w = fullTreeLinkCost.get(l);
+        return w == null ? 1 : w;
+    }
+
+    private static boolean usesAny(List<Route> routes, Set<Link> links) {
+        if (links.isEmpty()) return false;
+        for (Route r : routes) {
+            List<NodePortTuple> path = r.getPath();
+            for (int i = 0; i + 1 < path.size(); i += 2) {
+                NodePortTuple a = path.get(i);
+                NodePortTuple b = path.get(i + 1);
+                Link l = new Link(a.getNodeId(), a.getPortId(), b.getNodeId(), b.getPortId(), U64.ZERO);
+                if (links.contains(l)) return true;
+            }
+        }
+        return false;
+    }
+
     protected void calculateBroadcastTreeInClusters() {
         for(Cluster c: clusters) {
             // c.id is the smallest node that's in the cluster
@@ -757,7 +1215,7 @@ public class TopologyInstance {
 		for (DatapathId sw : this.switches) {
 			for (OFPort p : this.allPorts.get(sw)){
 				NodePortTuple npt = new NodePortTuple(sw, p);
-				if (isEdge(sw, p) || broadcastNodePorts.contains(npt)) {
+				if (!hasLinks(npt) || broadcastNodePorts.contains(npt)) {
 					if (broadcastPortMap.containsKey(sw)) {
                 		broadcastPortMap.get(sw).add(p);
                 	} else {
@@ -836,6 +1294,36 @@ public class TopologyInstance {
         return result;
     }
 
+    /*
+     * Paths for the set are taken over the links the full trees were
+     * computed on, the same as the single path route.
+     */
+    protected List<Route> buildPathSet(RouteId id) {
+        DatapathId srcId = id.getSrc();
+        DatapathId dstId = id.getDst();
+        if (fullTreeLinks == null || !switches.contains(srcId) || !switches.contains(dstId)) {
+            return Collections.emptyList();
+        }
+        PathSetCalculator calc = new PathSetCalculator(fullTreeLinks, fullTreeLinkCost);
+        List<List<Link>> paths = calc.paths(pathSetMode, destinationRootedFullTrees.get(dstId),
+                srcId, dstId, maxPaths);
+        List<Route> routes = new ArrayList<Route>(paths.size());
+        for (List<Link> p : paths) {
+            List<NodePortTuple> sPorts = new ArrayList<NodePortTuple>(2 * p.size());
+            for (Link l : p) {
+                sPorts.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+                sPorts.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+            }
+            Route r = new Route(id, sPorts);
+            r.setRouteCount(paths.size());
+            routes.add(r);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("buildPathSet: {}", routes);
+        }
+        return Collections.unmodifiableList(routes);
+    }
+
     /*
      * Getter Functions
      */
@@ -869,13 +1357,54 @@ public class TopologyInstance {
             return null;
         }
 
-        List<NodePortTuple> nptList;
-        NodePortTuple npt;
         Route r = getRoute(srcId, dstId, U64.of(0));
         if (r == null && !srcId.equals(dstId)) {
         	return null;
         }
+        return addEndPorts(r, srcId, srcPort, dstId, dstPort);
+    }
+
+    /**
+     * Route between switch ports over one of the paths of the switch pair,
+     * the same path for the same flow hash as long as the path set does
+     * not change
+     */
+    protected Route getRoute(DatapathId srcId, OFPort srcPort,
+            DatapathId dstId, OFPort dstPort, int flowHash) {
+        if (srcId.equals(dstId) && srcPort.equals(dstPort)) {
+            return null;
+        }
 
+        List<Route> routes = getPathSet(srcId, dstId);
+        Route r = null;
+        if (!routes.isEmpty()) {
+            r = routes.get((flowHash & Integer.MAX_VALUE) % routes.size());
+        } else if (!srcId.equals(dstId)) {
+            return null;
+        }
+        r = addEndPorts(r, srcId, srcPort, dstId, dstPort);
+        r.setRouteCount(routes.size());
+        return r;
+    }
+
+    /**
+     * @return the paths between two switches, with the single path route
+     * first, or an empty list if there is none or the switches are the same
+     */
+    protected List<Route> getPathSet(DatapathId srcId, DatapathId dstId) {
+        if (srcId.equals(dstId)) return Collections.emptyList();
+        try {
+            return pathSetCache.get(new RouteId(srcId, dstId));
+        } catch (Exception e) {
+            log.error("{}", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private Route addEndPorts(Route r, DatapathId srcId, OFPort srcPort,
+            DatapathId dstId, OFPort dstPort) {
+        List<NodePortTuple> nptList;
+        NodePortTuple npt;
         if (r != null) {
             nptList= new ArrayList<NodePortTuple>(r.getPath());
         } else {
@@ -929,15 +1458,14 @@ public class TopologyInstance {
     }
 
     public boolean isAttachmentPointPort(DatapathId switchid, OFPort port) {
-        NodePortTuple npt = new NodePortTuple(switchid, port);
-        if (switchPortLinks.containsKey(npt)) return false;
-        return true;
+        SwitchIndex idx = switchIndexes.get(switchid);
+        return idx == null || !idx.openflowLinkPorts.contains(port);
     }
 
     protected DatapathId getOpenflowDomainId(DatapathId switchId) {
-        Cluster c = switchClusterMap.get(switchId);
-        if (c == null) return switchId;
-        return c.getId();
+        SwitchIndex idx = switchIndexes.get(switchId);
+        if (idx == null || idx.clusterId == null) return switchId;
+        return idx.clusterId;
     }
 
     protected DatapathId getL2DomainId(DatapathId switchId) {
@@ -945,22 +1473,20 @@ public class TopologyInstance {
     }
 
     protected Set<DatapathId> getSwitchesInOpenflowDomain(DatapathId switchId) {
-        Cluster c = switchClusterMap.get(switchId);
-        if (c == null) {
+        SwitchIndex idx = switchIndexes.get(switchId);
+        if (idx == null || idx.clusterNodes == null) {
             // The switch is not known to topology as there
             // are no links connected to it.
-            Set<DatapathId> nodes = new HashSet<DatapathId>();
-            nodes.add(switchId);
-            return nodes;
+            return Collections.singleton(switchId);
         }
-        return (c.getNodes());
+        return idx.clusterNodes;
     }
 
     protected boolean inSameOpenflowDomain(DatapathId switch1, DatapathId switch2) {
-        Cluster c1 = switchClusterMap.get(switch1);
-        Cluster c2 = switchClusterMap.get(switch2);
-        if (c1 != null && c2 != null)
-            return (c1.getId().equals(c2.getId()));
+        SwitchIndex i1 = switchIndexes.get(switch1);
+        SwitchIndex i2 = switchIndexes.get(switch2);
+        if (i1 != null && i2 != null && i1.clusterId != null && i2.clusterId != null)
+            return (i1.clusterId.equals(i2.clusterId));
         return (switch1.equals(switch2));
     }
 
@@ -972,13 +1498,9 @@ public class TopologyInstance {
 	 * Takes finiteBroadcastTree into account to prevent loops in the network
 	 */
     protected boolean isIncomingBroadcastAllowedOnSwitchPort(DatapathId sw, OFPort portId) {
-        if (!isEdge(sw, portId)){
-            NodePortTuple npt = new NodePortTuple(sw, portId);
-            if (broadcastNodePorts.contains(npt))
-                return true;
-            else return false;
-        }
-        return true;
+        SwitchIndex idx = switchIndexes.get(sw);
+        if (idx == null || !idx.linkPorts.contains(portId)) return true;
+        return idx.broadcastTreePorts.contains(portId);
     }
 
 
@@ -1018,18 +1540,14 @@ public class TopologyInstance {
     }
 
     public Set<OFPort> getPortsWithLinks(DatapathId sw) {
-        return switchPorts.get(sw);
+        SwitchIndex idx = switchIndexes.get(sw);
+        return idx == null ? null : idx.portsWithLinks;
     }
 
     public Set<OFPort> getBroadcastPorts(DatapathId targetSw, DatapathId src, OFPort srcPort) {
-        Set<OFPort> result = new HashSet<OFPort>();
-        DatapathId clusterId = getOpenflowDomainId(targetSw);
-        for (NodePortTuple npt : clusterPorts.get(clusterId)) {
-            if (npt.getNodeId().equals(targetSw)) {
-                result.add(npt.getPortId());
-            }
-        }
-        return result;
+        SwitchIndex idx = switchIndexes.get(targetSw);
+        if (idx == null || idx.broadcastPorts == null) return ImmutableSet.of();
+        return idx.broadcastPorts;
     }
 
     public NodePortTuple getAllowedOutgoingBroadcastPort(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort) {
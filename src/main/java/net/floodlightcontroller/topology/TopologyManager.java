@@ -17,7 +17,6 @@
 package net.floodlightcontroller.topology;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -27,6 +26,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -61,6 +62,7 @@ import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.statistics.IStatisticsService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.web.TopologyWebRoutable;
 
@@ -130,13 +132,14 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	protected IDebugCounterService debugCounterService;
 
 	// Modules that listen to our updates
-	protected ArrayList<ITopologyListener> topologyAware;
+	protected List<ITopologyListener> topologyAware;
 
 	protected BlockingQueue<LDUpdate> ldUpdates;
 
-	// These must be accessed using getCurrentInstance(), not directly
-	protected TopologyInstance currentInstance;
-	protected TopologyInstance currentInstanceWithoutTunnels;
+	// Must be accessed using getCurrentInstance(), not directly. The
+	// instance is immutable once published, and serves the topology
+	// with and without tunnels alike.
+	protected volatile TopologyInstance currentInstance;
 
 	protected SingletonTask newInstanceTask;
 	private Date lastUpdateTime;
@@ -158,6 +161,40 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 
 	protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
 
+	/**
+	 * Pool the shortest path trees of new instances are computed on, or
+	 * null to compute them on the topology thread
+	 */
+	protected ForkJoinPool pathComputationPool;
+	private static final String PATH_THREADS_STR = "pathComputationThreads";
+
+	/**
+	 * Which paths, and how many, are kept per switch pair for multipath routing
+	 */
+	protected PathSetCalculator.Mode multipathMode = PathSetCalculator.Mode.ECMP;
+	protected int multipathMaxPaths = TopologyInstance.DEFAULT_MAX_PATHS;
+	protected int multipathCacheSize = TopologyInstance.PATH_CACHE_SIZE;
+	private static final String MULTIPATH_MODE_STR = "multipathMode";
+	private static final String MULTIPATH_MAX_PATHS_STR = "multipathMaxPaths";
+	private static final String MULTIPATH_CACHE_SIZE_STR = "multipathCacheSize";
+
+	/**
+	 * Link costs from the link cost model, or null to route by hop count
+	 */
+	protected volatile LinkCostTracker linkCostTracker;
+	protected double linkCostHysteresis = 0.25;
+	protected long linkCostIntervalMs = 10000;
+	private long lastLinkCostUpdate;
+	/** Smaller cost changes are never worth recomputing routes for */
+	private static final int LINK_COST_MIN_CHANGE = 2;
+	private static final String LINK_COST_MODEL_STR = "linkCostModel";
+	private static final String LINK_COST_LATENCY_STR = "linkCostPerLatencyMs";
+	private static final String LINK_COST_CONGESTION_STR = "linkCostCongestion";
+	private static final String LINK_COST_CONGESTION_THRESHOLD_STR = "linkCostCongestionThreshold";
+	private static final String LINK_COST_DEFAULT_SPEED_STR = "linkCostDefaultSpeedKbps";
+	private static final String LINK_COST_HYSTERESIS_STR = "linkCostHysteresis";
+	private static final String LINK_COST_INTERVAL_STR = "linkCostUpdateIntervalSeconds";
+
 	private IHAListener haListener;
 
 	/**
@@ -287,7 +324,33 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 
 	// To be used for adding any periodic events that's required by topology.
 	protected void handleMiscellaneousPeriodicEvents() {
-		return;
+		updateLinkCosts();
+	}
+
+	/**
+	 * Sample the link cost model, and compute a new instance if the cost
+	 * of a link changed enough to matter
+	 */
+	protected void updateLinkCosts() {
+		LinkCostTracker tracker = linkCostTracker;
+		if (tracker == null) return;
+		long now = System.currentTimeMillis();
+		if (now - lastLinkCostUpdate < linkCostIntervalMs) return;
+		lastLinkCostUpdate = now;
+		if (tracker.update(getSwitchPortLinkSet())) {
+			linksUpdated = true;
+			if (createNewInstance("link-cost-updates")) {
+				lastUpdateTime = new Date();
+			}
+		}
+	}
+
+	private Set<Link> getSwitchPortLinkSet() {
+		Set<Link> links = new HashSet<Link>();
+		for (Set<Link> s : switchPortLinks.values()) {
+			links.addAll(s);
+		}
+		return links;
 	}
 
 	public boolean updateTopology() {
@@ -328,29 +391,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 
 	@Override
 	public Map<DatapathId, Set<Link>> getAllLinks(){
-
-		Map<DatapathId, Set<Link>> dpidLinks = new HashMap<DatapathId, Set<Link>>();
-		TopologyInstance ti = getCurrentInstance(true);
-		Set<DatapathId> switches = ti.getSwitches();
-
-		for(DatapathId s: switches) {
-			if (this.switchPorts.get(s) == null) continue;
-			for (OFPort p: switchPorts.get(s)) {
-				NodePortTuple np = new NodePortTuple(s, p);
-				if (this.switchPortLinks.get(np) == null) continue;
-				for(Link l: this.switchPortLinks.get(np)) {
-					if(dpidLinks.containsKey(s)) {
-						dpidLinks.get(s).add(l);
-					}
-					else {
-						dpidLinks.put(s,new HashSet<Link>(Arrays.asList(l)));
-					}
-
-				}
-			}
-		}
-
-		return dpidLinks;
+		return getCurrentInstance(true).getAllLinks();
 	}
 
 	@Override
@@ -365,6 +406,13 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		return ti.swBroadcastPorts(sw);
 	}
 
+	@Override
+	public void setLinkCostModel(ILinkCostModel model) {
+		linkCostTracker = model == null ? null :
+			new LinkCostTracker(model, linkCostHysteresis, LINK_COST_MIN_CHANGE);
+		lastLinkCostUpdate = 0;
+	}
+
 	@Override
 	public Date getLastUpdateTime() {
 		return lastUpdateTime;
@@ -699,6 +747,19 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		return ti.getRoute(null, src, srcPort, dst, dstPort, cookie);
 	}
 
+	@Override
+	public Route getRoute(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort, U64 cookie,
+			int flowHash) {
+		return getRoute(src, srcPort, dst, dstPort, cookie, flowHash, true);
+	}
+
+	@Override
+	public Route getRoute(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort, U64 cookie,
+			int flowHash, boolean tunnelEnabled) {
+		TopologyInstance ti = getCurrentInstance(tunnelEnabled);
+		return ti.getRoute(src, srcPort, dst, dstPort, flowHash);
+	}
+
 	@Override
 	public boolean routeExists(DatapathId src, DatapathId dst) {
 		return routeExists(src, dst, true);
@@ -713,12 +774,8 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	@Override
 	public ArrayList<Route> getRoutes(DatapathId srcDpid, DatapathId dstDpid,
 			boolean tunnelEnabled) {
-		// Floodlight supports single path routing now
-
-		// return single path now
-		ArrayList<Route> result=new ArrayList<Route>();
-		result.add(getRoute(srcDpid, dstDpid, U64.of(0), tunnelEnabled));
-		return result;
+		TopologyInstance ti = getCurrentInstance(tunnelEnabled);
+		return new ArrayList<Route>(ti.getPathSet(srcDpid, dstDpid));
 	}
 
 	// ******************
@@ -858,9 +915,92 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		directLinks = new HashMap<NodePortTuple, Set<Link>>();
 		portBroadcastDomainLinks = new HashMap<NodePortTuple, Set<Link>>();
 		tunnelPorts = new HashSet<NodePortTuple>();
-		topologyAware = new ArrayList<ITopologyListener>();
+		topologyAware = new CopyOnWriteArrayList<ITopologyListener>();
 		ldUpdates = new LinkedBlockingQueue<LDUpdate>();
 		haListener = new HAListenerDelegate();
+
+		// 0 uses every processor, 1 computes paths on the topology thread
+		int pathThreads = 0;
+		Map<String, String> config = context.getConfigParams(this);
+		if (config.containsKey(PATH_THREADS_STR)) {
+			try {
+				pathThreads = Integer.parseInt(config.get(PATH_THREADS_STR).trim());
+			} catch (NumberFormatException e) {
+				throw new FloodlightModuleException("Invalid " + PATH_THREADS_STR + ": " + config.get(PATH_THREADS_STR));
+			}
+			if (pathThreads < 0) {
+				throw new FloodlightModuleException(PATH_THREADS_STR + " must not be negative");
+			}
+		}
+		if (pathThreads == 0) {
+			pathThreads = Runtime.getRuntime().availableProcessors();
+		}
+		if (pathThreads > 1) {
+			pathComputationPool = new ForkJoinPool(pathThreads);
+		}
+		log.info("Computing shortest paths on {} thread(s)", pathThreads);
+
+		try {
+			if (config.containsKey(MULTIPATH_MODE_STR)) {
+				multipathMode = PathSetCalculator.Mode.valueOf(config.get(MULTIPATH_MODE_STR).trim().toUpperCase());
+			}
+			if (config.containsKey(MULTIPATH_MAX_PATHS_STR)) {
+				multipathMaxPaths = Integer.parseInt(config.get(MULTIPATH_MAX_PATHS_STR).trim());
+			}
+			if (config.containsKey(MULTIPATH_CACHE_SIZE_STR)) {
+				multipathCacheSize = Integer.parseInt(config.get(MULTIPATH_CACHE_SIZE_STR).trim());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid multipath configuration: " + e.getMessage());
+		}
+		if (multipathMaxPaths < 1 || multipathCacheSize < 1) {
+			throw new FloodlightModuleException(MULTIPATH_MAX_PATHS_STR + " and " + MULTIPATH_CACHE_SIZE_STR + " must be positive");
+		}
+		log.info("Keeping up to {} {} paths per switch pair", multipathMaxPaths, multipathMode);
+
+		String costModel = "HOPCOUNT";
+		double latencyCost = 1;
+		int congestionCost = 100;
+		double congestionThreshold = 0.5;
+		long defaultSpeed = 1000000;
+		try {
+			if (config.containsKey(LINK_COST_MODEL_STR)) {
+				costModel = config.get(LINK_COST_MODEL_STR).trim().toUpperCase();
+			}
+			if (config.containsKey(LINK_COST_LATENCY_STR)) {
+				latencyCost = Double.parseDouble(config.get(LINK_COST_LATENCY_STR).trim());
+			}
+			if (config.containsKey(LINK_COST_CONGESTION_STR)) {
+				congestionCost = Integer.parseInt(config.get(LINK_COST_CONGESTION_STR).trim());
+			}
+			if (config.containsKey(LINK_COST_CONGESTION_THRESHOLD_STR)) {
+				congestionThreshold = Double.parseDouble(config.get(LINK_COST_CONGESTION_THRESHOLD_STR).trim());
+			}
+			if (config.containsKey(LINK_COST_DEFAULT_SPEED_STR)) {
+				defaultSpeed = Long.parseLong(config.get(LINK_COST_DEFAULT_SPEED_STR).trim());
+			}
+			if (config.containsKey(LINK_COST_HYSTERESIS_STR)) {
+				linkCostHysteresis = Double.parseDouble(config.get(LINK_COST_HYSTERESIS_STR).trim());
+			}
+			if (config.containsKey(LINK_COST_INTERVAL_STR)) {
+				linkCostIntervalMs = Integer.parseInt(config.get(LINK_COST_INTERVAL_STR).trim()) * 1000L;
+			}
+			if (linkCostHysteresis < 0 || linkCostIntervalMs <= 0) {
+				throw new IllegalArgumentException(LINK_COST_HYSTERESIS_STR + " must not be negative and "
+						+ LINK_COST_INTERVAL_STR + " must be positive");
+			}
+			if (costModel.equals("COMPOSITE")) {
+				// Congestion is left out if statistics are not loaded
+				setLinkCostModel(new CompositeLinkCostModel(context.getServiceImpl(IStatisticsService.class),
+						switchService, latencyCost, congestionCost, congestionThreshold, defaultSpeed));
+			} else if (!costModel.equals("HOPCOUNT")) {
+				throw new IllegalArgumentException("unknown " + LINK_COST_MODEL_STR + " " + costModel);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid link cost configuration: " + e.getMessage());
+		}
+		log.info("Routing by {} link cost", costModel);
+
 		registerTopologyDebugCounters();
 		registerTopologyDebugEvents();
 	}
@@ -1230,12 +1370,17 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 				broadcastDomainPorts,
 				tunnelPorts,switchPortLinks,allPorts);
 
-		nt.compute();
+		nt.setPathComputationPool(pathComputationPool);
+		nt.setMultipath(multipathMode, multipathMaxPaths, multipathCacheSize);
+		LinkCostTracker tracker = linkCostTracker;
+		if (tracker != null) {
+			nt.setLinkCosts(tracker.getCosts(getSwitchPortLinkSet()));
+		}
+		nt.compute(currentInstance);
 
-		// We set the instances with and without tunnels to be identical.
-		// If needed, we may compute them differently.
+		// Publish only once computed, so that readers never see a
+		// partly built instance.
 		currentInstance = nt;
-		currentInstanceWithoutTunnels = nt;
 
 		TopologyEventInfo topologyInfo =
 				new TopologyEventInfo(0, nt.getClusters().size(),
@@ -1511,9 +1656,9 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	}
 
 	public TopologyInstance getCurrentInstance(boolean tunnelEnabled) {
-		if (tunnelEnabled)
-			return currentInstance;
-		else return this.currentInstanceWithoutTunnels;
+		// The instances with and without tunnels are identical.
+		// If needed, we may compute them differently.
+		return currentInstance;
 	}
 
 	public TopologyInstance getCurrentInstance() {
@@ -21,6 +21,7 @@ import java.util.EnumSet;
 import java.util.Set;
 
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFType;
@@ -114,8 +115,25 @@ public class OFMessageDamper {
      * @throws IOException
      */
     public boolean write(IOFSwitch sw, OFMessage msg) throws IOException {
+        return write(sw, msg, LogicalOFMessageCategory.MAIN, 0);
+    }
+
+    /**
+     * write the message to the switch over a connection of the given
+     * category according to our dampening settings
+     * @param sw
+     * @param msg
+     * @param category the category of the message
+     * @param flowHash hash of the flow the message belongs to
+     * @return true if the message was written to the switch, false if
+     * the message was dampened.
+     * @throws IOException
+     * @see IOFSwitch#write(OFMessage, LogicalOFMessageCategory, long)
+     */
+    public boolean write(IOFSwitch sw, OFMessage msg,
+                         LogicalOFMessageCategory category, long flowHash) throws IOException {
         if (!msgTypesToCache.contains(msg.getType())) {
-            sw.write(msg);
+            writeTo(sw, msg, category, flowHash);
             return true;
         }
 
@@ -124,8 +142,17 @@ public class OFMessageDamper {
             // entry exists in cache. Dampening.
             return false;
         } else {
-            sw.write(msg);
+            writeTo(sw, msg, category, flowHash);
             return true;
         }
     }
+
+    private static void writeTo(IOFSwitch sw, OFMessage msg,
+                                LogicalOFMessageCategory category, long flowHash) {
+        if (LogicalOFMessageCategory.MAIN.equals(category)) {
+            sw.write(msg);
+        } else {
+            sw.write(msg, category, flowHash);
+        }
+    }
 }
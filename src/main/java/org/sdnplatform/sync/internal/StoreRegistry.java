@@ -2,8 +2,8 @@ package org.sdnplatform.sync.internal;
 
 import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -49,8 +49,8 @@ public class StoreRegistry {
     /**
      * The storage engines that contain the locally-stored data
      */
-    private HashMap<String,SynchronizingStorageEngine> localStores =
-            new HashMap<String, SynchronizingStorageEngine>();
+    private ConcurrentHashMap<String,SynchronizingStorageEngine> localStores =
+            new ConcurrentHashMap<String, SynchronizingStorageEngine>();
 
     /**
      * Undelivered hints associated with the stores
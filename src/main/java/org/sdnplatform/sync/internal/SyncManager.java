@@ -57,6 +57,7 @@ import org.slf4j.LoggerFactory;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
@@ -89,6 +90,7 @@ public class SyncManager extends AbstractSyncManager {
 	private ClusterConfig clusterConfig = new ClusterConfig();
 
 	protected RPCService rpcService = null;
+	protected NettyTransport transport = RPCService.defaultTransport();
 
 	/**
 	 * Interval between cleanup tasks in seconds
@@ -491,6 +493,13 @@ public class SyncManager extends AbstractSyncManager {
 					"providers " + Arrays.toString(configProviders), e);
 		}
 
+		try {
+			transport = RPCService.defaultTransport().setConfigParams(config);
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid sync RPC transport " +
+					"config: " + e.getMessage(), e);
+		}
+
 		String manualStoreString = config.get("manualStores");
 		if (manualStoreString != null) {
 			List<String> manualStores = null;
@@ -541,7 +550,7 @@ public class SyncManager extends AbstractSyncManager {
 			throws FloodlightModuleException {
 
 		timer = new HashedWheelTimer();
-		rpcService = new RPCService(this, debugCounter, timer);
+		rpcService = new RPCService(this, debugCounter, timer, transport);
 
 		cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(),
 				new CleanupTask());
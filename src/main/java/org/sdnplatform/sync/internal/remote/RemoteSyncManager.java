@@ -17,8 +17,6 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
@@ -44,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.NettyTransport;
 
 /**
  * Implementation of a sync service that passes its functionality off to a
@@ -80,6 +79,11 @@ public class RemoteSyncManager extends AbstractSyncManager {
      */
     protected Bootstrap clientBootstrap;
 
+    /**
+     * Netty transport and socket settings for the client
+     */
+    protected NettyTransport transport = RPCService.defaultTransport();
+
     /**
      * Transaction ID used in message headers in the RPC protocol
      */
@@ -194,25 +198,25 @@ public class RemoteSyncManager extends AbstractSyncManager {
         try {
             authScheme = AuthScheme.valueOf(config.get("authScheme"));
         } catch (Exception e) {}
+        try {
+            transport = RPCService.defaultTransport().setConfigParams(config);
+        } catch (IllegalArgumentException e) {
+            throw new FloodlightModuleException("Invalid sync client transport " +
+                    "config: " + e.getMessage(), e);
+        }
     }
 
     @Override
     public void startUp(FloodlightModuleContext context)
             throws FloodlightModuleException {
         shutdown = false;
-        workerExecutor = new NioEventLoopGroup();
+        workerExecutor = transport.newWorkerGroup(null);
         timer = new HashedWheelTimer();
 
         pipelineFactory = new RemoteSyncChannelInitializer(timer, this);
 
-        final Bootstrap bootstrap = new Bootstrap()
-        .channel(NioSocketChannel.class)
-        .group(workerExecutor)
-        .option(ChannelOption.SO_REUSEADDR, true)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .option(ChannelOption.TCP_NODELAY, true)
-        .option(ChannelOption.SO_SNDBUF, RPCService.SEND_BUFFER_SIZE)
-        .option(ChannelOption.SO_RCVBUF, RPCService.SEND_BUFFER_SIZE)
+        final Bootstrap bootstrap = transport.configure(new Bootstrap()
+        .group(workerExecutor))
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, RPCService.CONNECT_TIMEOUT)
         .handler(pipelineFactory);
 
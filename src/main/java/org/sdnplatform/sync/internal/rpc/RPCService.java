@@ -16,6 +16,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.LinkedTransferQueue;
 
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import io.netty.bootstrap.Bootstrap;
@@ -27,9 +28,6 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
@@ -165,17 +163,38 @@ public class RPCService {
      */
     protected static final int MAX_PENDING_MESSAGES = 500;
 
+    /**
+     * Netty transport and socket settings
+     */
+    private final NettyTransport transport;
+
     public RPCService(SyncManager syncManager,
                       IDebugCounterService debugCounter,
                       Timer timer) {
+        this(syncManager, debugCounter, timer, defaultTransport());
+    }
+
+    public RPCService(SyncManager syncManager,
+                      IDebugCounterService debugCounter,
+                      Timer timer,
+                      NettyTransport transport) {
         super();
         this.syncManager = syncManager;
         this.debugCounter = debugCounter;
         this.timer = timer;
+        this.transport = transport;
 
         messageWindows = new ConcurrentHashMap<Short, MessageWindow>();
     }
 
+    /**
+     * @return the transport settings used when none are configured
+     */
+    public static NettyTransport defaultTransport() {
+        return new NettyTransport(SEND_BUFFER_SIZE, SEND_BUFFER_SIZE, 0, 0)
+                .setBossThreads(0);
+    }
+
     // *************
     // public methods
     // *************
@@ -211,8 +230,9 @@ public class RPCService {
             }
         };
 
-        bossGroup = new NioEventLoopGroup(0, f2);
-        workerGroup = new NioEventLoopGroup(0, f2);
+        bossGroup = transport.newBossGroup(f2);
+        workerGroup = transport.newWorkerGroup(f2);
+        logger.debug("Internal floodlight RPC using {}", transport);
 
         channelInitializer = new RPCChannelInitializer(syncManager, this, timer);
 
@@ -424,13 +444,8 @@ public class RPCService {
      */
     protected void startServer(RPCChannelInitializer channelInitializer) {
         final ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
-        .option(ChannelOption.SO_REUSEADDR, true)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .option(ChannelOption.TCP_NODELAY, true)
-        .option(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
-        .option(ChannelOption.SO_RCVBUF, SEND_BUFFER_SIZE)
+        bootstrap.group(bossGroup, workerGroup);
+        transport.configure(bootstrap)
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
         .childHandler(channelInitializer);
 
@@ -512,12 +527,8 @@ public class RPCService {
      */
     protected void startClients(RPCChannelInitializer channelInitializer) {
         final Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(workerGroup)
-        .channel(NioSocketChannel.class)
-        .option(ChannelOption.SO_REUSEADDR, true)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .option(ChannelOption.TCP_NODELAY, true)
-        .option(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
+        bootstrap.group(workerGroup);
+        transport.configure(bootstrap)
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
         .handler(channelInitializer);
         clientBootstrap = bootstrap;
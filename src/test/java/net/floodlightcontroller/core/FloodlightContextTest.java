@@ -0,0 +1,79 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+
+    @Test
+    public void testSlotRegistry() {
+        int a = FloodlightContext.getSlot("FloodlightContextTest.a");
+        int b = FloodlightContext.getSlot("FloodlightContextTest.b");
+        assertTrue(a != b);
+        assertEquals(a, FloodlightContext.getSlot("FloodlightContextTest.a"));
+        assertEquals("FloodlightContextTest.b", FloodlightContext.getKey(b));
+    }
+
+    @Test
+    public void testStoreAndReset() {
+        FloodlightContextStore<String> byKey = new FloodlightContextStore<String>();
+        FloodlightContextStore<String> bound =
+                new FloodlightContextStore<String>("FloodlightContextTest.bound");
+        FloodlightContext cntx = new FloodlightContext();
+
+        byKey.put(cntx, "FloodlightContextTest.x", "x");
+        bound.put(cntx, "bound");
+        assertEquals("x", byKey.get(cntx, "FloodlightContextTest.x"));
+        assertEquals("bound", byKey.get(cntx, "FloodlightContextTest.bound"));
+        assertEquals("bound", bound.get(cntx));
+        assertEquals(2, cntx.size());
+
+        // Overwriting does not use another slot
+        bound.put(cntx, "again");
+        assertEquals(2, cntx.size());
+
+        byKey.remove(cntx, "FloodlightContextTest.x");
+        assertNull(byKey.get(cntx, "FloodlightContextTest.x"));
+        assertEquals(1, cntx.size());
+
+        cntx.reset();
+        assertEquals(0, cntx.size());
+        assertNull(bound.get(cntx));
+    }
+
+    @Test
+    public void testGrowsPastInitialSlots() {
+        FloodlightContextStore<Integer> store = new FloodlightContextStore<Integer>();
+        FloodlightContext cntx = new FloodlightContext();
+        for (int i = 0; i < 100; i++) {
+            store.put(cntx, "FloodlightContextTest.grow" + i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), store.get(cntx, "FloodlightContextTest.grow" + i));
+        }
+        assertEquals(100, cntx.size());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testStorageView() {
+        FloodlightContextStore<String> store = new FloodlightContextStore<String>();
+        FloodlightContext cntx = new FloodlightContext();
+        Map<String, Object> storage = cntx.getStorage();
+
+        storage.put("FloodlightContextTest.view", "v");
+        assertEquals("v", store.get(cntx, "FloodlightContextTest.view"));
+        store.put(cntx, "FloodlightContextTest.view2", "w");
+        assertEquals(2, storage.size());
+        assertEquals("w", storage.get("FloodlightContextTest.view2"));
+        assertTrue(storage.entrySet().iterator().hasNext());
+
+        storage.clear();
+        assertEquals(0, cntx.size());
+    }
+}
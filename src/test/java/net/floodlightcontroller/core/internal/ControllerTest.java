@@ -25,12 +25,21 @@ import org.junit.Test;
 
 import net.floodlightcontroller.test.FloodlightTestCase;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.HAListenerTypeMarker;
 import net.floodlightcontroller.core.HARole;
+import net.floodlightcontroller.core.IControllerCompletionListener;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IHAListener;
+import net.floodlightcontroller.core.IInfoProvider;
 import net.floodlightcontroller.core.IListener;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFMessageListener;
@@ -38,6 +47,10 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.RoleInfo;
 import net.floodlightcontroller.core.SwitchDescription;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.FloodlightModuleLoader;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
@@ -500,6 +513,42 @@ public class ControllerTest extends FloodlightTestCase {
         assertArrayEquals(testPacket.serialize(), eth.serialize());
     }
 
+    /**
+     * Listener and completion listener changes reach the dispatch path,
+     * and each dispatched message is counted under its type
+     */
+    @Test
+    public void testListenerChangesAreDispatched() throws Exception {
+        controller.removeOFMessageListeners(OFType.PACKET_IN);
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+
+        IOFMessageListener test1 = createMock(IOFMessageListener.class);
+        expect(test1.getName()).andReturn("test1").anyTimes();
+        setupListenerOrdering(test1);
+        IControllerCompletionListener done = createMock(IControllerCompletionListener.class);
+        expect(done.getName()).andReturn("done").anyTimes();
+        expect(test1.receive(same(sw), same(pi), isA(FloodlightContext.class)))
+                .andReturn(Command.CONTINUE).once();
+        done.onMessageConsumed(same(sw), same(pi), isA(FloodlightContext.class));
+        expectLastCall().once();
+        replay(sw, test1, done);
+
+        long before = controller.counters
+                .getDispatchMessageCounter(OFType.PACKET_IN).getCounterValue();
+        controller.addOFMessageListener(OFType.PACKET_IN, test1);
+        controller.addCompletionListener(done);
+        controller.handleMessage(sw, pi, null);
+
+        // Neither is called once removed
+        controller.removeOFMessageListener(OFType.PACKET_IN, test1);
+        controller.removeCompletionListener(done);
+        controller.handleMessage(sw, pi, null);
+        verify(sw, test1, done);
+        assertEquals(before + 2, controller.counters
+                .getDispatchMessageCounter(OFType.PACKET_IN).getCounterValue());
+    }
+
     /**
      * Test handleOutgoingMessage and also test listener ordering
      * @throws Exception
@@ -716,4 +765,126 @@ public class ControllerTest extends FloodlightTestCase {
             //exptected
         }
     }
+
+    /** Registers with the controller from its startUp, once all peers are there */
+    private static class RegisteringModule implements IFloodlightModule {
+        private final String name;
+        private final IFloodlightProviderService provider;
+        private final CountDownLatch rendezvous;
+
+        RegisteringModule(String name, IFloodlightProviderService provider,
+                          CountDownLatch rendezvous) {
+            this.name = name;
+            this.provider = provider;
+            this.rendezvous = rendezvous;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+            return null;
+        }
+
+        @Override
+        public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+            return null;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+            return null;
+        }
+
+        @Override
+        public void init(FloodlightModuleContext context) {
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+            rendezvous.countDown();
+            try {
+                rendezvous.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new FloodlightModuleException(e);
+            }
+            provider.addInfoProvider("test", new IInfoProvider() {
+                @Override
+                public Map<String, Object> getInfo(String type) {
+                    return Collections.<String, Object>singletonMap(name, name);
+                }
+            });
+            provider.addOFMessageListener(OFType.PACKET_IN, new IOFMessageListener() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+                @Override
+                public boolean isCallbackOrderingPrereq(OFType type, String name) {
+                    return false;
+                }
+                @Override
+                public boolean isCallbackOrderingPostreq(OFType type, String name) {
+                    return false;
+                }
+                @Override
+                public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+                    return Command.CONTINUE;
+                }
+            });
+            provider.addHAListener(new IHAListener() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+                @Override
+                public boolean isCallbackOrderingPrereq(HAListenerTypeMarker type, String name) {
+                    return false;
+                }
+                @Override
+                public boolean isCallbackOrderingPostreq(HAListenerTypeMarker type, String name) {
+                    return false;
+                }
+                @Override
+                public void transitionToActive() {
+                }
+                @Override
+                public void transitionToStandby() {
+                }
+                @Override
+                public void controllerNodeIPsChanged(Map<String, String> curControllerNodeIPs,
+                        Map<String, String> addedControllerNodeIPs,
+                        Map<String, String> removedControllerNodeIPs) {
+                }
+            });
+        }
+    }
+
+    /** Runs a set of modules on several threads */
+    private static class ConcurrentLoader extends FloodlightModuleLoader {
+        void start(Collection<IFloodlightModule> modules) throws Exception {
+            setStartupThreads(8);
+            initModules(modules);
+            startupModules(modules);
+        }
+    }
+
+    @Test
+    public void testConcurrentModuleRegistration() throws Exception {
+        int count = 8;
+        CountDownLatch rendezvous = new CountDownLatch(count);
+        List<IFloodlightModule> modules = new ArrayList<IFloodlightModule>();
+        for (int i = 0; i < count; i++) {
+            modules.add(new RegisteringModule("module" + i, controller, rendezvous));
+        }
+        int haListeners = controller.haListeners.getOrderedListeners().size();
+        assertNull(controller.getListeners().get(OFType.PACKET_IN));
+
+        new ConcurrentLoader().start(modules);
+
+        // every startUp was running at the same time
+        assertEquals(0, rendezvous.getCount());
+        assertEquals(count, controller.getControllerInfo("test").size());
+        assertEquals(count, controller.getListeners().get(OFType.PACKET_IN).size());
+        assertEquals(haListeners + count,
+                     controller.haListeners.getOrderedListeners().size());
+    }
 }
@@ -0,0 +1,107 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.floodlightcontroller.core.IOFConnectionBackend;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class HandshakeAdmissionControllerTest {
+    private List<OFSwitchHandshakeHandler> begun;
+    private HandshakeAdmissionController admission;
+
+    @Before
+    public void setUp() {
+        begun = new ArrayList<OFSwitchHandshakeHandler>();
+        admission = new HandshakeAdmissionController(2, MoreExecutors.sameThreadExecutor());
+    }
+
+    private OFSwitchHandshakeHandler createHandler(long dpid, boolean connected) {
+        IOFConnectionBackend conn = createMock(IOFConnectionBackend.class);
+        expect(conn.isConnected()).andReturn(connected).anyTimes();
+        final OFSwitchHandshakeHandler h = createMock(OFSwitchHandshakeHandler.class);
+        expect(h.getMainConnection()).andReturn(conn).anyTimes();
+        expect(h.getDpid()).andReturn(DatapathId.of(dpid)).anyTimes();
+        h.beginHandshake();
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() {
+                begun.add(h);
+                return null;
+            }
+        }).anyTimes();
+        replay(conn, h);
+        return h;
+    }
+
+    @Test
+    public void testLimitAndPriority() {
+        OFSwitchHandshakeHandler a = createHandler(1, true);
+        OFSwitchHandshakeHandler b = createHandler(2, true);
+        OFSwitchHandshakeHandler fresh = createHandler(3, true);
+        OFSwitchHandshakeHandler known = createHandler(4, true);
+
+        admission.admit(a, false);
+        admission.admit(b, false);
+        admission.admit(fresh, false);
+        admission.admit(known, true);
+        assertEquals(2, begun.size());
+        assertEquals(2, admission.getInProgress());
+        assertEquals(2, admission.getQueued());
+
+        // The previously known switch goes first even though it came later
+        admission.release(a);
+        assertEquals(known, begun.get(2));
+        admission.release(b);
+        assertEquals(fresh, begun.get(3));
+        assertEquals(0, admission.getQueued());
+
+        // Releasing twice does not free another slot
+        admission.release(b);
+        assertEquals(2, admission.getInProgress());
+    }
+
+    @Test
+    public void testSkipsDisconnected() {
+        OFSwitchHandshakeHandler a = createHandler(1, true);
+        OFSwitchHandshakeHandler b = createHandler(2, true);
+        OFSwitchHandshakeHandler gone = createHandler(3, false);
+        OFSwitchHandshakeHandler c = createHandler(4, true);
+
+        admission.admit(a, false);
+        admission.admit(b, false);
+        admission.admit(gone, true);
+        admission.admit(c, false);
+
+        // Connection still up, so a stale disconnect is ignored
+        admission.disconnected(a);
+        assertEquals(2, begun.size());
+
+        admission.release(a);
+        assertEquals(c, begun.get(2));
+        assertEquals(0, admission.getQueued());
+        assertEquals(2, admission.getInProgress());
+    }
+
+    @Test
+    public void testUnlimited() {
+        admission = new HandshakeAdmissionController(0, MoreExecutors.sameThreadExecutor());
+        for (int i = 0; i < 10; i++) {
+            admission.admit(createHandler(i, true), false);
+        }
+        assertEquals(10, begun.size());
+        assertEquals(0, admission.getQueued());
+    }
+}
@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Date;
 
 import net.floodlightcontroller.core.IOFConnectionBackend;
+import net.floodlightcontroller.core.IStatsReplySubscriber;
 
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFMessage;
@@ -119,6 +120,11 @@ public class MockOFConnection implements IOFConnectionBackend {
         return null;
     }
 
+    @Override
+    public <REPLY extends OFStatsReply> void writeStatsRequest(
+            OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber) {
+    }
+
     public void setConnectedSince(Date connectedSince) {
         this.connectedSince = connectedSince;
     }
@@ -186,7 +192,7 @@ public class MockOFConnection implements IOFConnectionBackend {
     }
 
     public void setConnected(boolean conection) {
-       this.connected = true;
+       this.connected = conection;
     }
 
     @Override
@@ -5,16 +5,20 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 
@@ -22,6 +26,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import net.floodlightcontroller.core.IStatsReplySubscriber;
+import net.floodlightcontroller.core.IStatsReplySubscription;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.core.internal.OFConnection;
 import net.floodlightcontroller.core.internal.OFConnectionCounters;
@@ -71,6 +77,7 @@ public class OFConnectionTest {
     private DatapathId switchId;
     private Timer timer;
     private TestEventLoop eventLoop;
+    private IDebugCounterService debugCounterService;
 
     @Before
     public void setUp() throws Exception {
@@ -78,7 +85,7 @@ public class OFConnectionTest {
         switchId = DatapathId.of(1);
         timer = new HashedWheelTimer();
         channel = EasyMock.createMock(Channel.class);        
-        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService = new DebugCounterServiceImpl();
         debugCounterService.registerModule(OFConnectionCounters.COUNTER_MODULE);
         conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
                                 debugCounterService, timer);
@@ -162,6 +169,144 @@ public class OFConnectionTest {
                 conn.getPendingRequestIds().isEmpty(), equalTo(true));
     }
 
+    /**
+     * stream a stats request to a subscriber that asks for one reply at a
+     * time: replies it is not ready for are held back, and reads are never
+     * paused, so echoes and packet-ins keep being read
+     */
+    @Test(timeout = 5000)
+    public void testWriteStatsRequestStreaming() throws InterruptedException, ExecutionException {
+        ChannelConfig config = EasyMock.createMock(ChannelConfig.class);
+        replay(config);
+        expect(channel.config()).andReturn(config).anyTimes();
+        verifyStreaming();
+        EasyMock.verify(config);
+    }
+
+    /** the same on an aux connection */
+    @Test(timeout = 5000)
+    public void testWriteStatsRequestStreamingOnAux() throws InterruptedException, ExecutionException {
+        conn = new OFConnection(switchId, factory, channel, OFAuxId.of(1),
+                                debugCounterService, timer);
+        ChannelConfig config = EasyMock.createMock(ChannelConfig.class);
+        replay(config);
+        expect(channel.config()).andReturn(config).anyTimes();
+        verifyStreaming();
+        EasyMock.verify(config);
+    }
+
+    /** a subscriber that falls too far behind fails the stream */
+    @Test(timeout = 5000)
+    public void testWriteStatsRequestStreamingOverflow() throws InterruptedException, ExecutionException {
+        prepareChannelForWriteList();
+
+        final List<OFFlowStatsReply> received = new ArrayList<>();
+        final Throwable[] error = new Throwable[1];
+        OFFlowStatsRequest flowStatsRequest = factory.buildFlowStatsRequest().build();
+        conn.writeStatsRequest(flowStatsRequest, new IStatsReplySubscriber<OFFlowStatsReply>() {
+            @Override
+            public void onSubscribe(IStatsReplySubscription s) {
+                s.request(1);
+            }
+
+            @Override
+            public void onReply(OFFlowStatsReply reply) {
+                received.add(reply);
+            }
+
+            @Override
+            public void onComplete() {
+                fail("Stream should not complete");
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+                error[0] = cause;
+            }
+        });
+        eventLoop.runTasks();
+
+        OFFlowStatsReply more = factory.buildFlowStatsReply()
+                .setXid(flowStatsRequest.getXid())
+                .setFlags(Sets.immutableEnumSet(OFStatsReplyFlags.REPLY_MORE))
+                .build();
+        // one is delivered, the next MAX_PENDING_STREAM_REPLIES are held
+        for (int i = 0; i <= OFConnection.MAX_PENDING_STREAM_REPLIES; i++) {
+            conn.deliverResponse(more);
+        }
+        assertThat(received.size(), equalTo(1));
+        assertThat("Stream should not have failed yet", error[0], CoreMatchers.nullValue());
+
+        conn.deliverResponse(more);
+        eventLoop.runTasks();
+        assertThat(error[0], CoreMatchers.instanceOf(IllegalStateException.class));
+        assertThat(received.size(), equalTo(1));
+        assertThat("Connection should have no pending requests",
+                conn.getPendingRequestIds().isEmpty(), equalTo(true));
+    }
+
+    private void verifyStreaming() {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        final List<OFFlowStatsReply> received = new ArrayList<>();
+        final IStatsReplySubscription[] subscription = new IStatsReplySubscription[1];
+        final boolean[] completed = new boolean[1];
+        OFFlowStatsRequest flowStatsRequest = factory.buildFlowStatsRequest().build();
+        conn.writeStatsRequest(flowStatsRequest, new IStatsReplySubscriber<OFFlowStatsReply>() {
+            @Override
+            public void onSubscribe(IStatsReplySubscription s) {
+                subscription[0] = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onReply(OFFlowStatsReply reply) {
+                received.add(reply);
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0] = true;
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+                fail("Unexpected error " + cause);
+            }
+        });
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(flowStatsRequest));
+
+        OFFlowStatsReply statsReply1 = factory.buildFlowStatsReply()
+                .setXid(flowStatsRequest.getXid())
+                .setFlags(Sets.immutableEnumSet(OFStatsReplyFlags.REPLY_MORE))
+                .build();
+        OFFlowStatsReply statsReply2 = statsReply1.createBuilder().build();
+        OFFlowStatsReply statsReply3 = factory.buildFlowStatsReply()
+                .setXid(flowStatsRequest.getXid())
+                .build();
+
+        conn.deliverResponse(statsReply1);
+        assertThat(received, Matchers.contains(statsReply1));
+
+        // Not asked for yet: held back
+        conn.deliverResponse(statsReply2);
+        assertThat(received.size(), equalTo(1));
+
+        // Catching up
+        subscription[0].request(5);
+        eventLoop.runTasks();
+        assertThat(received, Matchers.contains(statsReply1, statsReply2));
+        assertThat("Stream should not be complete", completed[0], equalTo(false));
+
+        conn.deliverResponse(statsReply3);
+        assertThat(received, Matchers.contains(statsReply1, statsReply2, statsReply3));
+        assertThat("Stream should be complete", completed[0], equalTo(true));
+        assertThat("Connection should have no pending requests",
+                conn.getPendingRequestIds().isEmpty(), equalTo(true));
+    }
+
     private Capture<List<OFMessage>> prepareChannelForWriteList() {
         EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
         Capture<List<OFMessage>> cMsgList = new Capture<>();
@@ -278,4 +423,86 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+
+    /** messages written during one event loop tick are coalesced into one flush */
+    @Test(timeout = 5000)
+    public void testWritesCoalescedIntoOneFlush() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        OFPacketOut packetOut = factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+
+        conn.write(hello);
+        conn.write(ImmutableList.<OFMessage>of(echoRequest, packetOut));
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello, echoRequest, packetOut));
+        EasyMock.verify(channel);
+    }
+
+    /** the write queue is paused while the channel is above its high water mark */
+    @Test(timeout = 5000)
+    public void testWritesPausedWhileUnwritable() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        conn.channelWritabilityChanged(false);
+        conn.write(hello);
+        eventLoop.runTasks();
+        assertThat("Write should have been held back", cMsgList.hasCaptured(), equalTo(false));
+
+        conn.channelWritabilityChanged(true);
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello));
+    }
+
+    /** a flush ends once its messages add up to MAX_BYTES_PER_FLUSH */
+    @Test(timeout = 5000)
+    public void testFlushLimitedByBytes() throws InterruptedException, ExecutionException {
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        Capture<List<OFMessage>> cMsgList = new Capture<>(CaptureType.ALL);
+        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).times(2);
+        replay(channel);
+
+        // four of these reach the limit
+        OFPacketOut packetOut = factory.buildPacketOut()
+                .setData(new byte[OFConnection.MAX_BYTES_PER_FLUSH / 4])
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+        List<OFMessage> msgs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            msgs.add(packetOut);
+        }
+        conn.write(msgs);
+        eventLoop.runTasks();
+        assertThat(cMsgList.getValues().size(), equalTo(2));
+        assertThat(cMsgList.getValues().get(0).size(), equalTo(4));
+        assertThat(cMsgList.getValues().get(1).size(), equalTo(4));
+        EasyMock.verify(channel);
+    }
+
+    /** writes fail once MAX_QUEUED_MESSAGES are waiting for the channel */
+    @Test(timeout = 5000)
+    public void testWriteQueueBounded() throws InterruptedException, ExecutionException {
+        prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        conn.channelWritabilityChanged(false);
+        List<OFMessage> msgs = new ArrayList<>();
+        for (int i = 0; i < OFConnection.MAX_QUEUED_MESSAGES; i++) {
+            msgs.add(hello);
+        }
+        assertThat(conn.write(msgs).isEmpty(), equalTo(true));
+        assertThat("Write should fail with a full queue", conn.write(hello), equalTo(false));
+
+        ListenableFuture<OFEchoReply> future = conn.writeRequest(factory.echoRequest(new byte[] {}));
+        FutureTestUtils.assertFutureFailedWithException(future, IllegalStateException.class);
+        assertThat("Connection should have no pending requests",
+                conn.getPendingRequestIds().isEmpty(), equalTo(true));
+    }
 }
@@ -0,0 +1,104 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.collect.ImmutableList;
+
+public class OFMessageEncoderTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private OFMessage flowAdd(int port) {
+        List<OFAction> actions = ImmutableList.<OFAction>of(
+                factory.actions().output(OFPort.of(port), Integer.MAX_VALUE));
+        return factory.buildFlowAdd()
+                .setMatch(factory.buildMatch()
+                        .setExact(MatchField.IN_PORT, OFPort.of(1))
+                        .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                        .setExact(MatchField.IPV4_DST, IPv4Address.of(10, 0, 0, port))
+                        .build())
+                .setInstructions(ImmutableList.<OFInstruction>of(
+                        factory.instructions().applyActions(actions)))
+                .build();
+    }
+
+    private static int encodedLength(OFMessage m) {
+        ByteBuf buf = Unpooled.buffer();
+        m.writeTo(buf);
+        return buf.readableBytes();
+    }
+
+    @Test
+    public void testEstimateCoversEncodedSize() {
+        OFMessage flowAdd = flowAdd(2);
+        OFMessage packetOut = factory.buildPacketOut()
+                .setData(new byte[100])
+                .setActions(ImmutableList.<OFAction>of(
+                        factory.actions().output(OFPort.FLOOD, 0)))
+                .build();
+        OFMessage echo = factory.echoRequest(new byte[0]);
+
+        for (OFMessage m : ImmutableList.of(flowAdd, packetOut, echo)) {
+            assertTrue(m.getType() + " estimate too small",
+                    OFMessageEncoder.estimateSize(m) >= encodedLength(m));
+        }
+    }
+
+    @Test
+    public void testBatchEncodedIntoOneBuffer() {
+        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService.registerModule(OFConnectionCounters.COUNTER_MODULE);
+        OFConnectionCounters counters = new OFConnectionCounters(debugCounterService,
+                DatapathId.of(1), OFAuxId.MAIN);
+
+        OFMessageEncoder.Batch batch = new OFMessageEncoder.Batch(counters);
+        int expected = 0;
+        for (int i = 1; i <= 100; i++) {
+            OFMessage m = flowAdd(i);
+            batch.add(m);
+            expected += encodedLength(m);
+        }
+
+        EmbeddedChannel channel = new EmbeddedChannel(new OFMessageEncoder());
+        channel.writeOutbound(batch);
+        ByteBuf out = (ByteBuf) channel.readOutbound();
+        assertEquals(expected, out.readableBytes());
+        out.release();
+
+        long bytes = -1;
+        long undersized = -1;
+        for (DebugCounterResource r :
+            debugCounterService.getModuleCounterValues(OFConnectionCounters.COUNTER_MODULE)) {
+            if (r.getCounterHierarchy().endsWith("/flush/bytes"))
+                bytes = r.getCounterValue();
+            if (r.getCounterHierarchy().endsWith("/flush/undersized"))
+                undersized = r.getCounterValue();
+        }
+        assertEquals(expected, bytes);
+        assertEquals(0, undersized);
+    }
+}
@@ -8,7 +8,9 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.util.EnumSet;
 import java.util.List;
@@ -226,4 +228,33 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
         verify(sw);
     }
 
-}
\ No newline at end of file
+    /**
+     * Closing an aux connection only removes it from the switch; the switch
+     * stays connected over MAIN
+     */
+    @Test
+    public void testAuxConnectionClosed() throws Exception {
+        testInitialMoveToMasterWithRole();
+        MockOFConnection aux = new MockOFConnection(dpid, OFAuxId.of(1));
+
+        reset(sw);
+        sw.registerConnection(aux);
+        expectLastCall().once();
+        sw.removeConnection(aux);
+        expectLastCall().once();
+        replay(sw);
+        // Neither handshakeDisconnected nor switchDisconnected
+        reset(switchManager);
+        replay(switchManager);
+
+        switchHandler.auxConnectionOpened(aux);
+        assertTrue(switchHandler.hasConnection(aux));
+
+        switchHandler.connectionClosed(aux);
+        assertFalse(switchHandler.hasConnection(aux));
+        assertThat(switchHandler.getStateForTesting(),
+                CoreMatchers.instanceOf(OFSwitchHandshakeHandler.MasterState.class));
+        assertTrue(switchHandler.hasConnection(connection));
+        verify(sw, switchManager);
+    }
+}
@@ -18,6 +18,8 @@ package net.floodlightcontroller.core.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -30,7 +32,9 @@ import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import net.floodlightcontroller.core.IOFConnection;
 import net.floodlightcontroller.core.IOFSwitchBackend;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.SwitchDriverSubHandshakeAlreadyStarted;
 import net.floodlightcontroller.core.SwitchDriverSubHandshakeCompleted;
 import net.floodlightcontroller.core.SwitchDriverSubHandshakeNotStarted;
@@ -104,6 +108,56 @@ public class OFSwitchTest {
 		} catch (SwitchDriverSubHandshakeAlreadyStarted e) { /* expected */ }
 	}
 
+	/**
+	 * Messages of one flow hash stay on one of the category's open aux
+	 * connections, and go to MAIN once none of them is open
+	 */
+	@Test
+	public void testGetConnectionByFlowHash() {
+		LogicalOFMessageCategory category = new LogicalOFMessageCategory("test", 1, 3);
+		IOFSwitchManager switchManager = EasyMock.createMock(IOFSwitchManager.class);
+		EasyMock.expect(switchManager.isCategoryRegistered(category)).andReturn(true).anyTimes();
+		EasyMock.replay(switchManager);
+		MockOFConnection main = new MockOFConnection(DatapathId.of(1), OFAuxId.MAIN);
+		main.setConnected(true);
+		OFSwitch sw = new OFSwitch(main, factory, switchManager, DatapathId.of(1));
+		List<MockOFConnection> aux = new ArrayList<MockOFConnection>();
+		for (int i = 1; i <= 3; i++) {
+			MockOFConnection c = new MockOFConnection(DatapathId.of(1), OFAuxId.of(i));
+			c.setConnected(true);
+			sw.registerConnection(c);
+			aux.add(c);
+		}
+
+		for (long hash = 0; hash < 100; hash++) {
+			IOFConnection c = sw.getConnection(category, hash);
+			assertTrue(aux.contains(c));
+			assertSame(c, sw.getConnection(category, hash));
+		}
+
+		// A closed connection is skipped
+		IOFConnection picked = sw.getConnection(category, 7);
+		((MockOFConnection) picked).setConnected(false);
+		for (long hash = 0; hash < 100; hash++) {
+			IOFConnection c = sw.getConnection(category, hash);
+			assertNotSame(picked, c);
+			assertTrue(aux.contains(c));
+		}
+
+		// None open: MAIN
+		for (MockOFConnection c : aux) {
+			c.setConnected(false);
+		}
+		assertSame(main, sw.getConnection(category, 7));
+
+		// Nor registered
+		for (MockOFConnection c : aux) {
+			sw.removeConnection(c);
+		}
+		assertSame(main, sw.getConnection(category, 7));
+		EasyMock.verify(switchManager);
+	}
+
 	/**
 	 * Helper to load controller connection messages into a switch for testing.
 	 * @param sw the switch to insert the message on
@@ -0,0 +1,159 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.internal.PacketInAdmission.PacketInClass;
+import net.floodlightcontroller.core.internal.PacketInAdmission.TokenBucket;
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.UDP;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.ArpOpcode;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class PacketInAdmissionTest {
+
+    private static Ethernet eth(EthType type) {
+        return new Ethernet()
+            .setSourceMACAddress(MacAddress.of("00:00:00:00:00:01"))
+            .setDestinationMACAddress(MacAddress.BROADCAST)
+            .setEtherType(type);
+    }
+
+    private static byte[] udp(int dstPort) {
+        return eth(EthType.IPv4).setPayload(new IPv4()
+            .setTtl((byte) 64)
+            .setProtocol(IpProtocol.UDP)
+            .setSourceAddress(IPv4Address.of("0.0.0.0"))
+            .setDestinationAddress(IPv4Address.of("255.255.255.255"))
+            .setPayload(new UDP()
+                .setSourcePort(TransportPort.of(68))
+                .setDestinationPort(TransportPort.of(dstPort))
+                .setPayload(new Data(new byte[32])))).serialize();
+    }
+
+    @Test
+    public void testClassify() throws Exception {
+        byte[] arp = eth(EthType.ARP).setPayload(new ARP()
+            .setHardwareType(ARP.HW_TYPE_ETHERNET)
+            .setProtocolType(ARP.PROTO_TYPE_IP)
+            .setHardwareAddressLength((byte) 6)
+            .setProtocolAddressLength((byte) 4)
+            .setOpCode(ArpOpcode.REQUEST)
+            .setSenderHardwareAddress(MacAddress.of("00:00:00:00:00:01"))
+            .setSenderProtocolAddress(IPv4Address.of("10.0.0.1"))
+            .setTargetHardwareAddress(MacAddress.NONE)
+            .setTargetProtocolAddress(IPv4Address.of("10.0.0.2"))).serialize();
+        assertEquals(PacketInClass.ARP, PacketInAdmission.classify(arp, true));
+        assertEquals(PacketInClass.DHCP, PacketInAdmission.classify(udp(67), true));
+        assertEquals(PacketInClass.OTHER, PacketInAdmission.classify(udp(53), true));
+
+        byte[] lldp = new byte[60];
+        lldp[12] = (byte) 0x88;
+        lldp[13] = (byte) 0xcc;
+        assertEquals(PacketInClass.LLDP, PacketInAdmission.classify(lldp, true));
+
+        // BDDP behind a VLAN tag
+        byte[] bddp = new byte[64];
+        bddp[12] = (byte) 0x81;
+        bddp[16] = (byte) 0x89;
+        bddp[17] = (byte) 0x42;
+        assertEquals(PacketInClass.LLDP, PacketInAdmission.classify(bddp, true));
+
+        // Truncated frames are not misread
+        assertEquals(PacketInClass.OTHER, PacketInAdmission.classify(new byte[13], true));
+    }
+
+    @Test
+    public void testClassifyFlowSummary() {
+        byte[] data = new byte[PacketInAdmission.SUMMARY_PAD + 3 * PacketInAdmission.SUMMARY_LENGTH];
+        data[PacketInAdmission.SUMMARY_PAD] = 0x60;
+        assertEquals(PacketInClass.FLOW_SUMMARY, PacketInAdmission.classify(data, false));
+        // An exact IPv6 source means a regular packet-in
+        assertEquals(PacketInClass.OTHER, PacketInAdmission.classify(data, true));
+        // So does a length that is not a whole number of records
+        byte[] odd = new byte[data.length + 1];
+        odd[PacketInAdmission.SUMMARY_PAD] = 0x60;
+        assertEquals(PacketInClass.OTHER, PacketInAdmission.classify(odd, false));
+    }
+
+    @Test
+    public void testQuarantineMatches() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        OFPort port = OFPort.of(3);
+
+        // DHCP is dropped towards servers and towards clients
+        List<Match> dhcp = PacketInAdmission.quarantineMatches(factory, port, PacketInClass.DHCP, udp(67));
+        assertEquals(2, dhcp.size());
+        assertEquals(TransportPort.of(67), dhcp.get(0).get(MatchField.UDP_DST));
+        assertEquals(TransportPort.of(68), dhcp.get(1).get(MatchField.UDP_DST));
+
+        // Other traffic is only dropped for the offending packet's
+        // addresses and ethertype, never for the whole port
+        List<Match> other = PacketInAdmission.quarantineMatches(factory, port, PacketInClass.OTHER, udp(53));
+        assertEquals(1, other.size());
+        Match m = other.get(0);
+        assertEquals(port, m.get(MatchField.IN_PORT));
+        assertEquals(MacAddress.of("00:00:00:00:00:01"), m.get(MatchField.ETH_SRC));
+        assertEquals(MacAddress.BROADCAST, m.get(MatchField.ETH_DST));
+        assertEquals(EthType.IPv4, m.get(MatchField.ETH_TYPE));
+
+        assertTrue(PacketInAdmission.quarantineMatches(factory, port, PacketInClass.OTHER, new byte[13]).isEmpty());
+        assertTrue(PacketInAdmission.quarantineMatches(factory, port, PacketInClass.LLDP, udp(53)).isEmpty());
+    }
+
+    @Test
+    public void testTokenBucket() {
+        long start = 1000;
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        // 1000/s with a burst of 10
+        TokenBucket b = new TokenBucket(1000, 10, start);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(b.tryAcquire(start));
+        }
+        assertFalse(b.tryAcquire(start));
+        assertTrue(b.tryAcquire(start + ms));
+        assertFalse(b.tryAcquire(start + ms));
+
+        // An idle bucket refills to the burst and no further
+        long later = start + 100 * ms;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(b.tryAcquire(later));
+        }
+        assertFalse(b.tryAcquire(later));
+    }
+
+    @Test
+    public void testParseRates() {
+        Map<PacketInClass, Integer> rates = PacketInAdmission.parseRates("lldp:100, flow_summary:0,OTHER:5");
+        assertEquals(3, rates.size());
+        assertEquals(Integer.valueOf(100), rates.get(PacketInClass.LLDP));
+        assertEquals(Integer.valueOf(0), rates.get(PacketInClass.FLOW_SUMMARY));
+        assertEquals(Integer.valueOf(5), rates.get(PacketInClass.OTHER));
+        assertTrue(PacketInAdmission.parseRates("").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRatesUnknownClass() {
+        PacketInAdmission.parseRates("ICMP:10");
+    }
+}
@@ -0,0 +1,144 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.junit.After;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class SwitchDispatchPoolTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
+    private SwitchDispatchPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    private IOFSwitch mockSwitch(long dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private OFMessage packetIn(long xid) {
+        return factory.buildPacketIn()
+                .setXid(xid)
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setInPort(OFPort.of(1))
+                .setData(new byte[] { 0 })
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setTotalLen(1)
+                .build();
+    }
+
+    @Test
+    public void testPerSwitchOrdering() throws Exception {
+        final int numSwitches = 5;
+        final int perSwitch = 200;
+        final CountDownLatch done = new CountDownLatch(numSwitches * perSwitch);
+        final Map<DatapathId, List<Long>> seen = new HashMap<DatapathId, List<Long>>();
+        List<IOFSwitch> switches = new ArrayList<IOFSwitch>();
+        for (int i = 1; i <= numSwitches; i++) {
+            IOFSwitch sw = mockSwitch(i);
+            switches.add(sw);
+            seen.put(sw.getId(), Collections.synchronizedList(new ArrayList<Long>()));
+        }
+
+        pool = new SwitchDispatchPool("test", 3, numSwitches * perSwitch,
+                new SwitchDispatchPool.IDispatchHandler() {
+                    @Override
+                    public void dispatch(IOFSwitch sw, OFMessage m) {
+                        seen.get(sw.getId()).add(m.getXid());
+                        done.countDown();
+                    }
+                }, null, null);
+        pool.start();
+
+        // control messages interleaved with packet-ins keep their place
+        for (long xid = 0; xid < perSwitch; xid++) {
+            for (IOFSwitch sw : switches) {
+                OFMessage m = xid % 3 == 0
+                        ? factory.buildEchoRequest().setXid(xid).build()
+                        : packetIn(xid);
+                assertTrue(pool.submit(sw, m));
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (List<Long> xids : seen.values()) {
+            assertEquals(perSwitch, xids.size());
+            for (int i = 0; i < perSwitch; i++) {
+                assertEquals(Long.valueOf(i), xids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPacketInShedKeepsOrder() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final List<Long> order = Collections.synchronizedList(new ArrayList<Long>());
+
+        pool = new SwitchDispatchPool("test", 1, 2,
+                new SwitchDispatchPool.IDispatchHandler() {
+                    @Override
+                    public void dispatch(IOFSwitch sw, OFMessage m) {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        order.add(m.getXid());
+                        done.countDown();
+                    }
+                }, null, null);
+        pool.start();
+        IOFSwitch sw = mockSwitch(1);
+
+        // Block the only worker on the first packet-in
+        assertTrue(pool.submit(sw, packetIn(1)));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertTrue(pool.submit(sw, packetIn(2)));
+        assertTrue(pool.submit(sw, packetIn(3)));
+        // Queue is at the shed depth: further packet-ins are dropped...
+        assertFalse(pool.submit(sw, packetIn(4)));
+        // ...but control messages are still accepted, in arrival order
+        assertTrue(pool.submit(sw, factory.buildEchoRequest().setXid(100).build()));
+        assertEquals(1, pool.getShed(0));
+        assertEquals(3, pool.getQueueDepth(0));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(1), order.get(0));
+        assertEquals(Long.valueOf(2), order.get(1));
+        assertEquals(Long.valueOf(3), order.get(2));
+        assertEquals(Long.valueOf(100), order.get(3));
+    }
+}
@@ -0,0 +1,107 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.core.SwitchDescription;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFTableFeatureProp;
+import org.projectfloodlight.openflow.protocol.OFTableFeaturesStatsReply;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U32;
+import org.projectfloodlight.openflow.types.U64;
+
+public class TableFeaturesCacheTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<OFTableFeaturesStatsReply> createReplies(long xid, long maxEntries) {
+        return Collections.singletonList(factory.buildTableFeaturesStatsReply()
+                .setXid(xid)
+                .setEntries(Collections.singletonList(factory.buildTableFeatures()
+                        .setConfig(0)
+                        .setMaxEntries(maxEntries)
+                        .setMetadataMatch(U64.NO_MASK)
+                        .setMetadataWrite(U64.NO_MASK)
+                        .setName("MyTable")
+                        .setTableId(TableId.of(1))
+                        .setProperties(Collections.singletonList((OFTableFeatureProp) factory.buildTableFeaturePropMatch()
+                                .setOxmIds(Collections.singletonList(U32.of(100)))
+                                .build()))
+                        .build()))
+                .build());
+    }
+
+    private String modelKey(String software) {
+        return TableFeaturesCache.modelKey(OFVersion.OF_13,
+                new SwitchDescription("maker", "hw", software, "serial", "dp"));
+    }
+
+    @Test
+    public void testModelKey() {
+        assertEquals(modelKey("1.0"), modelKey("1.0"));
+        assertFalse(modelKey("1.0").equals(modelKey("1.1")));
+    }
+
+    @Test
+    public void testSharedAndTrusted() {
+        TableFeaturesCache cache = new TableFeaturesCache(2, null);
+        String key = modelKey("1.0");
+
+        TableFeaturesCache.Entry first = cache.update(key, createReplies(1, 100));
+        assertNull(cache.getTrusted(key));
+        assertNotNull(first.getFeatures().get(TableId.of(1)));
+
+        // Same features with another XID: parsed instance is shared
+        TableFeaturesCache.Entry second = cache.update(key, createReplies(2, 100));
+        assertSame(first.getFeatures(), second.getFeatures());
+        assertSame(second, cache.getTrusted(key));
+
+        // Changed features replace the entry and are not trusted yet
+        TableFeaturesCache.Entry changed = cache.update(key, createReplies(3, 200));
+        assertEquals(200, changed.getFeatures().get(TableId.of(1)).getMaxEntries());
+        assertNull(cache.getTrusted(key));
+    }
+
+    @Test
+    public void testNeverTrusted() {
+        TableFeaturesCache cache = new TableFeaturesCache(0, null);
+        String key = modelKey("1.0");
+        for (int i = 0; i < 5; i++) {
+            cache.update(key, createReplies(i, 100));
+        }
+        assertNull(cache.getTrusted(key));
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        File file = new File(folder.getRoot(), "table-features.cache");
+        String key = modelKey("1.0");
+        TableFeaturesCache cache = new TableFeaturesCache(2, file);
+        cache.update(key, createReplies(1, 100));
+        cache.update(key, createReplies(2, 100));
+
+        TableFeaturesCache loaded = new TableFeaturesCache(2, file);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        TableFeaturesCache.Entry e = loaded.getTrusted(key);
+        assertNotNull(e);
+        assertEquals(cache.getTrusted(key).getReplyHash(), e.getReplyHash());
+        assertEquals(100, e.getFeatures().get(TableId.of(1)).getMaxEntries());
+    }
+}
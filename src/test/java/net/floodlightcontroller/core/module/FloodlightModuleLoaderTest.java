@@ -0,0 +1,177 @@
+package net.floodlightcontroller.core.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class FloodlightModuleLoaderTest {
+    public interface IAService extends IFloodlightService {}
+    public interface IBService extends IFloodlightService {}
+    public interface ICService extends IFloodlightService {}
+
+    /** Records the order of init and startUp calls */
+    private static class Events {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        int indexOf(String e) {
+            return events.indexOf(e);
+        }
+    }
+
+    private static class TestModule implements IFloodlightModule, IFloodlightService {
+        private final String name;
+        private final Class<? extends IFloodlightService> provides;
+        private final Collection<Class<? extends IFloodlightService>> depends;
+        private final Events events;
+        CountDownLatch rendezvous;
+        boolean failStartUp;
+
+        TestModule(String name, Class<? extends IFloodlightService> provides,
+                   Collection<Class<? extends IFloodlightService>> depends,
+                   Events events) {
+            this.name = name;
+            this.provides = provides;
+            this.depends = depends;
+            this.events = events;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+            return provides == null ? null
+                    : ImmutableList.<Class<? extends IFloodlightService>>of(provides);
+        }
+
+        @Override
+        public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+            return provides == null ? null
+                    : ImmutableMap.<Class<? extends IFloodlightService>, IFloodlightService>of(provides, this);
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+            return depends;
+        }
+
+        @Override
+        public void init(FloodlightModuleContext context) throws FloodlightModuleException {
+            events.events.add(name + ".init.start");
+            if (rendezvous != null) {
+                rendezvous.countDown();
+                try {
+                    rendezvous.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new FloodlightModuleException(e);
+                }
+            }
+            events.events.add(name + ".init.end");
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+            if (failStartUp)
+                throw new FloodlightModuleException(name + " failed");
+            events.events.add(name + ".startUp");
+        }
+    }
+
+    /* Timings are per module class */
+    private static class ModuleA extends TestModule {
+        ModuleA(Collection<Class<? extends IFloodlightService>> depends, Events events) {
+            super("a", IAService.class, depends, events);
+        }
+    }
+
+    private static class ModuleB extends TestModule {
+        ModuleB(Collection<Class<? extends IFloodlightService>> depends, Events events) {
+            super("b", IBService.class, depends, events);
+        }
+    }
+
+    private static class ModuleC extends TestModule {
+        ModuleC(Collection<Class<? extends IFloodlightService>> depends, Events events) {
+            super("c", ICService.class, depends, events);
+        }
+    }
+
+    private static Collection<Class<? extends IFloodlightService>> deps(
+            Class<? extends IFloodlightService> c) {
+        return ImmutableList.<Class<? extends IFloodlightService>>of(c);
+    }
+
+    @Test
+    public void testParallelRespectsDependencies() throws Exception {
+        Events events = new Events();
+        TestModule a = new ModuleA(null, events);
+        TestModule b = new ModuleB(null, events);
+        TestModule c = new ModuleC(deps(IAService.class), events);
+        // a and b can only finish init if they run at the same time
+        CountDownLatch rendezvous = new CountDownLatch(2);
+        a.rendezvous = rendezvous;
+        b.rendezvous = rendezvous;
+
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(4);
+        List<IFloodlightModule> modules = ImmutableList.<IFloodlightModule>of(a, b, c);
+        loader.initModules(modules);
+        loader.startupModules(modules);
+
+        assertEquals(0, rendezvous.getCount());
+        assertTrue(events.indexOf("a.init.end") < events.indexOf("c.init.start"));
+        for (String m : new String[] { "a", "b", "c" }) {
+            assertTrue(events.indexOf(m + ".startUp") > events.indexOf("c.init.end"));
+        }
+        assertTrue(events.indexOf("a.startUp") < events.indexOf("c.startUp"));
+        assertEquals(3, loader.getModuleTimings().size());
+        for (ModuleStartupTiming t : loader.getModuleTimings()) {
+            assertTrue(t.getInitMs() >= 0);
+            assertTrue(t.getStartUpStartMs() >= t.getInitStartMs());
+        }
+    }
+
+    @Test
+    public void testFailureStopsDependents() throws Exception {
+        Events events = new Events();
+        TestModule a = new ModuleA(null, events);
+        TestModule c = new ModuleC(deps(IAService.class), events);
+        a.failStartUp = true;
+
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(2);
+        List<IFloodlightModule> modules = ImmutableList.<IFloodlightModule>of(a, c);
+        loader.initModules(modules);
+        try {
+            loader.startupModules(modules);
+            fail("Expected startUp failure");
+        } catch (FloodlightModuleException e) {
+            assertEquals("a failed", e.getMessage());
+        }
+        assertEquals(-1, events.indexOf("c.startUp"));
+    }
+
+    @Test
+    public void testCircularDependency() throws Exception {
+        Events events = new Events();
+        TestModule a = new ModuleA(deps(IBService.class), events);
+        TestModule b = new ModuleB(deps(IAService.class), events);
+
+        FloodlightModuleLoader loader = new FloodlightModuleLoader();
+        loader.setStartupThreads(2);
+        List<IFloodlightModule> modules = ImmutableList.<IFloodlightModule>of(a, b);
+        loader.initModules(modules);
+        loader.startupModules(modules);
+        assertTrue(events.indexOf("a.startUp") >= 0);
+        assertTrue(events.indexOf("b.startUp") >= 0);
+    }
+}
@@ -0,0 +1,165 @@
+package net.floodlightcontroller.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.util.ReferenceCountUtil;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class NettyTransportTest {
+    protected static final Logger log = LoggerFactory.getLogger(NettyTransportTest.class);
+
+    @Test
+    public void testConfigParams() {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NettyTransport.TRANSPORT, "nio");
+        config.put(NettyTransport.WORKER_THREADS, "4");
+        config.put(NettyTransport.RECEIVE_BUFFER_SIZE, "65536");
+        config.put(NettyTransport.POOLED_ALLOCATOR, "NO");
+        config.put(NettyTransport.SEND_BUFFER_SIZE, "");
+
+        NettyTransport t = new NettyTransport(1024, 0, 2048, 512).setConfigParams(config);
+        assertEquals(NettyTransport.Type.NIO, t.getConfiguredType());
+        assertFalse(t.isEpoll());
+        assertEquals(1, t.getBossThreads());
+        assertEquals(4, t.getWorkerThreads());
+        assertEquals(1024, t.getSendBufferSize());
+        assertEquals(65536, t.getReceiveBufferSize());
+        assertEquals(2048, t.getWriteBufferHighWaterMark());
+        assertEquals(512, t.getWriteBufferLowWaterMark());
+        assertFalse(t.isPooledAllocator());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTransport() {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NettyTransport.TRANSPORT, "kqueue");
+        new NettyTransport(0, 0, 0, 0).setConfigParams(config);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWaterMarks() {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NettyTransport.WRITE_BUFFER_LOW_WATER_MARK, "4096");
+        new NettyTransport(0, 0, 1024, 0).setConfigParams(config);
+    }
+
+    /**
+     * Connect a few clients to a local listener and push some data through
+     * each, once per available transport, and check that every byte
+     * arrived. The throughput under load is measured by
+     * NettyTransportBenchmark in the jmh profile.
+     */
+    @Test(timeout = 30000)
+    public void testTransfer() throws Exception {
+        transfer(NettyTransport.Type.NIO);
+        if (Epoll.isAvailable()) {
+            transfer(NettyTransport.Type.EPOLL);
+        } else {
+            log.info("Native epoll unavailable, skipping epoll transfer");
+        }
+    }
+
+    @Sharable
+    private static class CountingHandler extends ChannelInboundHandlerAdapter {
+        final AtomicLong received = new AtomicLong();
+        final CountDownLatch done;
+        final long expected;
+
+        CountingHandler(long expected) {
+            this.expected = expected;
+            this.done = new CountDownLatch(1);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            if (received.addAndGet(buf.readableBytes()) >= expected) {
+                done.countDown();
+            }
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Sharable
+    private static class DiscardHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void transfer(NettyTransport.Type type) throws Exception {
+        final int clients = 3;
+        final int messages = 10;
+        final int messageSize = 128;
+
+        NettyTransport transport = new NettyTransport(0, 0, 0, 0)
+        .setType(type).setWorkerThreads(2);
+
+        CountingHandler counter = new CountingHandler((long) clients * messages * messageSize);
+        EventLoopGroup boss = transport.newBossGroup(null);
+        EventLoopGroup workers = transport.newWorkerGroup(null);
+        EventLoopGroup clientGroup = transport.newWorkerGroup(null);
+        /* A failed native transport falls back to NIO */
+        if (type == NettyTransport.Type.NIO) assertFalse(transport.isEpoll());
+        try {
+            Channel server = transport.configure(new ServerBootstrap().group(boss, workers))
+                    .childHandler(counter)
+                    .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            InetSocketAddress addr = (InetSocketAddress) server.localAddress();
+
+            Bootstrap b = transport.configure(new Bootstrap().group(clientGroup))
+                    .handler(new DiscardHandler());
+
+            List<Channel> channels = new ArrayList<Channel>();
+            for (int i = 0; i < clients; i++) {
+                channels.add(b.connect(addr).sync().channel());
+            }
+
+            byte[] payload = new byte[messageSize];
+            for (int m = 0; m < messages; m++) {
+                for (Channel c : channels) {
+                    c.write(c.alloc().buffer(messageSize).writeBytes(payload));
+                }
+            }
+            for (Channel c : channels) {
+                c.flush();
+            }
+            assertTrue("Not all data received",
+                    counter.done.await(10, TimeUnit.SECONDS));
+            assertEquals((long) clients * messages * messageSize, counter.received.get());
+
+            for (Channel c : channels) {
+                c.close().sync();
+            }
+            server.close().sync();
+        } finally {
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            workers.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            boss.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+}
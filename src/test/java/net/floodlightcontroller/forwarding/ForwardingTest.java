@@ -441,7 +441,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(1)));
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(3)));
 		route.setPath(nptList);
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(2L), OFPort.of(3), U64.ZERO)).andReturn(route).atLeastOnce();
+		expect(routingEngine.getRoute(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(2L)), eq(OFPort.of(3)), eq(U64.ZERO), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -511,7 +511,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(1)));
 		nptList.add(new NodePortTuple(DatapathId.of(2L), OFPort.of(3)));
 		route.setPath(nptList);
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(2L), OFPort.of(3), U64.ZERO)).andReturn(route).atLeastOnce();
+		expect(routingEngine.getRoute(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(2L)), eq(OFPort.of(3)), eq(U64.ZERO), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetInIPv6.getMatch();
@@ -577,7 +577,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		Route route = new  Route(DatapathId.of(1L), DatapathId.of(1L));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3), U64.ZERO)).andReturn(route).atLeastOnce();
+		expect(routingEngine.getRoute(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), eq(U64.ZERO), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -631,7 +631,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		Route route = new  Route(DatapathId.of(1L), DatapathId.of(1L));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3), U64.ZERO)).andReturn(route).atLeastOnce();
+		expect(routingEngine.getRoute(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), eq(U64.ZERO), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetInIPv6.getMatch();
@@ -690,7 +690,7 @@ public class ForwardingTest extends FloodlightTestCase {
 		Route route = new  Route(DatapathId.of(1L), DatapathId.of(1L));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
 		route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3), U64.ZERO)).andReturn(route).atLeastOnce();
+		expect(routingEngine.getRoute(eq(DatapathId.of(1L)), eq(OFPort.of(1)), eq(DatapathId.of(1L)), eq(OFPort.of(3)), eq(U64.ZERO), anyInt())).andReturn(route).atLeastOnce();
 
 		// Expected Flow-mods
 		Match match = packetIn.getMatch();
@@ -20,6 +20,7 @@ package net.floodlightcontroller.linkdiscovery.internal;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
@@ -33,6 +34,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -133,7 +135,7 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         FloodlightModuleContext cntx = new FloodlightModuleContext();
         ldm = new TestLinkDiscoveryManager();
         TopologyManager routingEngine = new TopologyManager();
-        ldm.linkDiscoveryAware = new ArrayList<ILinkDiscoveryListener>();
+        ldm.linkDiscoveryAware = new CopyOnWriteArrayList<ILinkDiscoveryListener>();
         IDebugCounterService debugCounterService = new MockDebugCounterService();
         IDebugEventService debugEventService = new MockDebugEventService();
         MockThreadPoolService tp = new MockThreadPoolService();
@@ -496,7 +498,7 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         expect(sw1.getPort(OFPort.of(EasyMock.anyInt()))).andReturn(ofpp).anyTimes();
         expect(sw1.getOFFactory()).andReturn(OFFactories.getFactory(OFVersion.OF_13)).anyTimes();
         expect(sw1.getLatency()).andReturn(U64.ZERO).anyTimes();
-        expect(sw1.write(capture(wc))).andReturn(true).anyTimes();
+        expect(sw1.write(capture(wc), eq(LinkDiscoveryManager.DISCOVERY_CATEGORY))).andReturn(true).anyTimes();
         replay(sw1);
 
         linkDiscovery.switchActivated(sw1.getId());
@@ -0,0 +1,36 @@
+package net.floodlightcontroller.loadgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+    private static LoadGenerator.Settings parse(String... args) throws Exception {
+        LoadGenerator.Settings settings = new LoadGenerator.Settings();
+        settings.parser.parseArgument(args);
+        return settings;
+    }
+
+    @Test
+    public void testDefaults() throws Exception {
+        LoadGenerator.Settings settings = parse();
+        assertFalse(settings.unbuffered);
+        assertEquals(PacketInWorkload.NEW_MAC, settings.workload);
+        assertEquals(0, settings.rate);
+        assertEquals(64, settings.window);
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        LoadGenerator.Settings settings = parse("--unbuffered", "-s", "4",
+                "--workload", "FLOW_SUMMARY", "--rate", "1000", "--window", "0");
+        assertTrue(settings.unbuffered);
+        assertEquals(4, settings.switches);
+        assertEquals(PacketInWorkload.FLOW_SUMMARY, settings.workload);
+        assertEquals(1000, settings.rate);
+        assertEquals(0, settings.window);
+    }
+}
@@ -0,0 +1,66 @@
+package net.floodlightcontroller.loadgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.floodlightcontroller.flowstatistics.PktSummary;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.IPv6;
+import net.floodlightcontroller.packet.TCP;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IpProtocol;
+
+public class PacketInGeneratorTest {
+
+    @Test
+    public void testHostsRotateAndDoNotCollide() throws Exception {
+        PacketInGenerator a = new PacketInGenerator(PacketInWorkload.IPV4_TCP, 1, 10, 1);
+        PacketInGenerator b = new PacketInGenerator(PacketInWorkload.IPV4_TCP, 2, 10, 1);
+
+        Ethernet a0 = parse(a.frame(0));
+        Ethernet a1 = parse(a.frame(1));
+        Ethernet a10 = parse(a.frame(10));
+        assertEquals(EthType.IPv4, a0.getEtherType());
+        assertEquals(a0.getDestinationMACAddress(), a1.getSourceMACAddress());
+        assertEquals(a0.getSourceMACAddress(), a10.getSourceMACAddress());
+        assertFalse(a0.getSourceMACAddress().equals(parse(b.frame(0)).getSourceMACAddress()));
+
+        IPv4 ip = (IPv4) a0.getPayload();
+        assertEquals(IpProtocol.TCP, ip.getProtocol());
+        assertEquals(80, ((TCP) ip.getPayload()).getDestinationPort().getPort());
+    }
+
+    @Test
+    public void testIpv6() throws Exception {
+        PacketInGenerator g = new PacketInGenerator(PacketInWorkload.IPV6_TCP, 1, 10, 1);
+        Ethernet eth = parse(g.frame(3));
+        assertEquals(EthType.IPv6, eth.getEtherType());
+        assertTrue(eth.getPayload() instanceof IPv6);
+    }
+
+    @Test
+    public void testFlowSummaries() throws Exception {
+        PacketInGenerator g = new PacketInGenerator(PacketInWorkload.FLOW_SUMMARY, 1, 100, 5);
+        byte[] data = g.frame(7);
+        assertEquals(PacketInGenerator.SUMMARY_PAD + 5 * PacketInGenerator.SUMMARY_LENGTH, data.length);
+
+        for (int i = 0; i < 5; i++) {
+            PktSummary s = new PktSummary();
+            s.deserialize(data, PacketInGenerator.SUMMARY_PAD + i * PacketInGenerator.SUMMARY_LENGTH,
+                    PacketInGenerator.SUMMARY_LENGTH);
+            assertEquals(IpProtocol.TCP, s.getNextHeader());
+            assertEquals(80, s.getDestinationPort().getPort());
+            assertTrue(s.getInput() >= 1);
+        }
+    }
+
+    private static Ethernet parse(byte[] frame) throws Exception {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(frame, 0, frame.length);
+        return eth;
+    }
+}
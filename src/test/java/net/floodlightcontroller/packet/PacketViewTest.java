@@ -0,0 +1,101 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PacketViewTest {
+
+    /* 00:00:00:00:00:02 -> ff:ff:ff:ff:ff:ff, vlan 42, IPv4 TCP 192.168.1.1:1234 -> 192.168.1.2:80 */
+    private byte[] taggedTcpPacket = new byte[] {
+            (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff,
+            (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x02,
+            (byte)0x81, (byte)0x00, (byte)0x60, (byte)0x2a,
+            (byte)0x08, (byte)0x00,
+            (byte)0x45, (byte)0x00, (byte)0x00, (byte)0x28, (byte)0x00, (byte)0x00,
+            (byte)0x40, (byte)0x00, (byte)0x40, (byte)0x06, (byte)0x00, (byte)0x00,
+            (byte)0xc0, (byte)0xa8, (byte)0x01, (byte)0x01,
+            (byte)0xc0, (byte)0xa8, (byte)0x01, (byte)0x02,
+            (byte)0x04, (byte)0xd2, (byte)0x00, (byte)0x50,
+            (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+            (byte)0x50, (byte)0x02, (byte)0x20, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00
+    };
+
+    /* 00:00:00:00:00:01 -> 33:33:00:00:00:01, IPv6 hop-by-hop + UDP 2001:db8::1:546 -> ff02::1:547 */
+    private byte[] ipv6UdpPacket = new byte[] {
+            (byte)0x33, (byte)0x33, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x01,
+            (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x01,
+            (byte)0x86, (byte)0xdd,
+            (byte)0x60, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x10, (byte)0x00, (byte)0x40,
+            (byte)0x20, (byte)0x01, (byte)0x0d, (byte)0xb8, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+            (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x01,
+            (byte)0xff, (byte)0x02, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+            (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x01,
+            (byte)0x11, (byte)0x00, (byte)0x01, (byte)0x04, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+            (byte)0x02, (byte)0x22, (byte)0x02, (byte)0x23, (byte)0x00, (byte)0x08, (byte)0x00, (byte)0x00
+    };
+
+    @Test
+    public void testTaggedIPv4Tcp() {
+        PacketView view = new PacketView(taggedTcpPacket);
+        assertTrue(view.isBroadcast());
+        assertTrue(view.isMulticast());
+        assertEquals(0x000000000002L, view.getSourceMAC());
+        assertEquals(0xffffffffffffL, view.getDestinationMAC());
+        assertEquals(Ethernet.TYPE_IPv4, (short) view.getEtherType());
+        assertEquals(42, view.getVlanID());
+        assertEquals(3, view.getPriorityCode());
+        assertTrue(view.isIPv4());
+        assertEquals(6, view.getIpProtocol());
+        assertEquals(0xc0a80101, view.getIPv4Source());
+        assertEquals(0xc0a80102, view.getIPv4Destination());
+        assertEquals(1234, view.getTransportSource());
+        assertEquals(80, view.getTransportDestination());
+        assertFalse(view.isEthernetDecoded());
+    }
+
+    @Test
+    public void testIPv6ExtensionHeaders() {
+        PacketView view = new PacketView(ipv6UdpPacket);
+        assertFalse(view.isBroadcast());
+        assertTrue(view.isMulticast());
+        assertTrue(view.isIPv6());
+        assertEquals(Ethernet.VLAN_UNTAGGED, view.getVlanID());
+        assertEquals(17, view.getIpProtocol());
+        assertEquals(0x20010db800000000L, view.getIPv6SourceHigh());
+        assertEquals(1L, view.getIPv6SourceLow());
+        assertEquals(0xff02000000000000L, view.getIPv6DestinationHigh());
+        assertEquals(1L, view.getIPv6DestinationLow());
+        assertEquals(546, view.getTransportSource());
+        assertEquals(547, view.getTransportDestination());
+    }
+
+    @Test
+    public void testTruncatedPacket() {
+        PacketView view = new PacketView(taggedTcpPacket, 0, 30);
+        assertTrue(view.isIPv4());
+        assertEquals(PacketView.NONE, view.getIpProtocol());
+        assertEquals(PacketView.NONE, view.getTransportSource());
+
+        view.wrap(taggedTcpPacket, 0, 10);
+        assertEquals(PacketView.NONE, view.getEtherType());
+        assertEquals(PacketView.NONE, view.getSourceMAC());
+        assertFalse(view.isIPv4());
+    }
+
+    @Test
+    public void testLegacyEthernetIsCached() {
+        PacketView view = new PacketView(taggedTcpPacket);
+        Ethernet eth = view.getEthernet();
+        assertTrue(view.isEthernetDecoded());
+        assertSame(eth, view.getEthernet());
+        assertEquals(view.getVlanID(), eth.getVlanID());
+        assertEquals(view.getSourceMAC(), eth.getSourceMACAddress().getLong());
+        assertTrue(eth.getPayload() instanceof IPv4);
+        assertEquals(view.getIPv4Destination(),
+                ((IPv4) eth.getPayload()).getDestinationAddress().getInt());
+    }
+}
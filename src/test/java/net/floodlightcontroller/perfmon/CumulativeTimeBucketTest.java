@@ -0,0 +1,39 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import net.floodlightcontroller.core.IOFMessageListener;
+
+import org.junit.Test;
+
+public class CumulativeTimeBucketTest {
+
+    @Test
+    public void testListenerAddedLater() {
+        IOFMessageListener first = createMock(IOFMessageListener.class);
+        IOFMessageListener later = createMock(IOFMessageListener.class);
+        CumulativeTimeBucket bucket = new CumulativeTimeBucket(Collections.singletonList(first));
+        assertEquals(1, bucket.getNumComps());
+
+        bucket.updateOneComponent(first, 100);
+        bucket.updateOneComponent(later, 200);
+        bucket.updateOneComponent(later, 300);
+        assertEquals(2, bucket.getNumComps());
+        for (OneComponentTime oct : bucket.getModules()) {
+            if (oct.hashCode() == later.hashCode()) {
+                assertEquals(2, oct.getPktCnt());
+                assertEquals(500, oct.getSumProcTimeNs());
+            } else {
+                assertEquals(1, oct.getPktCnt());
+                assertEquals(100, oct.getSumProcTimeNs());
+            }
+        }
+
+        // Reset keeps the listener that was added
+        bucket.reset();
+        assertEquals(2, bucket.getNumComps());
+    }
+}
@@ -0,0 +1,100 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void testBucketBounds() {
+        for (long v : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L }) {
+            int i = LatencyHistogram.bucketIndex(v);
+            assertTrue(v <= LatencyHistogram.bucketUpperBound(i));
+            if (i > 0) {
+                assertTrue(v > LatencyHistogram.bucketUpperBound(i - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.NUM_BUCKETS - 1,
+                LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyRecorder r = new LatencyRecorder("test", 3);
+        for (int i = 1; i <= 1000; i++) {
+            r.record(i * 1000L);
+        }
+        LatencyHistogram h = r.getHistogram(0);
+        assertEquals(1000, h.getCount());
+        assertEquals(1000000, h.getMax());
+        assertEquals(500500, h.getMean());
+        assertWithin(500000, h.getP50());
+        assertWithin(990000, h.getP99());
+        assertWithin(999000, h.getP999());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " got " + actual,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyRecorder r = new LatencyRecorder("test", 3);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final long value = (t + 1) * 100;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        r.record(value);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        LatencyHistogram h = r.getHistogram(1);
+        assertEquals(80000, h.getCount());
+        assertEquals(800, h.getMax());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        LatencyRecorder r = new LatencyRecorder("test", 2);
+        r.record(5000);
+        LatencyHistogram interval = r.tick();
+        assertEquals(1, interval.getCount());
+        assertEquals(5000, interval.getMax());
+
+        r.record(100);
+        r.record(200);
+        assertEquals(3, r.getHistogram(0).getCount());
+        assertEquals(3, r.getHistogram(1).getCount());
+        assertEquals(5000, r.getHistogram(1).getMax());
+
+        r.tick();
+        r.tick();
+        // The 5000ns sample is now more than two whole intervals old
+        LatencyHistogram h = r.getHistogram(2);
+        assertEquals(2, h.getCount());
+        assertEquals(200, h.getMax());
+        assertEquals(0, r.getHistogram(1).getCount());
+        assertEquals(3, r.getHistogram(0).getCount());
+
+        r.reset();
+        assertEquals(0, r.getHistogram(0).getCount());
+        r.record(300);
+        assertEquals(1, r.getHistogram(2).getCount());
+        assertEquals(300, r.getHistogram(2).getMax());
+    }
+}
@@ -0,0 +1,100 @@
+package net.floodlightcontroller.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FlowStatsTableTest {
+    private static final double DELTA = 1e-3;
+
+    @Test
+    public void testDeltasAndRates() {
+        FlowStatsTable t = new FlowStatsTable(10);
+        long[] delta = new long[2];
+
+        t.beginPoll();
+        assertTrue(t.update(1, 0x10, 100, 10000, 10000, 0, delta));
+        assertEquals(100, delta[0]);
+        assertEquals(10000, delta[1]);
+        assertEquals(0, t.endPoll());
+        // Average since the flow was installed
+        assertEquals(1000, t.get(1).getBytesPerSecond(), DELTA);
+
+        // The switch's durations are used rather than the poll times
+        t.beginPoll();
+        assertTrue(t.update(1, 0x10, 150, 30000, 20000, 12000, delta));
+        assertEquals(50, delta[0]);
+        assertEquals(20000, delta[1]);
+        t.endPoll();
+        FlowRate r = t.get(1);
+        assertEquals(2000, r.getBytesPerSecond(), DELTA);
+        assertEquals(5, r.getPacketsPerSecond(), DELTA);
+        assertEquals(30000, r.getBytes());
+
+        // Reinstalled between polls: the flow is younger than before
+        t.beginPoll();
+        assertTrue(t.update(1, 0x10, 20, 2000, 2000, 22000, delta));
+        assertEquals(20, delta[0]);
+        assertEquals(2000, delta[1]);
+        t.endPoll();
+        assertEquals(1000, t.get(1).getBytesPerSecond(), DELTA);
+    }
+
+    @Test
+    public void testEvictionAndLimit() {
+        FlowStatsTable t = new FlowStatsTable(3);
+        long[] delta = new long[2];
+
+        t.beginPoll();
+        assertTrue(t.update(1, 0, 1, 1, 1000, 0, delta));
+        assertTrue(t.update(2, 0, 1, 1, 1000, 0, delta));
+        assertTrue(t.update(3, 0, 1, 1, 1000, 0, delta));
+        assertFalse(t.update(4, 0, 1, 1, 1000, 0, delta));
+        assertEquals(1, t.getDropped());
+        t.endPoll();
+        assertEquals(3, t.size());
+
+        // Flow 2 is gone from the switch, making room for flow 4
+        t.beginPoll();
+        t.update(1, 0, 2, 2, 2000, 1000, delta);
+        t.update(3, 0, 2, 2, 2000, 1000, delta);
+        assertEquals(1, t.endPoll());
+        assertNull(t.get(2));
+        t.beginPoll();
+        t.update(1, 0, 3, 3, 3000, 2000, delta);
+        t.update(3, 0, 3, 3, 3000, 2000, delta);
+        assertTrue(t.update(4, 0, 1, 1, 1000, 2000, delta));
+        assertEquals(0, t.endPoll());
+        assertEquals(3, t.size());
+    }
+
+    @Test
+    public void testManyFlows() {
+        FlowStatsTable t = new FlowStatsTable(10000);
+        long[] delta = new long[2];
+        t.beginPoll();
+        for (long k = 0; k < 5000; k++) {
+            assertTrue(t.update(k * 7919, k, k, k, 1000, 0, delta));
+        }
+        t.endPoll();
+
+        // Keep every third flow; the rest must be removed without losing the others
+        t.beginPoll();
+        for (long k = 0; k < 5000; k += 3) {
+            t.update(k * 7919, k, k + 1, k + 1, 2000, 1000, delta);
+            assertEquals(1, delta[0]);
+        }
+        assertEquals(5000 - 1667, t.endPoll());
+        assertEquals(1667, t.size());
+        for (long k = 0; k < 5000; k++) {
+            if (k % 3 == 0)
+                assertNotNull(t.get(k * 7919));
+            else
+                assertNull(t.get(k * 7919));
+        }
+    }
+}
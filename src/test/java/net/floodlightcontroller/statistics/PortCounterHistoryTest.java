@@ -0,0 +1,124 @@
+package net.floodlightcontroller.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.floodlightcontroller.statistics.PortCounterHistory.PortCounter;
+
+import org.junit.Test;
+
+public class PortCounterHistoryTest {
+    private static final double DELTA = 1e-9;
+
+    private static long[] counters(long rxBytes) {
+        long[] c = new long[PortCounter.values().length];
+        c[PortCounter.RX_BYTES.ordinal()] = rxBytes;
+        c[PortCounter.RX_ERRORS.ordinal()] = rxBytes / 1000;
+        return c;
+    }
+
+    @Test
+    public void testCounterDelta() {
+        assertEquals(5, PortCounterHistory.counterDelta(10, 15));
+        // 32-bit counter wrapped
+        assertEquals(20, PortCounterHistory.counterDelta(0xFFFFFFF0L, 4));
+        // 64-bit counter wrapped
+        assertEquals(20, PortCounterHistory.counterDelta(-16, 4));
+        // Counter reset, e.g. after a reboot
+        assertEquals(7, PortCounterHistory.counterDelta(1000, 7));
+    }
+
+    @Test
+    public void testRatesAndDownsampling() {
+        // Every sample, and one per 60s
+        PortCounterHistory h = new PortCounterHistory(new long[] { 0, 60000 }, new int[] { 4, 10 });
+        long t = 600000;
+        for (int i = 0; i <= 12; i++) {
+            // 1000 bytes/s, polled every 10s, 50ms late every other time
+            h.record(t + i * 10000 + (i % 2) * 50, counters(i * 10000));
+        }
+
+        // The finest ring only holds the last 4 polls
+        List<PortRate> recent = h.getRates(t + 90050, t + 120000, 0);
+        assertEquals(3, recent.size());
+        assertEquals(1000 * 10000.0 / 9950, recent.get(0).getPerSecond(PortCounter.RX_BYTES), DELTA);
+        assertEquals(8000 * 10000.0 / 9950, recent.get(0).getBitsPerSecondRx(), DELTA);
+
+        // Older ranges come from the minute ring
+        List<PortRate> old = h.getRates(t, t + 120000, 0);
+        assertEquals(2, old.size());
+        assertEquals(t, old.get(0).getStartTime());
+        assertEquals(t + 60000, old.get(0).getEndTime());
+        assertEquals(1000, old.get(0).getPerSecond(PortCounter.RX_BYTES), DELTA);
+        assertEquals(1, old.get(0).getPerSecond(PortCounter.RX_ERRORS), DELTA);
+
+        // Downsampling the recent polls to 20s
+        List<PortRate> coarse = h.getRates(t + 90050, t + 120000, 20000);
+        assertEquals(1, coarse.size());
+        assertTrue(coarse.get(0).getEndTime() - coarse.get(0).getStartTime() >= 20000);
+    }
+
+    @Test
+    public void testHourFromMinuteRing() {
+        // The default resolutions, polled every 10s for two hours
+        PortCounterHistory h = new PortCounterHistory(new long[] { 0, 60000, 900000 },
+                new int[] { 90, 61, 96 });
+        long t = 0;
+        for (int i = 0; i <= 720; i++) {
+            t = i * 10000L;
+            h.record(t, counters(i * 10000));
+        }
+        // The last hour at one minute steps comes from the minute ring
+        List<PortRate> hour = h.getRates(t - 3600000, t, 60000);
+        assertTrue(hour.size() >= 59);
+        assertEquals(1000, hour.get(0).getPerSecond(PortCounter.RX_BYTES), DELTA);
+    }
+
+    @Test
+    public void testPercentile() {
+        PortCounterHistory h = new PortCounterHistory(new long[] { 0 }, new int[] { 101 });
+        long bytes = 0;
+        for (int i = 0; i <= 100; i++) {
+            // Rate of the i-th second is i bytes/s
+            bytes += i;
+            h.record(i * 1000L, counters(bytes));
+        }
+        assertEquals(95, h.getPercentile(PortCounter.RX_BYTES, 0, 100000, 0, 95), DELTA);
+        assertEquals(100, h.getPercentile(PortCounter.RX_BYTES, 0, 100000, 0, 100), DELTA);
+        assertTrue(Double.isNaN(h.getPercentile(PortCounter.RX_BYTES, 200000, 300000, 0, 95)));
+    }
+
+    @Test
+    public void testLargeCounters() {
+        PortCounterHistory h = new PortCounterHistory(new long[] { 0, 60000 }, new int[] { 10, 10 });
+        // 10 Gbit/s on a counter that is already far past 2^32
+        long base = 1L << 50;
+        for (int i = 0; i <= 30; i++) {
+            h.record(i * 10000L, counters(base + i * 12500000000L));
+        }
+        for (PortRate r : h.getRates(0, 300000, 0)) {
+            assertEquals(1e10, r.getBitsPerSecondRx(), 1e10 * 1e-7);
+        }
+        // The last ten polls, from the finest ring
+        List<PortRate> recent = h.getRates(210000, 300000, 0);
+        assertEquals(9, recent.size());
+        assertEquals(1.25e9, recent.get(0).getPerSecond(PortCounter.RX_BYTES), 1.25e9 * 1e-7);
+    }
+
+    @Test
+    public void testLongGapStartsOver() {
+        PortCounterHistory h = new PortCounterHistory(new long[] { 0 }, new int[] { 10 });
+        h.record(0, counters(0));
+        h.record(10000, counters(10000));
+        long later = 30L * 24 * 3600 * 1000;
+        h.record(later, counters(20000));
+        h.record(later + 10000, counters(30000));
+        List<PortRate> rates = h.getRates(0, later + 10000, 0);
+        assertEquals(1, rates.size());
+        assertEquals(later, rates.get(0).getStartTime());
+        assertEquals(1000, rates.get(0).getPerSecond(PortCounter.RX_BYTES), DELTA);
+        assertEquals(later + 10000, h.getLastUpdateMs());
+    }
+}
@@ -0,0 +1,214 @@
+package net.floodlightcontroller.statistics;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPortStatsReply;
+import org.projectfloodlight.openflow.protocol.OFPortStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class StatsPollerTest {
+
+    @Test
+    public void testNextInterval() {
+        // A quick switch stays at the base interval
+        assertEquals(1000, StatsPoller.nextIntervalMs(1000, 10, false, 1000, 8000));
+        // A slow one backs off to a multiple of its latency at once
+        assertEquals(2000, StatsPoller.nextIntervalMs(1000, 500, false, 1000, 8000));
+        // and comes back down gradually once it is quick again
+        assertEquals(1500, StatsPoller.nextIntervalMs(2000, 10, false, 1000, 8000));
+        // Timeouts double the interval, up to the limit
+        assertEquals(4000, StatsPoller.nextIntervalMs(2000, 10, true, 1000, 8000));
+        assertEquals(8000, StatsPoller.nextIntervalMs(6000, 10, true, 1000, 8000));
+    }
+
+    /**
+     * With one request allowed in flight, the second switch is only polled
+     * once the first one has answered, and each reply is handled as it
+     * arrives
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOutstandingRequestsBounded() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        final OFPortStatsRequest request = factory.buildPortStatsRequest().build();
+        DatapathId dpid1 = DatapathId.of(1);
+        DatapathId dpid2 = DatapathId.of(2);
+
+        ScheduledFuture<Object> scheduled = createNiceMock(ScheduledFuture.class);
+        ScheduledExecutorService executor = createMock(ScheduledExecutorService.class);
+        expect(executor.schedule(anyObject(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .andReturn((ScheduledFuture) scheduled).anyTimes();
+        expect(executor.scheduleWithFixedDelay(anyObject(Runnable.class), eq(0L), eq(1000L),
+                eq(TimeUnit.MILLISECONDS))).andReturn((ScheduledFuture) scheduled).once();
+        replay(scheduled, executor);
+
+        SettableFuture<List<OFPortStatsReply>> reply1 = SettableFuture.create();
+        SettableFuture<List<OFPortStatsReply>> reply2 = SettableFuture.create();
+        IOFSwitch sw1 = createMock(IOFSwitch.class);
+        expect(sw1.writeStatsRequest(request)).andReturn(reply1).once();
+        IOFSwitch sw2 = createMock(IOFSwitch.class);
+        expect(sw2.writeStatsRequest(request)).andReturn(reply2).once();
+        IOFSwitchService switchService = createMock(IOFSwitchService.class);
+        expect(switchService.getAllSwitchDpids()).andReturn(ImmutableSet.of(dpid1, dpid2)).anyTimes();
+        expect(switchService.getSwitch(dpid1)).andReturn(sw1).anyTimes();
+        expect(switchService.getSwitch(dpid2)).andReturn(sw2).anyTimes();
+        replay(switchService, sw1, sw2);
+
+        DebugCounterServiceImpl debugCounters = new DebugCounterServiceImpl();
+        debugCounters.registerModule("statistics");
+        final int[] sent = new int[1];
+        final DatapathId[] handled = new DatapathId[1];
+        StatsPoller poller = new StatsPoller("test", switchService, executor,
+                debugCounters, "statistics", new StatsPoller.Handler() {
+                    @Override
+                    public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+                        sent[0]++;
+                        return request;
+                    }
+
+                    @Override
+                    public void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies) {
+                        handled[0] = dpid;
+                    }
+
+                    @Override
+                    public void onSwitchGone(DatapathId dpid) {
+                    }
+                }, 1000, 8000, 500, 1);
+        poller.start();
+        poller.discoverSwitches();
+
+        poller.pollNow(dpid1);
+        poller.pollNow(dpid2);
+        assertEquals(1, sent[0]);
+        verify(sw1);
+        assertNull(handled[0]);
+
+        // The first reply frees the slot for the second switch
+        reply1.set(Collections.<OFPortStatsReply> emptyList());
+        assertSame(dpid1, handled[0]);
+        assertEquals(2, sent[0]);
+        verify(sw2, executor);
+
+        reply2.set(Collections.<OFPortStatsReply> emptyList());
+        assertSame(dpid2, handled[0]);
+        assertEquals(1000, poller.getIntervalMs(dpid2));
+        poller.stop();
+        assertEquals(-1, poller.getIntervalMs(dpid1));
+    }
+
+    /**
+     * Asking for a poll while one is in flight polls once more after the
+     * reply, however often it is asked, and never leaves a second schedule
+     * running for the switch
+     */
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testPollNowKeepsOneChain() {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        final OFPortStatsRequest request = factory.buildPortStatsRequest().build();
+        DatapathId dpid = DatapathId.of(1);
+
+        final ScheduledFuture<Object> scheduled = createNiceMock(ScheduledFuture.class);
+        final List<Runnable> timers = new ArrayList<Runnable>();
+        ScheduledExecutorService executor = createMock(ScheduledExecutorService.class);
+        expect((ScheduledFuture) executor.schedule(anyObject(Runnable.class), anyLong(),
+                eq(TimeUnit.MILLISECONDS))).andAnswer(new IAnswer<ScheduledFuture>() {
+                    @Override
+                    public ScheduledFuture answer() {
+                        timers.add((Runnable) EasyMock.getCurrentArguments()[0]);
+                        return scheduled;
+                    }
+                }).anyTimes();
+        expect(executor.scheduleWithFixedDelay(anyObject(Runnable.class), eq(0L), eq(1000L),
+                eq(TimeUnit.MILLISECONDS))).andReturn((ScheduledFuture) scheduled).once();
+        replay(scheduled, executor);
+
+        final List<SettableFuture<List<OFPortStatsReply>>> replies =
+                new ArrayList<SettableFuture<List<OFPortStatsReply>>>();
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.writeStatsRequest(request)).andAnswer(new IAnswer<SettableFuture<List<OFPortStatsReply>>>() {
+            @Override
+            public SettableFuture<List<OFPortStatsReply>> answer() {
+                SettableFuture<List<OFPortStatsReply>> f = SettableFuture.create();
+                replies.add(f);
+                return f;
+            }
+        }).anyTimes();
+        IOFSwitchService switchService = createMock(IOFSwitchService.class);
+        expect(switchService.getAllSwitchDpids()).andReturn(ImmutableSet.of(dpid)).anyTimes();
+        expect(switchService.getSwitch(dpid)).andReturn(sw).anyTimes();
+        replay(switchService, sw);
+
+        DebugCounterServiceImpl debugCounters = new DebugCounterServiceImpl();
+        debugCounters.registerModule("statistics");
+        StatsPoller poller = new StatsPoller("test", switchService, executor,
+                debugCounters, "statistics", new StatsPoller.Handler() {
+                    @Override
+                    public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+                        return request;
+                    }
+
+                    @Override
+                    public void onReplies(DatapathId dpid, List<? extends OFStatsReply> replies) {
+                    }
+
+                    @Override
+                    public void onSwitchGone(DatapathId dpid) {
+                    }
+                }, 1000, 8000, 500, 4);
+        poller.start();
+        poller.discoverSwitches();
+
+        for (int i = 0; i < 5; i++) {
+            poller.pollNow(dpid);
+        }
+        assertEquals(1, replies.size());
+
+        // One more poll for all the asks while in flight
+        replies.get(0).set(Collections.<OFPortStatsReply> emptyList());
+        assertEquals(2, replies.size());
+        replies.get(1).set(Collections.<OFPortStatsReply> emptyList());
+        assertEquals(2, replies.size());
+
+        // Firing every timer ever scheduled, stale ones included, starts
+        // exactly one more poll
+        for (Runnable r : new ArrayList<Runnable>(timers)) {
+            r.run();
+        }
+        assertEquals(3, replies.size());
+        poller.stop();
+    }
+}
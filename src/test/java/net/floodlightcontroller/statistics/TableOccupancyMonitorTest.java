@@ -0,0 +1,138 @@
+package net.floodlightcontroller.statistics;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.statistics.TableOccupancy.Pressure;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowModFailedCode;
+import org.projectfloodlight.openflow.protocol.OFTableStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFTableStatsReply;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+
+public class TableOccupancyMonitorTest {
+
+    private static Pressure pressureOf(double occupancy, Pressure previous) {
+        return TableOccupancyMonitor.pressureOf(occupancy, previous, 0.8, 0.95);
+    }
+
+    @Test
+    public void testPressureLevels() {
+        assertEquals(Pressure.NORMAL, pressureOf(-1, Pressure.CRITICAL));
+        assertEquals(Pressure.NORMAL, pressureOf(0.5, Pressure.NORMAL));
+        assertEquals(Pressure.WARNING, pressureOf(0.8, Pressure.NORMAL));
+        assertEquals(Pressure.CRITICAL, pressureOf(0.96, Pressure.NORMAL));
+        assertEquals(Pressure.FULL, pressureOf(1, Pressure.WARNING));
+
+        // Going back down takes a drop below the threshold by the margin
+        assertEquals(Pressure.CRITICAL, pressureOf(0.92, Pressure.CRITICAL));
+        assertEquals(Pressure.CRITICAL, pressureOf(0.92, Pressure.FULL));
+        assertEquals(Pressure.WARNING, pressureOf(0.85, Pressure.CRITICAL));
+        assertEquals(Pressure.WARNING, pressureOf(0.78, Pressure.WARNING));
+        assertEquals(Pressure.NORMAL, pressureOf(0.7, Pressure.WARNING));
+        assertEquals(Pressure.NORMAL, pressureOf(0.7, Pressure.FULL));
+    }
+
+    @Test
+    public void testAdmission() {
+        TableOccupancyMonitor.TableState ts = new TableOccupancyMonitor.TableState(2);
+        // Not polled yet
+        assertTrue(ts.admit(1000, 0.9));
+
+        ts.record(new TableOccupancy(TableId.ZERO, 0, 80, 100, 0, 0, Pressure.WARNING));
+        assertTrue(ts.admit(5, 0.9));
+        assertTrue(ts.admit(5, 0.9));
+        // 80 installed and 10 admitted since the poll
+        assertFalse(ts.admit(1, 0.9));
+
+        // The next poll counts what was admitted
+        ts.record(new TableOccupancy(TableId.ZERO, 1000, 85, 100, 0, 0, Pressure.WARNING));
+        assertTrue(ts.admit(5, 0.9));
+        ts.record(new TableOccupancy(TableId.ZERO, 2000, 85, 100, 0, 0, Pressure.WARNING));
+        assertEquals(2, ts.getHistory().size());
+        assertEquals(1000, ts.getHistory().get(0).getTime());
+
+        // The switch does not report the size of the table
+        ts.record(new TableOccupancy(TableId.ZERO, 3000, 85, 0, 0, 0, Pressure.NORMAL));
+        assertTrue(ts.admit(1000, 0.9));
+    }
+
+    private static OFTableStatsReply tableStats(OFFactory factory, long active, long max) {
+        return factory.buildTableStatsReply()
+                .setEntries(Collections.singletonList((OFTableStatsEntry) factory.buildTableStatsEntry()
+                        .setTableId(TableId.ZERO)
+                        .setActiveCount(active)
+                        .setMaxEntries(max)
+                        .build()))
+                .build();
+    }
+
+    /**
+     * A table full error closes admission to the switch until its next
+     * table statistics reply; other flow-mod errors leave it open
+     */
+    @Test
+    public void testTableFullError() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
+        DatapathId dpid = DatapathId.of(1);
+
+        IOFSwitchService switchService = createNiceMock(IOFSwitchService.class);
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        replay(switchService, sw);
+
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        fmc.addService(IFloodlightProviderService.class, createNiceMock(IFloodlightProviderService.class));
+        fmc.addService(IOFSwitchService.class, switchService);
+        fmc.addService(IThreadPoolService.class, createNiceMock(IThreadPoolService.class));
+        fmc.addService(IDebugCounterService.class, new MockDebugCounterService());
+        fmc.addService(IRestApiService.class, createNiceMock(IRestApiService.class));
+        TableOccupancyMonitor monitor = new TableOccupancyMonitor();
+        monitor.init(fmc);
+        TableOccupancyMonitor.TableStatsHandler handler = monitor.new TableStatsHandler();
+
+        // Not polled yet
+        monitor.receive(sw, factory.errorMsgs().buildFlowModFailedErrorMsg()
+                .setCode(OFFlowModFailedCode.TABLE_FULL).build(), null);
+        assertTrue(monitor.admitFlows(dpid, TableId.ZERO, 10));
+
+        handler.onReplies(dpid, Collections.singletonList(tableStats(factory, 50, 100)));
+        assertEquals(Pressure.NORMAL, monitor.getOccupancy(dpid, TableId.ZERO).getPressure());
+        assertTrue(monitor.admitFlows(dpid, TableId.ZERO, 10));
+
+        monitor.receive(sw, factory.errorMsgs().buildFlowModFailedErrorMsg()
+                .setCode(OFFlowModFailedCode.OVERLAP).build(), null);
+        assertTrue(monitor.admitFlows(dpid, TableId.ZERO, 10));
+
+        monitor.receive(sw, factory.errorMsgs().buildFlowModFailedErrorMsg()
+                .setCode(OFFlowModFailedCode.TABLE_FULL).build(), null);
+        assertFalse(monitor.admitFlows(dpid, TableId.ZERO, 1));
+        assertFalse(monitor.admitFlows(dpid, TableId.valueOf(1), 1));
+
+        // The next poll tells how full the switch is
+        handler.onReplies(dpid, Collections.singletonList(tableStats(factory, 90, 100)));
+        assertEquals(Pressure.WARNING, monitor.getOccupancy(dpid, TableId.ZERO).getPressure());
+        assertTrue(monitor.admitFlows(dpid, TableId.ZERO, 5));
+        assertFalse(monitor.admitFlows(dpid, TableId.ZERO, 1));
+    }
+}
@@ -0,0 +1,147 @@
+package net.floodlightcontroller.topology;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class CompositeLinkCostModelTest {
+	private static final DatapathId SRC = DatapathId.of(1);
+	private static final DatapathId DST = DatapathId.of(2);
+	private static final OFPort SRC_PORT = OFPort.of(1);
+	private static final OFPort DST_PORT = OFPort.of(2);
+	private static final long GBPS = 1000L * 1000 * 1000;
+
+	private static Link link(long latencyMs) {
+		return new Link(SRC, SRC_PORT, DST, DST_PORT, U64.of(latencyMs));
+	}
+
+	private static OFPortDesc port13(long speedKbps) {
+		return OFFactories.getFactory(OFVersion.OF_13).buildPortDesc()
+				.setPortNo(SRC_PORT)
+				.setName("eth1")
+				.setHwAddr(MacAddress.NONE)
+				.setCurrSpeed(speedKbps)
+				.build();
+	}
+
+	private static OFPortDesc port10() {
+		return OFFactories.getFactory(OFVersion.OF_10).buildPortDesc()
+				.setPortNo(SRC_PORT)
+				.setName("eth1")
+				.setHwAddr(MacAddress.NONE)
+				.build();
+	}
+
+	private static IStatisticsService stats(long srcTxBps, long dstRxBps) {
+		IStatisticsService stats = createMock(IStatisticsService.class);
+		expect(stats.getBandwidthConsumption(SRC, SRC_PORT)).andReturn(SwitchPortBandwidth.of(SRC, SRC_PORT,
+				U64.ZERO, U64.of(srcTxBps), U64.ZERO, U64.ZERO)).anyTimes();
+		expect(stats.getBandwidthConsumption(DST, DST_PORT)).andReturn(SwitchPortBandwidth.of(DST, DST_PORT,
+				U64.of(dstRxBps), U64.ZERO, U64.ZERO, U64.ZERO)).anyTimes();
+		replay(stats);
+		return stats;
+	}
+
+	/**
+	 * @param pd the source port, or null for a switch that is not connected
+	 */
+	private static IOFSwitchService switches(OFPortDesc pd) {
+		IOFSwitchService switchService = createMock(IOFSwitchService.class);
+		IOFSwitch sw = null;
+		if (pd != null) {
+			sw = createMock(IOFSwitch.class);
+			expect(sw.getPort(SRC_PORT)).andReturn(pd).anyTimes();
+			replay(sw);
+		}
+		expect(switchService.getSwitch(SRC)).andReturn(sw).anyTimes();
+		replay(switchService);
+		return switchService;
+	}
+
+	@Test
+	public void testLatency() {
+		CompositeLinkCostModel model = new CompositeLinkCostModel(null, null, 0.5, 100, 0.5, 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST, model.getCost(link(0)));
+		assertEquals(CompositeLinkCostModel.HOP_COST + 15, model.getCost(link(30)));
+		assertEquals(CompositeLinkCostModel.HOP_COST,
+				model.getCost(new Link(SRC, SRC_PORT, DST, DST_PORT, null)));
+	}
+
+	@Test
+	public void testUtilisationFromPortSpeed() {
+		IOFSwitchService switchService = switches(port13(1000 * 1000));
+
+		// 600 Mb/s out of a 1 Gb/s port is 0.6, a fifth of the way from 0.5 to 1
+		CompositeLinkCostModel model = new CompositeLinkCostModel(stats(600 * 1000 * 1000, 0),
+				switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST + 20, model.getCost(link(0)));
+
+		// The busier end of the link counts
+		model = new CompositeLinkCostModel(stats(600 * 1000 * 1000, 800 * 1000 * 1000),
+				switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST + 60, model.getCost(link(0)));
+	}
+
+	@Test
+	public void testUtilisationFromDefaultSpeed() {
+		// 1.5 Gb/s over a default of 2 Gb/s is 0.75
+		IStatisticsService stats = stats(3 * GBPS / 2, 0);
+		int expected = CompositeLinkCostModel.HOP_COST + 50;
+
+		CompositeLinkCostModel model = new CompositeLinkCostModel(stats, switches(null),
+				0, 100, 0.5, 2 * 1000 * 1000);
+		assertEquals(expected, model.getCost(link(0)));
+
+		// OpenFlow 1.0 ports have no speed in kb/s
+		model = new CompositeLinkCostModel(stats, switches(port10()), 0, 100, 0.5, 2 * 1000 * 1000);
+		assertEquals(expected, model.getCost(link(0)));
+
+		// Nor do ports that report none
+		model = new CompositeLinkCostModel(stats, switches(port13(0)), 0, 100, 0.5, 2 * 1000 * 1000);
+		assertEquals(expected, model.getCost(link(0)));
+	}
+
+	@Test
+	public void testCongestionThreshold() {
+		IOFSwitchService switchService = switches(port13(1000 * 1000));
+
+		// Up to the threshold a link costs one hop
+		CompositeLinkCostModel model = new CompositeLinkCostModel(stats(GBPS / 2, 0),
+				switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST, model.getCost(link(0)));
+
+		model = new CompositeLinkCostModel(stats(GBPS * 3 / 4, 0), switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST + 50, model.getCost(link(0)));
+
+		model = new CompositeLinkCostModel(stats(GBPS, 0), switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST + 100, model.getCost(link(0)));
+
+		// Rates above the port speed do not add more than the congestion cost
+		model = new CompositeLinkCostModel(stats(GBPS * 3, 0), switchService, 0, 100, 0.5, 10 * 1000);
+		assertEquals(CompositeLinkCostModel.HOP_COST + 100, model.getCost(link(0)));
+	}
+
+	@Test
+	public void testMaxLinkWeight() {
+		CompositeLinkCostModel model = new CompositeLinkCostModel(null, null, 1000, 0, 0.5, 1000);
+		assertEquals(TopologyInstance.MAX_LINK_WEIGHT, model.getCost(link(1000 * 1000)));
+
+		model = new CompositeLinkCostModel(stats(GBPS * 2, 0), switches(port13(1000 * 1000)),
+				0, Integer.MAX_VALUE, 0.5, 1000);
+		assertEquals(TopologyInstance.MAX_LINK_WEIGHT, model.getCost(link(0)));
+	}
+}
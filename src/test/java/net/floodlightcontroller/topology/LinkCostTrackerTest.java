@@ -0,0 +1,94 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class LinkCostTrackerTest {
+	private Map<Link, Integer> modelCosts;
+	private LinkCostTracker tracker;
+	private Link l1;
+	private Link l2;
+	private Set<Link> links;
+
+	@Before
+	public void setUp() {
+		modelCosts = new HashMap<Link, Integer>();
+		tracker = new LinkCostTracker(new ILinkCostModel() {
+			@Override
+			public int getCost(Link link) {
+				Integer c = modelCosts.get(link);
+				if (c == null) throw new IllegalStateException("no cost");
+				return c;
+			}
+		}, 0.25, 2);
+		l1 = new Link(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1), U64.ZERO);
+		l2 = new Link(DatapathId.of(2), OFPort.of(1), DatapathId.of(1), OFPort.of(1), U64.ZERO);
+		links = new HashSet<Link>();
+		links.add(l1);
+		links.add(l2);
+	}
+
+	@Test
+	public void testHysteresis() {
+		modelCosts.put(l1, 20);
+		modelCosts.put(l2, 20);
+		// Links start at their model cost without counting as a change
+		assertFalse(tracker.update(links));
+		assertEquals(Integer.valueOf(20), tracker.getCosts(links).get(l1));
+
+		// Within 25% of the cost in use nothing moves
+		modelCosts.put(l1, 24);
+		assertFalse(tracker.update(links));
+		assertEquals(Integer.valueOf(20), tracker.getCosts(links).get(l1));
+
+		modelCosts.put(l1, 25);
+		assertTrue(tracker.update(links));
+		assertEquals(Integer.valueOf(25), tracker.getCosts(links).get(l1));
+
+		// Going back needs 25% of the new cost
+		modelCosts.put(l1, 20);
+		assertFalse(tracker.update(links));
+		modelCosts.put(l1, 18);
+		assertTrue(tracker.update(links));
+		assertEquals(Integer.valueOf(18), tracker.getCosts(links).get(l1));
+	}
+
+	@Test
+	public void testMinimumChangeAndLimits() {
+		modelCosts.put(l1, 1);
+		modelCosts.put(l2, 100000);
+		assertFalse(tracker.update(links));
+		assertEquals(Integer.valueOf(TopologyInstance.MAX_LINK_WEIGHT), tracker.getCosts(links).get(l2));
+
+		// A change of one is below the minimum change, whatever the ratio
+		modelCosts.put(l1, 2);
+		assertFalse(tracker.update(links));
+		modelCosts.put(l1, 3);
+		assertTrue(tracker.update(links));
+	}
+
+	@Test
+	public void testFailingModel() {
+		modelCosts.put(l1, 30);
+		Map<Link, Integer> costs = tracker.getCosts(links);
+		assertEquals(Integer.valueOf(30), costs.get(l1));
+		assertEquals(Integer.valueOf(1), costs.get(l2));
+
+		// A failure keeps the cost in use
+		modelCosts.remove(l1);
+		assertFalse(tracker.update(links));
+		assertEquals(Integer.valueOf(30), tracker.getCosts(links).get(l1));
+	}
+}
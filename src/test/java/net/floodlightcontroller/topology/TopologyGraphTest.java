@@ -0,0 +1,139 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class TopologyGraphTest {
+    private TopologyInstance ti;
+    private Map<DatapathId, Set<Link>> links;
+    private Map<Link, Integer> linkCost;
+    private Map<DatapathId, Integer> nextPort;
+
+    @Before
+    public void setUp() {
+        ti = new TopologyInstance(new HashMap<DatapathId, Set<OFPort>>(),
+                Collections.<NodePortTuple>emptySet(),
+                new HashMap<NodePortTuple, Set<Link>>(),
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                new HashMap<NodePortTuple, Set<Link>>(),
+                new HashMap<DatapathId, Set<OFPort>>());
+        links = new HashMap<DatapathId, Set<Link>>();
+        linkCost = new HashMap<Link, Integer>();
+        nextPort = new HashMap<DatapathId, Integer>();
+    }
+
+    private Link addLink(long src, long dst, int cost) {
+        DatapathId s = DatapathId.of(src);
+        DatapathId d = DatapathId.of(dst);
+        Link l = new Link(s, port(s), d, port(d), U64.ZERO);
+        for (DatapathId n : new DatapathId[] { s, d }) {
+            Set<Link> nl = links.get(n);
+            if (nl == null) {
+                nl = new HashSet<Link>();
+                links.put(n, nl);
+            }
+            nl.add(l);
+        }
+        if (cost != 1) {
+            linkCost.put(l, cost);
+        }
+        return l;
+    }
+
+    private OFPort port(DatapathId sw) {
+        Integer p = nextPort.get(sw);
+        p = p == null ? 1 : p + 1;
+        nextPort.put(sw, p);
+        return OFPort.of(p);
+    }
+
+    private void randomGraph(Random random, int n, int maxCost) {
+        for (int i = 1; i <= n; i++) {
+            int j = i % n + 1;
+            addLink(i, j, 1 + random.nextInt(maxCost));
+            addLink(j, i, 1 + random.nextInt(maxCost));
+        }
+        for (int i = 0; i < 2 * n; i++) {
+            int a = 1 + random.nextInt(n);
+            int b = 1 + random.nextInt(n);
+            if (a == b) continue;
+            int cost = 1 + random.nextInt(maxCost);
+            addLink(a, b, cost);
+            addLink(b, a, cost);
+        }
+    }
+
+    /*
+     * Every tree of the compact graph must be the tree the map based
+     * Dijkstra builds, including the choice among equal cost paths
+     */
+    private void verifySameTrees() {
+        TopologyGraph g = TopologyGraph.of(links, linkCost);
+        TopologyGraph.Search search = TopologyGraph.newSearch(1);
+        for (DatapathId root : links.keySet()) {
+            BroadcastTree expected = ti.dijkstra(links, root, linkCost, true);
+            BroadcastTree actual = g.tree(root, search).toBroadcastTree();
+            assertEquals(expected.getCosts(), actual.getCosts());
+            assertEquals(expected.getLinks(), actual.getLinks());
+        }
+    }
+
+    @Test
+    public void testUnitCostTrees() {
+        randomGraph(new Random(1), 40, 1);
+        verifySameTrees();
+    }
+
+    @Test
+    public void testWeightedTrees() {
+        randomGraph(new Random(2), 40, 5);
+        verifySameTrees();
+    }
+
+    @Test
+    public void testUnreachable() {
+        // 3 can reach 1 and 2, but nothing reaches 3
+        addLink(1, 2, 1);
+        addLink(2, 1, 1);
+        addLink(3, 1, 1);
+        TopologyGraph g = TopologyGraph.of(links, linkCost);
+        BroadcastTree t = g.tree(DatapathId.of(3), TopologyGraph.newSearch(3)).toBroadcastTree();
+        assertEquals(0, t.getCost(DatapathId.of(3)));
+        assertEquals(TopologyInstance.MAX_PATH_WEIGHT, t.getCost(DatapathId.of(1)));
+        assertNull(t.getTreeLink(DatapathId.of(1)));
+        t = g.tree(DatapathId.of(1), TopologyGraph.newSearch(3)).toBroadcastTree();
+        assertEquals(1, t.getCost(DatapathId.of(3)));
+        assertEquals(1, t.getCost(DatapathId.of(2)));
+        verifySameTrees();
+    }
+}
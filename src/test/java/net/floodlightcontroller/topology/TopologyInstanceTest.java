@@ -18,9 +18,13 @@ package net.floodlightcontroller.topology;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -35,6 +39,9 @@ import net.floodlightcontroller.debugevent.IDebugEventService;
 import net.floodlightcontroller.debugevent.MockDebugEventService;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.NodePortTuple;
 import net.floodlightcontroller.topology.TopologyInstance;
@@ -290,6 +297,323 @@ public class TopologyInstanceTest {
         }
     }
 
+    /**
+     * The trees of ti must have the costs of a full computation, and every
+     * tree link must lie on a shortest path
+     */
+    private void verifyTreesMatchFullComputation(TopologyInstance ti) {
+        TopologyInstance full = new TopologyInstance(ti.switchPorts, ti.blockedPorts,
+                ti.switchPortLinks, ti.broadcastDomainPorts, ti.tunnelPorts,
+                ti.allLinks, ti.allPorts);
+        full.compute();
+        assertEquals(full.destinationRootedFullTrees.keySet(), ti.destinationRootedFullTrees.keySet());
+        for (DatapathId dst : full.destinationRootedFullTrees.keySet()) {
+            BroadcastTree expected = full.destinationRootedFullTrees.get(dst);
+            BroadcastTree actual = ti.destinationRootedFullTrees.get(dst);
+            assertEquals(expected.getCosts(), actual.getCosts());
+            for (DatapathId src : actual.getLinks().keySet()) {
+                Link l = actual.getLinks().get(src);
+                if (l == null) continue;
+                assertEquals(src, l.getSrc());
+                assertEquals(actual.getCost(src), actual.getCost(l.getDst()) + 1);
+            }
+        }
+        assertEquals(full.destinationRootedTrees.keySet(), ti.destinationRootedTrees.keySet());
+        for (DatapathId dst : full.destinationRootedTrees.keySet()) {
+            assertEquals(full.destinationRootedTrees.get(dst).getCosts(),
+                    ti.destinationRootedTrees.get(dst).getCosts());
+        }
+    }
+
+    @Test
+    public void testIncrementalShortestPathTrees() throws Exception {
+        // A ring of six switches with one chord
+        int [][] linkArray = {
+                              {1, 1, 2, 1, DIRECT_LINK},
+                              {2, 1, 1, 1, DIRECT_LINK},
+                              {2, 2, 3, 1, DIRECT_LINK},
+                              {3, 1, 2, 2, DIRECT_LINK},
+                              {3, 2, 4, 1, DIRECT_LINK},
+                              {4, 1, 3, 2, DIRECT_LINK},
+                              {4, 2, 5, 1, DIRECT_LINK},
+                              {5, 1, 4, 2, DIRECT_LINK},
+                              {5, 2, 6, 1, DIRECT_LINK},
+                              {6, 1, 5, 2, DIRECT_LINK},
+                              {6, 2, 1, 2, DIRECT_LINK},
+                              {1, 2, 6, 2, DIRECT_LINK},
+                              {1, 3, 4, 3, DIRECT_LINK},
+                              {4, 3, 1, 3, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance before = topologyManager.getCurrentInstance(true);
+        verifyTreesMatchFullComputation(before);
+
+        // Nothing changed: every tree but the broadcast tree is reused
+        topologyManager.createNewInstance();
+        TopologyInstance same = topologyManager.getCurrentInstance(true);
+        int reused = 0;
+        for (DatapathId dst : same.destinationRootedFullTrees.keySet()) {
+            if (same.destinationRootedFullTrees.get(dst) == before.destinationRootedFullTrees.get(dst))
+                reused++;
+        }
+        assertEquals(5, reused);
+
+        // Remove the chord, then a ring link
+        topologyManager.removeLink(DatapathId.of(1), OFPort.of(3), DatapathId.of(4), OFPort.of(3));
+        topologyManager.removeLink(DatapathId.of(4), OFPort.of(3), DatapathId.of(1), OFPort.of(3));
+        topologyManager.createNewInstance();
+        verifyTreesMatchFullComputation(topologyManager.getCurrentInstance(true));
+
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(2), DatapathId.of(3), OFPort.of(1));
+        topologyManager.removeLink(DatapathId.of(3), OFPort.of(1), DatapathId.of(2), OFPort.of(2));
+        topologyManager.createNewInstance();
+        verifyTreesMatchFullComputation(topologyManager.getCurrentInstance(true));
+
+        // Switch 7 joins and the chord comes back
+        topologyManager.addOrUpdateLink(DatapathId.of(7), OFPort.of(1), DatapathId.of(5), OFPort.of(3), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(DatapathId.of(5), OFPort.of(3), DatapathId.of(7), OFPort.of(1), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(DatapathId.of(1), OFPort.of(3), DatapathId.of(4), OFPort.of(3), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(DatapathId.of(4), OFPort.of(3), DatapathId.of(1), OFPort.of(3), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.createNewInstance();
+        verifyTreesMatchFullComputation(topologyManager.getCurrentInstance(true));
+    }
+
+    @Test
+    public void testParallelShortestPathTrees() throws Exception {
+        // Two clusters joined by a broadcast domain link
+        int [][] linkArray = {
+                              {1, 1, 2, 1, DIRECT_LINK},
+                              {2, 1, 1, 1, DIRECT_LINK},
+                              {2, 2, 3, 1, DIRECT_LINK},
+                              {3, 1, 2, 2, DIRECT_LINK},
+                              {3, 2, 1, 2, DIRECT_LINK},
+                              {1, 2, 3, 2, DIRECT_LINK},
+                              {3, 3, 4, 1, MULTIHOP_LINK},
+                              {4, 2, 5, 1, DIRECT_LINK},
+                              {5, 1, 4, 2, DIRECT_LINK},
+                              {5, 2, 6, 1, DIRECT_LINK},
+                              {6, 1, 5, 2, DIRECT_LINK},
+                              {6, 2, 4, 3, DIRECT_LINK},
+                              {4, 3, 6, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti = topologyManager.getCurrentInstance(true);
+
+        TopologyInstance sequential = new TopologyInstance(ti.switchPorts, ti.blockedPorts,
+                ti.switchPortLinks, ti.broadcastDomainPorts, ti.tunnelPorts,
+                ti.allLinks, ti.allPorts);
+        sequential.setPathComputationPool(null);
+        sequential.compute();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TopologyInstance parallel = new TopologyInstance(ti.switchPorts, ti.blockedPorts,
+                    ti.switchPortLinks, ti.broadcastDomainPorts, ti.tunnelPorts,
+                    ti.allLinks, ti.allPorts);
+            parallel.setPathComputationPool(pool);
+            parallel.compute();
+            verifySameTrees(sequential.destinationRootedTrees, parallel.destinationRootedTrees);
+            verifySameTrees(sequential.destinationRootedFullTrees, parallel.destinationRootedFullTrees);
+            assertEquals(sequential.broadcastNodePorts, parallel.broadcastNodePorts);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void verifySameTrees(Map<DatapathId, BroadcastTree> expected,
+            Map<DatapathId, BroadcastTree> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (DatapathId dst : expected.keySet()) {
+            assertEquals(expected.get(dst).getLinks(), actual.get(dst).getLinks());
+            assertEquals(expected.get(dst).getCosts(), actual.get(dst).getCosts());
+        }
+    }
+
+    @Test
+    public void testMultipathRoutes() throws Exception {
+        // Two leaves, 1 and 2, each linked to the three spines 3, 4 and 5
+        int [][] linkArray = {
+                              {1, 3, 3, 1, DIRECT_LINK},
+                              {3, 1, 1, 3, DIRECT_LINK},
+                              {1, 4, 4, 1, DIRECT_LINK},
+                              {4, 1, 1, 4, DIRECT_LINK},
+                              {1, 5, 5, 1, DIRECT_LINK},
+                              {5, 1, 1, 5, DIRECT_LINK},
+                              {2, 3, 3, 2, DIRECT_LINK},
+                              {3, 2, 2, 3, DIRECT_LINK},
+                              {2, 4, 4, 2, DIRECT_LINK},
+                              {4, 2, 2, 4, DIRECT_LINK},
+                              {2, 5, 5, 2, DIRECT_LINK},
+                              {5, 2, 2, 5, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti = topologyManager.getCurrentInstance(true);
+        DatapathId leaf1 = DatapathId.of(1);
+        DatapathId leaf2 = DatapathId.of(2);
+
+        List<Route> routes = ti.getPathSet(leaf1, leaf2);
+        assertEquals(3, routes.size());
+        assertEquals(ti.getRoute(leaf1, leaf2, U64.ZERO).getPath(), routes.get(0).getPath());
+
+        // Flow hashes spread over every spine, and stick to one
+        Set<DatapathId> spines = new HashSet<DatapathId>();
+        for (int hash = 0; hash < 3; hash++) {
+            Route r = topologyManager.getRoute(leaf1, OFPort.of(10), leaf2, OFPort.of(10), U64.ZERO, hash);
+            assertEquals(3, r.getRouteCount());
+            assertEquals(6, r.getPath().size());
+            spines.add(r.getPath().get(2).getNodeId());
+        }
+        assertEquals(3, spines.size());
+        assertEquals(topologyManager.getRoute(leaf1, OFPort.of(10), leaf2, OFPort.of(10), U64.ZERO, -7),
+                topologyManager.getRoute(leaf1, OFPort.of(10), leaf2, OFPort.of(10), U64.ZERO, -7));
+
+        // Removing the links between leaf 2 and spine 5 drops the path
+        // through it, but leaves the paths towards a spine alone. The
+        // broadcast tree is always recomputed, so its spine is not used.
+        DatapathId spine = ti.finiteBroadcastTree == ti.destinationRootedFullTrees.get(DatapathId.of(3)) ?
+                DatapathId.of(4) : DatapathId.of(3);
+        List<Route> toSpine = ti.getPathSet(leaf1, spine);
+        assertEquals(1, toSpine.size());
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(5), DatapathId.of(5), OFPort.of(2));
+        topologyManager.removeLink(DatapathId.of(5), OFPort.of(2), DatapathId.of(2), OFPort.of(5));
+        topologyManager.createNewInstance();
+        TopologyInstance after = topologyManager.getCurrentInstance(true);
+        assertEquals(2, after.getPathSet(leaf1, leaf2).size());
+        assertSame(toSpine, after.getPathSet(leaf1, spine));
+
+        // The k shortest paths are the same three, as every longer path
+        // would have to go through a leaf twice
+        TopologyInstance ksp = new TopologyInstance(ti.switchPorts, ti.blockedPorts,
+                ti.switchPortLinks, ti.broadcastDomainPorts, ti.tunnelPorts,
+                ti.allLinks, ti.allPorts);
+        ksp.setMultipath(PathSetCalculator.Mode.KSP, 5, 10);
+        ksp.compute();
+        routes = ksp.getPathSet(leaf1, leaf2);
+        assertEquals(3, routes.size());
+        for (Route r : routes) {
+            assertEquals(4, r.getPath().size());
+        }
+    }
+
+    @Test
+    public void testPublishedInstanceIsSnapshot() throws Exception {
+        // A triangle, so one link is left off the broadcast tree
+        int [][] linkArray = {
+                              {1, 1, 2, 1, DIRECT_LINK},
+                              {2, 1, 1, 1, DIRECT_LINK},
+                              {2, 2, 3, 1, DIRECT_LINK},
+                              {3, 1, 2, 2, DIRECT_LINK},
+                              {3, 2, 1, 2, DIRECT_LINK},
+                              {1, 2, 3, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti = topologyManager.getCurrentInstance(true);
+
+        int blocked = 0;
+        for (DatapathId sw : ti.getSwitches()) {
+            assertEquals(3, ti.getSwitchesInOpenflowDomain(sw).size());
+            // Each port has a link in and a link out
+            assertEquals(4, ti.getAllLinks().get(sw).size());
+            for (OFPort p : ti.getPortsWithLinks(sw)) {
+                assertFalse(ti.isEdge(sw, p));
+                assertFalse(ti.isAttachmentPointPort(sw, p));
+                if (!ti.isIncomingBroadcastAllowedOnSwitchPort(sw, p))
+                    blocked++;
+            }
+            assertTrue(ti.isEdge(sw, OFPort.of(5)));
+            assertTrue(ti.isAttachmentPointPort(sw, OFPort.of(5)));
+            assertTrue(ti.isIncomingBroadcastAllowedOnSwitchPort(sw, OFPort.of(5)));
+        }
+        assertEquals(2, blocked);
+        assertTrue(ti.isEdge(DatapathId.of(9), OFPort.of(1)));
+        assertEquals(Collections.singleton(DatapathId.of(9)), ti.getSwitchesInOpenflowDomain(DatapathId.of(9)));
+
+        try {
+            ti.getSwitches().add(DatapathId.of(9));
+            fail("Published switches must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // Switch 4 joins: the instance held by a reader does not change
+        topologyManager.addOrUpdateLink(DatapathId.of(3), OFPort.of(3), DatapathId.of(4), OFPort.of(1), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(DatapathId.of(4), OFPort.of(1), DatapathId.of(3), OFPort.of(3), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.createNewInstance();
+        assertEquals(3, ti.getSwitches().size());
+        assertTrue(ti.isEdge(DatapathId.of(3), OFPort.of(3)));
+        assertFalse(ti.inSameOpenflowDomain(DatapathId.of(1), DatapathId.of(4)));
+
+        TopologyInstance next = topologyManager.getCurrentInstance(true);
+        assertEquals(4, next.getSwitches().size());
+        assertFalse(next.isEdge(DatapathId.of(3), OFPort.of(3)));
+        assertTrue(next.inSameOpenflowDomain(DatapathId.of(1), DatapathId.of(4)));
+    }
+
+    @Test
+    public void testTunnelsCostMoreThanWeightedPaths() throws Exception {
+        // 1 - 2 - 3 over direct links, and a tunnel from 1 to 3
+        DatapathId s1 = DatapathId.of(1), s2 = DatapathId.of(2), s3 = DatapathId.of(3);
+        Link[] direct = {
+                new Link(s1, OFPort.of(1), s2, OFPort.of(1), U64.ZERO),
+                new Link(s2, OFPort.of(1), s1, OFPort.of(1), U64.ZERO),
+                new Link(s2, OFPort.of(2), s3, OFPort.of(1), U64.ZERO),
+                new Link(s3, OFPort.of(1), s2, OFPort.of(2), U64.ZERO),
+        };
+        Link[] tunnel = {
+                new Link(s1, OFPort.of(2), s3, OFPort.of(2), U64.ZERO),
+                new Link(s3, OFPort.of(2), s1, OFPort.of(2), U64.ZERO),
+        };
+        Map<DatapathId, Set<OFPort>> switchPorts = new HashMap<DatapathId, Set<OFPort>>();
+        Map<NodePortTuple, Set<Link>> openflowLinks = new HashMap<NodePortTuple, Set<Link>>();
+        Map<NodePortTuple, Set<Link>> allLinks = new HashMap<NodePortTuple, Set<Link>>();
+        Set<NodePortTuple> tunnelPorts = new HashSet<NodePortTuple>();
+        ILinkCostModel model = new CompositeLinkCostModel(null, null, 0, 0, 0.5, 1000);
+        Map<Link, Integer> costs = new HashMap<Link, Integer>();
+        for (Link l : direct) {
+            addLink(switchPorts, openflowLinks, l);
+            addLink(switchPorts, allLinks, l);
+            costs.put(l, model.getCost(l));
+        }
+        for (Link l : tunnel) {
+            addLink(switchPorts, allLinks, l);
+            tunnelPorts.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            costs.put(l, model.getCost(l));
+        }
+
+        TopologyInstance ti = new TopologyInstance(switchPorts,
+                Collections.<NodePortTuple>emptySet(), openflowLinks,
+                Collections.<NodePortTuple>emptySet(), tunnelPorts, allLinks,
+                new HashMap<DatapathId, Set<OFPort>>(switchPorts));
+        ti.setLinkCosts(costs);
+        ti.compute();
+
+        // Two direct hops cost less than the tunnel
+        assertTrue(ti.tunnelWeight() > 2 * CompositeLinkCostModel.HOP_COST);
+        assertEquals(direct[0], ti.destinationRootedFullTrees.get(s3).getTreeLink(s1));
+        assertEquals(2 * CompositeLinkCostModel.HOP_COST,
+                ti.destinationRootedFullTrees.get(s3).getCost(s1));
+    }
+
+    private static void addLink(Map<DatapathId, Set<OFPort>> switchPorts,
+            Map<NodePortTuple, Set<Link>> links, Link l) {
+        NodePortTuple[] ends = { new NodePortTuple(l.getSrc(), l.getSrcPort()),
+                new NodePortTuple(l.getDst(), l.getDstPort()) };
+        for (NodePortTuple npt : ends) {
+            Set<Link> s = links.get(npt);
+            if (s == null) {
+                s = new HashSet<Link>();
+                links.put(npt, s);
+            }
+            s.add(l);
+            Set<OFPort> ports = switchPorts.get(npt.getNodeId());
+            if (ports == null) {
+                ports = new HashSet<OFPort>();
+                switchPorts.put(npt.getNodeId(), ports);
+            }
+            ports.add(npt.getPortId());
+        }
+    }
+
     @Test
     public void testLoopDetectionInSingleIsland() throws Exception {
 
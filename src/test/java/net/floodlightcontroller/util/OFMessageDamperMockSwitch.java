@@ -28,6 +28,7 @@ import java.util.Set;
 
 import net.floodlightcontroller.core.IOFConnection;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IStatsReplySubscriber;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.SwitchDescription;
 import net.floodlightcontroller.core.internal.OFConnection;
@@ -293,6 +294,24 @@ public class OFMessageDamperMockSwitch implements IOFSwitch {
 		return Collections.emptyList();
 	}
 
+	@Override
+	public boolean write(OFMessage m, LogicalOFMessageCategory category, long flowHash) {
+		writtenMessage = m;
+		return true;
+	}
+
+	@Override
+	public Collection<OFMessage> write(Iterable<OFMessage> msgList,
+			LogicalOFMessageCategory category, long flowHash) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public <REPLY extends OFStatsReply> void writeStatsRequest(
+			OFStatsRequest<REPLY> request, IStatsReplySubscriber<REPLY> subscriber) {
+		fail("Unexpected method call");
+	}
+
 	@Override
 	public OFConnection getConnectionByCategory(
 			LogicalOFMessageCategory category) {